@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.data.Message;
+import com.axibase.tsd.model.data.Property;
+import com.axibase.tsd.model.data.command.AddSeriesCommand;
+import com.axibase.tsd.model.data.command.BatchResponse;
+import com.axibase.tsd.model.data.command.GetPropertiesQuery;
+import com.axibase.tsd.model.data.command.GetSeriesQuery;
+import com.axibase.tsd.model.data.series.Series;
+import com.axibase.tsd.network.CommandEncoder;
+import com.axibase.tsd.network.PlainCommand;
+import com.axibase.tsd.query.Query;
+import com.axibase.tsd.query.QueryPart;
+
+import javax.ws.rs.client.InvocationCallback;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static com.axibase.tsd.client.DataService.INSERT_KEYWORD;
+import static com.axibase.tsd.client.DataService.SERIES_KEYWORD;
+import static com.axibase.tsd.util.AtsdUtil.checkEntityIsEmpty;
+import static com.axibase.tsd.util.AtsdUtil.checkMetricIsEmpty;
+
+/**
+ * Non-blocking counterpart of {@link DataService}. Every method returns immediately with a {@link Future}, the
+ * optional {@link InvocationCallback} is invoked on an I/O thread once the response is decoded. Failures complete
+ * the future exceptionally with {@link AtsdClientException} or {@link AtsdServerException}.
+ */
+public class AsyncDataService {
+    private HttpClientManager httpClientManager;
+
+    public AsyncDataService() {
+    }
+
+    public AsyncDataService(HttpClientManager httpClientManager) {
+        this.httpClientManager = httpClientManager;
+    }
+
+    public void setHttpClientManager(HttpClientManager httpClientManager) {
+        this.httpClientManager = httpClientManager;
+    }
+
+    /**
+     * @param seriesQueries queries with details, each query property overrides common one in the request parameters
+     * @return future list of {@code Series}
+     */
+    public Future<List<Series>> retrieveSeries(GetSeriesQuery... seriesQueries) {
+        return retrieveSeries(null, seriesQueries);
+    }
+
+    /**
+     * @param callback      invoked when the series are retrieved, may be null
+     * @param seriesQueries queries with details, each query property overrides common one in the request parameters
+     * @return future list of {@code Series}
+     */
+    public Future<List<Series>> retrieveSeries(InvocationCallback<List<Series>> callback,
+                                               GetSeriesQuery... seriesQueries) {
+        QueryPart<Series> query = new Query<>("series/query");
+        return httpClientManager.requestDataListAsync(Series.class, query, Arrays.asList(seriesQueries), callback);
+    }
+
+    /**
+     * @param addSeriesCommands commands that contains time-series which are added
+     * @return future {@code true} if success
+     */
+    public Future<Boolean> addSeries(AddSeriesCommand... addSeriesCommands) {
+        return addSeries(null, addSeriesCommands);
+    }
+
+    /**
+     * @param callback          invoked when the request is completed, may be null
+     * @param addSeriesCommands commands that contains time-series which are added
+     * @return future {@code true} if success
+     */
+    public Future<Boolean> addSeries(InvocationCallback<Boolean> callback, AddSeriesCommand... addSeriesCommands) {
+        for (AddSeriesCommand addSeriesCommand : addSeriesCommands) {
+            checkEntityIsEmpty(addSeriesCommand.getEntityName());
+            checkMetricIsEmpty(addSeriesCommand.getMetricName());
+        }
+        QueryPart<Series> query = new Query<Series>(SERIES_KEYWORD)
+                .path(INSERT_KEYWORD);
+        return httpClientManager.updateDataAsync(query, Arrays.asList(addSeriesCommands), callback);
+    }
+
+    /**
+     * @param getPropertiesQueries args of queries
+     * @return future list of {@code Property}
+     */
+    public Future<List<Property>> retrieveProperties(GetPropertiesQuery... getPropertiesQueries) {
+        return retrieveProperties(null, getPropertiesQueries);
+    }
+
+    /**
+     * @param callback             invoked when the properties are retrieved, may be null
+     * @param getPropertiesQueries args of queries
+     * @return future list of {@code Property}
+     */
+    public Future<List<Property>> retrieveProperties(InvocationCallback<List<Property>> callback,
+                                                     GetPropertiesQuery... getPropertiesQueries) {
+        QueryPart<Property> query = new Query<>("properties/query");
+        return httpClientManager.requestDataListAsync(Property.class, query, Arrays.asList(getPropertiesQueries),
+                callback);
+    }
+
+    /**
+     * @param messages list of {@code Message} to add.
+     * @return future {@code true} if success
+     */
+    public Future<Boolean> insertMessages(Message... messages) {
+        return insertMessages(null, messages);
+    }
+
+    /**
+     * @param callback invoked when the request is completed, may be null
+     * @param messages list of {@code Message} to add.
+     * @return future {@code true} if success
+     */
+    public Future<Boolean> insertMessages(InvocationCallback<Boolean> callback, Message... messages) {
+        for (Message message : messages) {
+            checkEntityIsEmpty(message.getEntityName());
+        }
+        QueryPart<Message> query = new Query<Message>("messages")
+                .path(INSERT_KEYWORD);
+        return httpClientManager.updateDataAsync(query, Arrays.asList(messages), callback);
+    }
+
+    public Future<BatchResponse> sendBatch(Collection<PlainCommand> commands) {
+        return sendBatch(commands, false, null);
+    }
+
+    /**
+     * @param commands network API commands
+     * @param commit   wait until the commands are stored
+     * @param callback invoked with the batch response, may be null
+     * @return future batch response, server errors are reported in the response itself
+     */
+    public Future<BatchResponse> sendBatch(Collection<PlainCommand> commands, boolean commit,
+                                           InvocationCallback<BatchResponse> callback) {
+        QueryPart<BatchResponse> query = new Query<>("command");
+        query = query.param("commit", commit);
+
+        CommandEncoder encoder = new CommandEncoder();
+        for (PlainCommand command : commands) {
+            encoder.encode(command);
+        }
+
+        return httpClientManager.sendBatchAsync(query, encoder.toByteArray(), callback);
+    }
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.data.command.BatchResponse;
+import com.axibase.tsd.model.data.command.SendCommandResult;
+import com.axibase.tsd.model.system.ClientConfiguration;
+import com.axibase.tsd.model.system.ServerError;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ssl.AllowAllHostnameVerifier;
+import org.apache.http.conn.ssl.StrictHostnameVerifier;
+import org.apache.http.conn.ssl.X509HostnameVerifier;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.util.EntityUtils;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.core.Response;
+import javax.xml.bind.DatatypeConverter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Non-blocking HTTP transport built on a single NIO reactor. Requests never occupy a caller thread while waiting
+ * for the server: responses are decoded on the reactor threads and handed to the returned {@link Future} and to the
+ * optional {@link InvocationCallback}. Callbacks must not block, otherwise they stall other requests.
+ */
+@Slf4j
+class AsyncHttpClient {
+    private static final String COMMAND_PATH = "/command";
+
+    private final ClientConfiguration clientConfiguration;
+    private final PoolingNHttpClientConnectionManager connectionManager;
+    private final CloseableHttpAsyncClient client;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String authorization;
+    private final String userAgent;
+
+    AsyncHttpClient(ClientConfiguration clientConfiguration) {
+        this.clientConfiguration = clientConfiguration;
+        connectionManager = createConnectionManager(clientConfiguration);
+        connectionManager.setMaxTotal(clientConfiguration.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(clientConfiguration.getMaxConnectionsPerRoute());
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(clientConfiguration.getConnectTimeoutMillis())
+                .setSocketTimeout(clientConfiguration.getReadTimeoutMillis())
+                .build();
+        client = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+        authorization = "Basic " + DatatypeConverter.printBase64Binary(
+                (clientConfiguration.getUsername() + ":" + clientConfiguration.getPassword())
+                        .getBytes(StandardCharsets.UTF_8));
+        userAgent = HttpUtils.compileUserAgent(clientConfiguration.getClientName());
+        client.start();
+    }
+
+    private static PoolingNHttpClientConnectionManager createConnectionManager(ClientConfiguration configuration) {
+        X509HostnameVerifier hostnameVerifier;
+        SSLContext sslContext;
+        try {
+            sslContext = SSLContext.getInstance("SSL");
+            if (configuration.isIgnoreSSLErrors()) {
+                sslContext.init(null, new TrustManager[] {new IgnoringTrustManager()}, new SecureRandom());
+                hostnameVerifier = new AllowAllHostnameVerifier();
+            } else {
+                sslContext.init(null, null, null);
+                hostnameVerifier = new StrictHostnameVerifier();
+            }
+        } catch (GeneralSecurityException e) {
+            throw new AtsdClientException("SSL context initialization error", e);
+        }
+        Registry<SchemeIOSessionStrategy> registry = RegistryBuilder.<SchemeIOSessionStrategy>create()
+                .register("http", NoopIOSessionStrategy.INSTANCE)
+                .register("https", new SSLIOSessionStrategy(sslContext, hostnameVerifier))
+                .build();
+        IOReactorConfig reactorConfig = IOReactorConfig.custom()
+                .setConnectTimeout(configuration.getConnectTimeoutMillis())
+                .setSoTimeout(configuration.getReadTimeoutMillis())
+                .setTcpNoDelay(true)
+                .build();
+        try {
+            return new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(reactorConfig), registry);
+        } catch (IOReactorException e) {
+            throw new AtsdClientException("Could not start I/O reactor", e);
+        }
+    }
+
+    <T> Future<List<T>> requestList(URI uri, Object body, final Class<T> resultClass,
+                                    InvocationCallback<List<T>> callback) {
+        final JavaType listType = objectMapper.getTypeFactory().constructCollectionType(List.class, resultClass);
+        return execute(request(uri, body), callback, new ResultReader<List<T>>() {
+            @Override
+            public List<T> read(HttpResponse response, int status) throws IOException {
+                if (isSuccessful(status)) {
+                    return objectMapper.readValue(content(response), listType);
+                } else if (status == HttpStatus.SC_NOT_FOUND) {
+                    EntityUtils.consume(response.getEntity());
+                    return Collections.emptyList();
+                }
+                throw serverException(response, status);
+            }
+        });
+    }
+
+    <T> Future<T> requestObject(URI uri, Object body, final Class<T> resultClass, InvocationCallback<T> callback) {
+        return execute(request(uri, body), callback, new ResultReader<T>() {
+            @Override
+            public T read(HttpResponse response, int status) throws IOException {
+                if (isSuccessful(status)) {
+                    return objectMapper.readValue(content(response), resultClass);
+                } else if (status == HttpStatus.SC_NOT_FOUND) {
+                    log.warn("Server error: {}", readServerError(response));
+                    return null;
+                }
+                throw serverException(response, status);
+            }
+        });
+    }
+
+    Future<Boolean> update(URI uri, Object body, InvocationCallback<Boolean> callback) {
+        return execute(request(uri, body), callback, new ResultReader<Boolean>() {
+            @Override
+            public Boolean read(HttpResponse response, int status) throws IOException {
+                if (isSuccessful(status)) {
+                    EntityUtils.consume(response.getEntity());
+                    return Boolean.TRUE;
+                } else if (status == HttpStatus.SC_BAD_REQUEST) {
+                    EntityUtils.consume(response.getEntity());
+                    return Boolean.FALSE;
+                }
+                throw serverException(response, status);
+            }
+        });
+    }
+
+    Future<BatchResponse> sendBatch(URI uri, byte[] data, InvocationCallback<BatchResponse> callback) {
+        HttpPost request = new HttpPost(uri);
+        request.setEntity(entity(uri, data, ContentType.TEXT_PLAIN));
+        return execute(request, callback, new ResultReader<BatchResponse>() {
+            @Override
+            public BatchResponse read(HttpResponse response, int status) throws IOException {
+                BatchResponse batchResponse = new BatchResponse(statusType(response));
+                if (isSuccessful(status)) {
+                    batchResponse.setResult(objectMapper.readValue(content(response), SendCommandResult.class));
+                } else {
+                    ServerError serverError = readServerError(response);
+                    log.warn("Server error: {}", serverError);
+                    batchResponse.setServerError(serverError);
+                }
+                return batchResponse;
+            }
+        });
+    }
+
+    private HttpUriRequest request(URI uri, Object body) {
+        if (body == null) {
+            return new HttpGet(uri);
+        }
+        HttpEntityEnclosingRequestBase request = new HttpPost(uri);
+        try {
+            request.setEntity(entity(uri, objectMapper.writeValueAsBytes(body), ContentType.APPLICATION_JSON));
+        } catch (IOException e) {
+            throw new AtsdClientException("Could not serialize request", e);
+        }
+        return request;
+    }
+
+    private HttpEntity entity(URI uri, byte[] data, ContentType contentType) {
+        ByteArrayEntity entity;
+        if (clientConfiguration.isEnableBatchCompression() && uri.getPath().endsWith(COMMAND_PATH)) {
+            entity = new ByteArrayEntity(gzip(data), contentType);
+            entity.setContentEncoding("gzip");
+        } else {
+            entity = new ByteArrayEntity(data, contentType);
+        }
+        return entity;
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        } catch (IOException e) {
+            throw new AtsdClientException("Could not compress request", e);
+        }
+        return out.toByteArray();
+    }
+
+    private <T> Future<T> execute(HttpUriRequest request, final InvocationCallback<T> callback,
+                                  final ResultReader<T> reader) {
+        request.setHeader(HttpHeaders.AUTHORIZATION, authorization);
+        request.setHeader(HttpHeaders.USER_AGENT, userAgent);
+        request.setHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.getMimeType());
+        log.debug("url = {}", request.getURI());
+
+        final ResultFuture<T> result = new ResultFuture<>(new FutureCallback<T>() {
+            @Override
+            public void completed(T value) {
+                if (callback != null) {
+                    callback.completed(value);
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                if (callback != null) {
+                    callback.failed(e);
+                }
+            }
+
+            @Override
+            public void cancelled() {
+                if (callback != null) {
+                    callback.failed(new AtsdClientException("Request cancelled"));
+                }
+            }
+        });
+        result.exchange = client.execute(request, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                T value;
+                try {
+                    value = reader.read(response, response.getStatusLine().getStatusCode());
+                } catch (AtsdServerException e) {
+                    result.failed(e);
+                    return;
+                } catch (Exception e) {
+                    result.failed(new AtsdClientException("Error while processing the response", e));
+                    return;
+                }
+                result.completed(value);
+            }
+
+            @Override
+            public void failed(Exception e) {
+                result.failed(new AtsdClientException("Error while processing the request", e));
+            }
+
+            @Override
+            public void cancelled() {
+                result.cancel(true);
+            }
+        });
+        if (result.isCancelled()) {
+            result.exchange.cancel(true);
+        }
+        return result;
+    }
+
+    private static boolean isSuccessful(int status) {
+        return Response.Status.Family.familyOf(status) == Response.Status.Family.SUCCESSFUL;
+    }
+
+    private static InputStream content(HttpResponse response) throws IOException {
+        return response.getEntity().getContent();
+    }
+
+    private ServerError readServerError(HttpResponse response) {
+        try {
+            return objectMapper.readValue(content(response), ServerError.class);
+        } catch (Exception e) {
+            log.warn("Couldn't read error message", e);
+            return null;
+        }
+    }
+
+    private AtsdServerException serverException(HttpResponse response, int status) {
+        ServerError serverError = readServerError(response);
+        if (serverError == null) {
+            throw new IllegalArgumentException("Failed to extract server error");
+        }
+        return new AtsdServerException(AtsdServerMessageFactory.from(serverError), status);
+    }
+
+    private static Response.StatusType statusType(final HttpResponse response) {
+        final int status = response.getStatusLine().getStatusCode();
+        final String reasonPhrase = response.getStatusLine().getReasonPhrase();
+        return new Response.StatusType() {
+            @Override
+            public int getStatusCode() {
+                return status;
+            }
+
+            @Override
+            public Response.Status.Family getFamily() {
+                return Response.Status.Family.familyOf(status);
+            }
+
+            @Override
+            public String getReasonPhrase() {
+                return reasonPhrase;
+            }
+
+            @Override
+            public String toString() {
+                return reasonPhrase;
+            }
+        };
+    }
+
+    /**
+     * Close expired connections and connections idle for longer than the specified time.
+     *
+     * @param idleTimeoutMillis maximum idle time of a pooled connection
+     */
+    void evictConnections(long idleTimeoutMillis) {
+        connectionManager.closeExpiredConnections();
+        connectionManager.closeIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void close() {
+        try {
+            client.close();
+        } catch (IOException e) {
+            log.warn("Couldn't close async client", e);
+        }
+    }
+
+    private interface ResultReader<T> {
+        T read(HttpResponse response, int status) throws IOException;
+    }
+
+    /**
+     * Future of the decoded result. Cancelling it cancels the HTTP exchange too, so the response is discarded without
+     * decoding when it arrives. A cancelled future throws {@link CancellationException} from {@code get}, as
+     * {@link Future} requires.
+     */
+    private static final class ResultFuture<T> extends BasicFuture<T> {
+        private volatile Future<HttpResponse> exchange;
+
+        private ResultFuture(FutureCallback<T> callback) {
+            super(callback);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            Future<HttpResponse> current = exchange;
+            if (cancelled && current != null) {
+                current.cancel(true);
+            }
+            return cancelled;
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            T value = super.get();
+            return checkNotCancelled(value);
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            T value = super.get(timeout, unit);
+            return checkNotCancelled(value);
+        }
+
+        private T checkNotCancelled(T value) {
+            if (isCancelled()) {
+                throw new CancellationException("Request cancelled");
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.meta.Entity;
+import com.axibase.tsd.model.meta.EntityGroup;
+import com.axibase.tsd.model.meta.Metric;
+import com.axibase.tsd.model.meta.TagAppender;
+import com.axibase.tsd.query.Query;
+import com.axibase.tsd.query.QueryPart;
+
+import javax.ws.rs.client.InvocationCallback;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static com.axibase.tsd.util.AtsdUtil.checkEntityGroupIsEmpty;
+import static com.axibase.tsd.util.AtsdUtil.checkEntityIsEmpty;
+import static com.axibase.tsd.util.AtsdUtil.checkMetricIsEmpty;
+
+/**
+ * Non-blocking counterpart of the read methods of {@link MetaDataService}. Missing objects complete the future
+ * with {@code null}, the optional {@link InvocationCallback} is invoked on an I/O thread.
+ */
+public class AsyncMetaDataService {
+    private HttpClientManager httpClientManager;
+
+    public AsyncMetaDataService() {
+    }
+
+    public AsyncMetaDataService(HttpClientManager httpClientManager) {
+        this.httpClientManager = httpClientManager;
+    }
+
+    public void setHttpClientManager(HttpClientManager httpClientManager) {
+        this.httpClientManager = httpClientManager;
+    }
+
+    /**
+     * @param metricName Metric name.
+     * @param callback   invoked when the metric is retrieved, may be null
+     * @return future Metric.
+     */
+    public Future<Metric> retrieveMetric(String metricName, InvocationCallback<Metric> callback) {
+        checkMetricIsEmpty(metricName);
+        return httpClientManager.requestMetaDataObjectAsync(Metric.class, new Query<Metric>("metrics")
+                .path(metricName, true), callback);
+    }
+
+    public Future<Metric> retrieveMetric(String metricName) {
+        return retrieveMetric(metricName, null);
+    }
+
+    /**
+     * @param entityName Entity name.
+     * @param callback   invoked when the entity is retrieved, may be null
+     * @return future Entity
+     */
+    public Future<Entity> retrieveEntity(String entityName, InvocationCallback<Entity> callback) {
+        checkEntityIsEmpty(entityName);
+        QueryPart<Entity> query = new Query<Entity>("entities")
+                .path(entityName, true);
+        return httpClientManager.requestMetaDataObjectAsync(Entity.class, query, callback);
+    }
+
+    public Future<Entity> retrieveEntity(String entityName) {
+        return retrieveEntity(entityName, null);
+    }
+
+    /**
+     * @param entityGroupName Entity group name.
+     * @param callback        invoked when the entity group is retrieved, may be null
+     * @return future entity group.
+     */
+    public Future<EntityGroup> retrieveEntityGroup(String entityGroupName, InvocationCallback<EntityGroup> callback) {
+        checkEntityGroupIsEmpty(entityGroupName);
+        QueryPart<EntityGroup> query = new Query<EntityGroup>("entity-groups")
+                .path(entityGroupName, true);
+        return httpClientManager.requestMetaDataObjectAsync(EntityGroup.class, query, callback);
+    }
+
+    public Future<EntityGroup> retrieveEntityGroup(String entityGroupName) {
+        return retrieveEntityGroup(entityGroupName, null);
+    }
+
+    /**
+     * @param entityGroupName Entity group name.
+     * @param callback        invoked when the entities are retrieved, may be null
+     * @return future list of entities of the group.
+     */
+    public Future<List<Entity>> retrieveGroupEntities(String entityGroupName,
+                                                      InvocationCallback<List<Entity>> callback) {
+        checkEntityGroupIsEmpty(entityGroupName);
+        QueryPart<Entity> query = new Query<Entity>("entity-groups")
+                .path(entityGroupName, true)
+                .path("entities");
+        query = query.param("tags", TagAppender.ALL.getTags());
+        return httpClientManager.requestMetaDataListAsync(Entity.class, query, callback);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.system.TcpClientConfiguration;
+import com.axibase.tsd.network.PlainCommand;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Sends network API commands asynchronously over a fixed set of TCP connections.
+ * <p>
+ * Each connection has a pre-allocated lock-free ring buffer of {@link TcpClientConfiguration#getRingBufferSize()}
+ * commands and a writer thread. {@code send} only publishes the command to the ring buffer and returns, the writer
+ * thread takes everything published since its last write and sends it with one socket write and flush. The writer
+ * waits for new commands with {@link TcpClientConfiguration#getWaitStrategy()}. Commands are assigned to connections
+ * according to {@link TcpClientConfiguration#getSharding()}, by default commands sent by one thread go through the
+ * same connection, so their order is kept. A failed write is retried with an increasing delay up to
+ * {@link TcpClientConfiguration#getReconnectDelayMs()}, while the ring buffer is full new commands are rejected.
+ * </p>
+ */
+public class AsyncTcpClientManager {
+    private static final long JOIN_MARGIN_MS = 1000;
+
+    private final TcpShardRouter router;
+    private final AsyncTcpConnection[] connections;
+    private final long closeTimeoutMs;
+
+    public AsyncTcpClientManager(TcpClientConfiguration clientConfiguration) {
+        router = new TcpShardRouter(clientConfiguration);
+        int count = router.shards();
+        connections = new AsyncTcpConnection[count];
+        for (int i = 0; i < count; i++) {
+            connections[i] = new AsyncTcpConnection(clientConfiguration, "atsd-tcp-writer-" + i);
+        }
+        closeTimeoutMs = clientConfiguration.getConnectionTimeoutMs();
+    }
+
+    /**
+     * @param plainCommand command to send
+     * @return false if the command is rejected because the ring buffer is full or the manager is closed
+     */
+    public boolean send(PlainCommand plainCommand) {
+        return connections[router.shardOf(plainCommand)].send(plainCommand);
+    }
+
+    /**
+     * @param plainCommands commands to send, the commands of one connection are accepted or rejected together
+     * @return false if some commands are rejected because a ring buffer is full or the manager is closed
+     */
+    public boolean send(Collection<PlainCommand> plainCommands) {
+        boolean accepted = true;
+        List<Collection<PlainCommand>> shards = router.split(plainCommands);
+        for (int i = 0; i < shards.size(); i++) {
+            Collection<PlainCommand> shardCommands = shards.get(i);
+            if (shardCommands != null && !connections[i].send(shardCommands)) {
+                accepted = false;
+            }
+        }
+        return accepted;
+    }
+
+    public AsyncTcpMetrics getMetrics() {
+        int queueSize = 0;
+        int queueCapacity = 0;
+        long maxQueueSize = 0;
+        long enqueued = 0;
+        long rejected = 0;
+        long enqueueNanos = 0;
+        long maxEnqueueNanos = 0;
+        long written = 0;
+        long batches = 0;
+        long failures = 0;
+        long discarded = 0;
+        for (AsyncTcpConnection connection : connections) {
+            queueSize += connection.size();
+            queueCapacity += connection.capacity();
+            maxQueueSize = Math.max(maxQueueSize, connection.maxOccupancy.get());
+            enqueued += connection.enqueued.get();
+            rejected += connection.rejected.get();
+            enqueueNanos += connection.enqueueNanos.get();
+            maxEnqueueNanos = Math.max(maxEnqueueNanos, connection.maxEnqueueNanos.get());
+            written += connection.written.get();
+            batches += connection.batches.get();
+            failures += connection.failures.get();
+            discarded += connection.discarded.get();
+        }
+        return new AsyncTcpMetrics(queueSize, queueCapacity, maxQueueSize, enqueued, rejected, enqueueNanos,
+                maxEnqueueNanos, written, batches, failures, discarded);
+    }
+
+    /**
+     * Stop accepting commands, send what is queued within the connection timeout and close the connections.
+     */
+    public void close() {
+        long deadline = System.currentTimeMillis() + closeTimeoutMs;
+        for (AsyncTcpConnection connection : connections) {
+            connection.close(deadline);
+        }
+        try {
+            for (AsyncTcpConnection connection : connections) {
+                connection.join(Math.max(1, deadline + JOIN_MARGIN_MS - System.currentTimeMillis()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.system.TcpClientConfiguration;
+import com.axibase.tsd.network.PlainCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One connection of {@link AsyncTcpClientManager}: a ring buffer filled by the sending threads and a writer thread
+ * that drains it into its own {@link TcpClient}, one socket write and flush per batch.
+ * <p>
+ * A sending thread is counted in {@link #producers} while it checks {@link #closed} and publishes. The writer waits
+ * for this count to drop to zero after the connection is closed and then drains the ring once more, so a command
+ * accepted concurrently with {@link #close(long)} is either sent or counted as discarded.
+ * </p>
+ */
+class AsyncTcpConnection {
+    private static final Logger log = LoggerFactory.getLogger(AsyncTcpConnection.class);
+    private static final int MAX_BATCH_SIZE = 4096;
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long MIN_RETRY_DELAY_MS = 100;
+
+    private final CommandRingBuffer ring;
+    private final TcpClient tcpClient;
+    private final String address;
+    private final long maxRetryDelayMs;
+    private final Thread writer;
+    private volatile boolean closed;
+    private volatile long closeDeadline = Long.MAX_VALUE;
+    private final AtomicInteger producers = new AtomicInteger();
+
+    final AtomicLong enqueued = new AtomicLong();
+    final AtomicLong rejected = new AtomicLong();
+    final AtomicLong enqueueNanos = new AtomicLong();
+    final AtomicLong maxEnqueueNanos = new AtomicLong();
+    /* written by the writer thread only */
+    final AtomicLong written = new AtomicLong();
+    final AtomicLong batches = new AtomicLong();
+    final AtomicLong failures = new AtomicLong();
+    final AtomicLong discarded = new AtomicLong();
+    final AtomicLong maxOccupancy = new AtomicLong();
+
+    AsyncTcpConnection(TcpClientConfiguration clientConfiguration, String name) {
+        ring = new CommandRingBuffer(clientConfiguration.getRingBufferSize(), clientConfiguration.getWaitStrategy());
+        tcpClient = new TcpClient(clientConfiguration);
+        address = clientConfiguration.getServerName() + ":" + clientConfiguration.getPort();
+        maxRetryDelayMs = Math.max(MIN_RETRY_DELAY_MS, clientConfiguration.getReconnectDelayMs());
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runWriter();
+            }
+        }, name);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    boolean send(PlainCommand command) {
+        long start = System.nanoTime();
+        producers.incrementAndGet();
+        boolean accepted;
+        try {
+            accepted = !closed && ring.offer(command);
+        } finally {
+            producers.decrementAndGet();
+        }
+        return onEnqueue(accepted, 1, start);
+    }
+
+    boolean send(Collection<PlainCommand> commands) {
+        long start = System.nanoTime();
+        producers.incrementAndGet();
+        boolean accepted;
+        try {
+            accepted = !closed && ring.offer(commands);
+        } finally {
+            producers.decrementAndGet();
+        }
+        return onEnqueue(accepted, commands.size(), start);
+    }
+
+    private boolean onEnqueue(boolean accepted, int count, long start) {
+        long nanos = System.nanoTime() - start;
+        if (!accepted) {
+            rejected.addAndGet(count);
+            return false;
+        }
+        enqueued.addAndGet(count);
+        enqueueNanos.addAndGet(nanos);
+        long max = maxEnqueueNanos.get();
+        while (nanos > max && !maxEnqueueNanos.compareAndSet(max, nanos)) {
+            max = maxEnqueueNanos.get();
+        }
+        return true;
+    }
+
+    int size() {
+        return ring.size();
+    }
+
+    int capacity() {
+        return ring.capacity();
+    }
+
+    /**
+     * Stop accepting commands and let the writer send what is queued until the deadline.
+     */
+    void close(long deadline) {
+        closeDeadline = deadline;
+        closed = true;
+        ring.wakeConsumer();
+    }
+
+    void join(long millis) throws InterruptedException {
+        writer.join(millis);
+    }
+
+    private void runWriter() {
+        List<PlainCommand> batch = new ArrayList<>(Math.min(MAX_BATCH_SIZE, ring.capacity()));
+        long retryDelayMs = MIN_RETRY_DELAY_MS;
+        try {
+            while (true) {
+                if (batch.isEmpty()) {
+                    updateMaxOccupancy();
+                    if (ring.drainTo(batch, MAX_BATCH_SIZE) == 0) {
+                        if (!closed) {
+                            ring.await(IDLE_WAIT_NANOS);
+                            continue;
+                        }
+                        awaitProducers();
+                        if (ring.drainTo(batch, MAX_BATCH_SIZE) == 0) {
+                            break;
+                        }
+                    }
+                }
+                try {
+                    tcpClient.send(batch);
+                    written.addAndGet(batch.size());
+                    batches.incrementAndGet();
+                    batch.clear();
+                    retryDelayMs = MIN_RETRY_DELAY_MS;
+                } catch (AtsdClientException e) {
+                    failures.incrementAndGet();
+                    log.warn("Could not send {} commands to ATSD at {}, retry in {} ms",
+                            batch.size(), address, retryDelayMs, e);
+                    long sleep = Math.min(retryDelayMs, closeDeadline - System.currentTimeMillis());
+                    if (sleep <= 0) {
+                        break;
+                    }
+                    Thread.sleep(sleep);
+                    retryDelayMs = Math.min(retryDelayMs * 2, maxRetryDelayMs);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closed = true;
+            awaitProducers();
+            discarded.addAndGet(batch.size());
+            batch.clear();
+            while (ring.drainTo(batch, MAX_BATCH_SIZE) > 0) {
+                discarded.addAndGet(batch.size());
+                batch.clear();
+            }
+            tcpClient.close();
+            if (discarded.get() > 0) {
+                log.warn("Discard {} commands that were not sent to ATSD at {}", discarded.get(), address);
+            }
+        }
+    }
+
+    /**
+     * Wait until no sending thread is between its check of {@link #closed} and its publish, the ring then receives
+     * no more commands.
+     */
+    private void awaitProducers() {
+        while (producers.get() > 0) {
+            Thread.yield();
+        }
+    }
+
+    private void updateMaxOccupancy() {
+        int size = ring.size();
+        if (size > maxOccupancy.get()) {
+            maxOccupancy.set(size);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import lombok.ToString;
+
+/**
+ * Snapshot of the asynchronous TCP transport counters, see {@link AsyncTcpClientManager#getMetrics()}.
+ */
+@ToString
+public final class AsyncTcpMetrics {
+    private final int queueSize;
+    private final int queueCapacity;
+    private final long maxQueueSize;
+    private final long enqueued;
+    private final long rejected;
+    private final long enqueueNanos;
+    private final long maxEnqueueNanos;
+    private final long written;
+    private final long batches;
+    private final long failures;
+    private final long discarded;
+
+    AsyncTcpMetrics(int queueSize, int queueCapacity, long maxQueueSize, long enqueued, long rejected,
+                    long enqueueNanos, long maxEnqueueNanos, long written, long batches, long failures,
+                    long discarded) {
+        this.queueSize = queueSize;
+        this.queueCapacity = queueCapacity;
+        this.maxQueueSize = maxQueueSize;
+        this.enqueued = enqueued;
+        this.rejected = rejected;
+        this.enqueueNanos = enqueueNanos;
+        this.maxEnqueueNanos = maxEnqueueNanos;
+        this.written = written;
+        this.batches = batches;
+        this.failures = failures;
+        this.discarded = discarded;
+    }
+
+    /**
+     * @return number of commands waiting in the ring buffers
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * @return total capacity of the ring buffers
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @return share of the ring buffer capacity in use, from 0 to 1
+     */
+    public double getOccupancy() {
+        return queueCapacity == 0 ? 0 : (double) queueSize / queueCapacity;
+    }
+
+    /**
+     * @return largest number of commands seen waiting in a ring buffer
+     */
+    public long getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    /**
+     * @return number of commands accepted by {@code send}
+     */
+    public long getEnqueued() {
+        return enqueued;
+    }
+
+    /**
+     * @return number of commands rejected because a ring buffer was full or the manager was closed
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return average time of an accepted {@code send} call
+     */
+    public double getAverageEnqueueNanos() {
+        return enqueued == 0 ? 0 : (double) enqueueNanos / enqueued;
+    }
+
+    /**
+     * @return longest time of an accepted {@code send} call
+     */
+    public long getMaxEnqueueNanos() {
+        return maxEnqueueNanos;
+    }
+
+    /**
+     * @return number of commands written to the sockets
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * @return number of socket writes
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    public double getAverageBatchSize() {
+        return batches == 0 ? 0 : (double) written / batches;
+    }
+
+    /**
+     * @return number of failed batch writes, a failed batch is retried
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return number of commands discarded on close because they could not be sent in time
+     */
+    public long getDiscarded() {
+        return discarded;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+/**
+ * Outcome of one item of a {@link MetaDataBulkWriter} operation.
+ */
+public class BulkResult<T> {
+    private final T item;
+    private final boolean success;
+    private final RuntimeException error;
+
+    BulkResult(T item, boolean success, RuntimeException error) {
+        this.item = item;
+        this.success = success;
+        this.error = error;
+    }
+
+    /**
+     * @return item the result belongs to
+     */
+    public T getItem() {
+        return item;
+    }
+
+    /**
+     * @return true if the server accepted the item
+     */
+    public boolean isSuccess() {
+        return success;
+    }
+
+    /**
+     * @return exception raised by the request, null if the request succeeded or the server rejected the item as
+     * a bad request
+     */
+    public RuntimeException getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkResult{item=" + item + ", success=" + success + ", error=" + error + '}';
+    }
+}
@@ -15,6 +15,7 @@
 package com.axibase.tsd.client;
 
 import com.axibase.tsd.model.system.ClientConfiguration;
+import com.axibase.tsd.model.system.StreamingOverflowPolicy;
 import com.axibase.tsd.util.AtsdUtil;
 import org.apache.commons.lang3.StringUtils;
 
@@ -28,6 +29,38 @@ public class ClientConfigurationFactory {
     private static final int DEFAULT_CONNECT_TIMEOUT_MS = ClientConfiguration.DEFAULT_TIMEOUT_MS;
     private static final int DEFAULT_READ_TIMEOUT_MS = ClientConfiguration.DEFAULT_TIMEOUT_MS;
     private static final long DEFAULT_PING_TIMEOUT_MS = ClientConfiguration.DEFAULT_PING_TIMEOUT_MS;
+    private static final int DEFAULT_MAX_CONNECTIONS = ClientConfiguration.DEFAULT_MAX_CONNECTIONS;
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = ClientConfiguration.DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+    private static final long DEFAULT_CONNECTION_IDLE_TIMEOUT_MS = ClientConfiguration.DEFAULT_CONNECTION_IDLE_TIMEOUT_MS;
+    private static final int DEFAULT_STREAMING_BATCH_SIZE = ClientConfiguration.DEFAULT_STREAMING_BATCH_SIZE;
+    private static final long DEFAULT_STREAMING_LINGER_MS = ClientConfiguration.DEFAULT_STREAMING_LINGER_MS;
+    private static final int DEFAULT_STREAMING_QUEUE_CAPACITY = ClientConfiguration.DEFAULT_STREAMING_QUEUE_CAPACITY;
+    private static final long DEFAULT_STREAMING_BLOCK_TIMEOUT_MS = ClientConfiguration.DEFAULT_STREAMING_BLOCK_TIMEOUT_MS;
+    private static final long DEFAULT_STREAMING_SPILL_MAX_BYTES = ClientConfiguration.DEFAULT_STREAMING_SPILL_MAX_BYTES;
+    private static final long DEFAULT_STREAMING_LEDGER_MAX_BYTES = ClientConfiguration.DEFAULT_STREAMING_LEDGER_MAX_BYTES;
+    private static final int DEFAULT_STREAMING_SPOOL_SEGMENT_SIZE = ClientConfiguration.DEFAULT_STREAMING_SPOOL_SEGMENT_SIZE;
+    private static final long DEFAULT_STREAMING_SPOOL_MAX_BYTES = ClientConfiguration.DEFAULT_STREAMING_SPOOL_MAX_BYTES;
+    private static final int DEFAULT_BATCH_SPLIT_SIZE = ClientConfiguration.DEFAULT_BATCH_SPLIT_SIZE;
+    private static final int DEFAULT_BATCH_PARALLELISM = ClientConfiguration.DEFAULT_BATCH_PARALLELISM;
+    private static final int DEFAULT_INGEST_BATCH_SIZE = ClientConfiguration.DEFAULT_INGEST_BATCH_SIZE;
+    private static final long DEFAULT_INGEST_LINGER_MS = ClientConfiguration.DEFAULT_INGEST_LINGER_MS;
+    private static final int DEFAULT_INGEST_MAX_IN_FLIGHT = ClientConfiguration.DEFAULT_INGEST_MAX_IN_FLIGHT;
+    private static final int DEFAULT_SERIES_READ_PARALLELISM = ClientConfiguration.DEFAULT_SERIES_READ_PARALLELISM;
+    private static final int DEFAULT_SERIES_READ_WINDOW_POINTS = ClientConfiguration.DEFAULT_SERIES_READ_WINDOW_POINTS;
+    private static final long DEFAULT_SERIES_CACHE_MAX_BYTES = ClientConfiguration.DEFAULT_SERIES_CACHE_MAX_BYTES;
+    private static final long DEFAULT_SERIES_CACHE_TTL_MS = ClientConfiguration.DEFAULT_SERIES_CACHE_TTL_MS;
+    private static final long DEFAULT_SERIES_CACHE_OPEN_TAIL_MS = ClientConfiguration.DEFAULT_SERIES_CACHE_OPEN_TAIL_MS;
+    private static final long DEFAULT_LAST_VALUE_REFRESH_INTERVAL_MS = ClientConfiguration.DEFAULT_LAST_VALUE_REFRESH_INTERVAL_MS;
+    private static final int DEFAULT_LAST_VALUE_BATCH_SIZE = ClientConfiguration.DEFAULT_LAST_VALUE_BATCH_SIZE;
+    private static final int DEFAULT_METADATA_CACHE_MAX_ENTRIES = ClientConfiguration.DEFAULT_METADATA_CACHE_MAX_ENTRIES;
+    private static final long DEFAULT_METADATA_CACHE_TTL_MS = ClientConfiguration.DEFAULT_METADATA_CACHE_TTL_MS;
+    private static final long DEFAULT_METADATA_CACHE_NEGATIVE_TTL_MS = ClientConfiguration.DEFAULT_METADATA_CACHE_NEGATIVE_TTL_MS;
+    private static final int DEFAULT_METADATA_BULK_PARALLELISM = ClientConfiguration.DEFAULT_METADATA_BULK_PARALLELISM;
+    private static final int DEFAULT_METADATA_BULK_GROUP_BATCH_SIZE =
+            ClientConfiguration.DEFAULT_METADATA_BULK_GROUP_BATCH_SIZE;
+    private static final int DEFAULT_EXPORT_PARALLELISM = ClientConfiguration.DEFAULT_EXPORT_PARALLELISM;
+    private static final long DEFAULT_EXPORT_WINDOW_MS = ClientConfiguration.DEFAULT_EXPORT_WINDOW_MS;
+    private static final int DEFAULT_EXPORT_BUFFER_SIZE = ClientConfiguration.DEFAULT_EXPORT_BUFFER_SIZE;
     private static final String DEFAULT_CLIENT_PROPERTIES_FILE_NAME = "classpath:/client.properties";
     private static final String AXIBASE_TSD_API_DOMAIN = "axibase.tsd.api";
     private static final String DEFAULT_API_PATH = "/api/v1";
@@ -46,6 +79,41 @@ public class ClientConfigurationFactory {
     private boolean skipStreamingControl;
     private boolean enableGzipCompression;
     private String userAgent;
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+    private long connectionIdleTimeoutMillis = DEFAULT_CONNECTION_IDLE_TIMEOUT_MS;
+    private int streamingBatchSize = DEFAULT_STREAMING_BATCH_SIZE;
+    private long streamingLingerMillis = DEFAULT_STREAMING_LINGER_MS;
+    private int streamingQueueCapacity = DEFAULT_STREAMING_QUEUE_CAPACITY;
+    private StreamingOverflowPolicy streamingOverflowPolicy = StreamingOverflowPolicy.BLOCK;
+    private long streamingBlockTimeoutMillis = DEFAULT_STREAMING_BLOCK_TIMEOUT_MS;
+    private String streamingSpillDirectory;
+    private long streamingSpillMaxBytes = DEFAULT_STREAMING_SPILL_MAX_BYTES;
+    private long streamingLedgerMaxBytes = DEFAULT_STREAMING_LEDGER_MAX_BYTES;
+    private String streamingSpoolDirectory;
+    private int streamingSpoolSegmentSize = DEFAULT_STREAMING_SPOOL_SEGMENT_SIZE;
+    private long streamingSpoolMaxBytes = DEFAULT_STREAMING_SPOOL_MAX_BYTES;
+    private int batchSplitSize = DEFAULT_BATCH_SPLIT_SIZE;
+    private int batchParallelism = DEFAULT_BATCH_PARALLELISM;
+    private int ingestBatchSize = DEFAULT_INGEST_BATCH_SIZE;
+    private long ingestLingerMillis = DEFAULT_INGEST_LINGER_MS;
+    private int ingestMaxInFlight = DEFAULT_INGEST_MAX_IN_FLIGHT;
+    private int seriesReadParallelism = DEFAULT_SERIES_READ_PARALLELISM;
+    private int seriesReadWindowPoints = DEFAULT_SERIES_READ_WINDOW_POINTS;
+    private boolean requestCoalescing;
+    private long seriesCacheMaxBytes = DEFAULT_SERIES_CACHE_MAX_BYTES;
+    private long seriesCacheTtlMillis = DEFAULT_SERIES_CACHE_TTL_MS;
+    private long seriesCacheOpenTailMillis = DEFAULT_SERIES_CACHE_OPEN_TAIL_MS;
+    private long lastValueRefreshIntervalMillis = DEFAULT_LAST_VALUE_REFRESH_INTERVAL_MS;
+    private int lastValueBatchSize = DEFAULT_LAST_VALUE_BATCH_SIZE;
+    private int metadataCacheMaxEntries = DEFAULT_METADATA_CACHE_MAX_ENTRIES;
+    private long metadataCacheTtlMillis = DEFAULT_METADATA_CACHE_TTL_MS;
+    private long metadataCacheNegativeTtlMillis = DEFAULT_METADATA_CACHE_NEGATIVE_TTL_MS;
+    private int metadataBulkParallelism = DEFAULT_METADATA_BULK_PARALLELISM;
+    private int metadataBulkGroupBatchSize = DEFAULT_METADATA_BULK_GROUP_BATCH_SIZE;
+    private int exportParallelism = DEFAULT_EXPORT_PARALLELISM;
+    private long exportWindowMillis = DEFAULT_EXPORT_WINDOW_MS;
+    private int exportBufferSize = DEFAULT_EXPORT_BUFFER_SIZE;
 
     private ClientConfigurationFactory() {
     }
@@ -115,6 +183,65 @@ public class ClientConfigurationFactory {
         configurationFactory.skipStreamingControl = extractor.getAsBoolean("streaming.control.skip", false);
         configurationFactory.enableGzipCompression = extractor.getAsBoolean("compression.gzip.enable", false);
         configurationFactory.userAgent = extractor.getAsString("user.agent", StringUtils.EMPTY);
+        configurationFactory.maxConnections = extractor.getAsInt("connection.max.total", DEFAULT_MAX_CONNECTIONS);
+        configurationFactory.maxConnectionsPerRoute =
+                extractor.getAsInt("connection.max.per.route", DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+        configurationFactory.connectionIdleTimeoutMillis =
+                extractor.getAsLong("connection.idle.timeout", DEFAULT_CONNECTION_IDLE_TIMEOUT_MS);
+        configurationFactory.streamingBatchSize =
+                extractor.getAsInt("streaming.batch.size", DEFAULT_STREAMING_BATCH_SIZE);
+        configurationFactory.streamingLingerMillis =
+                extractor.getAsLong("streaming.linger", DEFAULT_STREAMING_LINGER_MS);
+        configurationFactory.streamingQueueCapacity =
+                extractor.getAsInt("streaming.queue.capacity", DEFAULT_STREAMING_QUEUE_CAPACITY);
+        configurationFactory.streamingOverflowPolicy = StreamingOverflowPolicy.valueOf(
+                extractor.getAsString("streaming.overflow.policy", StreamingOverflowPolicy.BLOCK.name()).trim().toUpperCase());
+        configurationFactory.streamingBlockTimeoutMillis =
+                extractor.getAsLong("streaming.block.timeout", DEFAULT_STREAMING_BLOCK_TIMEOUT_MS);
+        configurationFactory.streamingSpillDirectory = extractor.getAsString("streaming.spill.directory", null);
+        configurationFactory.streamingSpillMaxBytes =
+                extractor.getAsLong("streaming.spill.max.bytes", DEFAULT_STREAMING_SPILL_MAX_BYTES);
+        configurationFactory.streamingLedgerMaxBytes =
+                extractor.getAsLong("streaming.ledger.max.bytes", DEFAULT_STREAMING_LEDGER_MAX_BYTES);
+        configurationFactory.streamingSpoolDirectory = extractor.getAsString("streaming.spool.directory", null);
+        configurationFactory.streamingSpoolSegmentSize =
+                extractor.getAsInt("streaming.spool.segment.size", DEFAULT_STREAMING_SPOOL_SEGMENT_SIZE);
+        configurationFactory.streamingSpoolMaxBytes =
+                extractor.getAsLong("streaming.spool.max.bytes", DEFAULT_STREAMING_SPOOL_MAX_BYTES);
+        configurationFactory.batchSplitSize = extractor.getAsInt("batch.split.size", DEFAULT_BATCH_SPLIT_SIZE);
+        configurationFactory.batchParallelism = extractor.getAsInt("batch.parallelism", DEFAULT_BATCH_PARALLELISM);
+        configurationFactory.ingestBatchSize = extractor.getAsInt("ingest.batch.size", DEFAULT_INGEST_BATCH_SIZE);
+        configurationFactory.ingestLingerMillis = extractor.getAsLong("ingest.linger", DEFAULT_INGEST_LINGER_MS);
+        configurationFactory.ingestMaxInFlight =
+                extractor.getAsInt("ingest.max.in.flight", DEFAULT_INGEST_MAX_IN_FLIGHT);
+        configurationFactory.seriesReadParallelism =
+                extractor.getAsInt("series.read.parallelism", DEFAULT_SERIES_READ_PARALLELISM);
+        configurationFactory.seriesReadWindowPoints =
+                extractor.getAsInt("series.read.window.points", DEFAULT_SERIES_READ_WINDOW_POINTS);
+        configurationFactory.requestCoalescing = extractor.getAsBoolean("request.coalescing", false);
+        configurationFactory.seriesCacheMaxBytes =
+                extractor.getAsLong("series.cache.max.bytes", DEFAULT_SERIES_CACHE_MAX_BYTES);
+        configurationFactory.seriesCacheTtlMillis =
+                extractor.getAsLong("series.cache.ttl", DEFAULT_SERIES_CACHE_TTL_MS);
+        configurationFactory.seriesCacheOpenTailMillis =
+                extractor.getAsLong("series.cache.open.tail", DEFAULT_SERIES_CACHE_OPEN_TAIL_MS);
+        configurationFactory.lastValueRefreshIntervalMillis =
+                extractor.getAsLong("last.value.refresh.interval", DEFAULT_LAST_VALUE_REFRESH_INTERVAL_MS);
+        configurationFactory.lastValueBatchSize =
+                extractor.getAsInt("last.value.batch.size", DEFAULT_LAST_VALUE_BATCH_SIZE);
+        configurationFactory.metadataCacheMaxEntries =
+                extractor.getAsInt("metadata.cache.max.entries", DEFAULT_METADATA_CACHE_MAX_ENTRIES);
+        configurationFactory.metadataCacheTtlMillis =
+                extractor.getAsLong("metadata.cache.ttl", DEFAULT_METADATA_CACHE_TTL_MS);
+        configurationFactory.metadataCacheNegativeTtlMillis =
+                extractor.getAsLong("metadata.cache.negative.ttl", DEFAULT_METADATA_CACHE_NEGATIVE_TTL_MS);
+        configurationFactory.metadataBulkParallelism =
+                extractor.getAsInt("metadata.bulk.parallelism", DEFAULT_METADATA_BULK_PARALLELISM);
+        configurationFactory.metadataBulkGroupBatchSize =
+                extractor.getAsInt("metadata.bulk.group.batch.size", DEFAULT_METADATA_BULK_GROUP_BATCH_SIZE);
+        configurationFactory.exportParallelism = extractor.getAsInt("export.parallelism", DEFAULT_EXPORT_PARALLELISM);
+        configurationFactory.exportWindowMillis = extractor.getAsLong("export.window", DEFAULT_EXPORT_WINDOW_MS);
+        configurationFactory.exportBufferSize = extractor.getAsInt("export.buffer.size", DEFAULT_EXPORT_BUFFER_SIZE);
         return configurationFactory;
     }
 
@@ -132,6 +259,41 @@ public class ClientConfigurationFactory {
                 .skipStreamingControl(skipStreamingControl)
                 .enableBatchCompression(enableGzipCompression)
                 .userAgent(userAgent)
+                .maxConnections(maxConnections)
+                .maxConnectionsPerRoute(maxConnectionsPerRoute)
+                .connectionIdleTimeoutMillis(connectionIdleTimeoutMillis)
+                .streamingBatchSize(streamingBatchSize)
+                .streamingLingerMillis(streamingLingerMillis)
+                .streamingQueueCapacity(streamingQueueCapacity)
+                .streamingOverflowPolicy(streamingOverflowPolicy)
+                .streamingBlockTimeoutMillis(streamingBlockTimeoutMillis)
+                .streamingSpillDirectory(streamingSpillDirectory)
+                .streamingSpillMaxBytes(streamingSpillMaxBytes)
+                .streamingLedgerMaxBytes(streamingLedgerMaxBytes)
+                .streamingSpoolDirectory(streamingSpoolDirectory)
+                .streamingSpoolSegmentSize(streamingSpoolSegmentSize)
+                .streamingSpoolMaxBytes(streamingSpoolMaxBytes)
+                .batchSplitSize(batchSplitSize)
+                .batchParallelism(batchParallelism)
+                .ingestBatchSize(ingestBatchSize)
+                .ingestLingerMillis(ingestLingerMillis)
+                .ingestMaxInFlight(ingestMaxInFlight)
+                .seriesReadParallelism(seriesReadParallelism)
+                .seriesReadWindowPoints(seriesReadWindowPoints)
+                .requestCoalescing(requestCoalescing)
+                .seriesCacheMaxBytes(seriesCacheMaxBytes)
+                .seriesCacheTtlMillis(seriesCacheTtlMillis)
+                .seriesCacheOpenTailMillis(seriesCacheOpenTailMillis)
+                .lastValueRefreshIntervalMillis(lastValueRefreshIntervalMillis)
+                .lastValueBatchSize(lastValueBatchSize)
+                .metadataCacheMaxEntries(metadataCacheMaxEntries)
+                .metadataCacheTtlMillis(metadataCacheTtlMillis)
+                .metadataCacheNegativeTtlMillis(metadataCacheNegativeTtlMillis)
+                .metadataBulkParallelism(metadataBulkParallelism)
+                .metadataBulkGroupBatchSize(metadataBulkGroupBatchSize)
+                .exportParallelism(exportParallelism)
+                .exportWindowMillis(exportWindowMillis)
+                .exportBufferSize(exportBufferSize)
                 .build();
     }
 
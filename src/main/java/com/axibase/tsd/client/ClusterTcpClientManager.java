@@ -0,0 +1,322 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.system.TcpClientConfiguration;
+import com.axibase.tsd.network.AbstractInsertCommand;
+import com.axibase.tsd.network.PlainCommand;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends network API commands to a cluster of ATSD nodes listed in {@link TcpClientConfiguration#getNodes()}.
+ * <p>
+ * Insert commands are routed by a consistent hash of the entity name, so all commands of an entity go to the same
+ * node while it is up. Each node has a ring buffer and a writer thread as in {@link AsyncTcpClientManager}. A node
+ * is marked down when a write to it fails or its health check, a TCP connect every
+ * {@link TcpClientConfiguration#getHealthCheckIntervalMs()}, fails. Commands of a down node, including the ones
+ * already queued for it, are re-routed to the next node on the ring. If no node is up, commands are held in a
+ * buffer of {@link TcpClientConfiguration#getRingBufferSize()} commands and sent when a node comes back, commands
+ * that do not fit are dropped. When a node passes the health check again its entities are routed back to it.
+ * Commands written to a node just before it fails may be lost, and commands of an entity may be reordered when its
+ * node changes.
+ * </p>
+ */
+public class ClusterTcpClientManager {
+    private static final Logger log = LoggerFactory.getLogger(ClusterTcpClientManager.class);
+    private static final int VIRTUAL_NODES = 128;
+    private static final long JOIN_MARGIN_MS = 1000;
+    private static final ConsistentHashRing.Filter<TcpClusterNode> NODE_IS_UP =
+            new ConsistentHashRing.Filter<TcpClusterNode>() {
+                @Override
+                public boolean accept(TcpClusterNode node) {
+                    return node.isUp();
+                }
+            };
+
+    private final List<TcpClusterNode> nodes = new ArrayList<>();
+    private final ConsistentHashRing<TcpClusterNode> ring;
+    private final ArrayDeque<PlainCommand> parked = new ArrayDeque<>();
+    private final int maxParked;
+    private final long healthCheckIntervalMs;
+    private final long closeTimeoutMs;
+    private final Thread healthChecker;
+    private volatile boolean running = true;
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong rerouted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public ClusterTcpClientManager(TcpClientConfiguration clientConfiguration) {
+        List<String> endpoints = clientConfiguration.getNodes();
+        if (endpoints == null || endpoints.isEmpty()) {
+            endpoints = Collections.singletonList(clientConfiguration.getServerName());
+        }
+        List<String> names = new ArrayList<>();
+        for (String endpoint : endpoints) {
+            String host = StringUtils.substringBeforeLast(endpoint.trim(), ":");
+            int port = clientConfiguration.getPort();
+            if (endpoint.indexOf(':') >= 0) {
+                try {
+                    port = Integer.parseInt(StringUtils.substringAfterLast(endpoint, ":").trim());
+                } catch (NumberFormatException e) {
+                    throw new AtsdClientException("Invalid ATSD node " + endpoint, e);
+                }
+            }
+            String name = host + ":" + port;
+            if (names.contains(name)) {
+                continue;
+            }
+            names.add(name);
+            nodes.add(new TcpClusterNode(name, host, port, clientConfiguration, this));
+        }
+        ring = new ConsistentHashRing<>(nodes, names, VIRTUAL_NODES);
+        maxParked = clientConfiguration.getRingBufferSize();
+        healthCheckIntervalMs = Math.max(1, clientConfiguration.getHealthCheckIntervalMs());
+        closeTimeoutMs = clientConfiguration.getConnectionTimeoutMs();
+        healthChecker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runHealthChecks();
+            }
+        }, "atsd-cluster-health");
+        healthChecker.setDaemon(true);
+        healthChecker.start();
+    }
+
+    /**
+     * @param plainCommand command to send
+     * @return false if the command is rejected because the ring buffer of its node or the buffer of commands
+     * waiting for a node is full, or the manager is closed
+     */
+    public boolean send(PlainCommand plainCommand) {
+        if (!running) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        TcpClusterNode node = route(plainCommand);
+        if (node == null ? park(plainCommand) : node.offer(plainCommand)) {
+            return true;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * @param plainCommands commands to send, each one is accepted or rejected separately
+     * @return false if some commands are rejected
+     */
+    public boolean send(Collection<PlainCommand> plainCommands) {
+        boolean accepted = true;
+        for (PlainCommand plainCommand : plainCommands) {
+            if (!send(plainCommand)) {
+                accepted = false;
+            }
+        }
+        return accepted;
+    }
+
+    private TcpClusterNode route(PlainCommand command) {
+        int hash;
+        if (command instanceof AbstractInsertCommand) {
+            hash = ConsistentHashRing.hash(((AbstractInsertCommand) command).getEntityName());
+        } else {
+            hash = ConsistentHashRing.hash(Long.toString(Thread.currentThread().getId()));
+        }
+        return ring.get(hash, NODE_IS_UP);
+    }
+
+    /**
+     * Route the commands of a failed node again, called by the node writer thread.
+     */
+    void reroute(List<PlainCommand> commands) {
+        for (PlainCommand command : commands) {
+            TcpClusterNode node = running ? route(command) : null;
+            if (node != null && node.offer(command)) {
+                rerouted.incrementAndGet();
+            } else if (!park(command)) {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    private boolean park(PlainCommand command) {
+        synchronized (parked) {
+            if (parked.size() >= maxParked) {
+                return false;
+            }
+            parked.addLast(command);
+            return true;
+        }
+    }
+
+    private void replayParked() {
+        List<PlainCommand> commands;
+        synchronized (parked) {
+            if (parked.isEmpty()) {
+                return;
+            }
+            commands = new ArrayList<>(parked);
+            parked.clear();
+        }
+        log.info("Re-send {} commands that were waiting for an ATSD node", commands.size());
+        reroute(commands);
+    }
+
+    private void runHealthChecks() {
+        try {
+            while (running) {
+                Thread.sleep(healthCheckIntervalMs);
+                boolean anyUp = false;
+                for (TcpClusterNode node : nodes) {
+                    if (!running) {
+                        return;
+                    }
+                    if (node.probe()) {
+                        node.markUp();
+                        anyUp = true;
+                    } else {
+                        node.markDown();
+                    }
+                }
+                if (anyUp) {
+                    replayParked();
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    /**
+     * @param node node name, {@code host:port}
+     * @return true if the node is known and up
+     */
+    public boolean isNodeUp(String node) {
+        for (TcpClusterNode clusterNode : nodes) {
+            if (clusterNode.getName().equals(node)) {
+                return clusterNode.isUp();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return names of the nodes, {@code host:port}
+     */
+    public List<String> getNodes() {
+        List<String> names = new ArrayList<>(nodes.size());
+        for (TcpClusterNode node : nodes) {
+            names.add(node.getName());
+        }
+        return names;
+    }
+
+    /**
+     * @return number of commands written to the nodes
+     */
+    public long getWritten() {
+        long total = 0;
+        for (TcpClusterNode node : nodes) {
+            total += node.written.get();
+        }
+        return total;
+    }
+
+    /**
+     * @return number of commands waiting in the ring buffers of the nodes
+     */
+    public long getQueueSize() {
+        long total = 0;
+        for (TcpClusterNode node : nodes) {
+            total += node.size();
+        }
+        return total;
+    }
+
+    /**
+     * @return number of failed batch writes
+     */
+    public long getFailures() {
+        long total = 0;
+        for (TcpClusterNode node : nodes) {
+            total += node.failures.get();
+        }
+        return total;
+    }
+
+    /**
+     * @return number of commands moved from a failed node to another node
+     */
+    public long getRerouted() {
+        return rerouted.get();
+    }
+
+    /**
+     * @return number of commands waiting for a node to come back
+     */
+    public int getParked() {
+        synchronized (parked) {
+            return parked.size();
+        }
+    }
+
+    /**
+     * @return number of re-routed commands dropped because the buffer of waiting commands was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return number of rejected commands
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Stop accepting commands, send what is queued within the connection timeout and close the connections.
+     * Commands waiting for a node are discarded.
+     */
+    public void close() {
+        running = false;
+        healthChecker.interrupt();
+        long deadline = System.currentTimeMillis() + closeTimeoutMs;
+        for (TcpClusterNode node : nodes) {
+            node.close(deadline);
+        }
+        try {
+            for (TcpClusterNode node : nodes) {
+                node.join(Math.max(1, deadline + JOIN_MARGIN_MS - System.currentTimeMillis()));
+            }
+            healthChecker.join(JOIN_MARGIN_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int discarded = getParked();
+        if (discarded > 0) {
+            log.warn("Discard {} commands that were waiting for an ATSD node", discarded);
+        }
+    }
+}
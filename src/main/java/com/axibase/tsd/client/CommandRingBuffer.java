@@ -0,0 +1,240 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.system.TcpWaitStrategy;
+import com.axibase.tsd.network.PlainCommand;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pre-allocated multi-producer single-consumer ring of commands.
+ * <p>
+ * Producers claim sequence numbers with a CAS on the claim counter, store the command in the slot and publish the
+ * sequence number of the slot. The consumer takes slots in sequence order while their published sequence matches
+ * and then releases them by advancing the consumed counter. No locks are taken on either side, except for the
+ * signal of the {@link TcpWaitStrategy#BLOCKING} strategy when the consumer is parked.
+ * </p>
+ */
+class CommandRingBuffer {
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long SLEEP_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final PlainCommand[] entries;
+    private final AtomicLongArray published;
+    private final int mask;
+    private final TcpWaitStrategy waitStrategy;
+    /* last claimed and last consumed sequence numbers */
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private final AtomicLong consumed = new AtomicLong(-1);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private volatile boolean consumerWaiting;
+
+    /**
+     * @param capacity     number of slots, rounded up to a power of two
+     * @param waitStrategy how the consumer waits in {@link #await(long)}
+     */
+    CommandRingBuffer(int capacity, TcpWaitStrategy waitStrategy) {
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        entries = new PlainCommand[size];
+        published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+        mask = size - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    int capacity() {
+        return entries.length;
+    }
+
+    /**
+     * @return number of claimed slots not yet consumed
+     */
+    int size() {
+        return (int) (claimed.get() - consumed.get());
+    }
+
+    /**
+     * Publish a command, called by any thread.
+     *
+     * @return false if the ring is full
+     */
+    boolean offer(PlainCommand command) {
+        long sequence = claim(1);
+        if (sequence < 0) {
+            return false;
+        }
+        publish(sequence, command);
+        signalConsumer();
+        return true;
+    }
+
+    /**
+     * Publish the commands in consecutive slots, called by any thread.
+     *
+     * @return false if the ring does not have room for all the commands, none of them is published then
+     */
+    boolean offer(Collection<PlainCommand> commands) {
+        int count = commands.size();
+        if (count == 0) {
+            return true;
+        }
+        long last = claim(count);
+        if (last < 0) {
+            return false;
+        }
+        long sequence = last - count + 1;
+        for (PlainCommand command : commands) {
+            publish(sequence++, command);
+        }
+        signalConsumer();
+        return true;
+    }
+
+    private long claim(int count) {
+        while (true) {
+            long current = claimed.get();
+            long next = current + count;
+            if (next - consumed.get() > entries.length) {
+                return -1;
+            }
+            if (claimed.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    private void publish(long sequence, PlainCommand command) {
+        int index = (int) sequence & mask;
+        entries[index] = command;
+        published.set(index, sequence);
+    }
+
+    /**
+     * Take published commands in order, called by the consumer thread only.
+     *
+     * @param target      list to add the commands to
+     * @param maxCommands maximum number of commands to take
+     * @return number of commands taken
+     */
+    int drainTo(List<PlainCommand> target, int maxCommands) {
+        long sequence = consumed.get();
+        int count = 0;
+        while (count < maxCommands) {
+            long next = sequence + 1;
+            int index = (int) next & mask;
+            if (published.get(index) != next) {
+                break;
+            }
+            target.add(entries[index]);
+            entries[index] = null;
+            sequence = next;
+            count++;
+        }
+        if (count > 0) {
+            consumed.set(sequence);
+        }
+        return count;
+    }
+
+    private boolean hasPublished() {
+        long next = consumed.get() + 1;
+        return published.get((int) next & mask) == next;
+    }
+
+    /**
+     * Wait for a published command with the configured strategy, called by the consumer thread only.
+     *
+     * @param timeoutNanos longest time to wait
+     * @return true if a command is available
+     */
+    boolean await(long timeoutNanos) {
+        long deadline = System.nanoTime() + timeoutNanos;
+        int tries = 0;
+        while (!hasPublished()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            tries++;
+            switch (waitStrategy) {
+                case BLOCKING:
+                    park(remaining);
+                    break;
+                case SLEEPING:
+                    if (tries > SPIN_TRIES + YIELD_TRIES) {
+                        LockSupport.parkNanos(Math.min(SLEEP_NANOS, remaining));
+                    } else if (tries > SPIN_TRIES) {
+                        Thread.yield();
+                    }
+                    break;
+                case YIELDING:
+                    if (tries > SPIN_TRIES) {
+                        Thread.yield();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return true;
+    }
+
+    private void park(long nanos) {
+        lock.lock();
+        try {
+            consumerWaiting = true;
+            // a producer publishing after this check sees the flag and signals
+            if (!hasPublished()) {
+                notEmpty.awaitNanos(nanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            consumerWaiting = false;
+            lock.unlock();
+        }
+    }
+
+    private void signalConsumer() {
+        if (consumerWaiting) {
+            wakeConsumer();
+        }
+    }
+
+    /**
+     * Wake the consumer if it is parked.
+     */
+    void wakeConsumer() {
+        lock.lock();
+        try {
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
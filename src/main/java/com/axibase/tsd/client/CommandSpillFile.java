@@ -0,0 +1,205 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.network.CommandEncoder;
+import com.axibase.tsd.network.PlainCommand;
+import com.axibase.tsd.network.SimpleCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * First in, first out overflow storage for streaming commands: encoded commands are appended to a temporary file
+ * as records (length, UTF-8 payload) and read back one by one, line feeds inside quoted values are kept as is.
+ * The file is truncated as soon as everything written to it has been read.
+ * The file is created on the first append and deleted on {@link #close()}.
+ */
+class CommandSpillFile {
+    private static final Logger log = LoggerFactory.getLogger(CommandSpillFile.class);
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+    private static final int HEADER_SIZE = 4;
+
+    private final File directory;
+    private final long maxBytes;
+    private final CommandEncoder encoder = new CommandEncoder();
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private File file;
+    private FileChannel channel;
+    private long readPosition;
+    private long writePosition;
+    private volatile int size;
+    private boolean closed;
+
+    /**
+     * @param directory directory for the spill file, the system temporary directory if {@code null}
+     * @param maxBytes  limit of the file size, appends are rejected when it is reached
+     */
+    CommandSpillFile(String directory, long maxBytes) {
+        this.directory = directory == null ? null : new File(directory);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param command command to store
+     * @return false if the command is not stored because the file size limit is reached or the file is closed
+     * @throws IOException if the file could not be created or written
+     */
+    synchronized boolean append(PlainCommand command) throws IOException {
+        if (closed) {
+            return false;
+        }
+        encoder.reset(MAX_RETAINED_BUFFER_SIZE);
+        encoder.encode(command);
+        int length = encoder.length();
+        if (length == 0) {
+            return true;
+        }
+        if (writePosition + HEADER_SIZE + length > maxBytes) {
+            return false;
+        }
+        header.clear();
+        header.putInt(length).flip();
+        ByteBuffer[] record = {header, ByteBuffer.wrap(encoder.array(), 0, length)};
+        FileChannel fileChannel = channel();
+        fileChannel.position(writePosition);
+        while (record[1].hasRemaining()) {
+            writePosition += fileChannel.write(record);
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Append the command only if the file already holds commands, so that commands sent after an overflow
+     * do not overtake the spilled ones.
+     *
+     * @param command command to store
+     * @return true if the command is stored
+     * @throws IOException if the file could not be written
+     */
+    synchronized boolean appendIfNotEmpty(PlainCommand command) throws IOException {
+        return size > 0 && append(command);
+    }
+
+    /**
+     * Read back up to the specified number of the oldest commands.
+     *
+     * @param batch       list to add the commands to
+     * @param maxCommands maximum number of commands to read
+     * @return number of commands added
+     * @throws IOException if the file could not be read
+     */
+    synchronized int drainTo(List<PlainCommand> batch, int maxCommands) throws IOException {
+        int count = 0;
+        while (count < maxCommands && size > 0) {
+            readBuffer.clear();
+            int limit = (int) Math.min(readBuffer.capacity(), writePosition - readPosition);
+            readBuffer.limit(limit);
+            while (readBuffer.hasRemaining()) {
+                if (channel.read(readBuffer, readPosition + readBuffer.position()) < 0) {
+                    throw new IOException("Unexpected end of spill file " + file);
+                }
+            }
+            byte[] bytes = readBuffer.array();
+            int start = 0;
+            int recordSize = 0;
+            while (count < maxCommands && start + HEADER_SIZE <= limit) {
+                int length = readBuffer.getInt(start);
+                recordSize = HEADER_SIZE + length;
+                if (start + recordSize > limit) {
+                    break;
+                }
+                // the payload ends with a line feed that is not a part of the command text
+                String command = new String(bytes, start + HEADER_SIZE, length - 1, StandardCharsets.UTF_8);
+                batch.add(new SimpleCommand(command));
+                start += recordSize;
+                count++;
+                size--;
+            }
+            if (start == 0) {
+                if (limit < readBuffer.capacity() || recordSize <= readBuffer.capacity()) {
+                    throw new IOException("Incomplete command in spill file " + file);
+                }
+                // a single command is longer than the buffer
+                readBuffer = ByteBuffer.allocate(Math.max(recordSize, readBuffer.capacity() << 1));
+                continue;
+            }
+            readPosition += start;
+        }
+        if (size == 0 && channel != null) {
+            channel.truncate(0);
+            readPosition = 0;
+            writePosition = 0;
+            if (readBuffer.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+                readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return number of stored commands
+     */
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Close and delete the file, stored commands are discarded.
+     */
+    synchronized void close() {
+        closed = true;
+        if (channel == null) {
+            return;
+        }
+        if (size > 0) {
+            log.warn("Discard {} spilled commands", size);
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.error("Could not close spill file {}", file, e);
+        }
+        if (!file.delete()) {
+            log.warn("Could not delete spill file {}", file);
+        }
+        channel = null;
+        size = 0;
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            file = File.createTempFile("atsd-streaming-", ".spill", directory);
+            file.deleteOnExit();
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            log.info("Spill streaming commands to {}", file);
+        }
+        return channel;
+    }
+}
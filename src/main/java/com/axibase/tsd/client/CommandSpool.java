@@ -0,0 +1,402 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.network.CommandEncoder;
+import com.axibase.tsd.network.PlainCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead spool of undelivered streaming commands kept in append-only memory-mapped segment files.
+ * <p>
+ * Each command is stored as a record: length, CRC32 of the payload, UTF-8 payload. A segment is rotated when the next
+ * record does not fit, a segment is deleted as soon as all its records are consumed. The consumed position is kept
+ * in a separate memory-mapped checkpoint file. Data written to a mapped file survives a crash of the process,
+ * on restart the segments are scanned and the spool continues after the last record with a valid checksum.
+ * </p>
+ */
+class CommandSpool {
+    private static final Logger log = LoggerFactory.getLogger(CommandSpool.class);
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int HEADER_SIZE = 8;
+    private static final int CHECKPOINT_SIZE = 16;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    private final File directory;
+    private final int segmentSize;
+    private final long maxBytes;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final CommandEncoder encoder = new CommandEncoder();
+    private final CRC32 crc = new CRC32();
+    private final MappedByteBuffer checkpoint;
+    private final FileChannel checkpointChannel;
+    private int readOffset;
+    private long size;
+    private boolean closed;
+
+    /**
+     * Open the spool in the directory and recover the records left by a previous run.
+     *
+     * @param directory   spool directory, created if it does not exist
+     * @param segmentSize size of a segment file
+     * @param maxBytes    limit of the total size of segment files, appends are rejected when it is reached
+     * @throws IOException if the directory or its files could not be opened
+     */
+    CommandSpool(File directory, int segmentSize, long maxBytes) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create spool directory " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxBytes = maxBytes;
+        checkpointChannel = new RandomAccessFile(new File(directory, CHECKPOINT_FILE), "rw").getChannel();
+        checkpoint = checkpointChannel.map(FileChannel.MapMode.READ_WRITE, 0, CHECKPOINT_SIZE);
+        recover();
+    }
+
+    private void recover() throws IOException {
+        long readSequence = checkpoint.getLong(0);
+        int offset = (int) checkpoint.getLong(8);
+        for (File file : segmentFiles()) {
+            long sequence = sequenceOf(file);
+            if (sequence < readSequence) {
+                delete(file);
+                continue;
+            }
+            Segment segment = Segment.open(file, sequence, (int) file.length());
+            segment.writeOffset = validEnd(segment);
+            segments.addLast(segment);
+        }
+        Segment head = segments.peekFirst();
+        if (head == null) {
+            readOffset = 0;
+        } else {
+            readOffset = head.sequence == readSequence ? Math.min(offset, head.writeOffset) : 0;
+            size = countRecords(head, readOffset);
+            Iterator<Segment> iterator = segments.iterator();
+            iterator.next();
+            while (iterator.hasNext()) {
+                size += countRecords(iterator.next(), 0);
+            }
+            log.info("Recovered {} spooled commands from {}", size, directory);
+        }
+        saveCheckpoint();
+    }
+
+    /**
+     * Store an encoded command.
+     *
+     * @param data   array holding the command terminated with a line feed
+     * @param offset first byte of the command
+     * @param length number of bytes
+     * @return false if the spool is full or closed
+     */
+    synchronized boolean append(byte[] data, int offset, int length) {
+        if (closed || length == 0) {
+            return !closed;
+        }
+        int recordSize = HEADER_SIZE + length;
+        try {
+            Segment tail = segments.peekLast();
+            if (tail == null || tail.capacity() - tail.writeOffset < recordSize) {
+                if (totalBytes() + Math.max(segmentSize, recordSize) > maxBytes) {
+                    return false;
+                }
+                tail = rotate(recordSize);
+            }
+            crc.reset();
+            crc.update(data, offset, length);
+            MappedByteBuffer buffer = tail.buffer;
+            int position = tail.writeOffset;
+            buffer.putInt(position + 4, (int) crc.getValue());
+            ByteBuffer payload = buffer.duplicate();
+            payload.position(position + HEADER_SIZE);
+            payload.put(data, offset, length);
+            // the length is written last, a record torn by a crash fails the checksum or reads as the end of data
+            buffer.putInt(position, length);
+            tail.writeOffset += recordSize;
+            size++;
+            return true;
+        } catch (IOException e) {
+            log.error("Could not write to spool {}", directory, e);
+            return false;
+        }
+    }
+
+    /**
+     * @param command command to store
+     * @return false if the spool is full or closed
+     */
+    synchronized boolean append(PlainCommand command) {
+        encoder.reset(MAX_RETAINED_BUFFER_SIZE);
+        encoder.encode(command);
+        return append(encoder.array(), 0, encoder.length());
+    }
+
+    /**
+     * Read the oldest commands without consuming them, see {@link #commit(int)}.
+     *
+     * @param target      list to add the commands to, each one terminated with a line feed
+     * @param maxCommands maximum number of commands to read
+     * @return number of commands added
+     */
+    synchronized int peek(List<String> target, int maxCommands) {
+        return peek(target, 0, maxCommands);
+    }
+
+    /**
+     * Read the oldest commands after the skipped ones without consuming them, see {@link #commit(int)}.
+     *
+     * @param target      list to add the commands to, each one terminated with a line feed
+     * @param skip        number of the oldest commands to skip, for example the ones already peeked and not committed
+     * @param maxCommands maximum number of commands to read
+     * @return number of commands added
+     */
+    synchronized int peek(List<String> target, long skip, int maxCommands) {
+        int count = 0;
+        int offset = readOffset;
+        for (Segment segment : segments) {
+            while (count < maxCommands && offset < segment.writeOffset) {
+                int length = segment.buffer.getInt(offset);
+                if (skip > 0) {
+                    skip--;
+                } else {
+                    target.add(new String(segment.read(offset + HEADER_SIZE, length), StandardCharsets.UTF_8));
+                    count++;
+                }
+                offset += HEADER_SIZE + length;
+            }
+            if (count == maxCommands) {
+                break;
+            }
+            offset = 0;
+        }
+        return count;
+    }
+
+    /**
+     * Consume the oldest commands, fully consumed segments are deleted.
+     *
+     * @param count number of commands to consume
+     */
+    synchronized void commit(int count) {
+        while (count > 0 && !segments.isEmpty()) {
+            Segment head = segments.peekFirst();
+            if (readOffset < head.writeOffset) {
+                readOffset += HEADER_SIZE + head.buffer.getInt(readOffset);
+                size--;
+                count--;
+            } else if (segments.size() > 1) {
+                release(segments.pollFirst());
+                readOffset = 0;
+            } else {
+                break;
+            }
+        }
+        Segment head = segments.peekFirst();
+        if (head != null && readOffset >= head.writeOffset && segments.size() > 1) {
+            release(segments.pollFirst());
+            readOffset = 0;
+        }
+        saveCheckpoint();
+    }
+
+    /**
+     * @return number of stored commands
+     */
+    synchronized long size() {
+        return size;
+    }
+
+    synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Flush mapped segments to the storage device and close the files, stored commands are kept for the next run.
+     */
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Segment segment : segments) {
+            segment.buffer.force();
+            segment.close();
+        }
+        segments.clear();
+        checkpoint.force();
+        try {
+            checkpointChannel.close();
+        } catch (IOException e) {
+            log.error("Could not close spool checkpoint in {}", directory, e);
+        }
+    }
+
+    private Segment rotate(int recordSize) throws IOException {
+        Segment tail = segments.peekLast();
+        if (tail != null) {
+            tail.buffer.force();
+        }
+        long sequence = tail == null ? Math.max(1, checkpoint.getLong(0)) : tail.sequence + 1;
+        File file = new File(directory, String.format("%020d%s", sequence, SEGMENT_SUFFIX));
+        // room for the zero length that marks the end of data
+        Segment segment = Segment.open(file, sequence, Math.max(segmentSize, recordSize + 4));
+        segments.addLast(segment);
+        if (tail == null) {
+            readOffset = 0;
+            saveCheckpoint();
+        }
+        return segment;
+    }
+
+    private void release(Segment segment) {
+        segment.close();
+        delete(segment.file);
+    }
+
+    private void saveCheckpoint() {
+        Segment head = segments.peekFirst();
+        checkpoint.putLong(8, readOffset);
+        checkpoint.putLong(0, head == null ? 0 : head.sequence);
+    }
+
+    private long totalBytes() {
+        long total = 0;
+        for (Segment segment : segments) {
+            total += segment.capacity();
+        }
+        return total;
+    }
+
+    /**
+     * @return offset after the last record with a valid length and checksum
+     */
+    private int validEnd(Segment segment) {
+        int offset = 0;
+        int end = segment.capacity();
+        while (offset + HEADER_SIZE <= end) {
+            int length = segment.buffer.getInt(offset);
+            if (length <= 0 || length > end - offset - HEADER_SIZE || !checksumMatches(segment, offset, length)) {
+                break;
+            }
+            offset += HEADER_SIZE + length;
+        }
+        return offset;
+    }
+
+    private static int countRecords(Segment segment, int from) {
+        int records = 0;
+        int offset = from;
+        while (offset < segment.writeOffset) {
+            offset += HEADER_SIZE + segment.buffer.getInt(offset);
+            records++;
+        }
+        return records;
+    }
+
+    private boolean checksumMatches(Segment segment, int offset, int length) {
+        crc.reset();
+        crc.update(segment.read(offset + HEADER_SIZE, length));
+        return (int) crc.getValue() == segment.buffer.getInt(offset + 4);
+    }
+
+    private List<File> segmentFiles() {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    private static long sequenceOf(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static void delete(File file) {
+        if (!file.delete()) {
+            log.warn("Could not delete spool segment {}", file);
+        }
+    }
+
+    private static final class Segment {
+        private final File file;
+        private final long sequence;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writeOffset;
+
+        private Segment(File file, long sequence, FileChannel channel, MappedByteBuffer buffer) {
+            this.file = file;
+            this.sequence = sequence;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment open(File file, long sequence, int size) throws IOException {
+            FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+            try {
+                return new Segment(file, sequence, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        int capacity() {
+            return buffer.capacity();
+        }
+
+        byte[] read(int offset, int length) {
+            byte[] bytes = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset);
+            view.get(bytes);
+            return bytes;
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.error("Could not close spool segment {}", file, e);
+            }
+        }
+    }
+}
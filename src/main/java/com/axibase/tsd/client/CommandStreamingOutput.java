@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.network.CommandEncoder;
+import com.axibase.tsd.network.PlainCommand;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+
+/**
+ * Request entity that encodes commands while the request body is written, so a batch is never held in memory as
+ * a whole. Encoded commands are written in chunks of about {@link #CHUNK_SIZE} bytes.
+ */
+class CommandStreamingOutput implements StreamingOutput {
+    static final int CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+    private static final ThreadLocal<CommandEncoder> ENCODER = new ThreadLocal<CommandEncoder>() {
+        @Override
+        protected CommandEncoder initialValue() {
+            return new CommandEncoder(CHUNK_SIZE * 2);
+        }
+    };
+
+    private final Collection<PlainCommand> commands;
+
+    CommandStreamingOutput(Collection<PlainCommand> commands) {
+        this.commands = commands;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        CommandEncoder encoder = ENCODER.get();
+        try {
+            for (PlainCommand command : commands) {
+                encoder.encode(command);
+                if (encoder.length() >= CHUNK_SIZE) {
+                    encoder.writeTo(output);
+                    encoder.reset();
+                }
+            }
+            encoder.writeTo(output);
+        } finally {
+            encoder.reset(MAX_RETAINED_BUFFER_SIZE);
+        }
+    }
+}
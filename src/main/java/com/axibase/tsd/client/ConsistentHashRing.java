@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable consistent hash ring. Each member is placed at a number of virtual points, a key belongs to the first
+ * member at or after its hash that is accepted by the filter, so when a member is skipped only its keys move and
+ * they are spread over the remaining members.
+ *
+ * @param <T> member type
+ */
+final class ConsistentHashRing<T> {
+    interface Filter<T> {
+        boolean accept(T member);
+    }
+
+    private final int[] points;
+    private final Object[] owners;
+
+    /**
+     * @param members       members of the ring
+     * @param names         names of the members, the positions of a member depend only on its name
+     * @param virtualPoints number of points per member
+     */
+    ConsistentHashRing(List<T> members, List<String> names, int virtualPoints) {
+        long[] entries = new long[members.size() * virtualPoints];
+        int count = 0;
+        for (int member = 0; member < members.size(); member++) {
+            for (int i = 0; i < virtualPoints; i++) {
+                int point = hash(names.get(member) + '#' + i);
+                // sort by point, the member index in the low bits breaks ties
+                entries[count++] = ((long) point << 32) | member;
+            }
+        }
+        Arrays.sort(entries);
+        points = new int[count];
+        owners = new Object[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = (int) (entries[i] >> 32);
+            owners[i] = members.get((int) entries[i]);
+        }
+    }
+
+    /**
+     * @return the owner of the hash accepted by the filter, null if the filter accepts no member
+     */
+    @SuppressWarnings("unchecked")
+    T get(int hash, Filter<T> filter) {
+        if (points.length == 0) {
+            return null;
+        }
+        int start = Arrays.binarySearch(points, hash);
+        if (start < 0) {
+            start = -start - 1;
+        }
+        for (int i = 0; i < points.length; i++) {
+            T owner = (T) owners[(start + i) % points.length];
+            if (filter.accept(owner)) {
+                return owner;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Spread a string hash code over the ring.
+     */
+    static int hash(String key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.util.AtsdUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Growable byte buffer for CSV output with formatters that write dates and numbers as ASCII without creating
+ * objects. Values outside of the fast paths, which are rare in time series, are formatted by the JDK.
+ * The calendar and decimal helpers are shared with {@link SeriesCsvReader}, so that both sides agree.
+ */
+final class CsvBytes {
+    /**
+     * Powers of ten that are exactly representable as doubles.
+     */
+    static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    static final long MILLIS_PER_DAY = 86400000L;
+    private static final double MAX_EXACT = 1L << 53;
+    private static final int MAX_FRACTION_DIGITS = 15;
+    private static final int DATE_LENGTH = 24;
+
+    private byte[] array;
+    private int length;
+    private final byte[] digits = new byte[20];
+
+    CsvBytes(int capacity) {
+        array = new byte[Math.max(16, capacity)];
+    }
+
+    byte[] array() {
+        return array;
+    }
+
+    int length() {
+        return length;
+    }
+
+    void clear() {
+        length = 0;
+    }
+
+    CsvBytes append(byte b) {
+        ensure(1);
+        array[length++] = b;
+        return this;
+    }
+
+    CsvBytes append(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, array, length, bytes.length);
+        length += bytes.length;
+        return this;
+    }
+
+    /**
+     * Append the text as a CSV field, quoted if it contains a separator, a quote or a line break.
+     */
+    CsvBytes appendField(String text) {
+        if (text == null) {
+            return this;
+        }
+        boolean quote = false;
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char c = text.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        String field = quote ? '"' + text.replace("\"", "\"\"") + '"' : text;
+        return append(field.getBytes(StandardCharsets.UTF_8));
+    }
+
+    CsvBytes appendLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            return append(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+        }
+        if (value < 0) {
+            append((byte) '-');
+            value = -value;
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        ensure(count);
+        while (count > 0) {
+            array[length++] = digits[--count];
+        }
+        return this;
+    }
+
+    /**
+     * Append the shortest decimal with at most 15 fraction digits that parses back to the same double, nothing
+     * for NaN.
+     */
+    CsvBytes appendDouble(double value) {
+        if (Double.isNaN(value)) {
+            return this;
+        }
+        if (Math.abs(value) < MAX_EXACT && value == Math.rint(value)) {
+            if (value == 0 && 1 / value < 0) {
+                append((byte) '-');
+            }
+            return appendLong((long) value);
+        }
+        for (int scale = 1; scale <= MAX_FRACTION_DIGITS; scale++) {
+            double scaled = value * POWERS_OF_TEN[scale];
+            if (Math.abs(scaled) >= MAX_EXACT) {
+                break;
+            }
+            long mantissa = Math.round(scaled);
+            // the exact quotient of two exactly representable numbers is correctly rounded, as parsing is
+            if (mantissa / POWERS_OF_TEN[scale] == value) {
+                return appendDecimal(mantissa, scale);
+            }
+        }
+        return append(Double.toString(value).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private CsvBytes appendDecimal(long mantissa, int scale) {
+        if (mantissa < 0) {
+            append((byte) '-');
+            mantissa = -mantissa;
+        }
+        long unit = (long) POWERS_OF_TEN[scale];
+        appendLong(mantissa / unit);
+        append((byte) '.');
+        long fraction = mantissa % unit;
+        ensure(scale);
+        for (int i = scale - 1; i >= 0; i--) {
+            array[length + i] = (byte) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        length += scale;
+        return this;
+    }
+
+    /**
+     * Append the time as an ISO 8601 date in UTC with milliseconds, {@code yyyy-MM-ddTHH:mm:ss.SSSZ}.
+     */
+    CsvBytes appendDate(long timeMillis) {
+        long days = floorDiv(timeMillis, MILLIS_PER_DAY);
+        long millisOfDay = timeMillis - days * MILLIS_PER_DAY;
+        // civil date of the day number, proleptic Gregorian calendar
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            return append(AtsdUtil.DateTime.isoFormat(new Date(timeMillis)).getBytes(StandardCharsets.US_ASCII));
+        }
+        ensure(DATE_LENGTH);
+        int p = length;
+        p = put(p, (int) year, 4);
+        array[p++] = '-';
+        p = put(p, month, 2);
+        array[p++] = '-';
+        p = put(p, day, 2);
+        array[p++] = 'T';
+        p = put(p, (int) (millisOfDay / 3600000), 2);
+        array[p++] = ':';
+        p = put(p, (int) (millisOfDay / 60000 % 60), 2);
+        array[p++] = ':';
+        p = put(p, (int) (millisOfDay / 1000 % 60), 2);
+        array[p++] = '.';
+        p = put(p, (int) (millisOfDay % 1000), 3);
+        array[p++] = 'Z';
+        length = p;
+        return this;
+    }
+
+    private int put(int position, int value, int width) {
+        for (int i = width - 1; i >= 0; i--) {
+            array[position + i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return position + width;
+    }
+
+    /**
+     * Copy the bytes from the offset into the buffer, as many as fit.
+     *
+     * @return number of bytes copied
+     */
+    int copyTo(int offset, ByteBuffer target) {
+        int count = Math.min(length - offset, target.remaining());
+        target.put(array, offset, count);
+        return count;
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > array.length) {
+            array = Arrays.copyOf(array, Math.max(array.length * 2, length + extra));
+        }
+    }
+
+    /**
+     * @return days since 1970-01-01 of a proleptic Gregorian date
+     */
+    static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long quotient = x / y;
+        return (x % y != 0 && (x ^ y) < 0) ? quotient - 1 : quotient;
+    }
+}
@@ -17,8 +17,10 @@ package com.axibase.tsd.client;
 import com.axibase.tsd.model.data.*;
 import com.axibase.tsd.model.data.command.*;
 import com.axibase.tsd.model.data.filters.DeletePropertyFilter;
+import com.axibase.tsd.model.data.series.ColumnarSeries;
 import com.axibase.tsd.model.data.series.Series;
 import com.axibase.tsd.model.data.series.aggregate.AggregateType;
+import com.axibase.tsd.model.system.ClientConfiguration;
 import com.axibase.tsd.model.system.Format;
 import com.axibase.tsd.model.system.ServerError;
 import com.axibase.tsd.network.PlainCommand;
@@ -26,9 +28,14 @@ import com.axibase.tsd.query.Query;
 import com.axibase.tsd.query.QueryPart;
 import com.axibase.tsd.util.AtsdUtil;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.IOUtils;
+
 import javax.ws.rs.core.Response;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 import static com.axibase.tsd.client.RequestProcessor.patch;
 import static com.axibase.tsd.client.RequestProcessor.post;
@@ -39,6 +46,7 @@ import static com.axibase.tsd.util.AtsdUtil.*;
  */
 public class DataService {
     private static final SeriesCommandPreparer LAST_PREPARER = new LastPreparer();
+    private static final SeriesStreamReader SERIES_STREAM_READER = new SeriesStreamReader(new ObjectMapper());
     public static final String SERIES_KEYWORD = "series";
     public static final String INSERT_KEYWORD = "insert";
 
@@ -60,9 +68,26 @@ public class DataService {
      * @return list of {@code Series}
      */
     public List<Series> retrieveSeries(GetSeriesQuery... seriesQueries) {
-        QueryPart<Series> query = new Query<>("series/query");
-        return httpClientManager.requestDataList(Series.class, query,
-                post(Arrays.asList(seriesQueries)));
+        SeriesCache seriesCache = httpClientManager.getSeriesCache();
+        if (seriesCache == null) {
+            return fetchSeries(Arrays.asList(seriesQueries));
+        }
+        return seriesCache.retrieve(seriesQueries, new SeriesCache.Fetcher() {
+            @Override
+            public List<Series> fetch(List<GetSeriesQuery> queries) {
+                return fetchSeries(queries);
+            }
+        });
+    }
+
+    private List<Series> fetchSeries(final List<GetSeriesQuery> queries) {
+        final QueryPart<Series> query = new Query<>("series/query");
+        return httpClientManager.coalesce("series/query", queries, new Callable<List<Series>>() {
+            @Override
+            public List<Series> call() {
+                return httpClientManager.requestDataList(Series.class, query, post(queries));
+            }
+        });
     }
 
     public List<Series> retrieveSeries(SeriesCommandPreparer preparer, GetSeriesQuery... seriesQueries) {
@@ -74,6 +99,44 @@ public class DataService {
         return retrieveSeries(seriesQueries);
     }
 
+    /**
+     * Retrieve series without materializing the response: samples are decoded one by one while the response is
+     * read and passed to the visitor, so memory use does not depend on the number of samples.
+     *
+     * @param visitor       receives series and their samples in response order
+     * @param seriesQueries queries with details, each query property overrides common one in the request parameters
+     */
+    public void streamSeries(SeriesVisitor visitor, GetSeriesQuery... seriesQueries) {
+        QueryPart<Series> query = new Query<>("series/query");
+        InputStream inputStream = httpClientManager.requestInputStream(query, post(Arrays.asList(seriesQueries)));
+        try {
+            SERIES_STREAM_READER.read(inputStream, visitor);
+        } catch (IOException e) {
+            throw new AtsdClientException("Error while reading series", e);
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+    }
+
+    /**
+     * Retrieve series as primitive columns decoded straight from the response, without creating a {@code Sample}
+     * per point.
+     *
+     * @param seriesQueries queries with details, each query property overrides common one in the request parameters
+     * @return list of {@code ColumnarSeries}
+     */
+    public List<ColumnarSeries> retrieveSeriesColumns(GetSeriesQuery... seriesQueries) {
+        QueryPart<Series> query = new Query<>("series/query");
+        InputStream inputStream = httpClientManager.requestInputStream(query, post(Arrays.asList(seriesQueries)));
+        try {
+            return SERIES_STREAM_READER.readColumns(inputStream);
+        } catch (IOException e) {
+            throw new AtsdClientException("Error while reading series", e);
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+    }
+
     /**
      * @param addSeriesCommands commands that contains time-series which are added
      * @return true if success
@@ -280,26 +343,155 @@ public class DataService {
         return httpClientManager.updateData(query, patch(commands));
     }
 
-    public void sendPlainCommand(PlainCommand plainCommand)
+    /**
+     * Pass the command to the streaming sender.
+     *
+     * @param plainCommand command to send
+     * @return whether the command is queued, spilled or dropped because the queue is full
+     */
+    public SendOutcome sendPlainCommand(PlainCommand plainCommand)
             throws AtsdClientException, AtsdServerException {
-        httpClientManager.send(plainCommand);
+        return httpClientManager.send(plainCommand);
     }
 
     public BatchResponse sendBatch(Collection<PlainCommand> commands) {
         return sendBatch(commands, false);
     }
 
-    public BatchResponse sendBatch(Collection<PlainCommand> commands, boolean commit) {
+    /**
+     * Send commands to the {@code command} endpoint. The request body is encoded while it is written. Batches larger
+     * than {@link ClientConfiguration#getBatchSplitSize()} commands, 100,000 by default, are split into several
+     * requests, up to {@link ClientConfiguration#getBatchParallelism()} of them are sent concurrently on the executor
+     * of the client. Set the split size to 0 to send every batch in one request as before.
+     * <p>
+     * All requests are sent even if some fail, their counts are summed up and the status and error of the first failed
+     * request are returned. A request that cannot be sent, for example because the connection is lost, has status
+     * {@code 503} and counts all its commands as failed. This holds for batches that are not split as well, errors
+     * are reported in the response and no exception is thrown.
+     * </p>
+     *
+     * @param commands commands to send
+     * @param commit   wait until the commands are stored
+     * @return aggregated response of all requests
+     */
+    public BatchResponse sendBatch(Collection<PlainCommand> commands, final boolean commit) {
+        ClientConfiguration clientConfiguration = httpClientManager.getClientConfiguration();
+        int splitSize = clientConfiguration.getBatchSplitSize() > 0
+                ? clientConfiguration.getBatchSplitSize() : Integer.MAX_VALUE;
+        if (commands.size() <= splitSize) {
+            return sendBatchPart(commands, commit);
+        }
+        final List<Collection<PlainCommand>> parts = splitBatch(commands, splitSize);
+        final BatchResponse[] responses = new BatchResponse[parts.size()];
+        ParallelTasks.forEachIndex(httpClientManager, parts.size(), clientConfiguration.getBatchParallelism(),
+                new ParallelTasks.IndexedTask() {
+                    @Override
+                    public void run(int index) {
+                        responses[index] = sendBatchPart(parts.get(index), commit);
+                    }
+                }, "sending batch");
+        return mergeBatchResponses(Arrays.asList(responses));
+    }
 
+    /**
+     * @return response of the request, or a failed response with the error if the request could not be sent
+     */
+    private BatchResponse sendBatchPart(Collection<PlainCommand> commands, boolean commit) {
+        try {
+            return sendBatchRequest(commands, commit);
+        } catch (RuntimeException e) {
+            return failedBatchResponse(commands.size(), e);
+        }
+    }
+
+    /**
+     * @return response with status {@code 503} that counts all commands of the request as failed
+     */
+    static BatchResponse failedBatchResponse(int commands, RuntimeException e) {
+        ServerError serverError = new ServerError();
+        serverError.setMessage("Could not send " + commands + " commands: " + e.getMessage());
+        SendCommandResult result = new SendCommandResult();
+        result.setFail(commands);
+        result.setSuccess(0);
+        result.setTotal(commands);
+        result.setStored(0);
+        BatchResponse response = new BatchResponse(Response.Status.SERVICE_UNAVAILABLE);
+        response.setServerError(serverError);
+        response.setResult(result);
+        return response;
+    }
+
+    private BatchResponse sendBatchRequest(Collection<PlainCommand> commands, boolean commit) {
         QueryPart<BatchResponse> query = new Query<>("command");
         query = query.param("commit", commit);
+        return httpClientManager.requestData(query, new CommandStreamingOutput(commands), new BatchResponseExtractor());
+    }
 
-        StringBuilder data = new StringBuilder();
+    /**
+     * Split commands into consecutive parts, lists are split without copying.
+     */
+    static List<Collection<PlainCommand>> splitBatch(Collection<PlainCommand> commands, int splitSize) {
+        List<Collection<PlainCommand>> parts = new ArrayList<>();
+        if (commands instanceof List) {
+            List<PlainCommand> list = (List<PlainCommand>) commands;
+            for (int from = 0; from < list.size(); from += splitSize) {
+                parts.add(list.subList(from, Math.min(list.size(), from + splitSize)));
+            }
+            return parts;
+        }
+        List<PlainCommand> part = new ArrayList<>(Math.min(splitSize, commands.size()));
         for (PlainCommand command : commands) {
-            data.append(command.compose());
+            part.add(command);
+            if (part.size() == splitSize) {
+                parts.add(part);
+                part = new ArrayList<>(Math.min(splitSize, commands.size()));
+            }
         }
+        if (!part.isEmpty()) {
+            parts.add(part);
+        }
+        return parts;
+    }
+
+    /**
+     * Sum up the results of the requests of a split batch.
+     *
+     * @return response with the status and error of the first failed request, or of the last one if all succeeded
+     */
+    static BatchResponse mergeBatchResponses(List<BatchResponse> responses) {
+        BatchResponse status = responses.get(responses.size() - 1);
+        for (BatchResponse response : responses) {
+            if (response.getServerError() != null || response.getResult() == null) {
+                status = response;
+                break;
+            }
+        }
+        SendCommandResult total = new SendCommandResult();
+        total.setFail(0);
+        total.setSuccess(0);
+        total.setTotal(0);
+        total.setStored(0);
+        for (BatchResponse response : responses) {
+            SendCommandResult result = response.getResult();
+            if (result == null) {
+                continue;
+            }
+            total.setFail(total.getFail() + valueOf(result.getFail()));
+            total.setSuccess(total.getSuccess() + valueOf(result.getSuccess()));
+            total.setTotal(total.getTotal() + valueOf(result.getTotal()));
+            total.setStored(total.getStored() + valueOf(result.getStored()));
+            if (total.getError() == null) {
+                total.setError(result.getError());
+            }
+        }
+        BatchResponse merged = new BatchResponse(status.getStatusType());
+        merged.setServerError(status.getServerError());
+        merged.setResult(total);
+        return merged;
+    }
 
-        return httpClientManager.requestData(query, data.toString(), new BatchResponseExtractor());
+    private static int valueOf(Integer count) {
+        return count == null ? 0 : count;
     }
 
     public boolean canSendPlainCommand() {
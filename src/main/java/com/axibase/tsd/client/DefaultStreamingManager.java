@@ -15,15 +15,20 @@
 
 package com.axibase.tsd.client;
 
+import com.axibase.tsd.model.system.ClientConfiguration;
 import com.axibase.tsd.model.system.MarkerState;
 import com.axibase.tsd.network.MarkerCommand;
 import com.axibase.tsd.network.PlainCommand;
+import com.axibase.tsd.network.SimpleCommand;
 import com.axibase.tsd.query.Query;
 import com.axibase.tsd.query.QueryPart;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -38,6 +43,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 public class DefaultStreamingManager implements StreamingManager {
     public static final String CHECK = "check";
     private static final int DEFAULT_CHECK_PERIOD_MS = 5000;
+    private static final int REPLAY_BATCH_SIZE = 1000;
     public static final String SENDER_IS_NULL_MESSAGE = "Sender is null";
     private long checkPeriodMillis = DEFAULT_CHECK_PERIOD_MS;
     private PlainStreamingSender plainSender = null;
@@ -45,6 +51,10 @@ public class DefaultStreamingManager implements StreamingManager {
     private final AtomicReference<String> marker = new AtomicReference<>();
     private boolean lastPingResult = false;
     private final List<String> saved = new ArrayList<>();
+    private CommandSpool spool;
+    private boolean spoolOpened;
+    private final ArrayDeque<Replay> replays = new ArrayDeque<>();
+    private long replaying;
     private final HttpClientManager httpClientManager;
     private Future<?> senderFuture;
     private ExecutorService checkExecutor;
@@ -69,15 +79,24 @@ public class DefaultStreamingManager implements StreamingManager {
     public void close() {
         log.info("Closing streaming manager {}", this);
         PlainStreamingSender sender = plainSender;
+        CommandSpool commandSpool = spool();
         if (sender != null) {
             sender.close();
+            if (commandSpool != null && spoolPending(sender, commandSpool)) {
+                // the replayed commands that are not confirmed have just been spooled again
+                commitReplays(null);
+            }
+            sender.releaseSpill();
+        }
+        if (commandSpool != null) {
+            commandSpool.close();
         }
         checkExecutor.shutdown();
         senderExecutor.shutdown();
     }
 
     @Override
-    public void send(PlainCommand plainCommand) {
+    public SendOutcome send(PlainCommand plainCommand) {
         if (!lastPingResult) {
             throw new IllegalStateException("Last check was bad, call canSend() method before command sending");
         }
@@ -90,7 +109,7 @@ public class DefaultStreamingManager implements StreamingManager {
             } else if (!sender.isWorking()) {
                 throw new IllegalStateException("Sender is in the wrong state");
             }
-            sender.send(plainCommand);
+            return sender.send(plainCommand);
         } finally {
             readLock.unlock();
         }
@@ -158,9 +177,143 @@ public class DefaultStreamingManager implements StreamingManager {
         lastPingResult = check();
         if (lastPingResult) {
             compareAndSendNewMarker(marker.get());
+            replaySpool();
+        }
+    }
+
+    /**
+     * Pass spooled commands to the working sender while its queue has room for them. Each replayed batch is sent
+     * after a marker of its own and stays in the spool until the server confirms that marker, see
+     * {@link #commitReplays(String)}. Without streaming control there is nothing to wait for and the batch
+     * is committed as soon as it is queued.
+     */
+    private void replaySpool() {
+        CommandSpool commandSpool = spool();
+        if (commandSpool == null || commandSpool.isEmpty()) {
+            return;
+        }
+        boolean confirmed = !httpClientManager.getClientConfiguration().isSkipStreamingControl();
+        Lock readLock = senderLock.readLock();
+        readLock.lock();
+        try {
+            PlainStreamingSender sender = plainSender;
+            List<String> batch = new ArrayList<>(REPLAY_BATCH_SIZE);
+            int replayed = 0;
+            while (sender != null && sender.isWorking()) {
+                batch.clear();
+                if (commandSpool.peek(batch, replaying(), REPLAY_BATCH_SIZE) == 0) {
+                    break;
+                }
+                MarkerCommand markerCommand = new MarkerCommand();
+                if (confirmed && !sender.offer(markerCommand)) {
+                    break;
+                }
+                int accepted = 0;
+                while (accepted < batch.size() && sender.offer(new SimpleCommand(batch.get(accepted)))) {
+                    accepted++;
+                }
+                if (confirmed) {
+                    addReplay(markerCommand.getMarker(), accepted);
+                } else {
+                    commandSpool.commit(accepted);
+                }
+                replayed += accepted;
+                if (accepted < batch.size()) {
+                    break;
+                }
+            }
+            if (replayed > 0) {
+                log.info("Replay {} spooled commands, {} are not confirmed yet, {} left",
+                        replayed, replaying(), commandSpool.size() - replaying());
+            }
+        } finally {
+            readLock.unlock();
         }
     }
 
+    private synchronized long replaying() {
+        return replaying;
+    }
+
+    private synchronized void addReplay(String replayMarker, int count) {
+        if (count > 0) {
+            replays.addLast(new Replay(replayMarker, count));
+            replaying += count;
+        }
+    }
+
+    /**
+     * Remove replayed commands from the spool once the marker they were sent after is resolved: confirmed by the
+     * server, or found unconfirmed and its commands saved again. Batches replayed before the marker are removed
+     * as well, they were written before it.
+     *
+     * @param resolvedMarker resolved marker, {@code null} to remove all replayed batches
+     */
+    private synchronized void commitReplays(String resolvedMarker) {
+        if (replays.isEmpty() || (resolvedMarker != null && !isReplayMarker(resolvedMarker))) {
+            return;
+        }
+        int count = 0;
+        Replay replay;
+        do {
+            replay = replays.pollFirst();
+            count += replay.count;
+        } while (!replays.isEmpty() && !replay.marker.equals(resolvedMarker));
+        replaying -= count;
+        spool.commit(count);
+    }
+
+    private boolean isReplayMarker(String checkedMarker) {
+        for (Replay replay : replays) {
+            if (replay.marker.equals(checkedMarker)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Move the commands of the closed sender that are not confirmed or not written yet to the spool.
+     *
+     * @return true if no command is lost because the spool is full
+     */
+    private boolean spoolPending(PlainStreamingSender sender, CommandSpool commandSpool) {
+        int count = sender.getLedger().drainAll(new SavingSink(commandSpool));
+        List<PlainCommand> queued = new ArrayList<>();
+        sender.drainQueued(queued);
+        int lost = 0;
+        for (PlainCommand command : queued) {
+            if (!commandSpool.append(command)) {
+                lost++;
+            }
+        }
+        count += queued.size() - lost;
+        if (count > 0 || lost > 0) {
+            log.info("Spool {} pending commands, {} commands are lost because the spool is full", count, lost);
+        }
+        return lost == 0;
+    }
+
+    /**
+     * Open the spool on first use if it is configured.
+     */
+    private synchronized CommandSpool spool() {
+        if (!spoolOpened) {
+            spoolOpened = true;
+            ClientConfiguration configuration = httpClientManager.getClientConfiguration();
+            String directory = configuration == null ? null : configuration.getStreamingSpoolDirectory();
+            if (directory != null) {
+                try {
+                    spool = new CommandSpool(new File(directory), configuration.getStreamingSpoolSegmentSize(),
+                            configuration.getStreamingSpoolMaxBytes());
+                } catch (IOException e) {
+                    log.error("Could not open spool in {}, unconfirmed commands are kept in memory", directory, e);
+                }
+            }
+        }
+        return spool;
+    }
+
     private boolean check() {
         if (httpClientManager.getClientConfiguration().isSkipStreamingControl()) {
             return true;
@@ -171,8 +324,9 @@ public class DefaultStreamingManager implements StreamingManager {
         try {
 
             if (plainSender != null) {
-                Map<String, List<String>> markerToMessages = plainSender.getMarkerToMessages();
-                int size = markerToMessages.size();
+                DeliveryLedger ledger = plainSender.getLedger();
+                List<String> markers = ledger.markers();
+                int size = markers.size();
                 if (size <= 2) {
                     // just check
                     MarkerState markerState = askMarkerState(CHECK);
@@ -184,45 +338,43 @@ public class DefaultStreamingManager implements StreamingManager {
                     return checkResult;
                 }
 
-                int i = 0;
-
-                for (Iterator<Map.Entry<String, List<String>>> iterator = markerToMessages.entrySet().iterator();
-                     iterator.hasNext() && i < size - 2; i++) {
-                    Map.Entry<String, List<String>> markerAndCommands = iterator.next();
-                    String checkedMarker = markerAndCommands.getKey();
+                DeliveryLedger.LineSink savingSink = new SavingSink(spool());
+                int unconfirmed = 0;
+                // the last two markers may still have commands in flight
+                for (int i = 0; i < size - 2; i++) {
+                    String checkedMarker = markers.get(i);
+                    long sentCount = ledger.count(checkedMarker);
                     MarkerState markerState = askMarkerState(checkedMarker);
-                    List<String> commands = markerAndCommands.getValue();
                     if (markerState != null && markerState.getCount() != null) {
-                        if (markerState.getCount() > commands.size()) {
+                        if (markerState.getCount() > sentCount) {
                             log.warn("Server received more ({}) commands then client sent ({}), marker: {}",
-                                    markerState.getCount(), commands.size(), checkedMarker);
-                        } else if (markerState.getCount() < commands.size()) {
+                                    markerState.getCount(), sentCount, checkedMarker);
+                            ledger.confirm(checkedMarker);
+                        } else if (markerState.getCount() < sentCount) {
                             log.error("Server received less ({}) commands then client sent ({}), marker: {}",
-                                    markerState.getCount(), commands.size(), checkedMarker);
-                            saved.addAll(commands);
+                                    markerState.getCount(), sentCount, checkedMarker);
+                            unconfirmed += ledger.drainTo(checkedMarker, savingSink);
                         } else {
                             log.debug("Server received same command count ({}) that client sent, marker: {}",
-                                    commands.size(), checkedMarker);
+                                    sentCount, checkedMarker);
+                            ledger.confirm(checkedMarker);
                         }
-                        iterator.remove();
                     } else {
-                        log.warn("Could not get command count for marker {}", marker);
-                        saved.addAll(commands);
-                        iterator.remove();
+                        log.warn("Could not get command count for marker {}", checkedMarker);
+                        unconfirmed += ledger.drainTo(checkedMarker, savingSink);
                     }
+                    commitReplays(checkedMarker);
                 }
 
-                if (saved.isEmpty()) {
+                if (unconfirmed == 0) {
                     return true;
                 } else {
-                    for (Iterator<Map.Entry<String, List<String>>> iterator = markerToMessages.entrySet().iterator();
-                         iterator.hasNext(); ) {
-                        Map.Entry<String, List<String>> markerAndCommands = iterator.next();
-                        List<String> commands = markerAndCommands.getValue();
-                        saved.addAll(commands);
-                        iterator.remove();
+                    List<String> drained = ledger.markers();
+                    unconfirmed += ledger.drainAll(savingSink);
+                    for (String drainedMarker : drained) {
+                        commitReplays(drainedMarker);
                     }
-                    log.warn("Save {} commands, broken sender will be closed", saved.size());
+                    log.warn("Save {} commands, broken sender will be closed", unconfirmed);
                     needClosing = true;
                     return false;
                 }
@@ -247,6 +399,37 @@ public class DefaultStreamingManager implements StreamingManager {
         }
     }
 
+    /**
+     * Keeps commands to re-send in the spool, or in memory if the spool is disabled or full.
+     */
+    private final class SavingSink implements DeliveryLedger.LineSink {
+        private final CommandSpool commandSpool;
+
+        private SavingSink(CommandSpool commandSpool) {
+            this.commandSpool = commandSpool;
+        }
+
+        @Override
+        public void line(byte[] data, int offset, int length) {
+            if (commandSpool == null || !commandSpool.append(data, offset, length)) {
+                saved.add(new String(data, offset, length, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    /**
+     * Spooled commands passed to the sender after a marker and not confirmed yet.
+     */
+    private static final class Replay {
+        private final String marker;
+        private final int count;
+
+        private Replay(String marker, int count) {
+            this.marker = marker;
+            this.count = count;
+        }
+    }
+
     private MarkerState askMarkerState(String marker) {
         MarkerState markerState = null;
         try {
@@ -290,6 +473,14 @@ public class DefaultStreamingManager implements StreamingManager {
         }
     }
 
+    /**
+     * @return counters of the current sender, empty if the sender is not started yet
+     */
+    public StreamingMetrics getStreamingMetrics() {
+        PlainStreamingSender sender = plainSender;
+        return sender == null ? new StreamingMetrics(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0) : sender.getMetrics();
+    }
+
     // Stable work is not guaranteed
     @Override
     public List<String> removeSavedPlainCommands() {
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Commands written to the streaming connection and not yet confirmed by the server, grouped by marker.
+ * Each marker keeps a command count and the encoded commands in off-heap chunks, so the heap footprint does not
+ * depend on the number of commands in flight. Every command is stored as a record: length, UTF-8 payload, so that
+ * line feeds inside quoted values do not split it. Chunks of a confirmed marker are returned to a small pool at once,
+ * the commands of an unconfirmed marker are decoded back to text only when they have to be re-sent.
+ * <p>
+ * The chunks held by all markers are limited to a maximum size. A command that does not fit is still counted under
+ * its marker but its payload is not kept, so it cannot be re-sent if the marker is not confirmed. Such commands are
+ * counted by {@link #getOverflow()}.
+ * </p>
+ */
+class DeliveryLedger {
+    private static final int CHUNK_SIZE = 256 * 1024;
+    private static final int MAX_POOLED_CHUNKS = 16;
+    private static final int HEADER_SIZE = 4;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final ArrayDeque<ByteBuffer> pool = new ArrayDeque<>();
+    private final byte[] header = new byte[HEADER_SIZE];
+    private final long maxBytes;
+    private long commands;
+    private long bytes;
+    private long allocated;
+    private long overflow;
+
+    /**
+     * @param maxBytes limit of the off-heap chunks held by unconfirmed commands, 0 for no limit
+     */
+    DeliveryLedger(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Append an encoded command sent after the marker.
+     *
+     * @param marker marker the command is counted under
+     * @param data   array holding the encoded command terminated with a line feed
+     * @param offset first byte of the command
+     * @param length number of bytes
+     */
+    synchronized void record(String marker, byte[] data, int offset, int length) {
+        Entry entry = entries.get(marker);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(marker, entry);
+        }
+        entry.count++;
+        commands++;
+        if (!fits(entry, HEADER_SIZE + length)) {
+            overflow++;
+            return;
+        }
+        entry.bytes += length;
+        bytes += length;
+        ByteBuffer.wrap(header).putInt(length);
+        put(entry, header, 0, HEADER_SIZE);
+        put(entry, data, offset, length);
+    }
+
+    private boolean fits(Entry entry, int length) {
+        if (maxBytes <= 0) {
+            return true;
+        }
+        ByteBuffer last = entry.chunks.isEmpty() ? null : entry.chunks.get(entry.chunks.size() - 1);
+        long missing = length - (last == null ? 0 : last.remaining());
+        long chunks = missing <= 0 ? 0 : (missing + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        return allocated + chunks * CHUNK_SIZE <= maxBytes;
+    }
+
+    private void put(Entry entry, byte[] data, int offset, int length) {
+        int end = offset + length;
+        while (offset < end) {
+            ByteBuffer chunk = entry.chunks.isEmpty() ? null : entry.chunks.get(entry.chunks.size() - 1);
+            if (chunk == null || !chunk.hasRemaining()) {
+                chunk = allocate();
+                allocated += CHUNK_SIZE;
+                entry.chunks.add(chunk);
+            }
+            int count = Math.min(end - offset, chunk.remaining());
+            chunk.put(data, offset, count);
+            offset += count;
+        }
+    }
+
+    /**
+     * @return markers in the order they were sent
+     */
+    synchronized List<String> markers() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @param marker marker
+     * @return number of commands sent after the marker, zero if it is unknown
+     */
+    synchronized long count(String marker) {
+        Entry entry = entries.get(marker);
+        return entry == null ? 0 : entry.count;
+    }
+
+    /**
+     * Forget the commands of a marker confirmed by the server.
+     *
+     * @param marker marker
+     */
+    synchronized void confirm(String marker) {
+        Entry entry = entries.remove(marker);
+        if (entry != null) {
+            release(entry);
+        }
+    }
+
+    /**
+     * Remove the commands of an unconfirmed marker and add them as text lines to the target list.
+     *
+     * @param marker marker
+     * @param target list to add the commands to, each one terminated with a line feed
+     * @return number of commands added, without those that did not fit into the ledger
+     */
+    synchronized int drainTo(String marker, List<String> target) {
+        return drainTo(marker, new ListSink(target));
+    }
+
+    /**
+     * Remove the commands of an unconfirmed marker and pass them one by one to the sink.
+     *
+     * @param marker marker
+     * @param sink   receiver of the encoded commands
+     * @return number of commands passed to the sink, without those that did not fit into the ledger
+     */
+    synchronized int drainTo(String marker, LineSink sink) {
+        Entry entry = entries.remove(marker);
+        if (entry == null) {
+            return 0;
+        }
+        int count = decode(entry, sink);
+        release(entry);
+        return count;
+    }
+
+    /**
+     * Remove all commands and add them as text lines to the target list.
+     *
+     * @param target list to add the commands to, each one terminated with a line feed
+     * @return number of commands added, without those that did not fit into the ledger
+     */
+    synchronized int drainAll(List<String> target) {
+        return drainAll(new ListSink(target));
+    }
+
+    /**
+     * Remove all commands and pass them one by one to the sink.
+     *
+     * @param sink receiver of the encoded commands
+     * @return number of commands passed to the sink, without those that did not fit into the ledger
+     */
+    synchronized int drainAll(LineSink sink) {
+        int count = 0;
+        for (String marker : new ArrayList<>(entries.keySet())) {
+            count += drainTo(marker, sink);
+        }
+        return count;
+    }
+
+    /**
+     * @return number of commands waiting for confirmation
+     */
+    synchronized long getCommands() {
+        return commands;
+    }
+
+    /**
+     * @return size of encoded commands waiting for confirmation
+     */
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return number of commands whose payload was not kept because the ledger was full
+     */
+    synchronized long getOverflow() {
+        return overflow;
+    }
+
+    private static int decode(Entry entry, LineSink sink) {
+        ChunkReader reader = new ChunkReader(entry.chunks);
+        byte[] header = new byte[HEADER_SIZE];
+        byte[] command = new byte[1024];
+        int count = 0;
+        while (reader.read(header, HEADER_SIZE)) {
+            int length = ByteBuffer.wrap(header).getInt();
+            if (command.length < length) {
+                command = new byte[Math.max(length, command.length << 1)];
+            }
+            reader.read(command, length);
+            sink.line(command, 0, length);
+            count++;
+        }
+        return count;
+    }
+
+    private ByteBuffer allocate() {
+        ByteBuffer chunk = pool.pollFirst();
+        return chunk == null ? ByteBuffer.allocateDirect(CHUNK_SIZE) : chunk;
+    }
+
+    private void release(Entry entry) {
+        commands -= entry.count;
+        bytes -= entry.bytes;
+        allocated -= (long) entry.chunks.size() * CHUNK_SIZE;
+        for (ByteBuffer chunk : entry.chunks) {
+            if (pool.size() < MAX_POOLED_CHUNKS) {
+                chunk.clear();
+                pool.addFirst(chunk);
+            }
+        }
+        entry.chunks.clear();
+    }
+
+    /**
+     * Receiver of encoded commands removed from the ledger.
+     */
+    interface LineSink {
+        /**
+         * @param data   array holding the command terminated with a line feed, valid during the call only
+         * @param offset first byte of the command
+         * @param length number of bytes
+         */
+        void line(byte[] data, int offset, int length);
+    }
+
+    private static final class ListSink implements LineSink {
+        private final List<String> target;
+
+        private ListSink(List<String> target) {
+            this.target = target;
+        }
+
+        @Override
+        public void line(byte[] data, int offset, int length) {
+            target.add(new String(data, offset, length, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Sequential reader of the records written to the chunks of an entry.
+     */
+    private static final class ChunkReader {
+        private final Iterator<ByteBuffer> chunks;
+        private ByteBuffer current;
+
+        private ChunkReader(List<ByteBuffer> chunks) {
+            this.chunks = chunks.iterator();
+        }
+
+        /**
+         * @return false if there is no more data
+         */
+        private boolean read(byte[] target, int length) {
+            int offset = 0;
+            while (offset < length) {
+                if (current == null || !current.hasRemaining()) {
+                    if (!chunks.hasNext()) {
+                        return false;
+                    }
+                    current = chunks.next().duplicate();
+                    current.flip();
+                    continue;
+                }
+                int count = Math.min(length - offset, current.remaining());
+                current.get(target, offset, count);
+                offset += count;
+            }
+            return true;
+        }
+    }
+
+    private static final class Entry {
+        private final List<ByteBuffer> chunks = new ArrayList<>(1);
+        private long count;
+        private long bytes;
+    }
+}
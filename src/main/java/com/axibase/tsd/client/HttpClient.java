@@ -53,21 +53,27 @@ import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.ext.MessageBodyReader;
 import javax.ws.rs.ext.MessageBodyWriter;
 import java.io.InputStream;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.net.URI;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.LogManager;
 
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON_TYPE;
 
+/**
+ * Thread-safe HTTP transport: one Jersey client backed by one pooled connection manager.
+ */
 @Slf4j
 class HttpClient {
     private static final java.util.logging.Logger LEGACY_LOGGER =
@@ -80,16 +86,21 @@ class HttpClient {
     }
 
     private ClientConfiguration clientConfiguration;
+    private final PoolingHttpClientConnectionManager connectionManager;
     private final Client client;
 
     HttpClient(ClientConfiguration clientConfiguration) {
-        client = buildClient(clientConfiguration);
-
+        SslConfigurator sslConfig = SslConfigurator.newInstance().securityProtocol("SSL");
+        connectionManager = createConnectionManager(clientConfiguration, sslConfig);
+        connectionManager.setMaxTotal(clientConfiguration.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(clientConfiguration.getMaxConnectionsPerRoute());
+        client = buildClient(clientConfiguration, sslConfig, connectionManager);
 
         this.clientConfiguration = clientConfiguration;
     }
 
-    private static Client buildClient(ClientConfiguration clientConfiguration) {
+    private static Client buildClient(ClientConfiguration clientConfiguration, SslConfigurator sslConfig,
+                                      PoolingHttpClientConnectionManager connectionManager) {
         ClientConfig clientConfig = new ClientConfig();
         clientConfig
                 .register(JsonMappingExceptionMapper.class)
@@ -108,7 +119,8 @@ class HttpClient {
             clientConfig.register(new LoggingFilter(LEGACY_LOGGER, true));
         }
 
-        configureHttps(clientConfiguration, clientConfig);
+        clientConfig.property(ApacheClientProperties.CONNECTION_MANAGER, connectionManager);
+        clientConfig.property(ApacheClientProperties.SSL_CONFIG, sslConfig);
 
         clientConfig.connectorProvider(new ApacheConnectorProvider());
 
@@ -118,13 +130,6 @@ class HttpClient {
         return builtClient;
     }
 
-    private static void configureHttps(ClientConfiguration clientConfiguration, ClientConfig clientConfig) {
-        SslConfigurator sslConfig = SslConfigurator.newInstance().securityProtocol("SSL");
-        PoolingHttpClientConnectionManager connectionManager = createConnectionManager(clientConfiguration, sslConfig);
-        clientConfig.property(ApacheClientProperties.CONNECTION_MANAGER, connectionManager);
-        clientConfig.property(ApacheClientProperties.SSL_CONFIG, sslConfig);
-    }
-
     public static PoolingHttpClientConnectionManager createConnectionManager(ClientConfiguration clientConfiguration,
                                                                              SslConfigurator sslConfig) {
         SSLContext sslContext = sslConfig.createSSLContext();
@@ -187,6 +192,16 @@ class HttpClient {
                 RequestProcessor.post(data), MediaType.TEXT_PLAIN_TYPE);
     }
 
+    public <T> Response request(QueryPart<T> query, InputStream data) {
+        return doRequest(clientConfiguration.getDataUrl(), query,
+                RequestProcessor.post(data), MediaType.TEXT_PLAIN_TYPE);
+    }
+
+    public <T> Response request(QueryPart<T> query, StreamingOutput data) {
+        return doRequest(clientConfiguration.getDataUrl(), query,
+                RequestProcessor.post(data), MediaType.TEXT_PLAIN_TYPE);
+    }
+
     public <T, E> List<T> requestDataList(Class<T> clazz, QueryPart<T> query, RequestProcessor<E> requestProcessor) {
         String url = clientConfiguration.getDataUrl();
         return requestList(url, clazz, query, requestProcessor);
@@ -203,6 +218,7 @@ class HttpClient {
         if (AtsdUtil.hasStatusFamily(response, Response.Status.Family.SUCCESSFUL)) {
             return response.readEntity(listType(resultClass));
         } else if (response.getStatus() == HttpStatus.SC_NOT_FOUND) {
+            closeResponse(response);
             return Collections.emptyList();
         } else {
             throw AtsdServerExceptionFactory.fromResponse(response);
@@ -222,6 +238,26 @@ class HttpClient {
         }
     }
 
+    /**
+     * Resolve the full data API URI of the query without sending it.
+     *
+     * @param query query path and parameters
+     * @return absolute request URI
+     */
+    URI dataUri(QueryPart query) {
+        return query.fill(client.target(clientConfiguration.getDataUrl())).getUri();
+    }
+
+    /**
+     * Resolve the full metadata API URI of the query without sending it.
+     *
+     * @param query query path and parameters
+     * @return absolute request URI
+     */
+    URI metadataUri(QueryPart query) {
+        return query.fill(client.target(clientConfiguration.getMetadataUrl())).getUri();
+    }
+
     public InputStream requestInputStream(QueryPart query, RequestProcessor requestProcessor) {
         String url = clientConfiguration.getDataUrl();
         Response response = doRequest(url, query, requestProcessor);
@@ -233,6 +269,25 @@ class HttpClient {
         }
     }
 
+    /**
+     * Send a metadata GET request and return the undecoded response body.
+     *
+     * @param query query path and parameters
+     * @return response body, the caller must close it, null if the server answered 404
+     */
+    InputStream requestMetaDataInputStream(QueryPart query) {
+        Response response = doRequest(clientConfiguration.getMetadataUrl(), query, null);
+        Object entity = response.getEntity();
+        if (AtsdUtil.hasStatusFamily(response, Response.Status.Family.SUCCESSFUL) && entity instanceof InputStream) {
+            return (InputStream) entity;
+        } else if (response.getStatus() == HttpStatus.SC_NOT_FOUND) {
+            closeResponse(response);
+            return null;
+        } else {
+            throw AtsdServerExceptionFactory.fromResponse(response);
+        }
+    }
+
     private <E> boolean update(String url, QueryPart query, RequestProcessor<E> requestProcessor) {
         Response response = doRequest(url, query, requestProcessor);
         return getUpdateResult(response);
@@ -314,6 +369,16 @@ class HttpClient {
         };
     }
 
+    /**
+     * Close expired connections and connections idle for longer than the specified time.
+     *
+     * @param idleTimeoutMillis maximum idle time of a pooled connection
+     */
+    void evictConnections(long idleTimeoutMillis) {
+        connectionManager.closeExpiredConnections();
+        connectionManager.closeIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
     public void close() {
         if (client != null) {
             client.close();
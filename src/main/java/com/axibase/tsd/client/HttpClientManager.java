@@ -14,37 +14,52 @@
  */
 package com.axibase.tsd.client;
 
+import com.axibase.tsd.model.data.command.BatchResponse;
 import com.axibase.tsd.model.system.ClientConfiguration;
 import com.axibase.tsd.network.PlainCommand;
 import com.axibase.tsd.query.QueryPart;
-import org.apache.commons.pool2.BasePooledObjectFactory;
-import org.apache.commons.pool2.PooledObject;
-import org.apache.commons.pool2.impl.DefaultPooledObject;
-import org.apache.commons.pool2.impl.GenericObjectPool;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 
 import java.io.InputStream;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
+import javax.ws.rs.client.InvocationCallback;
 import javax.ws.rs.core.Response;
-
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Holds a single thread-safe {@link HttpClient} per {@link ClientConfiguration}. All requests share one Jersey
+ * client and one pooled connection manager sized by {@link ClientConfiguration#getMaxConnections()} and
+ * {@link ClientConfiguration#getMaxConnectionsPerRoute()}. Asynchronous requests go through a separate non-blocking
+ * {@link AsyncHttpClient} with the same limits, created on first use. The parts of requests that are split and sent
+ * concurrently run on one shared executor with as many threads as connections.
+ */
+@Slf4j
 public class HttpClientManager {
-    private static final int DEFAULT_BORROW_MAX_TIME_MS = 3000;
-    private static final int DEFAULT_MAX_TOTAL = 100;
-    private static final int DEFAULT_MAX_IDLE = 100;
-
     private ClientConfiguration clientConfiguration;
-    private GenericObjectPoolConfig objectPoolConfig;
 
-    private AtomicReference<GenericObjectPool<HttpClient>> objectPoolAtomicReference = new AtomicReference<GenericObjectPool<HttpClient>>();
-    private int borrowMaxWaitMillis = DEFAULT_BORROW_MAX_TIME_MS;
+    private final AtomicReference<HttpClient> httpClientAtomicReference = new AtomicReference<>();
+    private final AtomicReference<AsyncHttpClient> asyncClientAtomicReference = new AtomicReference<>();
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 60;
+
+    private ScheduledExecutorService connectionEvictor;
+    private ThreadPoolExecutor executor;
     private StreamingManager streamingManager = new DefaultStreamingManager(this);
+    private final RequestCoalescer requestCoalescer = new RequestCoalescer();
+    private SeriesCache seriesCache;
+    private MetaDataCache metaDataCache;
 
     public HttpClientManager() {
-        objectPoolConfig = new GenericObjectPoolConfig();
-        objectPoolConfig.setMaxTotal(DEFAULT_MAX_TOTAL);
-        objectPoolConfig.setMaxIdle(DEFAULT_MAX_IDLE);
     }
 
     public HttpClientManager(ClientConfiguration clientConfiguration) {
@@ -56,12 +71,22 @@ public class HttpClientManager {
         this.clientConfiguration = clientConfiguration;
     }
 
+    /**
+     * @param objectPoolConfig ignored
+     * @deprecated HTTP clients are not pooled anymore, use {@link ClientConfiguration#setMaxConnections(int)} and
+     * {@link ClientConfiguration#setMaxConnectionsPerRoute(int)} to limit the number of connections.
+     */
+    @Deprecated
     public void setObjectPoolConfig(GenericObjectPoolConfig objectPoolConfig) {
-        this.objectPoolConfig = objectPoolConfig;
+        log.warn("Object pool configuration is ignored, configure connection limits in ClientConfiguration");
     }
 
+    /**
+     * @param borrowMaxWaitMillis ignored
+     * @deprecated HTTP clients are not pooled anymore, requests wait for a free pooled connection instead.
+     */
+    @Deprecated
     public void setBorrowMaxWaitMillis(int borrowMaxWaitMillis) {
-        this.borrowMaxWaitMillis = borrowMaxWaitMillis;
     }
 
     public void setStreamingManager(StreamingManager streamingManager) {
@@ -72,132 +97,290 @@ public class HttpClientManager {
         streamingManager.setCheckPeriodMillis(checkPeriodMillis);
     }
 
-    public <T> List<T> requestMetaDataList(Class<T> clazz, QueryPart<T> query) {
-        HttpClient httpClient = borrowClient();
-        try {
-            return httpClient.requestMetaDataList(clazz, query);
-        } finally {
-            returnClient(httpClient);
+    /**
+     * @return coalescer of identical concurrent requests, used if
+     * {@link ClientConfiguration#isRequestCoalescing()} is set
+     */
+    public RequestCoalescer getRequestCoalescer() {
+        return requestCoalescer;
+    }
+
+    /**
+     * @return result cache of {@link DataService#retrieveSeries(com.axibase.tsd.model.data.command.GetSeriesQuery...)},
+     * null if {@link ClientConfiguration#getSeriesCacheMaxBytes()} is not positive
+     */
+    public synchronized SeriesCache getSeriesCache() {
+        if (seriesCache == null && clientConfiguration != null && clientConfiguration.getSeriesCacheMaxBytes() > 0) {
+            seriesCache = new SeriesCache(clientConfiguration.getSeriesCacheMaxBytes(),
+                    clientConfiguration.getSeriesCacheTtlMillis(), clientConfiguration.getSeriesCacheOpenTailMillis());
         }
+        return seriesCache;
     }
 
-    public <T> T requestMetaDataObject(Class<T> clazz, QueryPart<T> query) {
-        HttpClient httpClient = borrowClient();
-        try {
-            return httpClient.requestMetaDataObject(clazz, query);
-        } finally {
-            returnClient(httpClient);
+    /**
+     * @return cache of metrics, entities and entity groups read by {@link MetaDataService},
+     * null if {@link ClientConfiguration#getMetadataCacheMaxEntries()} is not positive
+     */
+    public synchronized MetaDataCache getMetaDataCache() {
+        if (metaDataCache == null && clientConfiguration != null
+                && clientConfiguration.getMetadataCacheMaxEntries() > 0) {
+            metaDataCache = new MetaDataCache(clientConfiguration.getMetadataCacheMaxEntries(),
+                    clientConfiguration.getMetadataCacheTtlMillis(),
+                    clientConfiguration.getMetadataCacheNegativeTtlMillis());
         }
+        return metaDataCache;
     }
 
-    public <E> boolean updateMetaData(QueryPart query, RequestProcessor<E> requestProcessor) {
-        HttpClient httpClient = borrowClient();
-        try {
-            return httpClient.updateMetaData(query, requestProcessor);
-        } finally {
-            returnClient(httpClient);
+    /**
+     * Executor of the concurrent parts of split requests. Its threads are limited to
+     * {@link ClientConfiguration#getMaxConnections()} because each part holds a connection, idle threads exit after
+     * a minute. Callers bound their own parallelism and cancel their parts on failure. A part must not wait for
+     * other parts, so parts do not start split requests themselves.
+     *
+     * @return executor shared by all services of this client
+     */
+    synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            int threads = clientConfiguration == null
+                    ? ClientConfiguration.DEFAULT_MAX_CONNECTIONS
+                    : Math.max(1, clientConfiguration.getMaxConnections());
+            executor = new ThreadPoolExecutor(threads, threads, WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("atsd-http-worker"));
+            executor.allowCoreThreadTimeOut(true);
         }
+        return executor;
     }
 
-    public boolean updateData(QueryPart query, RequestProcessor requestProcessor) {
-        HttpClient httpClient = borrowClient();
-        try {
-            return httpClient.updateData(query, requestProcessor);
-        } finally {
-            returnClient(httpClient);
+    /**
+     * Return the cached object, or execute the request if the metadata cache is disabled or does not hold it.
+     *
+     * @param type    kind of object, one of the {@link MetaDataCache} key prefixes
+     * @param name    object name
+     * @param request sends the request and decodes the response, returns null if the object is not found
+     * @return cached or decoded object
+     */
+    <T> T cached(String type, String name, Callable<T> request) {
+        MetaDataCache cache = getMetaDataCache();
+        if (cache == null) {
+            try {
+                return request.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new AtsdClientException("Request failed", e);
+            }
         }
+        return cache.get(type, name, request);
     }
 
-    public boolean updateData(QueryPart query, String data) {
-        HttpClient httpClient = borrowClient();
-        try {
-            return httpClient.updateData(query, data);
-        } finally {
-            returnClient(httpClient);
+    /**
+     * Remove an object changed by an update from the metadata cache.
+     *
+     * @param type kind of object, one of the {@link MetaDataCache} key prefixes
+     * @param name object name
+     */
+    void invalidate(String type, String name) {
+        MetaDataCache cache = getMetaDataCache();
+        if (cache != null) {
+            cache.invalidate(type, name);
         }
     }
 
-    public <T, E> List<T> requestDataList(Class<T> clazz, QueryPart<T> query, RequestProcessor<E> requestProcessor) {
-        HttpClient httpClient = borrowClient();
-        try {
-            return httpClient.requestDataList(clazz, query, requestProcessor);
-        } finally {
-            returnClient(httpClient);
+    /**
+     * Remove all objects of a kind from the metadata cache.
+     *
+     * @param type kind of object, one of the {@link MetaDataCache} key prefixes
+     */
+    void invalidateAll(String type) {
+        MetaDataCache cache = getMetaDataCache();
+        if (cache != null) {
+            cache.invalidateAll(type);
         }
     }
 
-    public <T, E> T requestData(QueryPart<T> query, RequestProcessor<E> requestProcessor, ResponseDataExtractor<T> responseDataExtractor) {
-        HttpClient httpClient = borrowClient();
-        try {
-            Response response = httpClient.request(query, requestProcessor);
-            return responseDataExtractor.extract(response);
-        } finally {
-            returnClient(httpClient);
+    /**
+     * Execute the request, or wait for an identical request in flight if request coalescing is enabled.
+     *
+     * @param path    request path
+     * @param body    request parameters that make requests identical
+     * @param request sends the request and decodes the response
+     * @return decoded response, shared with the callers of identical requests
+     */
+    <T> T coalesce(String path, Object body, Callable<T> request) {
+        if (clientConfiguration == null || !clientConfiguration.isRequestCoalescing()) {
+            try {
+                return request.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new AtsdClientException("Request failed", e);
+            }
         }
+        return requestCoalescer.execute(RequestCoalescer.keyOf(path, body), request);
+    }
+
+    public <T> List<T> requestMetaDataList(Class<T> clazz, QueryPart<T> query) {
+        return getClient().requestMetaDataList(clazz, query);
+    }
+
+    public <T> T requestMetaDataObject(Class<T> clazz, QueryPart<T> query) {
+        return getClient().requestMetaDataObject(clazz, query);
+    }
+
+    public <E> boolean updateMetaData(QueryPart query, RequestProcessor<E> requestProcessor) {
+        return getClient().updateMetaData(query, requestProcessor);
+    }
+
+    public boolean updateData(QueryPart query, RequestProcessor requestProcessor) {
+        return getClient().updateData(query, requestProcessor);
+    }
+
+    public boolean updateData(QueryPart query, String data) {
+        return getClient().updateData(query, data);
+    }
+
+    public <T, E> List<T> requestDataList(Class<T> clazz, QueryPart<T> query, RequestProcessor<E> requestProcessor) {
+        return getClient().requestDataList(clazz, query, requestProcessor);
+    }
+
+    public <T, E> T requestData(QueryPart<T> query, RequestProcessor<E> requestProcessor, ResponseDataExtractor<T> responseDataExtractor) {
+        Response response = getClient().request(query, requestProcessor);
+        return responseDataExtractor.extract(response);
     }
 
     public <T> T requestData(QueryPart<T> query, String data, ResponseDataExtractor<T> responseDataExtractor) {
-        HttpClient httpClient = borrowClient();
-        try {
-            Response response = httpClient.request(query, data);
-            return responseDataExtractor.extract(response);
-        } finally {
-            returnClient(httpClient);
-        }
+        Response response = getClient().request(query, data);
+        return responseDataExtractor.extract(response);
+    }
+
+    public <T> T requestData(QueryPart<T> query, InputStream data, ResponseDataExtractor<T> responseDataExtractor) {
+        Response response = getClient().request(query, data);
+        return responseDataExtractor.extract(response);
+    }
+
+    /**
+     * Send a request whose body is produced while it is written, with chunked transfer encoding.
+     */
+    public <T> T requestData(QueryPart<T> query, StreamingOutput data, ResponseDataExtractor<T> responseDataExtractor) {
+        Response response = getClient().request(query, data);
+        return responseDataExtractor.extract(response);
     }
 
     public <T, E> T requestData(Class<T> clazz, QueryPart<T> query, RequestProcessor<E> requestProcessor) {
-        HttpClient httpClient = borrowClient();
-        try {
-            return httpClient.requestData(clazz, query, requestProcessor);
-        } finally {
-            returnClient(httpClient);
-        }
+        return getClient().requestData(clazz, query, requestProcessor);
     }
 
     public InputStream requestInputStream(QueryPart query, RequestProcessor requestProcessor) {
-        HttpClient httpClient = borrowClient();
-        try {
-            return httpClient.requestInputStream(query, requestProcessor);
-        } finally {
-            returnClient(httpClient);
-        }
+        return getClient().requestInputStream(query, requestProcessor);
     }
 
-    private HttpClient borrowClient() {
-        GenericObjectPool<HttpClient> objectPool = createObjectPool();
-        HttpClient httpClient;
-        try {
-            httpClient = objectPool.borrowObject(borrowMaxWaitMillis);
-        } catch (Exception e) {
-            throw new AtsdClientException("Could not borrow http client from pool", e);
+    InputStream requestMetaDataInputStream(QueryPart query) {
+        return getClient().requestMetaDataInputStream(query);
+    }
+
+    <T> Future<List<T>> requestDataListAsync(Class<T> clazz, QueryPart<T> query, Object body,
+                                             InvocationCallback<List<T>> callback) {
+        return getAsyncClient().requestList(getClient().dataUri(query), body, clazz, callback);
+    }
+
+    <T> Future<T> requestMetaDataObjectAsync(Class<T> clazz, QueryPart<T> query, InvocationCallback<T> callback) {
+        return getAsyncClient().requestObject(getClient().metadataUri(query), null, clazz, callback);
+    }
+
+    <T> Future<List<T>> requestMetaDataListAsync(Class<T> clazz, QueryPart<T> query,
+                                                 InvocationCallback<List<T>> callback) {
+        return getAsyncClient().requestList(getClient().metadataUri(query), null, clazz, callback);
+    }
+
+    Future<Boolean> updateDataAsync(QueryPart query, Object body, InvocationCallback<Boolean> callback) {
+        return getAsyncClient().update(getClient().dataUri(query), body, callback);
+    }
+
+    Future<BatchResponse> sendBatchAsync(QueryPart<BatchResponse> query, byte[] data,
+                                         InvocationCallback<BatchResponse> callback) {
+        return getAsyncClient().sendBatch(getClient().dataUri(query), data, callback);
+    }
+
+    private HttpClient getClient() {
+        HttpClient httpClient = httpClientAtomicReference.get();
+        if (httpClient == null) {
+            if (clientConfiguration == null) {
+                throw new IllegalStateException("Client configuration is not set");
+            }
+            HttpClient newHttpClient = new HttpClient(clientConfiguration);
+            if (httpClientAtomicReference.compareAndSet(null, newHttpClient)) {
+                startConnectionEvictor(newHttpClient);
+            } else {
+                newHttpClient.close();
+            }
+            httpClient = httpClientAtomicReference.get();
         }
         return httpClient;
     }
 
-    private void returnClient(HttpClient httpClient) {
-        objectPoolAtomicReference.get().returnObject(httpClient);
+    private AsyncHttpClient getAsyncClient() {
+        AsyncHttpClient asyncClient = asyncClientAtomicReference.get();
+        if (asyncClient == null) {
+            if (clientConfiguration == null) {
+                throw new IllegalStateException("Client configuration is not set");
+            }
+            AsyncHttpClient newAsyncClient = new AsyncHttpClient(clientConfiguration);
+            if (!asyncClientAtomicReference.compareAndSet(null, newAsyncClient)) {
+                newAsyncClient.close();
+            }
+            asyncClient = asyncClientAtomicReference.get();
+        }
+        return asyncClient;
     }
 
-    private GenericObjectPool<HttpClient> createObjectPool() {
-        GenericObjectPool<HttpClient> httpClientGenericObjectPool = objectPoolAtomicReference.get();
-        if (httpClientGenericObjectPool == null) {
-            httpClientGenericObjectPool = new GenericObjectPool<HttpClient>(new HttpClientBasePooledObjectFactory(), objectPoolConfig);
-            objectPoolAtomicReference.compareAndSet(null, httpClientGenericObjectPool);
+    private synchronized void startConnectionEvictor(final HttpClient httpClient) {
+        final long idleTimeoutMillis = clientConfiguration.getConnectionIdleTimeoutMillis();
+        if (idleTimeoutMillis <= 0) {
+            return;
         }
-        return objectPoolAtomicReference.get();
+        connectionEvictor = Executors.newSingleThreadScheduledExecutor(
+                new NamedThreadFactory("atsd-http-connection-evictor"));
+        long periodMillis = Math.max(1000L, idleTimeoutMillis / 2);
+        connectionEvictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    httpClient.evictConnections(idleTimeoutMillis);
+                    AsyncHttpClient asyncClient = asyncClientAtomicReference.get();
+                    if (asyncClient != null) {
+                        asyncClient.evictConnections(idleTimeoutMillis);
+                    }
+                } catch (Exception e) {
+                    log.warn("Could not evict idle connections", e);
+                }
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
     }
 
     public void close() {
-        GenericObjectPool<HttpClient> pool = objectPoolAtomicReference.get();
-        if (pool != null) {
-            pool.close();
+        synchronized (this) {
+            if (connectionEvictor != null) {
+                connectionEvictor.shutdownNow();
+                connectionEvictor = null;
+            }
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
+        HttpClient httpClient = httpClientAtomicReference.getAndSet(null);
+        if (httpClient != null) {
+            httpClient.close();
+        }
+        AsyncHttpClient asyncClient = asyncClientAtomicReference.getAndSet(null);
+        if (asyncClient != null) {
+            asyncClient.close();
         }
         streamingManager.close();
     }
 
-    public void send(PlainCommand plainCommand) {
-        streamingManager.send(plainCommand);
+    public SendOutcome send(PlainCommand plainCommand) {
+        return streamingManager.send(plainCommand);
     }
 
 
@@ -205,25 +388,20 @@ public class HttpClientManager {
         return streamingManager.canSend();
     }
 
-    public List<String> removeSavedPlainCommands() {
-        return streamingManager.removeSavedPlainCommands();
-    }
-
-    private class HttpClientBasePooledObjectFactory extends BasePooledObjectFactory<HttpClient> {
-        @Override
-        public HttpClient create() throws Exception {
-            return new HttpClient(clientConfiguration);
-        }
-
-        @Override
-        public PooledObject<HttpClient> wrap(HttpClient httpClient) {
-            return new DefaultPooledObject<HttpClient>(httpClient);
+    /**
+     * @return queue depth and batch counters of the command streaming sender,
+     * {@code null} if a custom {@link StreamingManager} is used
+     */
+    public StreamingMetrics getStreamingMetrics() {
+        StreamingManager manager = streamingManager;
+        if (manager instanceof DefaultStreamingManager) {
+            return ((DefaultStreamingManager) manager).getStreamingMetrics();
         }
+        return null;
+    }
 
-        @Override
-        public void destroyObject(PooledObject<HttpClient> p) throws Exception {
-            p.getObject().close();
-        }
+    public List<String> removeSavedPlainCommands() {
+        return streamingManager.removeSavedPlainCommands();
     }
 
     public ClientConfiguration getClientConfiguration() {
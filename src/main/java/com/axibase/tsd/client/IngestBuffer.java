@@ -0,0 +1,400 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.data.Message;
+import com.axibase.tsd.model.data.Property;
+import com.axibase.tsd.model.data.command.AddSeriesCommand;
+import com.axibase.tsd.model.data.command.BatchResponse;
+import com.axibase.tsd.model.system.ClientConfiguration;
+import com.axibase.tsd.network.PlainCommand;
+import org.apache.http.concurrent.BasicFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.axibase.tsd.util.AtsdUtil.checkEntityIsEmpty;
+import static com.axibase.tsd.util.AtsdUtil.checkMetricIsEmpty;
+import static com.axibase.tsd.util.AtsdUtil.checkPropertyTypeIsEmpty;
+
+/**
+ * Collects single series, messages, properties and network commands added by many threads and sends them in batches:
+ * series to {@code series/insert}, messages to {@code messages/insert}, properties to {@code properties/insert} and
+ * commands to {@code /command}.
+ * <p>
+ * A batch is sent when it reaches {@link ClientConfiguration#getIngestBatchSize()} items or when its first item has
+ * waited {@link ClientConfiguration#getIngestLingerMillis()} milliseconds. Every add method returns a future completed
+ * with the result of the request that carried the item, a failed request fails the futures of all its items. Commands
+ * that cannot be sent complete with a failed {@link BatchResponse} instead, see {@link DataService#sendBatch}. At most
+ * {@link ClientConfiguration#getIngestMaxInFlight()} batches are in flight, adding an item that fills another
+ * batch blocks until one of them completes. Batches cut by the linger timer never block the timer, they wait for
+ * the next free slot instead.
+ * </p>
+ */
+public class IngestBuffer {
+    private static final Logger log = LoggerFactory.getLogger(IngestBuffer.class);
+
+    private final DataService dataService;
+    private final int maxBatchSize;
+    private final long lingerMillis;
+    private final long closeTimeoutMillis;
+    private final Semaphore inFlight;
+    private final Queue<Batch<?, ?>> ready = new ConcurrentLinkedQueue<>();
+    private final ExecutorService sender;
+    private final ScheduledExecutorService timer;
+    private final AtomicLong items = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private volatile boolean closed;
+
+    private final Lane<AddSeriesCommand, Boolean> series = new Lane<AddSeriesCommand, Boolean>() {
+        @Override
+        Boolean send(List<AddSeriesCommand> batch) {
+            return dataService.addSeries(batch.toArray(new AddSeriesCommand[batch.size()]));
+        }
+    };
+    private final Lane<Message, Boolean> messages = new Lane<Message, Boolean>() {
+        @Override
+        Boolean send(List<Message> batch) {
+            return dataService.insertMessages(batch.toArray(new Message[batch.size()]));
+        }
+    };
+    private final Lane<Property, Boolean> properties = new Lane<Property, Boolean>() {
+        @Override
+        Boolean send(List<Property> batch) {
+            return dataService.insertProperties(batch.toArray(new Property[batch.size()]));
+        }
+    };
+    private final Lane<PlainCommand, BatchResponse> commands = new Lane<PlainCommand, BatchResponse>() {
+        @Override
+        BatchResponse send(List<PlainCommand> batch) {
+            return dataService.sendBatch(batch);
+        }
+    };
+
+    /**
+     * Create a buffer with the batching settings of the client configuration.
+     *
+     * @param httpClientManager client used to send the batches
+     */
+    public IngestBuffer(HttpClientManager httpClientManager) {
+        this(httpClientManager,
+                httpClientManager.getClientConfiguration().getIngestBatchSize(),
+                httpClientManager.getClientConfiguration().getIngestLingerMillis(),
+                httpClientManager.getClientConfiguration().getIngestMaxInFlight());
+    }
+
+    /**
+     * @param httpClientManager client used to send the batches
+     * @param maxBatchSize      number of items that makes a batch to be sent
+     * @param lingerMillis      maximum time an item waits for its batch to fill, 0 sends every item at once
+     * @param maxInFlight       number of batches sent concurrently
+     */
+    public IngestBuffer(HttpClientManager httpClientManager, int maxBatchSize, long lingerMillis, int maxInFlight) {
+        if (maxBatchSize <= 0 || lingerMillis < 0 || maxInFlight <= 0) {
+            throw new IllegalArgumentException("Batch size and number of batches in flight must be positive, "
+                    + "linger must not be negative");
+        }
+        this.dataService = new DataService(httpClientManager);
+        this.maxBatchSize = maxBatchSize;
+        this.lingerMillis = lingerMillis;
+        this.closeTimeoutMillis = httpClientManager.getClientConfiguration().getReadTimeoutMillis();
+        inFlight = new Semaphore(maxInFlight);
+        sender = Executors.newFixedThreadPool(maxInFlight, new NamedThreadFactory("atsd-ingest"));
+        timer = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("atsd-ingest-timer"));
+    }
+
+    /**
+     * @param command series to insert
+     * @return future result of the {@code series/insert} request
+     */
+    public Future<Boolean> addSeries(AddSeriesCommand command) {
+        checkEntityIsEmpty(command.getEntityName());
+        checkMetricIsEmpty(command.getMetricName());
+        return series.add(command);
+    }
+
+    /**
+     * @param message message to insert
+     * @return future result of the {@code messages/insert} request
+     */
+    public Future<Boolean> insertMessage(Message message) {
+        checkEntityIsEmpty(message.getEntityName());
+        return messages.add(message);
+    }
+
+    /**
+     * @param property property to insert
+     * @return future result of the {@code properties/insert} request
+     */
+    public Future<Boolean> insertProperty(Property property) {
+        checkEntityIsEmpty(property.getEntityName());
+        checkPropertyTypeIsEmpty(property.getType());
+        return properties.add(property);
+    }
+
+    /**
+     * @param command network API command
+     * @return future response of the {@code /command} request, shared by all commands of the batch
+     */
+    public Future<BatchResponse> sendCommand(PlainCommand command) {
+        return commands.add(command);
+    }
+
+    /**
+     * Send all buffered items without waiting for the linger time.
+     */
+    public void flush() {
+        series.flush();
+        messages.flush();
+        properties.flush();
+        commands.flush();
+    }
+
+    /**
+     * Stop accepting items, send the buffered ones and wait up to the read timeout for the requests to complete.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        flush();
+        timer.shutdownNow();
+        try {
+            timer.awaitTermination(closeTimeoutMillis, TimeUnit.MILLISECONDS);
+            for (Batch<?, ?> taken; (taken = ready.poll()) != null; ) {
+                submit(taken);
+            }
+            sender.shutdown();
+            if (!sender.awaitTermination(closeTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                log.warn("Ingest requests did not complete in {} ms", closeTimeoutMillis);
+                sender.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return number of items waiting for their batch to be sent
+     */
+    public int getPending() {
+        return series.size() + messages.size() + properties.size() + commands.size();
+    }
+
+    /**
+     * @return number of items handed over to requests
+     */
+    public long getItems() {
+        return items.get();
+    }
+
+    /**
+     * @return number of requests sent
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * @return number of requests that failed
+     */
+    public long getFailedBatches() {
+        return failedBatches.get();
+    }
+
+    /**
+     * Wait for a free slot and send the batch, called by the threads that add items.
+     */
+    private void submit(Batch<?, ?> taken) {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            taken.fail(new AtsdClientException("Interrupted while waiting to send a batch", e));
+            return;
+        }
+        start(taken);
+    }
+
+    /**
+     * Queue the batch and send it if a slot is free, called by the linger timer which must not wait.
+     */
+    private void handOff(Batch<?, ?> taken) {
+        ready.add(taken);
+        dispatch();
+    }
+
+    /**
+     * Send queued batches while slots are free. Every slot release is followed by a dispatch, so a queued batch
+     * waits at most until the next request completes.
+     */
+    private void dispatch() {
+        while (!ready.isEmpty() && inFlight.tryAcquire()) {
+            Batch<?, ?> taken = ready.poll();
+            if (taken == null) {
+                inFlight.release();
+                return;
+            }
+            start(taken);
+        }
+    }
+
+    /**
+     * Send the batch on a sender thread, the caller holds a slot that is released when the request completes.
+     */
+    private void start(final Batch<?, ?> taken) {
+        try {
+            sender.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        items.addAndGet(taken.items.size());
+                        batches.incrementAndGet();
+                        taken.send();
+                    } catch (RuntimeException e) {
+                        failedBatches.incrementAndGet();
+                        log.warn("Could not send batch of {} items", taken.items.size(), e);
+                        taken.fail(e);
+                    } finally {
+                        inFlight.release();
+                        dispatch();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            taken.fail(new AtsdClientException("Ingest buffer is closed", e));
+        }
+    }
+
+    /**
+     * Items of one endpoint. The generation changes every time a batch is taken, so a linger timer scheduled for
+     * an earlier batch does not cut the current one short.
+     */
+    private abstract class Lane<T, R> {
+        private List<T> batch = new ArrayList<>();
+        private List<BasicFuture<R>> futures = new ArrayList<>();
+        private long generation;
+
+        abstract R send(List<T> batch);
+
+        Future<R> add(T item) {
+            BasicFuture<R> future = new BasicFuture<>(null);
+            Batch<T, R> full = null;
+            synchronized (this) {
+                if (closed) {
+                    throw new AtsdClientException("Ingest buffer is closed");
+                }
+                batch.add(item);
+                futures.add(future);
+                if (batch.size() >= maxBatchSize || lingerMillis == 0) {
+                    full = take();
+                } else if (batch.size() == 1) {
+                    scheduleLinger(generation);
+                }
+            }
+            if (full != null) {
+                submit(full);
+            }
+            return future;
+        }
+
+        void flush() {
+            Batch<T, R> taken;
+            synchronized (this) {
+                taken = batch.isEmpty() ? null : take();
+            }
+            if (taken != null) {
+                submit(taken);
+            }
+        }
+
+        synchronized int size() {
+            return batch.size();
+        }
+
+        private void flushGeneration(long expected) {
+            Batch<T, R> taken = null;
+            synchronized (this) {
+                if (generation == expected && !batch.isEmpty()) {
+                    taken = take();
+                }
+            }
+            if (taken != null) {
+                handOff(taken);
+            }
+        }
+
+        private Batch<T, R> take() {
+            Batch<T, R> taken = new Batch<>(this, batch, futures);
+            batch = new ArrayList<>();
+            futures = new ArrayList<>();
+            generation++;
+            return taken;
+        }
+
+        private void scheduleLinger(final long expected) {
+            try {
+                timer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        flushGeneration(expected);
+                    }
+                }, lingerMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // the buffer is closing, close() flushes the batch
+            }
+        }
+    }
+
+    private static final class Batch<T, R> {
+        private final Lane<T, R> lane;
+        private final List<T> items;
+        private final List<BasicFuture<R>> futures;
+
+        private Batch(Lane<T, R> lane, List<T> items, List<BasicFuture<R>> futures) {
+            this.lane = lane;
+            this.items = items;
+            this.futures = futures;
+        }
+
+        void send() {
+            R result = lane.send(items);
+            for (BasicFuture<R> future : futures) {
+                future.completed(result);
+            }
+        }
+
+        void fail(Exception exception) {
+            for (BasicFuture<R> future : futures) {
+                future.failed(exception);
+            }
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.data.command.GetSeriesQuery;
+import com.axibase.tsd.model.data.series.Sample;
+import com.axibase.tsd.model.data.series.Series;
+import com.axibase.tsd.util.AtsdUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the last values of registered series and refreshes them in the background with batched {@code series/query}
+ * requests of last values, {@link com.axibase.tsd.model.system.ClientConfiguration#getLastValueBatchSize()} series
+ * per request, every {@link com.axibase.tsd.model.system.ClientConfiguration#getLastValueRefreshIntervalMillis()}
+ * milliseconds.
+ * <p>
+ * {@link #register(String, String, Map)} returns an {@code int} key. Reads by key are lock-free array lookups that
+ * never wait for the network, {@link #getStaleness(int)} tells how old the value may be. A failed refresh keeps the
+ * previous values, so their staleness keeps growing until a refresh succeeds.
+ * </p>
+ */
+public class LastValueCache {
+    private static final Logger log = LoggerFactory.getLogger(LastValueCache.class);
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final DataService dataService;
+    private final int batchSize;
+    private final ScheduledExecutorService refresher;
+    private final ConcurrentMap<String, Integer> keys = new ConcurrentHashMap<>();
+    private final Object registrationLock = new Object();
+    private volatile Chunk[] chunks = new Chunk[0];
+    private volatile int size;
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public LastValueCache(HttpClientManager httpClientManager) {
+        this(httpClientManager,
+                httpClientManager.getClientConfiguration().getLastValueRefreshIntervalMillis(),
+                httpClientManager.getClientConfiguration().getLastValueBatchSize());
+    }
+
+    /**
+     * @param httpClientManager     client used to send the requests
+     * @param refreshIntervalMillis delay between refreshes, 0 disables the background refresh
+     * @param batchSize             number of series queried in one request
+     */
+    public LastValueCache(HttpClientManager httpClientManager, long refreshIntervalMillis, int batchSize) {
+        if (batchSize <= 0 || refreshIntervalMillis < 0) {
+            throw new IllegalArgumentException("Batch size must be positive, refresh interval must not be negative");
+        }
+        this.dataService = new DataService(httpClientManager);
+        this.batchSize = batchSize;
+        if (refreshIntervalMillis == 0) {
+            refresher = null;
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("atsd-last-value-refresh"));
+        refresher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        }, refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Register a series, its value is read by the next refresh. Registering the same series again returns the same
+     * key, and resumes the refresh if the series was unregistered.
+     *
+     * @param entityName entity name
+     * @param metricName metric name
+     * @param tags       series tags, may be null
+     * @return key of the series
+     */
+    public int register(String entityName, String metricName, Map<String, String> tags) {
+        AtsdUtil.checkEntityIsEmpty(entityName);
+        AtsdUtil.checkMetricIsEmpty(metricName);
+        Map<String, String> sortedTags = tags == null ? Collections.<String, String>emptyMap() : new TreeMap<>(tags);
+        String name = entityName + '\u0000' + metricName + '\u0000' + sortedTags;
+        Integer existing = keys.get(name);
+        if (existing != null) {
+            return resume(existing, entityName, metricName, sortedTags);
+        }
+        synchronized (registrationLock) {
+            existing = keys.get(name);
+            if (existing != null) {
+                return resume(existing, entityName, metricName, sortedTags);
+            }
+            int key = size;
+            if ((key >>> CHUNK_BITS) == chunks.length) {
+                Chunk[] grown = new Chunk[chunks.length + 1];
+                System.arraycopy(chunks, 0, grown, 0, chunks.length);
+                grown[chunks.length] = new Chunk();
+                chunks = grown;
+            }
+            chunks[key >>> CHUNK_BITS].queries.set(key & CHUNK_MASK,
+                    lastValueQuery(entityName, metricName, sortedTags, key));
+            size = key + 1;
+            keys.put(name, key);
+            return key;
+        }
+    }
+
+    private int resume(int key, String entityName, String metricName, Map<String, String> sortedTags) {
+        Chunk chunk = chunk(key);
+        int index = key & CHUNK_MASK;
+        if (chunk.queries.get(index) == null) {
+            chunk.queries.compareAndSet(index, null, lastValueQuery(entityName, metricName, sortedTags, key));
+        }
+        return key;
+    }
+
+    private static GetSeriesQuery lastValueQuery(String entityName, String metricName, Map<String, String> sortedTags,
+                                                 int key) {
+        return new GetSeriesQuery(entityName, metricName, sortedTags)
+                .setStartDate(AtsdUtil.DateTime.MIN_QUERIED_DATE_TIME)
+                .setEndDate(AtsdUtil.DateTime.MAX_QUERIED_DATE_TIME)
+                .setCache(true)
+                .setRequestId(Integer.toString(key));
+    }
+
+    /**
+     * Stop refreshing the series, the last value read is kept. Registering the series again resumes the refresh
+     * under the same key.
+     *
+     * @param key key returned by {@link #register(String, String, Map)}
+     */
+    public void unregister(int key) {
+        chunk(key).queries.set(key & CHUNK_MASK, null);
+    }
+
+    /**
+     * @param key key returned by {@link #register(String, String, Map)}
+     * @return last sample of the series, null if none has been read yet; the sample must not be modified
+     */
+    public Sample getSample(int key) {
+        return chunk(key).samples.get(key & CHUNK_MASK);
+    }
+
+    /**
+     * @param key key returned by {@link #register(String, String, Map)}
+     * @return last numeric value of the series, NaN if none has been read yet
+     */
+    public double getValue(int key) {
+        Sample sample = getSample(key);
+        return sample == null || sample.getNumericValue() == null ? Double.NaN : sample.getNumericValueAsDouble();
+    }
+
+    /**
+     * @param key key returned by {@link #register(String, String, Map)}
+     * @return milliseconds since the value was last confirmed by the server, {@link Long#MAX_VALUE} if never
+     */
+    public long getStaleness(int key) {
+        long refreshed = chunk(key).refreshed.get(key & CHUNK_MASK);
+        return refreshed == 0 ? Long.MAX_VALUE : System.currentTimeMillis() - refreshed;
+    }
+
+    /**
+     * @return number of registered series
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Read the last values of all registered series now, on the calling thread.
+     */
+    public void refresh() {
+        int count = size;
+        List<GetSeriesQuery> batch = new ArrayList<>(Math.min(batchSize, count));
+        for (int key = 0; key < count; key++) {
+            GetSeriesQuery seriesQuery = chunk(key).queries.get(key & CHUNK_MASK);
+            if (seriesQuery != null) {
+                batch.add(seriesQuery);
+            }
+            if (batch.size() == batchSize || key == count - 1 && !batch.isEmpty()) {
+                refreshBatch(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void refreshBatch(List<GetSeriesQuery> batch) {
+        List<Series> seriesList;
+        try {
+            seriesList = dataService.retrieveLastSeries(batch.toArray(new GetSeriesQuery[batch.size()]));
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            log.warn("Could not refresh last values of {} series", batch.size(), e);
+            return;
+        }
+        refreshes.incrementAndGet();
+        long now = System.currentTimeMillis();
+        for (Series series : seriesList) {
+            int key;
+            try {
+                key = Integer.parseInt(series.getRequestId());
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (key < 0 || key >= size) {
+                continue;
+            }
+            Chunk chunk = chunk(key);
+            int index = key & CHUNK_MASK;
+            List<Sample> data = series.getData();
+            if (data != null && !data.isEmpty()) {
+                chunk.samples.set(index, data.get(data.size() - 1));
+            }
+            chunk.refreshed.set(index, now);
+        }
+    }
+
+    /**
+     * @return number of successful refresh requests
+     */
+    public long getRefreshes() {
+        return refreshes.get();
+    }
+
+    /**
+     * @return number of failed refresh requests
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Stop the background refresh.
+     */
+    public void close() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    private Chunk chunk(int key) {
+        if (key < 0 || key >= size) {
+            throw new IllegalArgumentException("Unknown series key " + key);
+        }
+        return chunks[key >>> CHUNK_BITS];
+    }
+
+    private static final class Chunk {
+        private final AtomicReferenceArray<GetSeriesQuery> queries = new AtomicReferenceArray<>(CHUNK_SIZE);
+        private final AtomicReferenceArray<Sample> samples = new AtomicReferenceArray<>(CHUNK_SIZE);
+        private final AtomicLongArray refreshed = new AtomicLongArray(CHUNK_SIZE);
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.meta.Entity;
+import com.axibase.tsd.model.meta.EntityGroup;
+import com.axibase.tsd.model.meta.Metric;
+import com.axibase.tsd.model.system.ClientConfiguration;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates and updates many metrics, entities and entity groups with
+ * {@link ClientConfiguration#getMetadataBulkParallelism()} requests in flight, so the time depends on the number of
+ * connections rather than on the round trip of each request. Entities added to groups are sent in requests of
+ * {@link ClientConfiguration#getMetadataBulkGroupBatchSize()} names.
+ * <p>
+ * Every operation returns one {@link BulkResult} per item in the order of the input. A failed item does not stop
+ * the others. The connection pool should allow as many connections per route as the parallelism.
+ * </p>
+ */
+public class MetaDataBulkWriter {
+    private final HttpClientManager httpClientManager;
+    private final MetaDataService metaDataService;
+    private final int parallelism;
+    private final int groupBatchSize;
+
+    public MetaDataBulkWriter(HttpClientManager httpClientManager) {
+        ClientConfiguration clientConfiguration = httpClientManager.getClientConfiguration();
+        this.httpClientManager = httpClientManager;
+        metaDataService = new MetaDataService(httpClientManager);
+        parallelism = Math.max(1, clientConfiguration.getMetadataBulkParallelism());
+        groupBatchSize = Math.max(1, clientConfiguration.getMetadataBulkGroupBatchSize());
+    }
+
+    /**
+     * @param entities entities to create or replace
+     * @return result of each entity
+     */
+    public List<BulkResult<Entity>> createOrReplaceEntities(Collection<Entity> entities) {
+        return run(entities, new Operation<Entity>() {
+            @Override
+            public boolean apply(Entity entity) {
+                return metaDataService.createOrReplaceEntity(entity);
+            }
+        });
+    }
+
+    /**
+     * @param entities entity update fields
+     * @return result of each entity
+     */
+    public List<BulkResult<Entity>> updateEntities(Collection<Entity> entities) {
+        return run(entities, new Operation<Entity>() {
+            @Override
+            public boolean apply(Entity entity) {
+                return metaDataService.updateEntity(entity);
+            }
+        });
+    }
+
+    /**
+     * @param metrics metrics to create or replace
+     * @return result of each metric
+     */
+    public List<BulkResult<Metric>> createOrReplaceMetrics(Collection<Metric> metrics) {
+        return run(metrics, new Operation<Metric>() {
+            @Override
+            public boolean apply(Metric metric) {
+                return metaDataService.createOrReplaceMetric(metric);
+            }
+        });
+    }
+
+    /**
+     * @param metrics metric update fields
+     * @return result of each metric
+     */
+    public List<BulkResult<Metric>> updateMetrics(Collection<Metric> metrics) {
+        return run(metrics, new Operation<Metric>() {
+            @Override
+            public boolean apply(Metric metric) {
+                return metaDataService.updateMetric(metric);
+            }
+        });
+    }
+
+    /**
+     * @param entityGroups entity groups to create or replace
+     * @return result of each entity group
+     */
+    public List<BulkResult<EntityGroup>> createOrReplaceEntityGroups(Collection<EntityGroup> entityGroups) {
+        return run(entityGroups, new Operation<EntityGroup>() {
+            @Override
+            public boolean apply(EntityGroup entityGroup) {
+                return metaDataService.createOrReplaceEntityGroup(entityGroup);
+            }
+        });
+    }
+
+    /**
+     * @param entityGroups entity group update fields
+     * @return result of each entity group
+     */
+    public List<BulkResult<EntityGroup>> updateEntityGroups(Collection<EntityGroup> entityGroups) {
+        return run(entityGroups, new Operation<EntityGroup>() {
+            @Override
+            public boolean apply(EntityGroup entityGroup) {
+                return metaDataService.updateEntityGroup(entityGroup);
+            }
+        });
+    }
+
+    /**
+     * @param entityGroupName entity group name
+     * @param createEntities  create entities that do not exist
+     * @param entities        entities to add
+     * @return result of each entity, entities sent in one request share its result
+     */
+    public List<BulkResult<Entity>> addGroupEntities(String entityGroupName, Boolean createEntities,
+                                                     Collection<Entity> entities) {
+        return addGroupEntities(Collections.singletonMap(entityGroupName, entities), createEntities);
+    }
+
+    /**
+     * Add entities to several groups, the requests of all groups are sent concurrently.
+     *
+     * @param groupEntities  entities to add by entity group name
+     * @param createEntities create entities that do not exist
+     * @return result of each entity in the iteration order of the map, entities sent in one request share its result
+     */
+    public List<BulkResult<Entity>> addGroupEntities(Map<String, ? extends Collection<Entity>> groupEntities,
+                                                     Boolean createEntities) {
+        List<GroupChunk> chunks = new ArrayList<>();
+        for (Map.Entry<String, ? extends Collection<Entity>> entry : groupEntities.entrySet()) {
+            chunks.addAll(split(entry.getKey(), entry.getValue()));
+        }
+        return expand(run(chunks, add(createEntities)));
+    }
+
+    /**
+     * Replace the entities of a group. The first request replaces the group members, the rest of the entities are
+     * added by concurrent requests once it succeeds. If the first request fails, the others are not sent.
+     *
+     * @param entityGroupName entity group name
+     * @param createEntities  create entities that do not exist
+     * @param entities        new group members, an empty collection removes all members
+     * @return result of each entity, entities sent in one request share its result
+     */
+    public List<BulkResult<Entity>> replaceGroupEntities(final String entityGroupName, final Boolean createEntities,
+                                                         Collection<Entity> entities) {
+        List<GroupChunk> chunks = split(entityGroupName, entities);
+        if (chunks.isEmpty()) {
+            metaDataService.replaceGroupEntities(entityGroupName, createEntities);
+            return new ArrayList<>();
+        }
+        List<BulkResult<GroupChunk>> results = run(chunks.subList(0, 1), new Operation<GroupChunk>() {
+            @Override
+            public boolean apply(GroupChunk chunk) {
+                return metaDataService.replaceGroupEntities(entityGroupName, createEntities, chunk.entities());
+            }
+        });
+        List<GroupChunk> rest = chunks.subList(1, chunks.size());
+        if (results.get(0).isSuccess()) {
+            results.addAll(run(rest, add(createEntities)));
+        } else {
+            AtsdClientException error = new AtsdClientException("Entities of group " + entityGroupName
+                    + " were not replaced, the request was not sent");
+            for (GroupChunk chunk : rest) {
+                results.add(new BulkResult<>(chunk, false, error));
+            }
+        }
+        return expand(results);
+    }
+
+    private Operation<GroupChunk> add(final Boolean createEntities) {
+        return new Operation<GroupChunk>() {
+            @Override
+            public boolean apply(GroupChunk chunk) {
+                return metaDataService.addGroupEntities(chunk.group, createEntities, chunk.entities());
+            }
+        };
+    }
+
+    private List<GroupChunk> split(String entityGroupName, Collection<Entity> entities) {
+        List<GroupChunk> chunks = new ArrayList<>();
+        List<Entity> list = new ArrayList<>(entities);
+        for (int from = 0; from < list.size(); from += groupBatchSize) {
+            int to = Math.min(list.size(), from + groupBatchSize);
+            chunks.add(new GroupChunk(entityGroupName, list.subList(from, to)));
+        }
+        return chunks;
+    }
+
+    private static List<BulkResult<Entity>> expand(List<BulkResult<GroupChunk>> chunkResults) {
+        List<BulkResult<Entity>> results = new ArrayList<>();
+        for (BulkResult<GroupChunk> chunkResult : chunkResults) {
+            for (Entity entity : chunkResult.getItem().members) {
+                results.add(new BulkResult<>(entity, chunkResult.isSuccess(), chunkResult.getError()));
+            }
+        }
+        return results;
+    }
+
+    private <T> List<BulkResult<T>> run(Collection<T> items, final Operation<T> operation) {
+        final List<T> list = new ArrayList<>(items);
+        final List<BulkResult<T>> results = new ArrayList<>(Collections.<BulkResult<T>>nCopies(list.size(), null));
+        ParallelTasks.forEachIndex(httpClientManager, list.size(), parallelism, new ParallelTasks.IndexedTask() {
+            @Override
+            public void run(int index) {
+                results.set(index, apply(operation, list.get(index)));
+            }
+        }, "writing metadata");
+        return results;
+    }
+
+    private static <T> BulkResult<T> apply(Operation<T> operation, T item) {
+        try {
+            return new BulkResult<>(item, operation.apply(item), null);
+        } catch (RuntimeException e) {
+            return new BulkResult<>(item, false, e);
+        }
+    }
+
+    private interface Operation<T> {
+        /**
+         * @return false if the server rejected the item as a bad request
+         */
+        boolean apply(T item);
+    }
+
+    private static final class GroupChunk {
+        private final String group;
+        private final List<Entity> members;
+
+        private GroupChunk(String group, List<Entity> members) {
+            this.group = group;
+            this.members = members;
+        }
+
+        private Entity[] entities() {
+            return members.toArray(new Entity[members.size()]);
+        }
+    }
+}
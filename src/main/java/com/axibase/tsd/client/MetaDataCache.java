@@ -0,0 +1,223 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of metrics, entities, entity groups and group members read by {@link MetaDataService}, bounded by the
+ * number of entries with least recently used eviction. Objects expire
+ * {@link com.axibase.tsd.model.system.ClientConfiguration#getMetadataCacheTtlMillis()} milliseconds after they were
+ * read, objects the server did not find are remembered for
+ * {@link com.axibase.tsd.model.system.ClientConfiguration#getMetadataCacheNegativeTtlMillis()} milliseconds.
+ * <p>
+ * Updates made through {@link MetaDataService} invalidate the affected entries. A read that started before an
+ * invalidation does not store its result, so the cache never keeps an object older than the last update made by
+ * this client. Cached objects are shared by all callers and must not be modified.
+ * </p>
+ */
+public class MetaDataCache {
+    static final String METRIC = "metric:";
+    static final String ENTITY = "entity:";
+    static final String GROUP = "group:";
+    static final String GROUP_ENTITIES = "group-entities:";
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long generation;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @param maxEntries        maximum number of cached objects
+     * @param ttlMillis         time an object is used after it was read
+     * @param negativeTtlMillis time a missing object is reported as missing without a request
+     */
+    public MetaDataCache(int maxEntries, long ttlMillis, long negativeTtlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+    }
+
+    /**
+     * @param type   kind of object, one of the key prefixes
+     * @param name   object name, names are case-insensitive
+     * @param loader reads the object, returns null if the server did not find it
+     * @return cached or loaded object
+     */
+    @SuppressWarnings("unchecked")
+    <T> T get(String type, String name, Callable<T> loader) {
+        String key = keyOf(type, name);
+        long loadGeneration;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && System.currentTimeMillis() < entry.expires) {
+                if (entry.value == null) {
+                    negativeHits.incrementAndGet();
+                } else {
+                    hits.incrementAndGet();
+                }
+                return (T) entry.value;
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+            loadGeneration = generation;
+        }
+        misses.incrementAndGet();
+        long start = System.nanoTime();
+        T value;
+        try {
+            value = loader.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new AtsdClientException("Could not load " + key, e);
+        } finally {
+            loadNanos.addAndGet(System.nanoTime() - start);
+        }
+        long expires = System.currentTimeMillis() + (value == null ? negativeTtlMillis : ttlMillis);
+        synchronized (this) {
+            if (generation == loadGeneration) {
+                entries.put(key, new Entry(value, expires));
+                Iterator<Entry> eldest = entries.values().iterator();
+                while (entries.size() > maxEntries && eldest.hasNext()) {
+                    eldest.next();
+                    eldest.remove();
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Remove an object from the cache.
+     *
+     * @param type kind of object, one of the key prefixes
+     * @param name object name
+     */
+    synchronized void invalidate(String type, String name) {
+        generation++;
+        invalidations.incrementAndGet();
+        entries.remove(keyOf(type, name));
+    }
+
+    /**
+     * Remove all objects of a kind from the cache.
+     *
+     * @param type kind of object, one of the key prefixes
+     */
+    synchronized void invalidateAll(String type) {
+        generation++;
+        invalidations.incrementAndGet();
+        Iterator<String> keys = entries.keySet().iterator();
+        while (keys.hasNext()) {
+            if (keys.next().startsWith(type)) {
+                keys.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove all cached objects.
+     */
+    public synchronized void clear() {
+        generation++;
+        entries.clear();
+    }
+
+    private static String keyOf(String type, String name) {
+        return type + name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return number of reads answered with a cached object
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of reads answered with a cached result of an object the server did not find
+     */
+    public long getNegativeHits() {
+        return negativeHits.get();
+    }
+
+    /**
+     * @return number of reads sent to the server
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return total time spent on reads sent to the server, in nanoseconds
+     */
+    public long getLoadTimeNanos() {
+        return loadNanos.get();
+    }
+
+    /**
+     * @return average time of a read sent to the server, in nanoseconds
+     */
+    public long getAverageLoadTimeNanos() {
+        long loads = misses.get();
+        return loads == 0 ? 0 : loadNanos.get() / loads;
+    }
+
+    /**
+     * @return number of objects evicted to stay within the size limit
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return number of invalidations caused by updates
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * @return number of cached objects, including expired ones not read since they expired
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final long expires;
+
+        private Entry(Object value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+}
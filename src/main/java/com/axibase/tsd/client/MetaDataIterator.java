@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.query.QueryPart;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.IOUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Iterates over metrics or entities ordered by name, reading them from the server in pages of a fixed size.
+ * <p>
+ * Each page is requested with {@code limit} set to the page size and the name of the last object of the previous page
+ * added to the expression, so no page depends on an offset. A page is decoded object by object from the response
+ * stream. The next page is requested in the background as soon as the current page is received, at most two pages
+ * are held in memory. Close the iterator if it is abandoned before the end to cancel the prefetch.
+ * </p>
+ */
+public class MetaDataIterator<T> implements Iterator<T>, Closeable {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpClientManager httpClientManager;
+    private final Class<T> clazz;
+    private final Pages<T> pages;
+    private final String expression;
+    private final int pageSize;
+    private Iterator<T> current = Collections.<T>emptyIterator();
+    private Future<List<T>> next;
+    private String lastName;
+    private int pagesRead;
+
+    /**
+     * Request the first page.
+     *
+     * @param expression filter expression, null to iterate over all objects
+     * @param pageSize   number of objects in a page
+     */
+    MetaDataIterator(HttpClientManager httpClientManager, Class<T> clazz, Pages<T> pages, String expression,
+                     int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        this.httpClientManager = httpClientManager;
+        this.clazz = clazz;
+        this.pages = pages;
+        this.expression = expression;
+        this.pageSize = pageSize;
+        next = prefetch(pageExpression(expression, null));
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (next == null) {
+                return false;
+            }
+            List<T> page = await(next);
+            next = null;
+            pagesRead++;
+            if (page.size() >= pageSize) {
+                String name = pages.nameOf(page.get(page.size() - 1));
+                if (lastName != null && name.compareTo(lastName) <= 0) {
+                    throw new AtsdClientException("Objects are not ordered by name, page ends with " + name
+                            + " after " + lastName);
+                }
+                lastName = name;
+                next = prefetch(pageExpression(expression, lastName));
+            }
+            current = page.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Cancel the request of the next page and release the current one.
+     */
+    @Override
+    public void close() {
+        if (next != null) {
+            next.cancel(true);
+            next = null;
+        }
+        current = Collections.<T>emptyIterator();
+    }
+
+    /**
+     * @return number of pages received so far
+     */
+    public int getPagesRead() {
+        return pagesRead;
+    }
+
+    /**
+     * @param expression filter expression, may be null
+     * @param after      name of the last object already returned, null for the first page
+     * @return expression of the page
+     */
+    static String pageExpression(String expression, String after) {
+        if (after == null) {
+            return expression;
+        }
+        String filter = "name > '" + after.replace("\\", "\\\\").replace("'", "\\'") + "'";
+        return expression == null || expression.trim().isEmpty() ? filter : "(" + expression + ") && " + filter;
+    }
+
+    private Future<List<T>> prefetch(final String pageExpression) {
+        return httpClientManager.getExecutor().submit(new Callable<List<T>>() {
+            @Override
+            public List<T> call() throws IOException {
+                return readPage(pages.query(pageExpression, pageSize));
+            }
+        });
+    }
+
+    private List<T> readPage(QueryPart<T> query) throws IOException {
+        InputStream inputStream = httpClientManager.requestMetaDataInputStream(query);
+        if (inputStream == null) {
+            return Collections.emptyList();
+        }
+        List<T> page = new ArrayList<>(pageSize);
+        try (JsonParser parser = MAPPER.getFactory().createParser(inputStream)) {
+            JsonToken token = parser.nextToken();
+            if (token != JsonToken.START_ARRAY) {
+                throw new AtsdClientException("Unexpected " + clazz.getSimpleName()
+                        + " response, array expected but found " + token);
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                page.add(parser.readValueAs(clazz));
+            }
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+        return page;
+    }
+
+    private static <T> List<T> await(Future<List<T>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new AtsdClientException("Interrupted while waiting for the next page", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new AtsdClientException("Could not read the next page", e.getCause());
+        }
+    }
+
+    /**
+     * Builds the page requests of one kind of object.
+     */
+    interface Pages<T> {
+        /**
+         * @param expression filter expression of the page, may be null
+         * @param limit      page size
+         * @return page request
+         */
+        QueryPart<T> query(String expression, int limit);
+
+        String nameOf(T item);
+    }
+}
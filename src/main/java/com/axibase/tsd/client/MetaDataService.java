@@ -20,6 +20,7 @@ import com.axibase.tsd.query.Query;
 import com.axibase.tsd.query.QueryPart;
 
 import java.util.*;
+import java.util.concurrent.Callable;
 
 import static com.axibase.tsd.client.RequestProcessor.*;
 import static com.axibase.tsd.util.AtsdUtil.*;
@@ -104,6 +105,43 @@ public class MetaDataService {
         return httpClientManager.requestMetaDataList(Metric.class, query);
     }
 
+    /**
+     * Iterate over metrics ordered by name without loading them all at once. Metrics are read in pages of
+     * {@code pageSize}, the next page is requested while the current one is consumed.
+     *
+     * @param expression    Specify EL expression.
+     * @param minInsertDate Include metrics with lastInsertDate equal or greater than specified time.
+     * @param maxInsertDate Include metrics with lastInsertDate less than specified time.
+     * @param tagAppender   Specify metric tags to be included in the response. Specify * to include all metric tags.
+     * @param pageSize      Number of metrics in one request.
+     * @return Iterator of metrics, close it if it is not read to the end.
+     */
+    public MetaDataIterator<Metric> iterateMetrics(String expression,
+                                                   final String minInsertDate,
+                                                   final String maxInsertDate,
+                                                   final TagAppender tagAppender,
+                                                   int pageSize) {
+        return new MetaDataIterator<>(httpClientManager, Metric.class, new MetaDataIterator.Pages<Metric>() {
+            @Override
+            public QueryPart<Metric> query(String pageExpression, int limit) {
+                QueryPart<Metric> query = new Query<Metric>("metrics")
+                        .param("expression", pageExpression)
+                        .param("minInsertDate", minInsertDate)
+                        .param("maxInsertDate", maxInsertDate)
+                        .param("limit", limit);
+                if (tagAppender != null) {
+                    query = query.param("tags", tagAppender.getTags());
+                }
+                return query;
+            }
+
+            @Override
+            public String nameOf(Metric metric) {
+                return metric.getName();
+            }
+        }, expression, pageSize);
+    }
+
     /**
      * @param entityName  Entity name.
      * @param active      Filter metrics by {@code lastInsertTime}. If active = {@code true}, only metrics with
@@ -172,8 +210,20 @@ public class MetaDataService {
      */
     public Metric retrieveMetric(String metricName) {
         checkMetricIsEmpty(metricName);
-        return httpClientManager.requestMetaDataObject(Metric.class, new Query<Metric>("metrics")
-                .path(metricName, true));
+        final String name = metricName;
+        final QueryPart<Metric> query = new Query<Metric>("metrics")
+                .path(metricName, true);
+        return httpClientManager.cached(MetaDataCache.METRIC, metricName, new Callable<Metric>() {
+            @Override
+            public Metric call() {
+                return httpClientManager.coalesce("metrics", name, new Callable<Metric>() {
+                    @Override
+                    public Metric call() {
+                        return httpClientManager.requestMetaDataObject(Metric.class, query);
+                    }
+                });
+            }
+        });
     }
 
     /**
@@ -187,7 +237,11 @@ public class MetaDataService {
         checkMetricIsEmpty(metricName);
         QueryPart<Metric> queryPart = new Query<Metric>("metrics")
                 .path(metricName, true);
-        return httpClientManager.updateMetaData(queryPart, put(metric));
+        try {
+            return httpClientManager.updateMetaData(queryPart, put(metric));
+        } finally {
+            httpClientManager.invalidate(MetaDataCache.METRIC, metricName);
+        }
     }
 
 
@@ -202,7 +256,11 @@ public class MetaDataService {
         checkMetricIsEmpty(metricName);
         QueryPart<Metric> queryPart = new Query<Metric>("metrics")
                 .path(metricName, true);
-        return httpClientManager.updateMetaData(queryPart, patch(metric));
+        try {
+            return httpClientManager.updateMetaData(queryPart, patch(metric));
+        } finally {
+            httpClientManager.invalidate(MetaDataCache.METRIC, metricName);
+        }
     }
 
 
@@ -217,7 +275,11 @@ public class MetaDataService {
         checkMetricIsEmpty(metricName);
         QueryPart<Metric> queryPart = new Query<Metric>("metrics")
                 .path(metricName, true);
-        return httpClientManager.updateMetaData(queryPart, delete());
+        try {
+            return httpClientManager.updateMetaData(queryPart, delete());
+        } finally {
+            httpClientManager.invalidate(MetaDataCache.METRIC, metricName);
+        }
     }
 
     /**
@@ -291,6 +353,43 @@ public class MetaDataService {
         return httpClientManager.requestMetaDataList(Entity.class, query);
     }
 
+    /**
+     * Iterate over entities ordered by name without loading them all at once. Entities are read in pages of
+     * {@code pageSize}, the next page is requested while the current one is consumed.
+     *
+     * @param expression    Specify EL expression.
+     * @param minInsertDate Include entities with lastInsertDate equal or greater than specified time.
+     * @param maxInsertDate Include entities with lastInsertDate less than specified time.
+     * @param tagAppender   Specify entity tags to be included in the response. Specify * to include all entity tags.
+     * @param pageSize      Number of entities in one request.
+     * @return Iterator of entities, close it if it is not read to the end.
+     */
+    public MetaDataIterator<Entity> iterateEntities(String expression,
+                                                    final String minInsertDate,
+                                                    final String maxInsertDate,
+                                                    final TagAppender tagAppender,
+                                                    int pageSize) {
+        return new MetaDataIterator<>(httpClientManager, Entity.class, new MetaDataIterator.Pages<Entity>() {
+            @Override
+            public QueryPart<Entity> query(String pageExpression, int limit) {
+                QueryPart<Entity> query = new Query<Entity>("entities")
+                        .param("expression", pageExpression)
+                        .param("minInsertDate", minInsertDate)
+                        .param("maxInsertDate", maxInsertDate)
+                        .param("limit", limit);
+                if (tagAppender != null) {
+                    query = query.param("tags", tagAppender.getTags());
+                }
+                return query;
+            }
+
+            @Override
+            public String nameOf(Entity entity) {
+                return entity.getName();
+            }
+        }, expression, pageSize);
+    }
+
 
     /**
      * @param entityName Entity name.
@@ -298,9 +397,14 @@ public class MetaDataService {
      */
     public Entity retrieveEntity(String entityName) {
         checkEntityIsEmpty(entityName);
-        QueryPart<Entity> query = new Query<Entity>("entities")
+        final QueryPart<Entity> query = new Query<Entity>("entities")
                 .path(entityName, true);
-        return httpClientManager.requestMetaDataObject(Entity.class, query);
+        return httpClientManager.cached(MetaDataCache.ENTITY, entityName, new Callable<Entity>() {
+            @Override
+            public Entity call() {
+                return httpClientManager.requestMetaDataObject(Entity.class, query);
+            }
+        });
     }
 
     /**
@@ -328,7 +432,11 @@ public class MetaDataService {
         checkEntityIsEmpty(entityName);
         QueryPart<Entity> queryPart = new Query<Entity>("entities")
                 .path(entityName, true);
-        return httpClientManager.updateMetaData(queryPart, put(entity));
+        try {
+            return httpClientManager.updateMetaData(queryPart, put(entity));
+        } finally {
+            invalidateEntity(entityName);
+        }
     }
 
     /**
@@ -342,7 +450,11 @@ public class MetaDataService {
         checkEntityIsEmpty(entityName);
         QueryPart<Entity> queryPart = new Query<Entity>("entities")
                 .path(entityName, true);
-        return httpClientManager.updateMetaData(queryPart, patch(entity));
+        try {
+            return httpClientManager.updateMetaData(queryPart, patch(entity));
+        } finally {
+            invalidateEntity(entityName);
+        }
     }
 
     /**
@@ -356,7 +468,11 @@ public class MetaDataService {
         checkEntityIsEmpty(entityName);
         QueryPart<Entity> queryPart = new Query<Entity>("entities")
                 .path(entityName, true);
-        return httpClientManager.updateMetaData(queryPart, delete());
+        try {
+            return httpClientManager.updateMetaData(queryPart, delete());
+        } finally {
+            invalidateEntity(entityName);
+        }
     }
 
     /**
@@ -386,9 +502,14 @@ public class MetaDataService {
      */
     public EntityGroup retrieveEntityGroup(String entityGroupName) {
         checkEntityGroupIsEmpty(entityGroupName);
-        QueryPart<EntityGroup> query = new Query<EntityGroup>("entity-groups")
+        final QueryPart<EntityGroup> query = new Query<EntityGroup>("entity-groups")
                 .path(entityGroupName, true);
-        return httpClientManager.requestMetaDataObject(EntityGroup.class, query);
+        return httpClientManager.cached(MetaDataCache.GROUP, entityGroupName, new Callable<EntityGroup>() {
+            @Override
+            public EntityGroup call() {
+                return httpClientManager.requestMetaDataObject(EntityGroup.class, query);
+            }
+        });
     }
 
     /**
@@ -407,7 +528,11 @@ public class MetaDataService {
         checkEntityGroupIsEmpty(entityGroupName);
         QueryPart<EntityGroup> query = new Query<EntityGroup>("entity-groups")
                 .path(entityGroupName, true);
-        return httpClientManager.updateMetaData(query, put(entityGroup));
+        try {
+            return httpClientManager.updateMetaData(query, put(entityGroup));
+        } finally {
+            invalidateEntityGroup(entityGroupName);
+        }
     }
 
     /**
@@ -425,7 +550,11 @@ public class MetaDataService {
         checkEntityGroupIsEmpty(entityGroupName);
         QueryPart<EntityGroup> query = new Query<EntityGroup>("entity-groups")
                 .path(entityGroupName, true);
-        return httpClientManager.updateMetaData(query, patch(entityGroup));
+        try {
+            return httpClientManager.updateMetaData(query, patch(entityGroup));
+        } finally {
+            invalidateEntityGroup(entityGroupName);
+        }
     }
 
     /**
@@ -439,7 +568,11 @@ public class MetaDataService {
         checkEntityGroupIsEmpty(entityGroupName);
         QueryPart<EntityGroup> query = new Query<EntityGroup>("entity-groups")
                 .path(entityGroupName, true);
-        return httpClientManager.updateMetaData(query, delete());
+        try {
+            return httpClientManager.updateMetaData(query, delete());
+        } finally {
+            invalidateEntityGroup(entityGroupName);
+        }
     }
 
     /**
@@ -513,8 +646,15 @@ public class MetaDataService {
         QueryPart<Entity> query = new Query<Entity>("entity-groups")
                 .path(entityGroupName, true)
                 .path("entities");
-        query = query.param("tags", TagAppender.ALL.getTags());
-        return httpClientManager.requestMetaDataList(Entity.class, query);
+        final QueryPart<Entity> tagsQuery = query.param("tags", TagAppender.ALL.getTags());
+        List<Entity> entities = httpClientManager.cached(MetaDataCache.GROUP_ENTITIES, entityGroupName,
+                new Callable<List<Entity>>() {
+                    @Override
+                    public List<Entity> call() {
+                        return httpClientManager.requestMetaDataList(Entity.class, tagsQuery);
+                    }
+                });
+        return new ArrayList<>(entities);
     }
 
     /**
@@ -537,7 +677,11 @@ public class MetaDataService {
                 .path(entityGroupName, true)
                 .path("entities/add")
                 .param("createEntities", createEntities);
-        return httpClientManager.updateData(query, post(entitiesNames));
+        try {
+            return httpClientManager.updateData(query, post(entitiesNames));
+        } finally {
+            httpClientManager.invalidate(MetaDataCache.GROUP_ENTITIES, entityGroupName);
+        }
     }
 
     /**
@@ -562,7 +706,11 @@ public class MetaDataService {
                 .path(entityGroupName, true)
                 .path("entities/set")
                 .param("createEntities", createEntities);
-        return httpClientManager.updateMetaData(query, post(entitiesNames));
+        try {
+            return httpClientManager.updateMetaData(query, post(entitiesNames));
+        } finally {
+            httpClientManager.invalidate(MetaDataCache.GROUP_ENTITIES, entityGroupName);
+        }
     }
 
     /**
@@ -583,7 +731,11 @@ public class MetaDataService {
         QueryPart<Entity> query = new Query<Entity>("entity-groups")
                 .path(entityGroupName, true)
                 .path("entities/delete");
-        return httpClientManager.updateMetaData(query, post(entitiesNames));
+        try {
+            return httpClientManager.updateMetaData(query, post(entitiesNames));
+        } finally {
+            httpClientManager.invalidate(MetaDataCache.GROUP_ENTITIES, entityGroupName);
+        }
     }
 
     /**
@@ -628,4 +780,15 @@ public class MetaDataService {
         }
         return httpClientManager.requestMetaDataList(Series.class, query);
     }
+
+    private void invalidateEntity(String entityName) {
+        httpClientManager.invalidate(MetaDataCache.ENTITY, entityName);
+        // group members are returned with their tags
+        httpClientManager.invalidateAll(MetaDataCache.GROUP_ENTITIES);
+    }
+
+    private void invalidateEntityGroup(String entityGroupName) {
+        httpClientManager.invalidate(MetaDataCache.GROUP, entityGroupName);
+        httpClientManager.invalidate(MetaDataCache.GROUP_ENTITIES, entityGroupName);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.system.TcpClientConfiguration;
+import com.axibase.tsd.network.CommandEncoder;
+import com.axibase.tsd.network.PlainCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Sends network API commands over non-blocking TCP connections served by a single selector thread.
+ * <p>
+ * Sending threads only encode commands and copy them into per-connection direct buffers, they never wait for socket
+ * I/O. The selector thread writes the buffers with gathering writes, continues partial writes when the socket becomes
+ * writable and reconnects in the background with an increasing delay. Commands are assigned to connections according
+ * to {@link TcpClientConfiguration#getSharding()}, by default commands sent by one thread use the same connection, so
+ * their order is kept. When a connection has more than
+ * {@link TcpClientConfiguration#getMaxPendingBytes()} waiting, new commands are rejected.
+ * </p>
+ */
+public class NioTcpClientManager {
+    private static final Logger log = LoggerFactory.getLogger(NioTcpClientManager.class);
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+    private static final long MAX_SELECT_MILLIS = 1000;
+    private static final ThreadLocal<CommandEncoder> ENCODER = new ThreadLocal<CommandEncoder>() {
+        @Override
+        protected CommandEncoder initialValue() {
+            return new CommandEncoder();
+        }
+    };
+
+    private final TcpShardRouter router;
+    private final NioTcpConnection[] connections;
+    private final ConcurrentLinkedQueue<NioTcpConnection> flushQueue = new ConcurrentLinkedQueue<>();
+    private final Selector selector;
+    private final Thread selectorThread;
+    private final long closeTimeoutMs;
+    private volatile boolean running = true;
+
+    public NioTcpClientManager(TcpClientConfiguration clientConfiguration) {
+        router = new TcpShardRouter(clientConfiguration);
+        int count = router.shards();
+        connections = new NioTcpConnection[count];
+        for (int i = 0; i < count; i++) {
+            connections[i] = new NioTcpConnection(
+                    InetSocketAddress.createUnresolved(clientConfiguration.getServerName(), clientConfiguration.getPort()),
+                    clientConfiguration.getBufferSize(),
+                    clientConfiguration.getMaxPendingBytes(),
+                    clientConfiguration.getConnectionTimeoutMs(),
+                    clientConfiguration.getReconnectDelayMs());
+        }
+        closeTimeoutMs = clientConfiguration.getConnectionTimeoutMs();
+        try {
+            selector = Selector.open();
+        } catch (IOException e) {
+            throw new AtsdClientException("Could not open selector", e);
+        }
+        selectorThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runSelector();
+            }
+        }, "atsd-tcp-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    /**
+     * @param plainCommand command to send
+     * @return false if the command is rejected because the connection has too many bytes waiting
+     * or the manager is closed
+     */
+    public boolean send(PlainCommand plainCommand) {
+        CommandEncoder encoder = ENCODER.get();
+        encoder.reset(MAX_RETAINED_BUFFER_SIZE);
+        encoder.encode(plainCommand);
+        return append(connections[router.shardOf(plainCommand)], encoder);
+    }
+
+    /**
+     * @param plainCommands commands to send, the commands of one connection are accepted or rejected together
+     * @return false if some commands are rejected because a connection has too many bytes waiting
+     * or the manager is closed
+     */
+    public boolean send(Collection<PlainCommand> plainCommands) {
+        boolean accepted = true;
+        List<Collection<PlainCommand>> shards = router.split(plainCommands);
+        for (int i = 0; i < shards.size(); i++) {
+            Collection<PlainCommand> shardCommands = shards.get(i);
+            if (shardCommands == null) {
+                continue;
+            }
+            CommandEncoder encoder = ENCODER.get();
+            encoder.reset(MAX_RETAINED_BUFFER_SIZE);
+            for (PlainCommand plainCommand : shardCommands) {
+                encoder.encode(plainCommand);
+            }
+            if (!append(connections[i], encoder)) {
+                accepted = false;
+            }
+        }
+        return accepted;
+    }
+
+    private boolean append(NioTcpConnection connection, CommandEncoder encoder) {
+        if (encoder.length() == 0) {
+            return true;
+        }
+        if (!connection.append(encoder)) {
+            return false;
+        }
+        if (connection.flushRequested.compareAndSet(false, true)) {
+            flushQueue.add(connection);
+            selector.wakeup();
+        }
+        return true;
+    }
+
+    /**
+     * @return number of bytes accepted and not yet written to the sockets
+     */
+    public long getPendingBytes() {
+        long total = 0;
+        for (NioTcpConnection connection : connections) {
+            total += connection.pendingBytes.get();
+        }
+        return total;
+    }
+
+    /**
+     * @return number of bytes written to the sockets
+     */
+    public long getWrittenBytes() {
+        long total = 0;
+        for (NioTcpConnection connection : connections) {
+            total += connection.writtenBytes.get();
+        }
+        return total;
+    }
+
+    /**
+     * @return number of rejected {@code send} calls
+     */
+    public long getRejected() {
+        long total = 0;
+        for (NioTcpConnection connection : connections) {
+            total += connection.rejected.get();
+        }
+        return total;
+    }
+
+    /**
+     * @return number of times an established connection was lost
+     */
+    public long getReconnects() {
+        long total = 0;
+        for (NioTcpConnection connection : connections) {
+            total += connection.reconnects.get();
+        }
+        return total;
+    }
+
+    /**
+     * Stop accepting commands, write what is buffered within the connection timeout and close the connections.
+     */
+    public void close() {
+        for (NioTcpConnection connection : connections) {
+            connection.close();
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join(closeTimeoutMs + MAX_SELECT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runSelector() {
+        long closeDeadline = Long.MAX_VALUE;
+        try {
+            while (true) {
+                long now = System.currentTimeMillis();
+                if (!running) {
+                    if (closeDeadline == Long.MAX_VALUE) {
+                        closeDeadline = now + closeTimeoutMs;
+                    }
+                    if (!hasPending() || now >= closeDeadline) {
+                        break;
+                    }
+                }
+                long next = now + MAX_SELECT_MILLIS;
+                for (NioTcpConnection connection : connections) {
+                    next = Math.min(next, connection.connect(selector, now));
+                }
+                for (NioTcpConnection connection; (connection = flushQueue.poll()) != null; ) {
+                    connection.flush(now);
+                }
+                selector.select(Math.max(1, Math.min(next, closeDeadline) - now));
+                now = System.currentTimeMillis();
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    if (key.isValid()) {
+                        ((NioTcpConnection) key.attachment()).process(now);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.error("Selector failed, TCP connections are closed", e);
+        } finally {
+            for (NioTcpConnection connection : connections) {
+                connection.close();
+                connection.shutdown();
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                log.warn("Could not close selector", e);
+            }
+            long lost = getPendingBytes();
+            if (lost > 0) {
+                log.warn("Discard {} bytes of commands that were not written", lost);
+            }
+        }
+    }
+
+    private boolean hasPending() {
+        for (NioTcpConnection connection : connections) {
+            if (connection.hasPending()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
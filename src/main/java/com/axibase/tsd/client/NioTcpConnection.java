@@ -0,0 +1,343 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.network.CommandEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One connection of {@link NioTcpClientManager}. Sending threads copy encoded commands into direct buffers under
+ * a short lock, the selector thread takes the filled buffers and writes them with gathering writes. Everything
+ * except {@link #append(CommandEncoder)} and the counters is accessed by the selector thread only.
+ */
+class NioTcpConnection {
+    private static final Logger log = LoggerFactory.getLogger(NioTcpConnection.class);
+    private static final int MAX_POOLED_BUFFERS = 16;
+    private static final int MAX_GATHER = 64;
+    private static final int MIN_RECONNECT_DELAY_MS = 100;
+
+    private final InetSocketAddress address;
+    private final int bufferSize;
+    private final long maxPendingBytes;
+    private final int connectTimeoutMs;
+    private final int maxReconnectDelayMs;
+
+    /* guarded by lock: buffers filled by the sending threads */
+    private final Object lock = new Object();
+    private final ArrayDeque<ByteBuffer> filled = new ArrayDeque<>();
+    private final ArrayDeque<ByteBuffer> pool = new ArrayDeque<>();
+    private ByteBuffer current;
+    private boolean closed;
+
+    final AtomicBoolean flushRequested = new AtomicBoolean();
+    final AtomicLong pendingBytes = new AtomicLong();
+    final AtomicLong writtenBytes = new AtomicLong();
+    final AtomicLong rejected = new AtomicLong();
+    final AtomicLong reconnects = new AtomicLong();
+
+    /* selector thread state */
+    private final ArrayDeque<ByteBuffer> writing = new ArrayDeque<>();
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(1024);
+    private SocketChannel channel;
+    private SelectionKey key;
+    private boolean connected;
+    private long connectDeadline;
+    private long reconnectAt;
+    private int reconnectDelayMs = MIN_RECONNECT_DELAY_MS;
+    private byte lastWrittenByte = '\n';
+
+    /**
+     * @param address server address, resolved again on every connection attempt
+     */
+    NioTcpConnection(InetSocketAddress address, int bufferSize, long maxPendingBytes, int connectTimeoutMs,
+                     int maxReconnectDelayMs) {
+        this.address = address;
+        this.bufferSize = bufferSize;
+        this.maxPendingBytes = maxPendingBytes;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.maxReconnectDelayMs = Math.max(MIN_RECONNECT_DELAY_MS, maxReconnectDelayMs);
+    }
+
+    /**
+     * Copy the encoded commands to the send buffers.
+     *
+     * @param encoder encoded commands
+     * @return false if the connection is closed or has too many bytes waiting
+     */
+    boolean append(CommandEncoder encoder) {
+        int length = encoder.length();
+        synchronized (lock) {
+            if (closed || pendingBytes.get() + length > maxPendingBytes) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            int offset = 0;
+            while (offset < length) {
+                if (current == null || !current.hasRemaining()) {
+                    if (current != null) {
+                        current.flip();
+                        filled.addLast(current);
+                    }
+                    current = pool.isEmpty() ? ByteBuffer.allocateDirect(bufferSize) : pool.pollFirst();
+                }
+                offset += encoder.copyTo(offset, current);
+            }
+            pendingBytes.addAndGet(length);
+        }
+        return true;
+    }
+
+    void close() {
+        synchronized (lock) {
+            closed = true;
+        }
+    }
+
+    boolean hasPending() {
+        return pendingBytes.get() > 0;
+    }
+
+    /**
+     * Start or finish connecting if the connection is down and the reconnection delay is over.
+     *
+     * @return time of the next connection event to wait for, {@link Long#MAX_VALUE} if none
+     */
+    long connect(Selector selector, long now) {
+        if (connected) {
+            return Long.MAX_VALUE;
+        }
+        if (channel != null) {
+            if (now >= connectDeadline) {
+                log.warn("Could not connect to ATSD at {} in {} ms", address, connectTimeoutMs);
+                disconnect(now);
+                return reconnectAt;
+            }
+            return connectDeadline;
+        }
+        if (now < reconnectAt) {
+            return reconnectAt;
+        }
+        InetSocketAddress resolved = new InetSocketAddress(address.getHostString(), address.getPort());
+        if (resolved.isUnresolved()) {
+            log.warn("Could not resolve ATSD address {}", address);
+            disconnect(now);
+            return reconnectAt;
+        }
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            if (channel.connect(resolved)) {
+                key = channel.register(selector, SelectionKey.OP_READ, this);
+                onConnected();
+                return Long.MAX_VALUE;
+            }
+            key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+            connectDeadline = now + connectTimeoutMs;
+            return connectDeadline;
+        } catch (IOException e) {
+            log.warn("Could not connect to ATSD at {}", address, e);
+            disconnect(now);
+            return reconnectAt;
+        }
+    }
+
+    /**
+     * Handle a selected key.
+     */
+    void process(long now) {
+        try {
+            if (key.isConnectable()) {
+                if (!channel.finishConnect()) {
+                    return;
+                }
+                onConnected();
+            }
+            if (key.isReadable()) {
+                readBuffer.clear();
+                if (channel.read(readBuffer) < 0) {
+                    throw new IOException("Connection closed by server");
+                }
+            }
+            if (key.isValid() && key.isWritable()) {
+                write();
+            }
+        } catch (IOException e) {
+            log.warn("Error while sending commands to ATSD at {}, reconnect", address, e);
+            disconnect(now);
+        }
+    }
+
+    /**
+     * Write the buffers filled since the last flush.
+     */
+    void flush(long now) {
+        flushRequested.set(false);
+        if (!connected) {
+            return;
+        }
+        try {
+            write();
+        } catch (IOException e) {
+            log.warn("Error while sending commands to ATSD at {}, reconnect", address, e);
+            disconnect(now);
+        }
+    }
+
+    private void write() throws IOException {
+        takeFilled();
+        while (!writing.isEmpty()) {
+            int count = 0;
+            long requested = 0;
+            for (ByteBuffer buffer : writing) {
+                gather[count++] = buffer;
+                requested += buffer.remaining();
+                if (count == MAX_GATHER) {
+                    break;
+                }
+            }
+            long written = channel.write(gather, 0, count);
+            writtenBytes.addAndGet(written);
+            pendingBytes.addAndGet(-written);
+            releaseWritten();
+            if (written < requested) {
+                // socket send buffer is full
+                break;
+            }
+            if (writing.isEmpty()) {
+                takeFilled();
+            }
+        }
+        for (int i = 0; i < gather.length; i++) {
+            gather[i] = null;
+        }
+        // wait for the socket to drain instead of spinning on partial writes
+        key.interestOps(writing.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    private void takeFilled() {
+        synchronized (lock) {
+            if (current != null && current.position() > 0) {
+                current.flip();
+                filled.addLast(current);
+                current = null;
+            }
+            writing.addAll(filled);
+            filled.clear();
+        }
+    }
+
+    private void releaseWritten() {
+        while (!writing.isEmpty() && !writing.peekFirst().hasRemaining()) {
+            ByteBuffer buffer = writing.pollFirst();
+            lastWrittenByte = buffer.get(buffer.limit() - 1);
+            recycle(buffer);
+        }
+        ByteBuffer head = writing.peekFirst();
+        if (head != null && head.position() > 0) {
+            lastWrittenByte = head.get(head.position() - 1);
+        }
+    }
+
+    private void recycle(ByteBuffer buffer) {
+        buffer.clear();
+        synchronized (lock) {
+            if (pool.size() < MAX_POOLED_BUFFERS) {
+                pool.addFirst(buffer);
+            }
+        }
+    }
+
+    private void onConnected() {
+        connected = true;
+        reconnectDelayMs = MIN_RECONNECT_DELAY_MS;
+        log.info("Connected to ATSD at {}", address);
+        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    private void disconnect(long now) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Error while closing connection to ATSD at {}", address, e);
+            }
+        }
+        if (connected) {
+            reconnects.incrementAndGet();
+        }
+        channel = null;
+        key = null;
+        connected = false;
+        skipPartialCommand();
+        reconnectAt = now + reconnectDelayMs;
+        reconnectDelayMs = Math.min(reconnectDelayMs * 2, maxReconnectDelayMs);
+    }
+
+    /**
+     * The server discards an incomplete line when the connection breaks, so the rest of a partially written command
+     * would be garbage on the next connection. Skip to the start of the next command.
+     */
+    private void skipPartialCommand() {
+        if (lastWrittenByte == '\n') {
+            return;
+        }
+        takeFilled();
+        long skipped = 0;
+        while (!writing.isEmpty()) {
+            ByteBuffer head = writing.peekFirst();
+            while (head.hasRemaining()) {
+                skipped++;
+                if (head.get() == '\n') {
+                    pendingBytes.addAndGet(-skipped);
+                    releaseWritten();
+                    lastWrittenByte = '\n';
+                    return;
+                }
+            }
+            writing.pollFirst();
+            recycle(head);
+        }
+        pendingBytes.addAndGet(-skipped);
+        lastWrittenByte = '\n';
+    }
+
+    /**
+     * Close the socket, the buffered commands are discarded.
+     */
+    void shutdown() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Error while closing connection to ATSD at {}", address, e);
+            }
+            channel = null;
+        }
+        connected = false;
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.data.command.GetSeriesQuery;
+import com.axibase.tsd.model.data.series.Sample;
+import com.axibase.tsd.model.data.series.Series;
+import com.axibase.tsd.model.system.ClientConfiguration;
+import com.axibase.tsd.util.AtsdUtil;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads a long time range of a series query as several shorter windows requested concurrently over the connection
+ * pool, so one query is not bound to a single server thread and a single socket.
+ * <p>
+ * Windows are consecutive and do not overlap. Their results are passed on in window order, so the samples of each
+ * series come out in time order whichever window completes first. The first windows split the range evenly, later
+ * windows are sized so that they hold about {@link ClientConfiguration#getSeriesReadWindowPoints()} samples at the
+ * density observed so far. Queries that cannot be split are executed as one request: queries without a numeric or
+ * ISO 8601 start and end, with {@code interval}, {@code limit}, {@code cache}, {@code join}, {@code rate} or
+ * {@code aggregate}.
+ * </p>
+ */
+public class ParallelSeriesReader {
+    private static final long MIN_WINDOW_MILLIS = 1000;
+    private static final int INITIAL_WINDOWS_PER_THREAD = 4;
+    private final HttpClientManager httpClientManager;
+    private final DataService dataService;
+    private final int parallelism;
+    private final int windowPoints;
+    private final AtomicLong windows = new AtomicLong();
+
+    public ParallelSeriesReader(HttpClientManager httpClientManager) {
+        this(httpClientManager,
+                httpClientManager.getClientConfiguration().getSeriesReadParallelism(),
+                httpClientManager.getClientConfiguration().getSeriesReadWindowPoints());
+    }
+
+    /**
+     * @param httpClientManager client used to send the requests
+     * @param parallelism       number of windows requested concurrently
+     * @param windowPoints      number of samples a window should hold
+     */
+    public ParallelSeriesReader(HttpClientManager httpClientManager, int parallelism, int windowPoints) {
+        if (parallelism <= 0 || windowPoints <= 0) {
+            throw new IllegalArgumentException("Parallelism and window points must be positive");
+        }
+        this.httpClientManager = httpClientManager;
+        this.dataService = new DataService(httpClientManager);
+        this.parallelism = parallelism;
+        this.windowPoints = windowPoints;
+    }
+
+    /**
+     * @param seriesQuery query with a time range
+     * @return series with the samples of all windows in time order
+     */
+    public List<Series> retrieveSeries(GetSeriesQuery seriesQuery) {
+        final Map<String, Series> merged = new LinkedHashMap<>();
+        read(seriesQuery, new WindowConsumer() {
+            @Override
+            public void accept(List<Series> seriesList) {
+                for (Series series : seriesList) {
+                    String key = keyOf(series);
+                    Series target = merged.get(key);
+                    if (target == null) {
+                        merged.put(key, copyOf(series));
+                    } else if (series.getData() != null) {
+                        target.getData().addAll(series.getData());
+                    }
+                }
+            }
+        });
+        return new ArrayList<>(merged.values());
+    }
+
+    /**
+     * Pass the samples to the visitor as soon as all earlier windows are passed. The visitor is called on the
+     * calling thread. {@link SeriesVisitor#beginSeries(Series)} is called when a series appears in a window for the
+     * first time and {@link SeriesVisitor#endSeries(Series)} after the last window, so calls for different series
+     * may interleave. At most twice the parallelism of windows are held in memory.
+     *
+     * @param visitor     receives series and their samples in time order
+     * @param seriesQuery query with a time range
+     */
+    public void streamSeries(final SeriesVisitor visitor, GetSeriesQuery seriesQuery) {
+        final Map<String, Series> begun = new LinkedHashMap<>();
+        read(seriesQuery, new WindowConsumer() {
+            @Override
+            public void accept(List<Series> seriesList) {
+                for (Series series : seriesList) {
+                    String key = keyOf(series);
+                    Series first = begun.get(key);
+                    if (first == null) {
+                        first = series;
+                        begun.put(key, series);
+                        visitor.beginSeries(series);
+                    }
+                    if (series.getData() != null) {
+                        for (Sample sample : series.getData()) {
+                            visitor.visitSample(first, sample);
+                        }
+                    }
+                }
+            }
+        });
+        for (Series series : begun.values()) {
+            visitor.endSeries(series);
+        }
+    }
+
+    /**
+     * @return number of window requests sent
+     */
+    public long getWindows() {
+        return windows.get();
+    }
+
+    private void read(GetSeriesQuery seriesQuery, WindowConsumer consumer) {
+        long[] range = splittableRange(seriesQuery);
+        if (range == null) {
+            windows.incrementAndGet();
+            consumer.accept(dataService.retrieveSeries(seriesQuery));
+            return;
+        }
+        long start = range[0];
+        long end = range[1];
+        long windowMillis = Math.max(MIN_WINDOW_MILLIS, (end - start) / (parallelism * INITIAL_WINDOWS_PER_THREAD));
+        ParallelTasks.forEachWindow(httpClientManager, parallelism, start, end, windowMillis,
+                new WindowReader(seriesQuery, consumer), "reading series");
+    }
+
+    /**
+     * @return window that holds about {@code windowPoints} samples at the observed density
+     */
+    long nextWindowMillis(long points, long millis, long windowMillis) {
+        if (points == 0) {
+            return windowMillis > Long.MAX_VALUE / 2 ? windowMillis : windowMillis * 2;
+        }
+        double adapted = (double) windowPoints * millis / points;
+        return adapted >= Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(MIN_WINDOW_MILLIS, (long) adapted);
+    }
+
+    /**
+     * @return start and end in milliseconds or null if the query is executed as one request
+     */
+    static long[] splittableRange(GetSeriesQuery seriesQuery) {
+        long[] range = timeRange(seriesQuery);
+        return range == null || range[1] - range[0] <= MIN_WINDOW_MILLIS ? null : range;
+    }
+
+    /**
+     * @return start and end in milliseconds or null if the query does not select a fixed range of raw samples
+     * that can be read in consecutive windows
+     */
+    static long[] timeRange(GetSeriesQuery seriesQuery) {
+        if (seriesQuery.getInterval() != null || seriesQuery.getLimit() != null
+                || Boolean.TRUE.equals(seriesQuery.getCache()) || seriesQuery.getJoin() != null
+                || seriesQuery.getRate() != null || seriesQuery.getAggregateMatcher() != null) {
+            return null;
+        }
+        Long start = seriesQuery.getStartTime() != null ? seriesQuery.getStartTime()
+                : parseDate(seriesQuery.getStartDate());
+        Long end = seriesQuery.getEndTime() != null ? seriesQuery.getEndTime()
+                : parseDate(seriesQuery.getEndDate());
+        if (start == null || end == null) {
+            return null;
+        }
+        return new long[]{start, end};
+    }
+
+    private static Long parseDate(String date) {
+        if (date == null) {
+            return null;
+        }
+        try {
+            return AtsdUtil.DateTime.parseDate(date).getTime();
+        } catch (RuntimeException e) {
+            // calendar expressions are evaluated by the server only
+            return null;
+        }
+    }
+
+    private static String keyOf(Series series) {
+        return series.getRequestId() + series.getTimeSeriesKey();
+    }
+
+    private static Series copyOf(Series series) {
+        Series copy = new Series();
+        copy.setRequestId(series.getRequestId());
+        copy.setEntityName(series.getEntityName());
+        copy.setMetricName(series.getMetricName());
+        copy.setTags(series.getTags());
+        copy.setType(series.getType());
+        copy.setRate(series.getRate());
+        copy.setAggregate(series.getAggregate());
+        copy.setData(series.getData() == null ? new ArrayList<Sample>() : new ArrayList<>(series.getData()));
+        return copy;
+    }
+
+    private interface WindowConsumer {
+        void accept(List<Series> seriesList);
+    }
+
+    private final class WindowReader extends ParallelTasks.WindowHandler<Window, RuntimeException> {
+        private final GetSeriesQuery seriesQuery;
+        private final WindowConsumer consumer;
+        private long points;
+        private long millis;
+
+        private WindowReader(GetSeriesQuery seriesQuery, WindowConsumer consumer) {
+            this.seriesQuery = seriesQuery;
+            this.consumer = consumer;
+        }
+
+        @Override
+        Window window(long start, long end) {
+            windows.incrementAndGet();
+            return new Window(seriesQuery, start, end);
+        }
+
+        @Override
+        long nextWindowMillis(Window done, long windowMillis) {
+            points += done.points;
+            millis += done.end - done.start;
+            return ParallelSeriesReader.this.nextWindowMillis(points, millis, windowMillis);
+        }
+
+        @Override
+        void pass(Window window) {
+            consumer.accept(window.series);
+        }
+    }
+
+    private final class Window implements Callable<Window> {
+        private final GetSeriesQuery seriesQuery;
+        private final long start;
+        private final long end;
+        private List<Series> series;
+        private long points;
+
+        private Window(GetSeriesQuery seriesQuery, long start, long end) {
+            this.seriesQuery = seriesQuery.copy()
+                    .setStartDate(null)
+                    .setEndDate(null)
+                    .setStartTime(start)
+                    .setEndTime(end);
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Window call() {
+            series = dataService.retrieveSeries(seriesQuery);
+            for (Series item : series) {
+                if (item.getData() != null) {
+                    points += item.getData().size();
+                }
+            }
+            return this;
+        }
+    }
+}
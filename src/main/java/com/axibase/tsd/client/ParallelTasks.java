@@ -0,0 +1,207 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the requests of one call concurrently on the executor of the client, so the services fan out, wait for and
+ * cancel their requests the same way. Requests are either independent tasks or consecutive windows of a time range
+ * that are passed on in time order.
+ */
+final class ParallelTasks {
+    private ParallelTasks() {
+    }
+
+    /**
+     * Run the task for every index below {@code count} on up to {@code parallelism} workers that take the next index
+     * as they go. With a single worker the task runs on the calling thread. The first exception of a task is rethrown
+     * and the other workers are cancelled.
+     *
+     * @param httpClientManager client that owns the executor
+     * @param count             number of indexes
+     * @param parallelism       maximum number of concurrent workers
+     * @param task              task run for each index
+     * @param action            what the tasks do, used in error messages, e.g. {@code "sending batch"}
+     */
+    static void forEachIndex(HttpClientManager httpClientManager, final int count, int parallelism,
+                             final IndexedTask task, String action) {
+        int workers = Math.min(parallelism, count);
+        if (workers <= 1) {
+            for (int i = 0; i < count; i++) {
+                task.run(i);
+            }
+            return;
+        }
+        final AtomicInteger next = new AtomicInteger();
+        ExecutorService executor = httpClientManager.getExecutor();
+        List<Future<?>> futures = new ArrayList<>(workers);
+        try {
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int index; (index = next.getAndIncrement()) < count; ) {
+                            task.run(index);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AtsdClientException("Interrupted while " + action, e);
+        } catch (ExecutionException e) {
+            throw rethrow(e, action);
+        } finally {
+            cancel(futures);
+        }
+    }
+
+    /**
+     * Split the range into consecutive windows, read up to {@code parallelism} of them at a time and pass the read
+     * windows on the calling thread in time order. No more than twice the parallelism of windows are created ahead of
+     * the last passed one. The first exception of a window or of the handler is rethrown and the running windows are
+     * cancelled. Every window is released once it is passed or abandoned.
+     *
+     * @param httpClientManager client that owns the executor
+     * @param parallelism       maximum number of windows read concurrently
+     * @param start             start of the range in milliseconds
+     * @param end               end of the range in milliseconds, exclusive
+     * @param windowMillis      length of the first windows
+     * @param handler           creates and receives the windows
+     * @param action            what the windows do, used in error messages, e.g. {@code "reading series"}
+     * @throws X if the handler fails to pass a window
+     */
+    static <W extends Callable<?>, X extends Exception> void forEachWindow(HttpClientManager httpClientManager,
+                                                                        int parallelism, long start, long end,
+                                                                        long windowMillis, WindowHandler<W, X> handler,
+                                                                        String action) throws X {
+        CompletionService<Integer> completion = new ExecutorCompletionService<>(httpClientManager.getExecutor());
+        List<Future<Integer>> futures = new ArrayList<>();
+        List<W> windows = new ArrayList<>();
+        Set<Integer> completed = new HashSet<>();
+        long next = start;
+        int passed = 0;
+        int running = 0;
+        try {
+            while (next < end || running > 0) {
+                while (running < parallelism && next < end && windows.size() - passed < parallelism * 2) {
+                    long windowEnd = end - next <= windowMillis ? end : next + windowMillis;
+                    final W window = handler.window(next, windowEnd);
+                    final int index = windows.size();
+                    windows.add(window);
+                    futures.add(completion.submit(new Callable<Integer>() {
+                        @Override
+                        public Integer call() throws Exception {
+                            window.call();
+                            return index;
+                        }
+                    }));
+                    running++;
+                    next = windowEnd;
+                }
+                int done = completion.take().get();
+                running--;
+                windowMillis = handler.nextWindowMillis(windows.get(done), windowMillis);
+                completed.add(done);
+                for (; completed.remove(passed); passed++) {
+                    W window = windows.set(passed, null);
+                    try {
+                        handler.pass(window);
+                    } finally {
+                        handler.release(window);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AtsdClientException("Interrupted while " + action, e);
+        } catch (ExecutionException e) {
+            throw rethrow(e, action);
+        } finally {
+            cancel(futures);
+            for (W window : windows) {
+                if (window != null) {
+                    handler.release(window);
+                }
+            }
+        }
+    }
+
+    private static RuntimeException rethrow(ExecutionException e, String action) {
+        if (e.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) e.getCause();
+        }
+        throw new AtsdClientException("Error while " + action, e.getCause());
+    }
+
+    private static void cancel(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    interface IndexedTask {
+        void run(int index);
+    }
+
+    /**
+     * Creates the windows of a range and receives them once they are read.
+     *
+     * @param <W> window, reads its part of the range when called
+     * @param <X> exception thrown when a window cannot be passed on
+     */
+    abstract static class WindowHandler<W extends Callable<?>, X extends Exception> {
+        /**
+         * @param start start of the window in milliseconds
+         * @param end   end of the window in milliseconds, exclusive
+         * @return window to read on the executor
+         */
+        abstract W window(long start, long end);
+
+        /**
+         * Pass on a read window, called on the calling thread in time order.
+         */
+        abstract void pass(W window) throws X;
+
+        /**
+         * @param done         window that has just been read
+         * @param windowMillis current window length
+         * @return length of the windows created from now on
+         */
+        long nextWindowMillis(W done, long windowMillis) {
+            return windowMillis;
+        }
+
+        /**
+         * Release what the window holds, called once for every window after it is passed on or abandoned.
+         */
+        void release(W window) {
+        }
+    }
+}
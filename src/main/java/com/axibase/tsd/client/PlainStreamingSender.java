@@ -16,8 +16,11 @@
 package com.axibase.tsd.client;
 
 import com.axibase.tsd.model.system.ClientConfiguration;
+import com.axibase.tsd.model.system.StreamingOverflowPolicy;
+import com.axibase.tsd.network.CommandEncoder;
 import com.axibase.tsd.network.MarkerCommand;
 import com.axibase.tsd.network.PlainCommand;
+import com.axibase.tsd.network.SimpleCommand;
 import com.axibase.tsd.util.AtsdUtil;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.client.methods.CloseableHttpResponse;
@@ -38,8 +41,8 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.axibase.tsd.util.AtsdUtil.MARKER_KEYWORD;
 
@@ -47,12 +50,19 @@ import static com.axibase.tsd.util.AtsdUtil.MARKER_KEYWORD;
 class PlainStreamingSender extends AbstractHttpEntity implements Runnable {
     private static final Logger log = LoggerFactory.getLogger(PlainStreamingSender.class);
     private static final int SMALL = 64;
+    private static final int STREAMING_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 4 * 1024 * 1024;
+    /* the writer does not wait for the queue longer than this while there are spilled commands to pick up */
+    private static final long SPILL_POLL_MILLIS = 100;
+    private static final PlainCommand PING = new SimpleCommand(AtsdUtil.PING_COMMAND);
 
     private String url;
     private CountDownLatch latch = new CountDownLatch(1);
     private CloseableHttpClient httpClient;
-    private BlockingQueue<String> messages;
-    private ConcurrentMap<String, List<String>> markerToMessages = new ConcurrentHashMap<>();
+    private final BlockingQueue<PlainCommand> messages;
+    private final CommandSpillFile spill;
+    private final DeliveryLedger ledger;
+    private Counters counters = new Counters();
     private volatile SenderState state = SenderState.NEW;
     private final long pingTimeoutMillis;
     private long lastMessageTime;
@@ -66,12 +76,21 @@ class PlainStreamingSender extends AbstractHttpEntity implements Runnable {
         this.pingTimeoutMillis = clientConfiguration.getPingTimeoutMillis();
         if (old != null) {
             messages = old.messages;
-            markerToMessages = old.markerToMessages;
+            spill = old.spill;
+            ledger = old.ledger;
+            counters = old.counters;
             log.info("Reborn network commands sender using previous messages, size: {}", messages.size());
+        } else {
+            messages = new LinkedBlockingQueue<>(Math.max(1, clientConfiguration.getStreamingQueueCapacity()));
+            spill = clientConfiguration.getStreamingOverflowPolicy() == StreamingOverflowPolicy.SPILL_TO_DISK
+                    ? new CommandSpillFile(clientConfiguration.getStreamingSpillDirectory(),
+                    clientConfiguration.getStreamingSpillMaxBytes())
+                    : null;
+            ledger = new DeliveryLedger(clientConfiguration.getStreamingLedgerMaxBytes());
         }
     }
 
-    public void send(PlainCommand plainCommand) {
+    public SendOutcome send(PlainCommand plainCommand) {
         try {
             latch.await();
         } catch (InterruptedException e) {
@@ -82,17 +101,96 @@ class PlainStreamingSender extends AbstractHttpEntity implements Runnable {
             throw new IllegalStateException("Could not send command using incorrect sender");
         }
 
-        String text = plainCommand.compose();
-        if (StringUtils.isBlank(text)) {
+        if (plainCommand == null) {
             log.error("Command is empty");
-            return;
+            return SendOutcome.DROPPED_NEWEST;
+        }
+
+        SendOutcome outcome = enqueue(plainCommand);
+        if (log.isDebugEnabled()) {
+            log.debug("Message is passed to queue: {}, queue size = {}", outcome, messages.size());
         }
+        return outcome;
+    }
 
-        if (!text.endsWith("\n")) {
-            text = text + "\n";
+    private SendOutcome enqueue(PlainCommand command) {
+        if (spill != null && spillIfNotEmpty(command)) {
+            return SendOutcome.SPILLED;
+        }
+        if (messages.offer(command)) {
+            return SendOutcome.QUEUED;
+        }
+        switch (clientConfiguration.getStreamingOverflowPolicy()) {
+            case BLOCK:
+                try {
+                    if (messages.offer(command, clientConfiguration.getStreamingBlockTimeoutMillis(),
+                            TimeUnit.MILLISECONDS)) {
+                        return SendOutcome.QUEUED_AFTER_BLOCKING;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                counters.dropped.incrementAndGet();
+                return SendOutcome.TIMED_OUT;
+            case DROP_OLDEST:
+                do {
+                    if (messages.poll() != null) {
+                        counters.dropped.incrementAndGet();
+                    }
+                } while (!messages.offer(command));
+                return SendOutcome.QUEUED_DROPPED_OLDEST;
+            case SPILL_TO_DISK:
+                if (spill(command)) {
+                    return SendOutcome.SPILLED;
+                }
+                counters.dropped.incrementAndGet();
+                return SendOutcome.DROPPED_NEWEST;
+            default:
+                counters.dropped.incrementAndGet();
+                return SendOutcome.DROPPED_NEWEST;
+        }
+    }
+
+    private boolean spillIfNotEmpty(PlainCommand command) {
+        try {
+            if (spill.appendIfNotEmpty(command)) {
+                counters.spilled.incrementAndGet();
+                return true;
+            }
+        } catch (IOException e) {
+            log.error("Could not spill command", e);
+        }
+        return false;
+    }
+
+    private boolean spill(PlainCommand command) {
+        try {
+            if (spill.append(command)) {
+                counters.spilled.incrementAndGet();
+                return true;
+            }
+            log.warn("Spill file is full, command is dropped");
+        } catch (IOException e) {
+            log.error("Could not spill command", e);
+        }
+        return false;
+    }
+
+    /**
+     * Put back the commands of a failed batch without blocking the writer: commands that do not fit into the queue
+     * are spilled if the spill file is enabled, otherwise dropped.
+     */
+    private void requeue(List<PlainCommand> batch) {
+        int lost = 0;
+        for (PlainCommand command : batch) {
+            if (!messages.offer(command) && (spill == null || !spill(command))) {
+                lost++;
+            }
+        }
+        if (lost > 0) {
+            counters.dropped.addAndGet(lost);
+            log.warn("Queue is full, {} commands of the failed batch are dropped", lost);
         }
-        messages.add(text);
-        log.debug("Message is added to queue, queue size = {}", messages.size());
     }
 
     @Override
@@ -118,77 +216,160 @@ class PlainStreamingSender extends AbstractHttpEntity implements Runnable {
     @Override
     public void writeTo(OutputStream outputStream) throws IOException {
         String marker = null;
+        int batchSize = Math.max(1, clientConfiguration.getStreamingBatchSize());
+        List<PlainCommand> batch = new ArrayList<>(batchSize);
+        String[] batchMarkers = new String[batchSize];
+        int[] starts = new int[batchSize];
+        int[] ends = new int[batchSize];
+        CommandEncoder encoder = new CommandEncoder(STREAMING_BUFFER_SIZE);
+        CommandEncoder controlEncoder = new CommandEncoder(SMALL);
         while (state == SenderState.WORKING) {
-            String message = null;
             try {
-                message = messages.poll(pingTimeoutMillis, TimeUnit.MILLISECONDS);
+                nextBatch(batch, batchSize);
             } catch (InterruptedException e) {
                 if (state == SenderState.WORKING) {
                     log.error("Could not poll message from queue", e);
                 }
             }
 
-            try {
-                if (message != null) {
-                    if (!clientConfiguration.isSkipStreamingControl() &&
-                            marker == null && !message.startsWith(MARKER_KEYWORD)
-                            ) {
-                        MarkerCommand markerCommand = new MarkerCommand();
-                        marker = markerCommand.getMarker();
-                        write(outputStream, markerCommand.compose());
-                    }
-
-                    log.debug("Write message: {}", message);
-                    write(outputStream, message);
-
-                    if (!clientConfiguration.isSkipStreamingControl()) {
-                        if (message.startsWith(MARKER_KEYWORD)) {
-                            marker = StringUtils.removeStart(message, MARKER_KEYWORD).trim();
-                            if (StringUtils.isBlank(marker)) {
-                                throw new IllegalArgumentException("Bad marker message: " + message);
-                            }
+            if (!batch.isEmpty()) {
+                encoder.reset(MAX_RETAINED_BUFFER_SIZE);
+                for (int i = 0; i < batch.size(); i++) {
+                    PlainCommand message = batch.get(i);
+                    int start = encoder.length();
+                    encoder.encode(message);
+                    batchMarkers[i] = null;
+                    if (isBlank(encoder, start)) {
+                        log.error("Command is empty");
+                        encoder.truncate(start);
+                    } else if (!clientConfiguration.isSkipStreamingControl()) {
+                        if (encoder.startsWith(start, MARKER_KEYWORD)) {
+                            marker = markerOf(message);
                         } else {
-                            add(marker, message);
+                            if (marker == null) {
+                                MarkerCommand markerCommand = new MarkerCommand();
+                                marker = markerCommand.getMarker();
+                                encoder.truncate(start);
+                                encoder.encode(markerCommand);
+                                start = encoder.length();
+                                encoder.encode(message);
+                            }
+                            batchMarkers[i] = marker;
+                            starts[i] = start;
+                            ends[i] = encoder.length();
                         }
                     }
+                }
 
-                    lastMessageTime = System.currentTimeMillis();
+                if (log.isDebugEnabled()) {
+                    log.debug("Write {} messages: {}", batch.size(), encoder);
                 }
-            } catch (IOException e) {
-                log.error("Sender is broken, close it. Could not send message: {}", message, e);
-                messages.add(message);
-                close();
-                return;
+                try {
+                    write(outputStream, encoder);
+                } catch (IOException e) {
+                    log.error("Sender is broken, close it. Could not send {} messages", batch.size(), e);
+                    requeue(batch);
+                    close();
+                    return;
+                }
+                counters.written(batch.size(), encoder.length());
+
+                record(encoder, batch.size(), batchMarkers, starts, ends);
+                batch.clear();
+                lastMessageTime = System.currentTimeMillis();
             }
             if (lastMessageTime - System.currentTimeMillis() > pingTimeoutMillis) {
-                write(outputStream, AtsdUtil.PING_COMMAND);
-                if (!clientConfiguration.isSkipStreamingControl()) {
-                    add(marker, AtsdUtil.PING_COMMAND);
+                controlEncoder.reset();
+                write(outputStream, controlEncoder.encode(PING));
+                if (!clientConfiguration.isSkipStreamingControl() && marker != null) {
+                    ledger.record(marker, controlEncoder.array(), 0, controlEncoder.length());
                 }
                 lastMessageTime = System.currentTimeMillis();
             }
         }
     }
 
-    private void write(OutputStream outputStream, String text) throws IOException {
-        outputStream.write(text.getBytes());
-        outputStream.flush();
+    /**
+     * Wait for the next batch of queued commands. Spilled commands are older than the queued ones,
+     * so they are picked up once the queue is drained.
+     */
+    private void nextBatch(List<PlainCommand> batch, int batchSize) throws InterruptedException {
+        if (spill != null && !spill.isEmpty() && messages.isEmpty()) {
+            try {
+                spill.drainTo(batch, batchSize);
+            } catch (IOException e) {
+                log.error("Could not read spilled commands", e);
+            }
+            return;
+        }
+        long pollMillis = spill == null ? pingTimeoutMillis : Math.min(pingTimeoutMillis, SPILL_POLL_MILLIS);
+        PlainCommand first = messages.poll(pollMillis, TimeUnit.MILLISECONDS);
+        if (first != null) {
+            batch.add(first);
+            fillBatch(batch, batchSize);
+        }
+    }
+
+    /**
+     * Take whatever is already queued, then keep waiting for more commands up to the configured linger time.
+     */
+    private void fillBatch(List<PlainCommand> batch, int batchSize) throws InterruptedException {
+        messages.drainTo(batch, batchSize - batch.size());
+        long lingerMillis = clientConfiguration.getStreamingLingerMillis();
+        if (lingerMillis <= 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        while (batch.size() < batchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            PlainCommand next = messages.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+            messages.drainTo(batch, batchSize - batch.size());
+        }
+    }
+
+    private static String markerOf(PlainCommand markerMessage) {
+        if (markerMessage instanceof MarkerCommand) {
+            return ((MarkerCommand) markerMessage).getMarker();
+        }
+        String text = markerMessage.compose();
+        String marker = StringUtils.removeStart(text, MARKER_KEYWORD).trim();
+        if (StringUtils.isBlank(marker)) {
+            throw new IllegalArgumentException("Bad marker message: " + text);
+        }
+        return marker;
     }
 
-    private void add(String marker, String message) {
-        if (clientConfiguration.isSkipStreamingControl()) {
-            log.error("Could not add message to marker, because streaming control is skipped, marker = {}, message= {}",
-                    marker, message);
-            throw new IllegalStateException("Could not add message to marker during skipped streaming control");
+    private static boolean isBlank(CommandEncoder encoder, int offset) {
+        byte[] bytes = encoder.array();
+        for (int i = offset; i < encoder.length(); i++) {
+            if (!Character.isWhitespace(bytes[i])) {
+                return false;
+            }
         }
+        return true;
+    }
+
+    private void write(OutputStream outputStream, CommandEncoder encoder) throws IOException {
+        encoder.writeTo(outputStream);
+        outputStream.flush();
+    }
 
-        List<String> stored = markerToMessages.get(marker);
-        if (stored == null) {
-            stored = new ArrayList<String>();
-            final List<String> prev = markerToMessages.putIfAbsent(marker, stored);
-            stored = prev == null ? stored : prev;
+    /**
+     * Pass the written commands to the delivery ledger.
+     */
+    private void record(CommandEncoder encoder, int size, String[] markers, int[] starts, int[] ends) {
+        for (int i = 0; i < size; i++) {
+            if (markers[i] != null) {
+                ledger.record(markers[i], encoder.array(), starts[i], ends[i] - starts[i]);
+            }
         }
-        stored.add(message);
     }
 
     @Override
@@ -198,14 +379,11 @@ class PlainStreamingSender extends AbstractHttpEntity implements Runnable {
 
     @Override
     public void run() {
-        if (messages == null) {
-            messages = new LinkedBlockingQueue<String>();
-        }
         HttpPost httpPost = null;
         try {
             SslConfigurator sslConfig = SslConfigurator.newInstance().securityProtocol("SSL");
             connectionManager = HttpClient.createConnectionManager(clientConfiguration, sslConfig);
-            connectionManager.setDefaultConnectionConfig(ConnectionConfig.custom().setBufferSize(SMALL).build());
+            connectionManager.setDefaultConnectionConfig(ConnectionConfig.custom().setBufferSize(STREAMING_BUFFER_SIZE).build());
             httpClient = HttpClients.custom()
                     .setConnectionManager(connectionManager)
                     .build();
@@ -270,8 +448,81 @@ class PlainStreamingSender extends AbstractHttpEntity implements Runnable {
         return state == SenderState.CLOSED;
     }
 
-    public Map<String, List<String>> getMarkerToMessages() {
-        return markerToMessages;
+    DeliveryLedger getLedger() {
+        return ledger;
+    }
+
+    /**
+     * Queue a command if there is room for it, the overflow policy is not applied.
+     *
+     * @param command command to queue
+     * @return false if the queue is full or the sender is not working
+     */
+    boolean offer(PlainCommand command) {
+        return state == SenderState.WORKING && messages.offer(command);
+    }
+
+    /**
+     * Remove the commands that are queued or spilled and not written yet.
+     *
+     * @param target list to add the commands to
+     * @return number of removed commands
+     */
+    int drainQueued(List<PlainCommand> target) {
+        int count = messages.drainTo(target);
+        if (spill != null) {
+            try {
+                while (!spill.isEmpty()) {
+                    count += spill.drainTo(target, Integer.MAX_VALUE);
+                }
+            } catch (IOException e) {
+                log.error("Could not read spilled commands", e);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Release the spill file, called when the streaming manager is closed and no sender will reuse it.
+     */
+    void releaseSpill() {
+        if (spill != null) {
+            spill.close();
+        }
+    }
+
+    StreamingMetrics getMetrics() {
+        return counters.snapshot(messages.size(), spill == null ? 0 : spill.size(), ledger);
+    }
+
+    /**
+     * Batch counters are updated by the writer thread only, overflow counters by the sending threads,
+     * all of them are read by any thread.
+     */
+    private static final class Counters {
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong spilled = new AtomicLong();
+        private volatile long commands;
+        private volatile long batches;
+        private volatile long bytes;
+        private volatile int lastBatchSize;
+        private volatile int maxBatchSize;
+
+        void written(int batchSize, int batchBytes) {
+            commands += batchSize;
+            batches++;
+            bytes += batchBytes;
+            lastBatchSize = batchSize;
+            if (batchSize > maxBatchSize) {
+                maxBatchSize = batchSize;
+            }
+        }
+
+        StreamingMetrics snapshot(int queueSize, int spillSize, DeliveryLedger ledger) {
+            return new StreamingMetrics(queueSize, commands, batches, bytes, lastBatchSize, maxBatchSize,
+                    dropped.get(), spilled.get(), spillSize, ledger.getCommands(), ledger.getBytes(),
+                    ledger.getOverflow());
+        }
     }
 
     private enum SenderState {
@@ -35,7 +35,7 @@ class RequestBodyLogger implements ClientRequestFilter {
                 if (log.isDebugEnabled()) {
                     log.debug(new String(bytes, i, i1));
                 }
-                super.write(bytes, i, i1);
+                out.write(bytes, i, i1);
             }
         };
         clientRequestContext.setEntityStream(outputStream);
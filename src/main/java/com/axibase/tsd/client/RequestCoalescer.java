@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets concurrent identical requests share one call. The first caller of a key executes the request, callers that
+ * arrive while it is in flight wait for it and receive the same decoded result or the same exception. Nothing is
+ * kept after the call completes, so this is not a cache: a request issued after completion is sent again.
+ * <p>
+ * Shared results are the same object for all callers and must not be modified.
+ * </p>
+ */
+public class RequestCoalescer {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final ConcurrentMap<String, Call> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong merges = new AtomicLong();
+
+    /**
+     * @param path request path
+     * @param body request body, serialized to JSON to build the key
+     * @return key of identical requests, null if the body cannot be serialized
+     */
+    static String keyOf(String path, Object body) {
+        try {
+            return path + ' ' + MAPPER.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param key     key of identical requests, a null key executes the request without coalescing
+     * @param request request to execute if no identical request is in flight
+     * @return decoded result of the request
+     */
+    @SuppressWarnings("unchecked")
+    <T> T execute(String key, Callable<T> request) {
+        requests.incrementAndGet();
+        if (key == null) {
+            return call(request);
+        }
+        Call call = new Call();
+        Call existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            hits.incrementAndGet();
+            if (existing.followers.getAndIncrement() == 0) {
+                merges.incrementAndGet();
+            }
+            return (T) existing.await();
+        }
+        try {
+            call.result = call(request);
+            return (T) call.result;
+        } catch (RuntimeException e) {
+            call.failure = e;
+            throw e;
+        } catch (Error e) {
+            call.failure = new AtsdClientException("Identical request failed", e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+            call.done.countDown();
+        }
+    }
+
+    private static <T> T call(Callable<T> request) {
+        try {
+            return request.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new AtsdClientException("Request failed", e);
+        }
+    }
+
+    /**
+     * @return number of requests passed to the coalescer
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return number of requests that received the result of an identical request in flight instead of being sent
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of sent requests whose result was shared with at least one other caller
+     */
+    public long getMerges() {
+        return merges.get();
+    }
+
+    /**
+     * @return number of requests in flight
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    private static final class Call {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final AtomicLong followers = new AtomicLong();
+        private volatile Object result;
+        private volatile RuntimeException failure;
+
+        Object await() {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AtsdClientException("Interrupted while waiting for an identical request", e);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+/**
+ * Result of passing a command to the {@link StreamingManager}.
+ */
+public enum SendOutcome {
+    /**
+     * The command is queued.
+     */
+    QUEUED,
+    /**
+     * The command is queued after waiting for free space in the full queue.
+     */
+    QUEUED_AFTER_BLOCKING,
+    /**
+     * The command is queued, the oldest queued command was dropped to make room for it.
+     */
+    QUEUED_DROPPED_OLDEST,
+    /**
+     * The queue was full and the command was dropped.
+     */
+    DROPPED_NEWEST,
+    /**
+     * The queue stayed full for the whole block timeout and the command was dropped.
+     */
+    TIMED_OUT,
+    /**
+     * The command is written to the spill file and will be sent after the queue is drained.
+     */
+    SPILLED;
+
+    /**
+     * @return true if the command will be sent
+     */
+    public boolean isAccepted() {
+        return this != DROPPED_NEWEST && this != TIMED_OUT;
+    }
+}
@@ -0,0 +1,446 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.data.TimeFormat;
+import com.axibase.tsd.model.data.command.GetSeriesQuery;
+import com.axibase.tsd.model.data.series.Interval;
+import com.axibase.tsd.model.data.series.Sample;
+import com.axibase.tsd.model.data.series.Series;
+import com.axibase.tsd.util.AtsdUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Result cache of {@link DataService#retrieveSeries(GetSeriesQuery...)} bounded by the estimated size of the cached
+ * samples. The least recently used results are evicted first, every result expires
+ * {@link com.axibase.tsd.model.system.ClientConfiguration#getSeriesCacheTtlMillis()} milliseconds after it was read
+ * from the server.
+ * <p>
+ * Results are keyed by the query serialized with sorted tags, without {@code requestId}. Raw queries that end now,
+ * with {@code endDate} set to {@code now} or with only an {@code interval} of seconds to weeks, keep the closed
+ * part of the range: samples older than
+ * {@link com.axibase.tsd.model.system.ClientConfiguration#getSeriesCacheOpenTailMillis()}. A repeated query reads only
+ * the samples after the closed part and combines them with the cached ones. Other queries with calendar expression
+ * dates and queries with a start and an {@code interval}, which select the interval after the start, are cached as a
+ * whole, so the result can be up to the TTL old. Queries of last values are always sent.
+ * </p>
+ * <p>
+ * Callers receive their own series and sample lists, the samples themselves are shared and must not be modified.
+ * </p>
+ */
+public class SeriesCache {
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+    private static final long SERIES_BYTES = 128;
+    private static final long SAMPLE_BYTES = 64;
+
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final long openTailMillis;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong tailHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Reads the series the cache cannot provide.
+     */
+    interface Fetcher {
+        List<Series> fetch(List<GetSeriesQuery> seriesQueries);
+    }
+
+    /**
+     * @param maxBytes       limit of the estimated size of cached samples
+     * @param ttlMillis      time a result is used after it was read from the server
+     * @param openTailMillis most recent period of queries ending now that is not cached
+     */
+    public SeriesCache(long maxBytes, long ttlMillis, long openTailMillis) {
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+        this.openTailMillis = openTailMillis;
+    }
+
+    /**
+     * @param seriesQueries queries to execute
+     * @param fetcher       reads the missing results, all of them in one request
+     * @return series of all queries in query order
+     */
+    List<Series> retrieve(GetSeriesQuery[] seriesQueries, Fetcher fetcher) {
+        long now = System.currentTimeMillis();
+        List<Plan> plans = new ArrayList<>(seriesQueries.length);
+        List<GetSeriesQuery> fetchQueries = new ArrayList<>();
+        for (GetSeriesQuery seriesQuery : seriesQueries) {
+            Plan plan = plan(seriesQuery, now);
+            if (plan.fetchQuery != null) {
+                plan.fetchQuery.setRequestId(Integer.toString(fetchQueries.size()));
+                fetchQueries.add(plan.fetchQuery);
+            }
+            plans.add(plan);
+        }
+        Map<String, List<Series>> fetched = fetchQueries.isEmpty()
+                ? Collections.<String, List<Series>>emptyMap()
+                : groupByRequestId(fetcher.fetch(fetchQueries), fetchQueries.size());
+        List<Series> result = new ArrayList<>();
+        for (Plan plan : plans) {
+            List<Series> planResult;
+            if (plan.fetchQuery == null) {
+                planResult = copyOf(plan.cached.series, Long.MIN_VALUE, Long.MAX_VALUE);
+            } else {
+                List<Series> response = fetched.get(plan.fetchQuery.getRequestId());
+                if (response == null) {
+                    response = Collections.emptyList();
+                }
+                planResult = plan.start == null ? storeExact(plan, response) : storeTail(plan, response, now);
+            }
+            for (Series series : planResult) {
+                series.setRequestId(plan.seriesQuery.getRequestId());
+            }
+            result.addAll(planResult);
+        }
+        return result;
+    }
+
+    private Plan plan(GetSeriesQuery seriesQuery, long now) {
+        Plan plan = new Plan(seriesQuery);
+        if (Boolean.TRUE.equals(seriesQuery.getCache())) {
+            // last values are not cached
+            plan.fetchQuery = seriesQuery.copy();
+            return plan;
+        }
+        Long start = openRangeStart(seriesQuery, now);
+        if (start != null) {
+            plan.start = start;
+            plan.key = keyOf(seriesQuery.copy().setStartTime(null).setEndTime(null).setStartDate(null)
+                    .setEndDate(null).setInterval(null).setRequestId(null));
+            Entry entry = get(plan.key, now);
+            long fetchStart = start;
+            if (entry != null && entry.start <= start) {
+                plan.cached = entry;
+                fetchStart = Math.max(start, entry.closedEnd);
+                tailHits.incrementAndGet();
+            } else {
+                misses.incrementAndGet();
+            }
+            plan.fetchQuery = seriesQuery.copy().setStartDate(null).setEndDate(null).setInterval(null)
+                    .setStartTime(fetchStart).setEndTime(now);
+            return plan;
+        }
+        plan.key = keyOf(seriesQuery.copy().setRequestId(null));
+        Entry entry = plan.key == null ? null : get(plan.key, now);
+        if (entry != null) {
+            plan.cached = entry;
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            plan.fetchQuery = seriesQuery.copy();
+        }
+        return plan;
+    }
+
+    private List<Series> storeExact(Plan plan, List<Series> response) {
+        if (plan.key != null) {
+            put(plan.key, new Entry(copyOf(response, Long.MIN_VALUE, Long.MAX_VALUE), System.currentTimeMillis(),
+                    Long.MIN_VALUE, Long.MAX_VALUE));
+        }
+        return copyOf(response, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    private List<Series> storeTail(Plan plan, List<Series> response, long now) {
+        long start = plan.start;
+        Entry cached = plan.cached;
+        long closedEnd = now - openTailMillis;
+        Map<String, Series> closed = new LinkedHashMap<>();
+        if (cached != null) {
+            closedEnd = Math.max(closedEnd, cached.closedEnd);
+            for (Series series : copyOf(cached.series, start, cached.closedEnd)) {
+                closed.put(series.getTimeSeriesKey(), series);
+            }
+        }
+        Map<String, Series> result = new LinkedHashMap<>();
+        for (Series series : closed.values()) {
+            result.put(series.getTimeSeriesKey(), copyOf(series, start, Long.MAX_VALUE));
+        }
+        for (Series series : response) {
+            String key = series.getTimeSeriesKey();
+            Series closedSeries = closed.get(key);
+            if (closedSeries == null) {
+                closedSeries = copyOf(series, start, start);
+                closed.put(key, closedSeries);
+            }
+            Series resultSeries = result.get(key);
+            if (resultSeries == null) {
+                resultSeries = copyOf(series, start, start);
+                result.put(key, resultSeries);
+            }
+            if (series.getData() != null) {
+                for (Sample sample : series.getData()) {
+                    Long time = sample.getTimeMillis();
+                    if (time == null || time < start) {
+                        continue;
+                    }
+                    if (time < closedEnd) {
+                        closedSeries.getData().add(sample);
+                    }
+                    resultSeries.getData().add(sample);
+                }
+            }
+        }
+        put(plan.key, new Entry(new ArrayList<>(closed.values()),
+                cached == null ? System.currentTimeMillis() : cached.created, start, closedEnd));
+        return new ArrayList<>(result.values());
+    }
+
+    /**
+     * @return start of a raw query that ends now, null if the query is cached as a whole
+     */
+    static Long openRangeStart(GetSeriesQuery seriesQuery, long now) {
+        if (seriesQuery.getLimit() != null || Boolean.TRUE.equals(seriesQuery.getCache())
+                || seriesQuery.getJoin() != null || seriesQuery.getRate() != null
+                || seriesQuery.getAggregateMatcher() != null || seriesQuery.getTimeFormat() == TimeFormat.ISO
+                || seriesQuery.getEndTime() != null) {
+            return null;
+        }
+        String endDate = seriesQuery.getEndDate();
+        if (endDate != null && !"now".equalsIgnoreCase(endDate.trim())) {
+            return null;
+        }
+        boolean hasStart = seriesQuery.getStartTime() != null || seriesQuery.getStartDate() != null;
+        if (hasStart && seriesQuery.getInterval() != null) {
+            // the interval is the length of the selection after the start, the range does not end now
+            return null;
+        }
+        if (seriesQuery.getStartTime() != null) {
+            return seriesQuery.getStartTime();
+        }
+        if (seriesQuery.getStartDate() != null) {
+            try {
+                return AtsdUtil.DateTime.parseDate(seriesQuery.getStartDate()).getTime();
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+        Long intervalMillis = intervalMillis(seriesQuery.getInterval());
+        return intervalMillis == null ? null : now - intervalMillis;
+    }
+
+    private static Long intervalMillis(Interval interval) {
+        if (interval == null || interval.getUnit() == null) {
+            return null;
+        }
+        switch (interval.getUnit()) {
+            case SECOND:
+                return TimeUnit.SECONDS.toMillis(interval.getCount());
+            case MINUTE:
+                return TimeUnit.MINUTES.toMillis(interval.getCount());
+            case HOUR:
+                return TimeUnit.HOURS.toMillis(interval.getCount());
+            case DAY:
+                return TimeUnit.DAYS.toMillis(interval.getCount());
+            case WEEK:
+                return TimeUnit.DAYS.toMillis(7L * interval.getCount());
+            default:
+                // calendar units are evaluated by the server
+                return null;
+        }
+    }
+
+    private static String keyOf(GetSeriesQuery seriesQuery) {
+        try {
+            return MAPPER.writeValueAsString(seriesQuery);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    private static Map<String, List<Series>> groupByRequestId(List<Series> response, int queries) {
+        Map<String, List<Series>> grouped = new HashMap<>();
+        for (Series series : response) {
+            String requestId = queries == 1 ? "0" : series.getRequestId();
+            List<Series> group = grouped.get(requestId);
+            if (group == null) {
+                group = new ArrayList<>();
+                grouped.put(requestId, group);
+            }
+            group.add(series);
+        }
+        return grouped;
+    }
+
+    /**
+     * @return copies of the series with the samples of [from, to)
+     */
+    private static List<Series> copyOf(List<Series> seriesList, long from, long to) {
+        List<Series> copies = new ArrayList<>(seriesList.size());
+        for (Series series : seriesList) {
+            copies.add(copyOf(series, from, to));
+        }
+        return copies;
+    }
+
+    private static Series copyOf(Series series, long from, long to) {
+        Series copy = new Series();
+        copy.setRequestId(series.getRequestId());
+        copy.setEntityName(series.getEntityName());
+        copy.setMetricName(series.getMetricName());
+        copy.setTags(series.getTags());
+        copy.setType(series.getType());
+        copy.setRate(series.getRate());
+        copy.setAggregate(series.getAggregate());
+        List<Sample> data = new ArrayList<>();
+        if (series.getData() != null) {
+            for (Sample sample : series.getData()) {
+                Long time = sample.getTimeMillis();
+                if (time == null || time >= from && time < to) {
+                    data.add(sample);
+                }
+            }
+        }
+        copy.setData(data);
+        return copy;
+    }
+
+    private synchronized Entry get(String key, long now) {
+        Entry entry = entries.get(key);
+        if (entry != null && now - entry.created >= ttlMillis) {
+            remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        remove(key);
+        if (entry.bytes > maxBytes) {
+            return;
+        }
+        entries.put(key, entry);
+        bytes += entry.bytes;
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().getValue().bytes;
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            bytes -= removed.bytes;
+        }
+    }
+
+    /**
+     * Remove all cached results.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return number of queries answered from the cache without a request
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of queries ending now answered from the cache and a request of the open tail
+     */
+    public long getTailHits() {
+        return tailHits.get();
+    }
+
+    /**
+     * @return number of queries read from the server completely
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of results evicted to stay within the size limit
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return estimated size of cached results
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return number of cached results
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    private static final class Plan {
+        private final GetSeriesQuery seriesQuery;
+        private String key;
+        private Long start;
+        private Entry cached;
+        private GetSeriesQuery fetchQuery;
+
+        private Plan(GetSeriesQuery seriesQuery) {
+            this.seriesQuery = seriesQuery;
+        }
+    }
+
+    /**
+     * Cached series, for a query ending now the samples of [start, closedEnd).
+     */
+    private static final class Entry {
+        private final List<Series> series;
+        private final long created;
+        private final long start;
+        private final long closedEnd;
+        private final long bytes;
+
+        private Entry(List<Series> series, long created, long start, long closedEnd) {
+            this.series = series;
+            this.created = created;
+            this.start = start;
+            this.closedEnd = closedEnd;
+            long size = 0;
+            for (Series item : series) {
+                size += SERIES_BYTES;
+                for (Sample sample : item.getData()) {
+                    size += SAMPLE_BYTES + (sample.getTextValue() == null ? 0 : 2L * sample.getTextValue().length());
+                }
+            }
+            this.bytes = size;
+        }
+    }
+}
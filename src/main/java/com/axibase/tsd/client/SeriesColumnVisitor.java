@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.data.series.Series;
+
+/**
+ * Receives series samples as primitive values, see {@link SeriesCsvReader}.
+ */
+public interface SeriesColumnVisitor {
+    /**
+     * Called before the first sample of a run of consecutive samples of a series.
+     *
+     * @param series series key, the same instance is passed for every run of the series
+     */
+    void beginSeries(Series series);
+
+    /**
+     * Called for every sample in response order.
+     *
+     * @param series     series the sample belongs to
+     * @param timeMillis sample time in milliseconds from 1970-01-01 00:00:00
+     * @param value      sample value, {@link Double#NaN} if absent
+     */
+    void visitSample(Series series, long timeMillis, double value);
+
+    /**
+     * Called after the last sample of a run of consecutive samples of a series.
+     *
+     * @param series series key
+     */
+    void endSeries(Series series);
+}
@@ -0,0 +1,507 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.data.series.ColumnarSeries;
+import com.axibase.tsd.model.data.series.Series;
+import com.axibase.tsd.util.AtsdUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses the CSV returned by {@link DataService#querySeriesPack} with the {@code time} or {@code date},
+ * {@code entity}, {@code metric}, {@code t:*} and {@code value} columns, other columns are skipped.
+ * <p>
+ * The stream is read in chunks of {@link #DEFAULT_CHUNK_SIZE} bytes and rows are parsed in place: times and values are
+ * decoded straight from the bytes and no object is created per row. The key columns of a row are compared as bytes with
+ * the previous row, strings and the {@link Series} are created only when the series changes. Throughput is limited
+ * by the stream rather than by the parser.
+ * </p>
+ */
+public class SeriesCsvReader {
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private final int chunkSize;
+
+    public SeriesCsvReader() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize number of bytes read from the stream at once, rows longer than a chunk are supported
+     */
+    public SeriesCsvReader(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Parse the stream and pass every sample to the visitor. The stream is not closed.
+     *
+     * @param inputStream CSV with a header row
+     * @param visitor     receives series and samples in stream order
+     * @return number of samples
+     * @throws IOException if the stream could not be read
+     */
+    public long read(InputStream inputStream, SeriesColumnVisitor visitor) throws IOException {
+        return new Parser(inputStream, chunkSize).parse(visitor);
+    }
+
+    /**
+     * Parse the stream into primitive columns, one {@link ColumnarSeries} per series in order of first appearance.
+     * The stream is not closed.
+     *
+     * @param inputStream CSV with a header row
+     * @return list of {@code ColumnarSeries}
+     * @throws IOException if the stream could not be read
+     */
+    public List<ColumnarSeries> readColumns(InputStream inputStream) throws IOException {
+        final Map<Series, ColumnarSeries> columns = new IdentityHashMap<>();
+        final List<ColumnarSeries> result = new ArrayList<>();
+        read(inputStream, new SeriesColumnVisitor() {
+            private ColumnarSeries current;
+
+            @Override
+            public void beginSeries(Series series) {
+                current = columns.get(series);
+                if (current == null) {
+                    current = new ColumnarSeries(series);
+                    columns.put(series, current);
+                    result.add(current);
+                }
+            }
+
+            @Override
+            public void visitSample(Series series, long timeMillis, double value) {
+                current.add(timeMillis, value, null);
+            }
+
+            @Override
+            public void endSeries(Series series) {
+                current = null;
+            }
+        });
+        for (ColumnarSeries series : result) {
+            series.trimToSize();
+        }
+        return result;
+    }
+
+    /**
+     * Decode a decimal number from ASCII bytes. Plain decimals with up to 15 significant digits are converted with
+     * one exact division, which is correctly rounded, other forms are delegated to {@link Double#parseDouble}.
+     */
+    static double parseDouble(byte[] bytes, int start, int end) {
+        if (start == end) {
+            return Double.NaN;
+        }
+        int i = start;
+        boolean negative = bytes[i] == '-';
+        if (negative || bytes[i] == '+') {
+            i++;
+        }
+        long mantissa = 0;
+        int fractionDigits = -1;
+        int digits = 0;
+        boolean hasDigits = false;
+        for (; i < end; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                hasDigits = true;
+                mantissa = mantissa * 10 + (b - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                break;
+            }
+        }
+        if (i < end || !hasDigits || digits > 15 || fractionDigits >= CsvBytes.POWERS_OF_TEN.length) {
+            String text = new String(bytes, start, end - start, StandardCharsets.US_ASCII);
+            try {
+                return Double.parseDouble(text);
+            } catch (NumberFormatException e) {
+                throw new AtsdClientException("Invalid value: " + text, e);
+            }
+        }
+        double value = fractionDigits > 0 ? mantissa / CsvBytes.POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Decode a time in milliseconds from ASCII bytes.
+     */
+    static long parseLong(byte[] bytes, int start, int end) {
+        int i = start;
+        boolean negative = i < end && bytes[i] == '-';
+        if (negative) {
+            i++;
+        }
+        long value = 0;
+        if (i == end || end - i > 18) {
+            return parseLongSlow(bytes, start, end);
+        }
+        for (; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return parseLongSlow(bytes, start, end);
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    private static long parseLongSlow(byte[] bytes, int start, int end) {
+        String text = new String(bytes, start, end - start, StandardCharsets.US_ASCII);
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw new AtsdClientException("Invalid time: " + text, e);
+        }
+    }
+
+    /**
+     * Decode an ISO 8601 date. The UTC form {@code yyyy-MM-ddTHH:mm:ss[.S*]Z} returned by the server is decoded from
+     * the bytes, other forms are delegated to {@link AtsdUtil.DateTime#parseDate(String)}.
+     */
+    static long parseDate(byte[] bytes, int start, int end) {
+        int length = end - start;
+        if (length >= 20 && bytes[start + 4] == '-' && bytes[start + 7] == '-' && bytes[start + 10] == 'T'
+                && bytes[start + 13] == ':' && bytes[start + 16] == ':' && bytes[end - 1] == 'Z'
+                && (length == 20 || bytes[start + 19] == '.')) {
+            int year = digits(bytes, start, 4);
+            int month = digits(bytes, start + 5, 2);
+            int day = digits(bytes, start + 8, 2);
+            int hour = digits(bytes, start + 11, 2);
+            int minute = digits(bytes, start + 14, 2);
+            int second = digits(bytes, start + 17, 2);
+            int millis = 0;
+            int scale = 100;
+            for (int i = start + 20; i < end - 1 && millis >= 0; i++, scale /= 10) {
+                int digit = bytes[i] - '0';
+                millis = digit < 0 || digit > 9 ? -1 : millis + digit * scale;
+            }
+            if ((year | month | day | hour | minute | second | millis) >= 0) {
+                return CsvBytes.daysFromCivil(year, month, day) * CsvBytes.MILLIS_PER_DAY
+                        + hour * 3600000L + minute * 60000L + second * 1000L + millis;
+            }
+        }
+        String text = new String(bytes, start, length, StandardCharsets.US_ASCII);
+        try {
+            return AtsdUtil.DateTime.parseDate(text).getTime();
+        } catch (IllegalStateException e) {
+            throw new AtsdClientException("Invalid date: " + text, e);
+        }
+    }
+
+    /**
+     * @return value of the decimal digits, -1 if some byte is not a digit
+     */
+    private static int digits(byte[] bytes, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * State of one parse: the chunk buffer and the field boundaries of the current row.
+     */
+    private static final class Parser {
+        private final InputStream inputStream;
+        private byte[] buffer;
+        private int limit;
+        private int rowStart;
+        private boolean eof;
+
+        private int fieldCount;
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private boolean[] quoted = new boolean[16];
+
+        private int timeColumn = -1;
+        private int dateColumn = -1;
+        private int entityColumn = -1;
+        private int metricColumn = -1;
+        private int valueColumn = -1;
+        private int[] tagColumns = new int[0];
+        private String[] tagNames = new String[0];
+
+        private byte[] key = new byte[256];
+        private int keyLength = -1;
+        private byte[] previousKey = new byte[256];
+        private int previousKeyLength = -1;
+        private final Map<String, Series> seriesByKey = new HashMap<>();
+
+        private Parser(InputStream inputStream, int chunkSize) {
+            this.inputStream = inputStream;
+            buffer = new byte[chunkSize];
+        }
+
+        long parse(SeriesColumnVisitor visitor) throws IOException {
+            if (!nextRow()) {
+                return 0;
+            }
+            readHeader();
+            long samples = 0;
+            Series current = null;
+            while (nextRow()) {
+                if (fieldCount == 1 && starts[0] == ends[0]) {
+                    continue;
+                }
+                buildKey();
+                if (current == null || !sameKey()) {
+                    if (current != null) {
+                        visitor.endSeries(current);
+                    }
+                    current = series();
+                    visitor.beginSeries(current);
+                }
+                long time;
+                if (timeColumn >= 0 && timeColumn < fieldCount) {
+                    time = parseLong(buffer, starts[timeColumn], ends[timeColumn]);
+                } else if (dateColumn >= 0 && dateColumn < fieldCount) {
+                    time = parseDate(buffer, starts[dateColumn], ends[dateColumn]);
+                } else {
+                    throw new AtsdClientException("CSV row has no time: " + text(0));
+                }
+                double value = valueColumn >= 0 && valueColumn < fieldCount
+                        ? parseDouble(buffer, starts[valueColumn], ends[valueColumn]) : Double.NaN;
+                visitor.visitSample(current, time, value);
+                samples++;
+            }
+            if (current != null) {
+                visitor.endSeries(current);
+            }
+            return samples;
+        }
+
+        private void readHeader() {
+            List<Integer> tagIndexes = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < fieldCount; i++) {
+                String column = text(i).trim();
+                if ("time".equals(column)) {
+                    timeColumn = i;
+                } else if ("date".equals(column)) {
+                    dateColumn = i;
+                } else if ("entity".equals(column)) {
+                    entityColumn = i;
+                } else if ("metric".equals(column)) {
+                    metricColumn = i;
+                } else if ("value".equals(column)) {
+                    valueColumn = i;
+                } else if (column.startsWith("t:")) {
+                    tagIndexes.add(i);
+                    names.add(column.substring(2));
+                }
+            }
+            if (timeColumn < 0 && dateColumn < 0) {
+                throw new AtsdClientException("CSV header has no time or date column");
+            }
+            tagColumns = new int[tagIndexes.size()];
+            for (int i = 0; i < tagColumns.length; i++) {
+                tagColumns[i] = tagIndexes.get(i);
+            }
+            tagNames = names.toArray(new String[names.size()]);
+        }
+
+        /**
+         * Concatenate the key fields of the row as length-prefixed bytes, swapping the buffer of the previous key.
+         */
+        private void buildKey() {
+            byte[] swap = previousKey;
+            previousKey = key;
+            previousKeyLength = keyLength;
+            key = swap;
+            keyLength = 0;
+            appendKeyField(entityColumn);
+            appendKeyField(metricColumn);
+            for (int column : tagColumns) {
+                appendKeyField(column);
+            }
+        }
+
+        private void appendKeyField(int column) {
+            int start = column >= 0 && column < fieldCount ? starts[column] : 0;
+            int length = column >= 0 && column < fieldCount ? ends[column] - start : 0;
+            if (keyLength + length + 4 > key.length) {
+                key = Arrays.copyOf(key, Math.max(key.length * 2, keyLength + length + 4));
+            }
+            key[keyLength++] = (byte) (length >>> 24);
+            key[keyLength++] = (byte) (length >>> 16);
+            key[keyLength++] = (byte) (length >>> 8);
+            key[keyLength++] = (byte) length;
+            System.arraycopy(buffer, start, key, keyLength, length);
+            keyLength += length;
+        }
+
+        private boolean sameKey() {
+            if (keyLength != previousKeyLength) {
+                return false;
+            }
+            for (int i = 0; i < keyLength; i++) {
+                if (key[i] != previousKey[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private Series series() {
+            String mapKey = new String(key, 0, keyLength, StandardCharsets.ISO_8859_1);
+            Series series = seriesByKey.get(mapKey);
+            if (series == null) {
+                series = new Series();
+                series.setEntityName(optionalText(entityColumn));
+                series.setMetricName(optionalText(metricColumn));
+                Map<String, String> tags = new LinkedHashMap<>();
+                for (int i = 0; i < tagColumns.length; i++) {
+                    String value = optionalText(tagColumns[i]);
+                    if (value != null && !value.isEmpty()) {
+                        tags.put(tagNames[i], value);
+                    }
+                }
+                series.setTags(tags);
+                seriesByKey.put(mapKey, series);
+            }
+            return series;
+        }
+
+        private String optionalText(int column) {
+            return column >= 0 && column < fieldCount ? text(column) : null;
+        }
+
+        private String text(int column) {
+            String text = new String(buffer, starts[column], ends[column] - starts[column], StandardCharsets.UTF_8);
+            return quoted[column] ? text.replace("\"\"", "\"") : text;
+        }
+
+        /**
+         * Find the fields of the next row, reading more of the stream if the row is incomplete.
+         *
+         * @return false at the end of the stream
+         */
+        private boolean nextRow() throws IOException {
+            while (true) {
+                if (scanRow()) {
+                    return true;
+                }
+                if (eof) {
+                    return false;
+                }
+                fill();
+            }
+        }
+
+        /**
+         * @return true if a complete row starts at {@link #rowStart}, the row is consumed
+         */
+        private boolean scanRow() {
+            fieldCount = 0;
+            int start = rowStart;
+            boolean inQuotes = false;
+            boolean fieldQuoted = false;
+            for (int i = rowStart; i < limit; i++) {
+                byte b = buffer[i];
+                if (inQuotes) {
+                    if (b == '"') {
+                        if (i + 1 == limit && !eof) {
+                            return false;
+                        }
+                        if (i + 1 < limit && buffer[i + 1] == '"') {
+                            i++;
+                        } else {
+                            inQuotes = false;
+                        }
+                    }
+                } else if (b == '"' && i == start) {
+                    inQuotes = true;
+                    fieldQuoted = true;
+                } else if (b == ',') {
+                    addField(start, i, fieldQuoted);
+                    start = i + 1;
+                    fieldQuoted = false;
+                } else if (b == '\n') {
+                    addField(start, i > start && buffer[i - 1] == '\r' ? i - 1 : i, fieldQuoted);
+                    rowStart = i + 1;
+                    return true;
+                }
+            }
+            if (eof && limit > rowStart) {
+                addField(start, limit > start && buffer[limit - 1] == '\r' ? limit - 1 : limit, fieldQuoted);
+                rowStart = limit;
+                return true;
+            }
+            return false;
+        }
+
+        private void addField(int start, int end, boolean fieldQuoted) {
+            if (fieldCount == starts.length) {
+                starts = Arrays.copyOf(starts, fieldCount * 2);
+                ends = Arrays.copyOf(ends, fieldCount * 2);
+                quoted = Arrays.copyOf(quoted, fieldCount * 2);
+            }
+            if (fieldQuoted && end - start >= 2) {
+                start++;
+                end--;
+            }
+            starts[fieldCount] = start;
+            ends[fieldCount] = end;
+            quoted[fieldCount] = fieldQuoted;
+            fieldCount++;
+        }
+
+        /**
+         * Move the incomplete row to the start of the buffer, grow the buffer if the row fills it, and read more.
+         */
+        private void fill() throws IOException {
+            if (rowStart > 0) {
+                System.arraycopy(buffer, rowStart, buffer, 0, limit - rowStart);
+                limit -= rowStart;
+                rowStart = 0;
+            } else if (limit == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int read = inputStream.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                eof = true;
+            } else {
+                limit += read;
+            }
+        }
+    }
+}
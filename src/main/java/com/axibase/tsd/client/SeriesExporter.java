@@ -0,0 +1,422 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.data.command.GetSeriesQuery;
+import com.axibase.tsd.model.data.series.Sample;
+import com.axibase.tsd.model.data.series.Series;
+import com.axibase.tsd.model.system.ClientConfiguration;
+import com.axibase.tsd.util.AtsdUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports the raw samples of a series query to a CSV file with the columns {@code date,entity,metric,tags,value}.
+ * <p>
+ * The time range is split into windows of {@link ClientConfiguration#getExportWindowMillis()} that are requested
+ * concurrently and decoded as streams, so a window never holds its samples as a list. The stream reader still creates a
+ * {@code Sample} per point and parses ISO dates of samples without a timestamp. The date and value of a row are
+ * formatted straight into a byte buffer without intermediate strings, the entity, metric and tags columns are formatted
+ * once per series. Windows are written in time order through a file channel and a direct buffer of
+ * {@link ClientConfiguration#getExportBufferSize()} bytes. A window keeps at most as many bytes in memory, the rest of
+ * a dense window goes to a temporary part file next to the export, so the heap footprint does not depend on the density
+ * of the series. With gzip, every window is a separate gzip member, which gzip readers decode as one file.
+ * </p>
+ * <p>
+ * After each window the file is synced and a checkpoint file with the suffix {@value #CHECKPOINT_SUFFIX} is replaced
+ * atomically. An export that fails or is interrupted is resumed by running it again with the same query and file:
+ * the file is truncated to the last completed window and the remaining windows are requested. The checkpoint is
+ * deleted when the export completes.
+ * </p>
+ */
+public class SeriesExporter {
+    public static final String CHECKPOINT_SUFFIX = ".export";
+
+    private static final Logger log = LoggerFactory.getLogger(SeriesExporter.class);
+    private static final byte[] HEADER = "date,entity,metric,tags,value\n".getBytes(StandardCharsets.US_ASCII);
+    private static final int INITIAL_WINDOW_BYTES = 64 * 1024;
+    private final HttpClientManager httpClientManager;
+    private final DataService dataService;
+    private final int parallelism;
+    private final long windowMillis;
+    private final int bufferSize;
+    private final AtomicLong windows = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    public SeriesExporter(HttpClientManager httpClientManager) {
+        this(httpClientManager,
+                httpClientManager.getClientConfiguration().getExportParallelism(),
+                httpClientManager.getClientConfiguration().getExportWindowMillis(),
+                httpClientManager.getClientConfiguration().getExportBufferSize());
+    }
+
+    /**
+     * @param httpClientManager client used to send the requests
+     * @param parallelism       number of windows requested concurrently
+     * @param windowMillis      length of a window in milliseconds
+     * @param bufferSize        size of the direct buffer used to write the file and of the rows a window keeps in
+     *                          memory before it moves them to a part file
+     */
+    public SeriesExporter(HttpClientManager httpClientManager, int parallelism, long windowMillis, int bufferSize) {
+        if (parallelism <= 0 || windowMillis <= 0 || bufferSize <= 0) {
+            throw new IllegalArgumentException("Parallelism, window and buffer size must be positive");
+        }
+        this.httpClientManager = httpClientManager;
+        this.dataService = new DataService(httpClientManager);
+        this.parallelism = parallelism;
+        this.windowMillis = windowMillis;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Export the samples, resuming a previous export of the same query to the same file if its checkpoint exists.
+     * An existing file without a checkpoint is overwritten.
+     *
+     * @param seriesQuery query of raw samples with a numeric or ISO 8601 start and end, without {@code interval},
+     *                    {@code limit}, {@code cache}, {@code join}, {@code rate} or {@code aggregate}
+     * @param file        CSV file to write
+     * @param gzip        compress the file with gzip
+     * @return number of samples written by this call
+     * @throws IOException if the file or the checkpoint cannot be written
+     */
+    public long export(GetSeriesQuery seriesQuery, File file, boolean gzip) throws IOException {
+        long[] range = ParallelSeriesReader.timeRange(seriesQuery);
+        if (range == null) {
+            throw new IllegalArgumentException("Query must select raw samples between a fixed start and end");
+        }
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory " + parent);
+        }
+        File checkpointFile = new File(file.getPath() + CHECKPOINT_SUFFIX);
+        Properties checkpoint = checkpoint(seriesQuery, range, gzip);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long next = resume(checkpoint, checkpointFile, channel);
+            if (next < 0) {
+                channel.truncate(0);
+                CsvBytes header = new CsvBytes(HEADER.length);
+                header.append(HEADER);
+                write(channel, buffer, gzip ? compress(header) : header);
+                next = range[0];
+                save(channel, checkpoint, checkpointFile, next);
+            } else {
+                log.info("Resume export to {} from {}", file, AtsdUtil.DateTime.isoFormat(new Date(next)));
+            }
+            long samples = exportWindows(seriesQuery, next, range[1], gzip, parent, channel, buffer, checkpoint,
+                    checkpointFile);
+            Files.deleteIfExists(checkpointFile.toPath());
+            return samples;
+        }
+    }
+
+    /**
+     * @return number of window requests sent
+     */
+    public long getWindows() {
+        return windows.get();
+    }
+
+    /**
+     * @return number of bytes written to export files
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    private long exportWindows(final GetSeriesQuery seriesQuery, long start, long end, final boolean gzip,
+                               final File directory, final FileChannel channel, final ByteBuffer buffer,
+                               final Properties checkpoint, final File checkpointFile) throws IOException {
+        final long[] samples = new long[1];
+        ParallelTasks.forEachWindow(httpClientManager, parallelism, start, end, windowMillis,
+                new ParallelTasks.WindowHandler<Window, IOException>() {
+                    @Override
+                    Window window(long windowStart, long windowEnd) {
+                        windows.incrementAndGet();
+                        return new Window(seriesQuery, windowStart, windowEnd, gzip, directory);
+                    }
+
+                    @Override
+                    void pass(Window window) throws IOException {
+                        window.writeTo(channel, buffer);
+                        save(channel, checkpoint, checkpointFile, window.end);
+                        samples[0] += window.samples;
+                    }
+
+                    @Override
+                    void release(Window window) {
+                        window.discard();
+                    }
+                }, "exporting series");
+        return samples[0];
+    }
+
+    private void write(FileChannel channel, ByteBuffer buffer, CsvBytes output) throws IOException {
+        int offset = 0;
+        while (offset < output.length()) {
+            buffer.clear();
+            offset += output.copyTo(offset, buffer);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                bytes.addAndGet(channel.write(buffer));
+            }
+        }
+    }
+
+    /**
+     * @return time to continue from, negative if the export starts over
+     */
+    private static long resume(Properties checkpoint, File checkpointFile, FileChannel channel) throws IOException {
+        if (!checkpointFile.isFile()) {
+            return -1;
+        }
+        Properties saved = new Properties();
+        try (InputStream input = Files.newInputStream(checkpointFile.toPath())) {
+            saved.load(input);
+        }
+        for (String name : checkpoint.stringPropertyNames()) {
+            if (!checkpoint.getProperty(name).equals(saved.getProperty(name))) {
+                throw new AtsdClientException("Checkpoint " + checkpointFile + " belongs to a different export, "
+                        + "delete it to start over");
+            }
+        }
+        try {
+            long offset = Long.parseLong(saved.getProperty("offset"));
+            long done = Long.parseLong(saved.getProperty("done"));
+            if (offset > channel.size()) {
+                throw new AtsdClientException("Export file is shorter than recorded in " + checkpointFile);
+            }
+            channel.truncate(offset);
+            channel.position(offset);
+            return done;
+        } catch (NumberFormatException e) {
+            throw new AtsdClientException("Invalid checkpoint " + checkpointFile, e);
+        }
+    }
+
+    private static void save(FileChannel channel, Properties checkpoint, File checkpointFile, long done)
+            throws IOException {
+        channel.force(false);
+        Properties current = new Properties();
+        current.putAll(checkpoint);
+        current.setProperty("done", Long.toString(done));
+        current.setProperty("offset", Long.toString(channel.position()));
+        File temporary = new File(checkpointFile.getPath() + ".tmp");
+        try (OutputStream output = Files.newOutputStream(temporary.toPath())) {
+            current.store(output, "ATSD series export");
+        }
+        Files.move(temporary.toPath(), checkpointFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Properties checkpoint(GetSeriesQuery seriesQuery, long[] range, boolean gzip) {
+        Properties checkpoint = new Properties();
+        String query = RequestCoalescer.keyOf("series", seriesQuery);
+        checkpoint.setProperty("query", query == null ? "" : Integer.toHexString(query.hashCode()));
+        checkpoint.setProperty("start", Long.toString(range[0]));
+        checkpoint.setProperty("end", Long.toString(range[1]));
+        checkpoint.setProperty("window", Long.toString(windowMillis));
+        checkpoint.setProperty("gzip", Boolean.toString(gzip));
+        return checkpoint;
+    }
+
+    private static CsvBytes compress(CsvBytes output) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, output.length() / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed, INITIAL_WINDOW_BYTES)) {
+            gzip.write(output.array(), 0, output.length());
+        }
+        CsvBytes member = new CsvBytes(compressed.size());
+        member.append(compressed.toByteArray());
+        return member;
+    }
+
+    /**
+     * @return series columns of a row: entity, metric and tags followed by a separator each
+     */
+    static byte[] seriesColumns(Series series) {
+        CsvBytes columns = new CsvBytes(64);
+        columns.appendField(series.getEntityName()).append((byte) ',');
+        columns.appendField(series.getMetricName()).append((byte) ',');
+        if (series.getTags() != null && !series.getTags().isEmpty()) {
+            StringBuilder tags = new StringBuilder();
+            for (Map.Entry<String, String> tag : new TreeMap<>(series.getTags()).entrySet()) {
+                tags.append(tags.length() == 0 ? "" : ";").append(tag.getKey()).append('=').append(tag.getValue());
+            }
+            columns.appendField(tags.toString());
+        }
+        columns.append((byte) ',');
+        byte[] result = new byte[columns.length()];
+        System.arraycopy(columns.array(), 0, result, 0, result.length);
+        return result;
+    }
+
+    /**
+     * Rows of one time window: in memory while they fit into the buffer size, then in a part file.
+     */
+    private final class Window implements Callable<Window>, SeriesVisitor {
+        private final GetSeriesQuery seriesQuery;
+        private final long end;
+        private final boolean gzip;
+        private final File directory;
+        private CsvBytes output = new CsvBytes(Math.min(INITIAL_WINDOW_BYTES, bufferSize));
+        private byte[] columns;
+        private long samples;
+        private File part;
+        private OutputStream partOutput;
+        private boolean discarded;
+
+        private Window(GetSeriesQuery seriesQuery, long start, long end, boolean gzip, File directory) {
+            this.seriesQuery = seriesQuery.copy()
+                    .setStartDate(null)
+                    .setEndDate(null)
+                    .setStartTime(start)
+                    .setEndTime(end);
+            this.end = end;
+            this.gzip = gzip;
+            this.directory = directory;
+        }
+
+        @Override
+        public Window call() throws IOException {
+            try {
+                dataService.streamSeries(this, seriesQuery);
+                if (part != null) {
+                    closePart();
+                } else if (gzip) {
+                    output = compress(output);
+                }
+            } finally {
+                if (partOutput != null || isDiscarded()) {
+                    discard();
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Append the rows to the export file and delete the part file.
+         */
+        private void writeTo(FileChannel channel, ByteBuffer buffer) throws IOException {
+            if (part == null) {
+                write(channel, buffer, output);
+                return;
+            }
+            try (FileChannel source = FileChannel.open(part.toPath(), StandardOpenOption.READ)) {
+                buffer.clear();
+                while (source.read(buffer) >= 0) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        bytes.addAndGet(channel.write(buffer));
+                    }
+                    buffer.clear();
+                }
+            }
+            discard();
+        }
+
+        /**
+         * Move the buffered rows to the part file, created and opened on the first call.
+         */
+        private synchronized void spill() throws IOException {
+            if (discarded) {
+                throw new IOException("Export window is discarded");
+            }
+            if (part == null) {
+                part = File.createTempFile("atsd-export-", ".part", directory);
+                part.deleteOnExit();
+                OutputStream fileOutput = new BufferedOutputStream(new FileOutputStream(part), INITIAL_WINDOW_BYTES);
+                partOutput = gzip ? new GZIPOutputStream(fileOutput, INITIAL_WINDOW_BYTES) : fileOutput;
+            }
+            partOutput.write(output.array(), 0, output.length());
+            output.clear();
+        }
+
+        private synchronized void closePart() throws IOException {
+            spill();
+            partOutput.close();
+            partOutput = null;
+        }
+
+        private synchronized boolean isDiscarded() {
+            return discarded;
+        }
+
+        /**
+         * Release the part file, the rows of the window are not needed any more.
+         */
+        private synchronized void discard() {
+            discarded = true;
+            if (partOutput != null) {
+                try {
+                    partOutput.close();
+                } catch (IOException e) {
+                    log.warn("Could not close export part {}", part, e);
+                }
+                partOutput = null;
+            }
+            if (part != null && part.exists() && !part.delete()) {
+                log.warn("Could not delete export part {}", part);
+            }
+        }
+
+        @Override
+        public void beginSeries(Series series) {
+            columns = seriesColumns(series);
+        }
+
+        @Override
+        public void visitSample(Series series, Sample sample) {
+            long time = sample.getTimeMillis() != null ? sample.getTimeMillis()
+                    : AtsdUtil.DateTime.parseDate(sample.getIsoDate()).getTime();
+            output.appendDate(time).append((byte) ',').append(columns)
+                    .appendDouble(sample.getNumericValueAsDouble()).append((byte) '\n');
+            samples++;
+            if (output.length() >= bufferSize) {
+                try {
+                    spill();
+                } catch (IOException e) {
+                    throw new AtsdClientException("Could not write export part to " + directory, e);
+                }
+            }
+        }
+
+        @Override
+        public void endSeries(Series series) {
+            columns = null;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.data.series.ColumnarSeries;
+import com.axibase.tsd.model.data.series.Sample;
+import com.axibase.tsd.model.data.series.Series;
+import com.axibase.tsd.util.AtsdUtil;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes a {@code series/query} response with the Jackson streaming parser. Only the current sample and the
+ * attributes of the current series are held in memory, so the footprint does not depend on the response size.
+ */
+final class SeriesStreamReader {
+    private static final String DATA_FIELD = "data";
+
+    private final ObjectMapper objectMapper;
+
+    SeriesStreamReader(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    void read(InputStream inputStream, final SeriesVisitor visitor) throws IOException {
+        read(inputStream, new DataHandler() {
+            @Override
+            public void beginSeries(Series series) {
+                visitor.beginSeries(series);
+            }
+
+            @Override
+            public void readSample(JsonParser parser, Series series) throws IOException {
+                visitor.visitSample(series, parser.readValueAs(Sample.class));
+            }
+
+            @Override
+            public void endSeries(Series series) {
+                visitor.endSeries(series);
+            }
+        });
+    }
+
+    /**
+     * Decode samples straight into primitive columns, no {@link Sample} is created.
+     */
+    List<ColumnarSeries> readColumns(InputStream inputStream) throws IOException {
+        final List<ColumnarSeries> result = new ArrayList<>();
+        read(inputStream, new DataHandler() {
+            private ColumnarSeries current;
+
+            @Override
+            public void beginSeries(Series series) {
+                current = new ColumnarSeries(series);
+                result.add(current);
+            }
+
+            @Override
+            public void readSample(JsonParser parser, Series series) throws IOException {
+                readColumnarSample(parser, current);
+            }
+
+            @Override
+            public void endSeries(Series series) {
+                current.trimToSize();
+                current = null;
+            }
+        });
+        return result;
+    }
+
+    private void read(InputStream inputStream, DataHandler handler) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(inputStream)) {
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                return;
+            }
+            if (token != JsonToken.START_ARRAY) {
+                throw new AtsdClientException("Unexpected series response, array expected but found " + token);
+            }
+            while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+                readSeries(parser, handler);
+            }
+            if (token != JsonToken.END_ARRAY) {
+                throw new AtsdClientException("Unexpected series response, object expected but found " + token);
+            }
+        }
+    }
+
+    private void readSeries(JsonParser parser, DataHandler handler) throws IOException {
+        ObjectNode attributes = objectMapper.createObjectNode();
+        Series series = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken valueToken = parser.nextToken();
+            if (series == null && DATA_FIELD.equals(fieldName) && valueToken == JsonToken.START_ARRAY) {
+                series = objectMapper.treeToValue(attributes, Series.class);
+                attributes.removeAll();
+                handler.beginSeries(series);
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    handler.readSample(parser, series);
+                }
+            } else {
+                attributes.set(fieldName, objectMapper.<JsonNode>readTree(parser));
+            }
+        }
+        if (series == null) {
+            series = objectMapper.treeToValue(attributes, Series.class);
+            handler.beginSeries(series);
+        } else if (attributes.size() > 0) {
+            series = objectMapper.readerForUpdating(series).readValue(attributes);
+        }
+        handler.endSeries(series);
+    }
+
+    private static void readColumnarSample(JsonParser parser, ColumnarSeries columns) throws IOException {
+        long time = 0;
+        boolean hasTime = false;
+        double value = Double.NaN;
+        String text = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            switch (fieldName) {
+                case "t":
+                    time = parser.getValueAsLong();
+                    hasTime = true;
+                    break;
+                case "d":
+                    if (!hasTime) {
+                        time = AtsdUtil.DateTime.parseDate(parser.getText()).getTime();
+                        hasTime = true;
+                    }
+                    break;
+                case "v":
+                    // NaN is sent as a string
+                    value = token == JsonToken.VALUE_STRING ? Double.NaN : parser.getDoubleValue();
+                    break;
+                case "x":
+                    text = parser.getText();
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        columns.add(time, value, text);
+    }
+
+    private interface DataHandler {
+        void beginSeries(Series series);
+
+        /**
+         * Read one sample, the parser is positioned at its {@code START_OBJECT} and must be left at its
+         * {@code END_OBJECT}.
+         */
+        void readSample(JsonParser parser, Series series) throws IOException;
+
+        void endSeries(Series series);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.data.series.Sample;
+import com.axibase.tsd.model.data.series.Series;
+
+/**
+ * Receives series decoded incrementally from a {@code series/query} response, see
+ * {@link DataService#streamSeries(SeriesVisitor, com.axibase.tsd.model.data.command.GetSeriesQuery...)}.
+ * <p>
+ * The {@link Series} passed to the callbacks never holds samples, {@link Series#getData()} is {@code null}.
+ * Fields the server sends after the {@code data} array are only populated in {@link #endSeries(Series)}.
+ * </p>
+ */
+public interface SeriesVisitor {
+    /**
+     * Called before the first sample of a series.
+     *
+     * @param series series key and attributes
+     */
+    void beginSeries(Series series);
+
+    /**
+     * Called for every sample in response order. The sample is not retained by the reader.
+     *
+     * @param series series the sample belongs to
+     * @param sample decoded sample
+     */
+    void visitSample(Series series, Sample sample);
+
+    /**
+     * Called after the last sample of a series.
+     *
+     * @param series series key and attributes
+     */
+    void endSeries(Series series);
+}
@@ -27,6 +27,69 @@ public final class ServiceFactory {
         return new DataService(clientManager);
     }
 
+    /**
+     * Create {@link AsyncDataService} instance.
+     *
+     * @return new {@link AsyncDataService} instance.
+     */
+    public AsyncDataService asyncData() {
+        return new AsyncDataService(clientManager);
+    }
+
+    /**
+     * Create {@link AsyncMetaDataService} instance.
+     *
+     * @return new {@link AsyncMetaDataService} instance.
+     */
+    public AsyncMetaDataService asyncMeta() {
+        return new AsyncMetaDataService(clientManager);
+    }
+
+    /**
+     * Create {@link IngestBuffer} instance, it must be closed to send the remaining items and stop its threads.
+     *
+     * @return new {@link IngestBuffer} instance.
+     */
+    public IngestBuffer ingestBuffer() {
+        return new IngestBuffer(clientManager);
+    }
+
+    /**
+     * Create {@link ParallelSeriesReader} instance.
+     *
+     * @return new {@link ParallelSeriesReader} instance.
+     */
+    public ParallelSeriesReader parallelSeriesReader() {
+        return new ParallelSeriesReader(clientManager);
+    }
+
+    /**
+     * Create {@link LastValueCache} instance, it must be closed to stop its refresh thread.
+     *
+     * @return new {@link LastValueCache} instance.
+     */
+    public LastValueCache lastValueCache() {
+        return new LastValueCache(clientManager);
+    }
+
+    /**
+     * Create {@link MetaDataBulkWriter} instance.
+     *
+     * @return new {@link MetaDataBulkWriter} instance.
+     */
+    public MetaDataBulkWriter metaDataBulkWriter() {
+        return new MetaDataBulkWriter(clientManager);
+    }
+
+    /**
+     * Create {@link SeriesExporter} instance.
+     *
+     * @return new {@link SeriesExporter} instance.
+     */
+    public SeriesExporter seriesExporter() {
+        return new SeriesExporter(clientManager);
+    }
+
     /**
      * Create {@link ExtendedService} instance.
      *
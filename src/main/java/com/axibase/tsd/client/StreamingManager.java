@@ -25,7 +25,11 @@ public interface StreamingManager {
 
     void close();
 
-    void send(PlainCommand plainCommand);
+    /**
+     * @param plainCommand command to send
+     * @return whether the command is queued, spilled or dropped
+     */
+    SendOutcome send(PlainCommand plainCommand);
 
     boolean canSend();
 
@@ -0,0 +1,122 @@
+package com.axibase.tsd.client;
+
+import lombok.ToString;
+
+/**
+ * Snapshot of the streaming command sender counters, see {@link HttpClientManager#getStreamingMetrics()}.
+ */
+@ToString
+public final class StreamingMetrics {
+    private final int queueSize;
+    private final long commands;
+    private final long batches;
+    private final long bytes;
+    private final int lastBatchSize;
+    private final int maxBatchSize;
+    private final long dropped;
+    private final long spilled;
+    private final int spillSize;
+    private final long unconfirmedCommands;
+    private final long unconfirmedBytes;
+    private final long unconfirmedOverflow;
+
+    StreamingMetrics(int queueSize, long commands, long batches, long bytes, int lastBatchSize, int maxBatchSize,
+                     long dropped, long spilled, int spillSize, long unconfirmedCommands, long unconfirmedBytes,
+                     long unconfirmedOverflow) {
+        this.queueSize = queueSize;
+        this.commands = commands;
+        this.batches = batches;
+        this.bytes = bytes;
+        this.lastBatchSize = lastBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.dropped = dropped;
+        this.spilled = spilled;
+        this.spillSize = spillSize;
+        this.unconfirmedCommands = unconfirmedCommands;
+        this.unconfirmedBytes = unconfirmedBytes;
+        this.unconfirmedOverflow = unconfirmedOverflow;
+    }
+
+    /**
+     * @return number of commands waiting in the queue
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * @return number of commands written to the connection
+     */
+    public long getCommands() {
+        return commands;
+    }
+
+    /**
+     * @return number of flushed batches
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return number of bytes written to the connection
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public double getAverageBatchSize() {
+        return batches == 0 ? 0 : (double) commands / batches;
+    }
+
+    /**
+     * @return number of commands dropped because the queue was full
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return number of commands written to the spill file
+     */
+    public long getSpilled() {
+        return spilled;
+    }
+
+    /**
+     * @return number of commands waiting in the spill file
+     */
+    public int getSpillSize() {
+        return spillSize;
+    }
+
+    /**
+     * @return number of written commands kept until the server confirms their marker
+     */
+    public long getUnconfirmedCommands() {
+        return unconfirmedCommands;
+    }
+
+    /**
+     * @return off-heap size of written commands kept until the server confirms their marker
+     */
+    public long getUnconfirmedBytes() {
+        return unconfirmedBytes;
+    }
+
+    /**
+     * @return number of written commands that were not kept for re-sending because the unconfirmed commands reached
+     * {@link com.axibase.tsd.model.system.ClientConfiguration#getStreamingLedgerMaxBytes()}
+     */
+    public long getUnconfirmedOverflow() {
+        return unconfirmedOverflow;
+    }
+}
@@ -1,6 +1,7 @@
 package com.axibase.tsd.client;
 
 import com.axibase.tsd.model.system.TcpClientConfiguration;
+import com.axibase.tsd.network.CommandEncoder;
 import com.axibase.tsd.network.PlainCommand;
 import lombok.extern.slf4j.Slf4j;
 
@@ -17,8 +18,10 @@ class TcpClient {
     private final int connectionTimeoutMs;
     private final int readTimeoutMs;
     private Socket socket;
-    private OutputStreamWriter writer;
+    private OutputStream stream;
     private final int BUFFER_SIZE = 16*1024;
+    private final int MAX_RETAINED_BUFFER_SIZE = 1024*1024;
+    private final CommandEncoder encoder = new CommandEncoder(BUFFER_SIZE);
 
     TcpClient(TcpClientConfiguration clientConfiguration) {
         this.serverName = clientConfiguration.getServerName();
@@ -29,7 +32,9 @@ class TcpClient {
     }
 
     synchronized public void send(PlainCommand command) {
-        send(command.compose());
+        encoder.reset(MAX_RETAINED_BUFFER_SIZE);
+        encoder.encode(command);
+        sendEncoded();
     }
 
     synchronized public void send(Collection<PlainCommand> commands) {
@@ -40,24 +45,20 @@ class TcpClient {
             return;
         }
 
-        StringBuilder builder = new StringBuilder();
+        encoder.reset(MAX_RETAINED_BUFFER_SIZE);
         for (PlainCommand command : commands) {
-            String rawCommand = command.compose();
-            builder.append(rawCommand);
-            if (!rawCommand.endsWith("\n")) {
-                builder.append("\n");
-            }
+            encoder.encode(command);
         }
 
-        send(builder.toString());
+        sendEncoded();
     }
 
-    private void send(String data) {
+    private void sendEncoded() {
         if (socket == null) {
             try {
                 log.info("Connecting to ATSD at {}:{}", serverName, port);
                 socket = recreateSocket();
-                writer = recreateWriter(socket);
+                stream = recreateStream(socket);
             } catch (IOException e) {
                 throw new AtsdClientException(
                         String.format("Error while connecting to ATSD at %s:%s", serverName, port), e);
@@ -65,7 +66,7 @@ class TcpClient {
         }
 
         try {
-            writeData(data);
+            writeData();
             return;
         } catch (Exception e) {
             log.warn("Error while sending commands to ATSD at {}:{}. Trying to reconnect", serverName, port, e);
@@ -73,35 +74,32 @@ class TcpClient {
 
         try {
             socket = recreateSocket();
-            writer = recreateWriter(socket);
-            writeData(data);
+            stream = recreateStream(socket);
+            writeData();
         } catch (Exception e) {
             throw new AtsdClientException(
                     String.format("Error while sending command to ATSD at %s:%s", serverName, port), e);
         }
     }
 
-    private void writeData(String data) throws IOException {
-        writer.write(data);
-        if (!data.endsWith("\n")) {
-            writer.write('\n');
-        }
-        writer.flush();
+    private void writeData() throws IOException {
+        encoder.writeTo(stream);
+        stream.flush();
     }
 
     synchronized public void close() {
-        closeWriter();
+        closeStream();
         closeSocket();
     }
 
-    private void closeWriter() {
-        if (writer != null) {
+    private void closeStream() {
+        if (stream != null) {
             try {
-                writer.close();
+                stream.close();
             } catch (IOException e) {
                 log.warn("Error while closing tcp stream {}:{}", serverName, port, e);
             }
-            writer = null;
+            stream = null;
         }
     }
 
@@ -128,10 +126,9 @@ class TcpClient {
         return socket;
     }
 
-    private OutputStreamWriter recreateWriter(Socket socket) throws IOException {
-        closeWriter();
+    private OutputStream recreateStream(Socket socket) throws IOException {
+        closeStream();
 
-        BufferedOutputStream stream = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
-        return new OutputStreamWriter(stream, "UTF8");
+        return new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
     }
 }
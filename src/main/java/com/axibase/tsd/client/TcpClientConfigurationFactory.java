@@ -1,9 +1,13 @@
 package com.axibase.tsd.client;
 
 import com.axibase.tsd.model.system.TcpClientConfiguration;
+import com.axibase.tsd.model.system.TcpSharding;
+import com.axibase.tsd.model.system.TcpWaitStrategy;
 import com.axibase.tsd.util.AtsdUtil;
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 public class TcpClientConfigurationFactory {
@@ -20,6 +24,15 @@ public class TcpClientConfigurationFactory {
     private boolean autoflush;
     private int connectionTimeoutMs;
     private int readTimeoutMs;
+    private int connections = TcpClientConfiguration.DEFAULT_CONNECTIONS;
+    private int bufferSize = TcpClientConfiguration.DEFAULT_BUFFER_SIZE;
+    private long maxPendingBytes = TcpClientConfiguration.DEFAULT_MAX_PENDING_BYTES;
+    private int reconnectDelayMs = TcpClientConfiguration.DEFAULT_RECONNECT_DELAY_MS;
+    private int ringBufferSize = TcpClientConfiguration.DEFAULT_RING_BUFFER_SIZE;
+    private TcpWaitStrategy waitStrategy = TcpWaitStrategy.BLOCKING;
+    private TcpSharding sharding = TcpSharding.NONE;
+    private List<String> nodes = new ArrayList<>();
+    private int healthCheckIntervalMs = TcpClientConfiguration.DEFAULT_HEALTH_CHECK_INTERVAL_MS;
 
     private TcpClientConfigurationFactory() {
     }
@@ -46,6 +59,36 @@ public class TcpClientConfigurationFactory {
                 AXIBASE_TSD_API_DOMAIN + ".server.tcp.connectionTimeoutMs", clientProperties, DEFAULT_CONNECTION_TIMEOUT_MS);
         configurationFactory.readTimeoutMs = AtsdUtil.getPropertyIntValue(
                 AXIBASE_TSD_API_DOMAIN + ".server.tcp.readTimeoutMs", clientProperties, DEFAULT_READ_TIMEOUT_MS);
+        configurationFactory.connections = AtsdUtil.getPropertyIntValue(
+                AXIBASE_TSD_API_DOMAIN + ".server.tcp.connections", clientProperties,
+                TcpClientConfiguration.DEFAULT_CONNECTIONS);
+        configurationFactory.bufferSize = AtsdUtil.getPropertyIntValue(
+                AXIBASE_TSD_API_DOMAIN + ".server.tcp.bufferSize", clientProperties,
+                TcpClientConfiguration.DEFAULT_BUFFER_SIZE);
+        configurationFactory.maxPendingBytes = AtsdUtil.getPropertyLongValue(
+                AXIBASE_TSD_API_DOMAIN + ".server.tcp.maxPendingBytes", clientProperties,
+                TcpClientConfiguration.DEFAULT_MAX_PENDING_BYTES);
+        configurationFactory.reconnectDelayMs = AtsdUtil.getPropertyIntValue(
+                AXIBASE_TSD_API_DOMAIN + ".server.tcp.reconnectDelayMs", clientProperties,
+                TcpClientConfiguration.DEFAULT_RECONNECT_DELAY_MS);
+        configurationFactory.ringBufferSize = AtsdUtil.getPropertyIntValue(
+                AXIBASE_TSD_API_DOMAIN + ".server.tcp.ringBufferSize", clientProperties,
+                TcpClientConfiguration.DEFAULT_RING_BUFFER_SIZE);
+        configurationFactory.waitStrategy = TcpWaitStrategy.valueOf(AtsdUtil.getPropertyStringValue(
+                AXIBASE_TSD_API_DOMAIN + ".server.tcp.waitStrategy", clientProperties,
+                TcpWaitStrategy.BLOCKING.name()).trim().toUpperCase());
+        configurationFactory.sharding = TcpSharding.valueOf(AtsdUtil.getPropertyStringValue(
+                AXIBASE_TSD_API_DOMAIN + ".server.tcp.sharding", clientProperties,
+                TcpSharding.NONE.name()).trim().toUpperCase());
+        for (String node : StringUtils.split(AtsdUtil.getPropertyStringValue(
+                AXIBASE_TSD_API_DOMAIN + ".server.tcp.nodes", clientProperties, ""), ',')) {
+            if (StringUtils.isNotBlank(node)) {
+                configurationFactory.nodes.add(node.trim());
+            }
+        }
+        configurationFactory.healthCheckIntervalMs = AtsdUtil.getPropertyIntValue(
+                AXIBASE_TSD_API_DOMAIN + ".server.tcp.healthCheckIntervalMs", clientProperties,
+                TcpClientConfiguration.DEFAULT_HEALTH_CHECK_INTERVAL_MS);
 
         return configurationFactory;
     }
@@ -64,12 +107,22 @@ public class TcpClientConfigurationFactory {
     }
 
     public TcpClientConfiguration createClientConfiguration() {
-        return new TcpClientConfiguration(
+        TcpClientConfiguration configuration = new TcpClientConfiguration(
                 serverName,
                 port,
                 autoflush,
                 connectionTimeoutMs,
                 readTimeoutMs
         );
+        configuration.setConnections(connections);
+        configuration.setBufferSize(bufferSize);
+        configuration.setMaxPendingBytes(maxPendingBytes);
+        configuration.setReconnectDelayMs(reconnectDelayMs);
+        configuration.setRingBufferSize(ringBufferSize);
+        configuration.setWaitStrategy(waitStrategy);
+        configuration.setSharding(sharding);
+        configuration.setNodes(new ArrayList<>(nodes));
+        configuration.setHealthCheckIntervalMs(healthCheckIntervalMs);
+        return configuration;
     }
 }
@@ -1,6 +1,7 @@
 package com.axibase.tsd.client;
 
 import com.axibase.tsd.model.system.TcpClientConfiguration;
+import com.axibase.tsd.model.system.TcpSharding;
 import com.axibase.tsd.network.PlainCommand;
 import org.apache.commons.pool2.BasePooledObjectFactory;
 import org.apache.commons.pool2.PooledObject;
@@ -9,8 +10,15 @@ import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Sends network API commands over pooled TCP connections. With {@link TcpClientConfiguration#getSharding()} other than
+ * {@link TcpSharding#NONE} the pool is not used: each command goes to a fixed connection chosen by the hash of its
+ * entity, or entity and metric, so the commands of a series keep their order and connections of different shards are
+ * used without contention.
+ */
 public class TcpClientManager {
     private static final int DEFAULT_BORROW_MAX_TIME_MS = 3000;
     private static final int DEFAULT_MAX_TOTAL = 8;
@@ -19,6 +27,7 @@ public class TcpClientManager {
     private GenericObjectPoolConfig objectPoolConfig;
 
     private AtomicReference<GenericObjectPool<TcpClient>> objectPoolAtomicReference = new AtomicReference<>();
+    private AtomicReference<ShardedClients> shardedClientsAtomicReference = new AtomicReference<>();
     private int borrowMaxWaitMillis = DEFAULT_BORROW_MAX_TIME_MS;
 
     private TcpClientConfiguration clientConfiguration;
@@ -47,6 +56,11 @@ public class TcpClientManager {
     }
 
     public void send(PlainCommand plainCommand) {
+        if (isSharded()) {
+            ShardedClients shardedClients = createShardedClients();
+            shardedClients.clients[shardedClients.router.shardOf(plainCommand)].send(plainCommand);
+            return;
+        }
         TcpClient tcpClient = borrowClient();
         try {
             tcpClient.send(plainCommand);
@@ -56,6 +70,16 @@ public class TcpClientManager {
     }
 
     public void send(Collection<PlainCommand> plainCommand) {
+        if (isSharded()) {
+            ShardedClients shardedClients = createShardedClients();
+            List<Collection<PlainCommand>> shards = shardedClients.router.split(plainCommand);
+            for (int i = 0; i < shards.size(); i++) {
+                if (shards.get(i) != null) {
+                    shardedClients.clients[i].send(shards.get(i));
+                }
+            }
+            return;
+        }
         TcpClient tcpClient = borrowClient();
         try {
             tcpClient.send(plainCommand);
@@ -88,11 +112,44 @@ public class TcpClientManager {
         return objectPoolAtomicReference.get();
     }
 
+    private boolean isSharded() {
+        return clientConfiguration.getSharding() != null && clientConfiguration.getSharding() != TcpSharding.NONE;
+    }
+
+    private ShardedClients createShardedClients() {
+        ShardedClients shardedClients = shardedClientsAtomicReference.get();
+        if (shardedClients == null) {
+            // clients connect on the first send, so an instance that loses the race opens nothing
+            shardedClients = new ShardedClients(clientConfiguration);
+            shardedClientsAtomicReference.compareAndSet(null, shardedClients);
+        }
+        return shardedClientsAtomicReference.get();
+    }
+
     public void close() {
         GenericObjectPool<TcpClient> pool = objectPoolAtomicReference.get();
         if (pool != null) {
             pool.close();
         }
+        ShardedClients shardedClients = shardedClientsAtomicReference.get();
+        if (shardedClients != null) {
+            for (TcpClient tcpClient : shardedClients.clients) {
+                tcpClient.close();
+            }
+        }
+    }
+
+    private static final class ShardedClients {
+        private final TcpShardRouter router;
+        private final TcpClient[] clients;
+
+        private ShardedClients(TcpClientConfiguration clientConfiguration) {
+            router = new TcpShardRouter(clientConfiguration);
+            clients = new TcpClient[router.shards()];
+            for (int i = 0; i < clients.length; i++) {
+                clients[i] = new TcpClient(clientConfiguration);
+            }
+        }
     }
 
     private class TcpClientBasePooledObjectFactory extends BasePooledObjectFactory<TcpClient> {
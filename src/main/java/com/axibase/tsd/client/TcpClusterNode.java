@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.system.TcpClientConfiguration;
+import com.axibase.tsd.network.PlainCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One node of {@link ClusterTcpClientManager}: a ring buffer of commands routed to the node and a writer thread
+ * that sends them in batches. When a write fails the node is marked down and the writer hands the failed batch and
+ * everything still queued back to the cluster for re-routing.
+ * <p>
+ * A routing thread is counted in {@link #producers} while it checks {@link #closed} and publishes. After the node
+ * is closed the writer waits for this count to drop to zero and drains the ring once more, so no accepted command
+ * is left behind in the ring.
+ * </p>
+ */
+class TcpClusterNode {
+    private static final Logger log = LoggerFactory.getLogger(TcpClusterNode.class);
+    private static final int MAX_BATCH_SIZE = 4096;
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final String name;
+    private final String host;
+    private final int port;
+    private final int connectionTimeoutMs;
+    private final CommandRingBuffer ring;
+    private final TcpClient tcpClient;
+    private final ClusterTcpClientManager cluster;
+    private final Thread writer;
+    private volatile boolean up = true;
+    private volatile boolean closed;
+    private volatile long closeDeadline = Long.MAX_VALUE;
+    private final AtomicInteger producers = new AtomicInteger();
+
+    final AtomicLong written = new AtomicLong();
+    final AtomicLong failures = new AtomicLong();
+
+    TcpClusterNode(String name, String host, int port, TcpClientConfiguration clientConfiguration,
+                   ClusterTcpClientManager cluster) {
+        this.name = name;
+        this.host = host;
+        this.port = port;
+        this.connectionTimeoutMs = clientConfiguration.getConnectionTimeoutMs();
+        this.cluster = cluster;
+        ring = new CommandRingBuffer(clientConfiguration.getRingBufferSize(), clientConfiguration.getWaitStrategy());
+        tcpClient = new TcpClient(new TcpClientConfiguration(host, port, clientConfiguration.isAutoflush(),
+                clientConfiguration.getConnectionTimeoutMs(), clientConfiguration.getReadTimeoutMs()));
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runWriter();
+            }
+        }, "atsd-cluster-writer-" + name);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    String getName() {
+        return name;
+    }
+
+    boolean isUp() {
+        return up;
+    }
+
+    int size() {
+        return ring.size();
+    }
+
+    /**
+     * @return false if the node is down, closed or its ring buffer is full
+     */
+    boolean offer(PlainCommand command) {
+        producers.incrementAndGet();
+        try {
+            return up && !closed && ring.offer(command);
+        } finally {
+            producers.decrementAndGet();
+        }
+    }
+
+    void markUp() {
+        if (!up) {
+            log.info("ATSD node {} is up", name);
+            up = true;
+        }
+    }
+
+    void markDown() {
+        if (up) {
+            log.warn("ATSD node {} is down, its commands are re-routed", name);
+            up = false;
+        }
+    }
+
+    /**
+     * @return true if a connection to the node can be opened
+     */
+    boolean probe() {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), connectionTimeoutMs);
+            return true;
+        } catch (IOException e) {
+            log.debug("Health check of ATSD node {} failed", name, e);
+            return false;
+        }
+    }
+
+    void close(long deadline) {
+        closeDeadline = deadline;
+        closed = true;
+        ring.wakeConsumer();
+    }
+
+    void join(long millis) throws InterruptedException {
+        writer.join(millis);
+    }
+
+    private void runWriter() {
+        List<PlainCommand> batch = new ArrayList<>(Math.min(MAX_BATCH_SIZE, ring.capacity()));
+        while (true) {
+            if (ring.drainTo(batch, MAX_BATCH_SIZE) == 0) {
+                if (!closed) {
+                    ring.await(IDLE_WAIT_NANOS);
+                    continue;
+                }
+                awaitProducers();
+                if (ring.drainTo(batch, MAX_BATCH_SIZE) == 0) {
+                    break;
+                }
+            }
+            if (!up || System.currentTimeMillis() > closeDeadline) {
+                // commands published before the node was marked down
+                cluster.reroute(batch);
+            } else {
+                try {
+                    tcpClient.send(batch);
+                    written.addAndGet(batch.size());
+                } catch (AtsdClientException e) {
+                    failures.incrementAndGet();
+                    log.warn("Could not send {} commands to ATSD node {}", batch.size(), name, e);
+                    markDown();
+                    cluster.reroute(batch);
+                }
+            }
+            batch.clear();
+        }
+        tcpClient.close();
+    }
+
+    /**
+     * Wait until no routing thread is between its check of {@link #closed} and its publish, the ring then receives
+     * no more commands.
+     */
+    private void awaitProducers() {
+        while (producers.get() > 0) {
+            Thread.yield();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.system.TcpClientConfiguration;
+import com.axibase.tsd.model.system.TcpSharding;
+import com.axibase.tsd.network.AbstractInsertCommand;
+import com.axibase.tsd.network.InsertCommand;
+import com.axibase.tsd.network.PlainCommand;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Assigns TCP commands to a fixed number of connections according to {@link TcpSharding}.
+ * <p>
+ * Insert commands of one entity, or of one entity and metric, always get the same connection, so ATSD receives them
+ * in the order they were sent. Commands without an entity, and all commands with {@link TcpSharding#NONE}, are
+ * assigned by the sending thread.
+ * </p>
+ */
+final class TcpShardRouter {
+    private final TcpSharding sharding;
+    private final int shards;
+
+    TcpShardRouter(TcpClientConfiguration clientConfiguration) {
+        sharding = clientConfiguration.getSharding() == null ? TcpSharding.NONE : clientConfiguration.getSharding();
+        shards = connectionCount(clientConfiguration);
+    }
+
+    /**
+     * @return configured number of connections, the number of available processors if it is not positive
+     */
+    static int connectionCount(TcpClientConfiguration clientConfiguration) {
+        int connections = clientConfiguration.getConnections();
+        return connections > 0 ? connections : Runtime.getRuntime().availableProcessors();
+    }
+
+    int shards() {
+        return shards;
+    }
+
+    int shardOf(PlainCommand command) {
+        if (sharding == TcpSharding.NONE || !(command instanceof AbstractInsertCommand)) {
+            return threadShard();
+        }
+        int hash = ((AbstractInsertCommand) command).getEntityName().hashCode();
+        if (sharding == TcpSharding.ENTITY_METRIC && command instanceof InsertCommand) {
+            hash = 31 * hash + ((InsertCommand) command).getMetricName().hashCode();
+        }
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % shards;
+    }
+
+    private int threadShard() {
+        return (int) (Thread.currentThread().getId() % shards);
+    }
+
+    /**
+     * Split the commands by connection.
+     *
+     * @return commands of each connection indexed by connection, the same collection when all of them go to one
+     * connection, null elements for connections without commands
+     */
+    List<Collection<PlainCommand>> split(Collection<PlainCommand> commands) {
+        List<Collection<PlainCommand>> result = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            result.add(null);
+        }
+        if (sharding == TcpSharding.NONE) {
+            result.set(threadShard(), commands);
+            return result;
+        }
+        int first = -1;
+        boolean single = true;
+        for (PlainCommand command : commands) {
+            int shard = shardOf(command);
+            if (first == -1) {
+                first = shard;
+            } else if (shard != first) {
+                single = false;
+                break;
+            }
+        }
+        if (single) {
+            if (first >= 0) {
+                result.set(first, commands);
+            }
+            return result;
+        }
+        for (PlainCommand command : commands) {
+            int shard = shardOf(command);
+            List<PlainCommand> shardCommands = (List<PlainCommand>) result.get(shard);
+            if (shardCommands == null) {
+                shardCommands = new ArrayList<>();
+                result.set(shard, shardCommands);
+            }
+            shardCommands.add(command);
+        }
+        return result;
+    }
+}
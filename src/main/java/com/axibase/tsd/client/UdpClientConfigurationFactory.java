@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.system.UdpClientConfiguration;
+import com.axibase.tsd.util.AtsdUtil;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Properties;
+
+public class UdpClientConfigurationFactory {
+    private static final int DEFAULT_UDP_PORT = 8082;
+
+    private static final String DEFAULT_CLIENT_PROPERTIES_FILE_NAME = "classpath:/client.properties";
+    private static final String AXIBASE_TSD_API_DOMAIN = "axibase.tsd.api";
+
+    private String serverName;
+    private int port;
+    private int datagramSize;
+    private int flushIntervalMs;
+
+    private UdpClientConfigurationFactory() {
+    }
+
+    public static UdpClientConfigurationFactory createInstance() {
+        String clientPropertiesFileName = DEFAULT_CLIENT_PROPERTIES_FILE_NAME;
+        String sysPropertiesFileName = System.getProperty(AXIBASE_TSD_API_DOMAIN + ".client.properties");
+        if (StringUtils.isNotBlank(sysPropertiesFileName)) {
+            clientPropertiesFileName = sysPropertiesFileName;
+        }
+        return createInstance(clientPropertiesFileName);
+    }
+
+    public static UdpClientConfigurationFactory createInstance(String clientPropertiesFileName) {
+        Properties clientProperties = AtsdUtil.loadProperties(clientPropertiesFileName);
+        UdpClientConfigurationFactory configurationFactory = new UdpClientConfigurationFactory();
+        configurationFactory.serverName = AtsdUtil.getPropertyStringValue(
+                AXIBASE_TSD_API_DOMAIN + ".server.name", clientProperties, null);
+        configurationFactory.port = AtsdUtil.getPropertyIntValue(
+                AXIBASE_TSD_API_DOMAIN + ".server.udp.port", clientProperties, DEFAULT_UDP_PORT);
+        configurationFactory.datagramSize = AtsdUtil.getPropertyIntValue(
+                AXIBASE_TSD_API_DOMAIN + ".server.udp.datagramSize", clientProperties,
+                UdpClientConfiguration.DEFAULT_DATAGRAM_SIZE);
+        configurationFactory.flushIntervalMs = AtsdUtil.getPropertyIntValue(
+                AXIBASE_TSD_API_DOMAIN + ".server.udp.flushIntervalMs", clientProperties,
+                UdpClientConfiguration.DEFAULT_FLUSH_INTERVAL_MS);
+
+        return configurationFactory;
+    }
+
+    public UdpClientConfiguration createClientConfiguration() {
+        return new UdpClientConfiguration(serverName, port, datagramSize, flushIntervalMs);
+    }
+}
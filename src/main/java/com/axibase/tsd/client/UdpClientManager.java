@@ -0,0 +1,255 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.system.UdpClientConfiguration;
+import com.axibase.tsd.network.CommandEncoder;
+import com.axibase.tsd.network.PlainCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Collection;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends network API commands over UDP without delivery guarantees.
+ * <p>
+ * Each sending thread packs encoded commands into its own direct buffer of
+ * {@link UdpClientConfiguration#getDatagramSize()} bytes, a command never spans two datagrams. A full buffer is sent
+ * as one datagram from a connected {@link DatagramChannel}, partially filled buffers are sent by a background thread
+ * every {@link UdpClientConfiguration#getFlushIntervalMs()} or by {@link #flush()}. Datagrams that could not be sent
+ * are counted and discarded.
+ * </p>
+ */
+public class UdpClientManager {
+    private static final Logger log = LoggerFactory.getLogger(UdpClientManager.class);
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private final DatagramChannel channel;
+    private final int datagramSize;
+    private final long flushIntervalMs;
+    private final CopyOnWriteArrayList<Packer> packers = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Packer> packer = new ThreadLocal<Packer>() {
+        @Override
+        protected Packer initialValue() {
+            Packer packer = new Packer(Thread.currentThread(), datagramSize);
+            packers.add(packer);
+            return packer;
+        }
+    };
+    private final Thread flusher;
+    private volatile boolean closed;
+    private final CountDownLatch closeSignal = new CountDownLatch(1);
+
+    private final AtomicLong commands = new AtomicLong();
+    private final AtomicLong datagrams = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong oversized = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    public UdpClientManager(UdpClientConfiguration clientConfiguration) {
+        datagramSize = clientConfiguration.getDatagramSize();
+        flushIntervalMs = Math.max(1, clientConfiguration.getFlushIntervalMs());
+        try {
+            channel = DatagramChannel.open();
+            channel.connect(new InetSocketAddress(clientConfiguration.getServerName(), clientConfiguration.getPort()));
+        } catch (IOException e) {
+            throw new AtsdClientException(String.format("Could not open UDP channel to ATSD at %s:%s",
+                    clientConfiguration.getServerName(), clientConfiguration.getPort()), e);
+        }
+        flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runFlusher();
+            }
+        }, "atsd-udp-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * @param plainCommand command to send
+     * @return false if the manager is closed or the command is larger than a datagram
+     */
+    public boolean send(PlainCommand plainCommand) {
+        if (closed) {
+            return false;
+        }
+        Packer packer = this.packer.get();
+        synchronized (packer) {
+            return pack(packer, plainCommand);
+        }
+    }
+
+    /**
+     * @param plainCommands commands to send
+     * @return false if the manager is closed or some commands are larger than a datagram
+     */
+    public boolean send(Collection<PlainCommand> plainCommands) {
+        if (closed) {
+            return false;
+        }
+        boolean accepted = true;
+        Packer packer = this.packer.get();
+        synchronized (packer) {
+            for (PlainCommand plainCommand : plainCommands) {
+                if (!pack(packer, plainCommand)) {
+                    accepted = false;
+                }
+            }
+        }
+        return accepted;
+    }
+
+    private boolean pack(Packer packer, PlainCommand plainCommand) {
+        CommandEncoder encoder = packer.encoder;
+        encoder.reset(MAX_RETAINED_BUFFER_SIZE);
+        encoder.encode(plainCommand);
+        int length = encoder.length();
+        if (length > datagramSize) {
+            oversized.incrementAndGet();
+            return false;
+        }
+        if (packer.buffer.remaining() < length) {
+            write(packer.buffer);
+        }
+        packer.buffer.put(encoder.array(), 0, length);
+        commands.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Send the partially filled datagram of the calling thread.
+     */
+    public void flush() {
+        Packer packer = this.packer.get();
+        synchronized (packer) {
+            write(packer.buffer);
+        }
+    }
+
+    private void write(ByteBuffer buffer) {
+        if (buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        try {
+            int written = channel.write(buffer);
+            datagrams.incrementAndGet();
+            bytes.addAndGet(written);
+        } catch (IOException e) {
+            // the server may be down or unreachable, the datagram is lost either way
+            if (errors.getAndIncrement() == 0) {
+                log.warn("Could not send datagram to ATSD, further errors are only counted", e);
+            }
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private void runFlusher() {
+        // not interrupted on close: an interrupt during a write would close the channel
+        try {
+            while (!closeSignal.await(flushIntervalMs, TimeUnit.MILLISECONDS)) {
+                flushAll();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flushAll() {
+        for (Packer packer : packers) {
+            synchronized (packer) {
+                write(packer.buffer);
+            }
+            if (!packer.thread.isAlive()) {
+                packers.remove(packer);
+            }
+        }
+    }
+
+    /**
+     * @return number of commands packed into datagrams
+     */
+    public long getCommands() {
+        return commands.get();
+    }
+
+    /**
+     * @return number of datagrams sent
+     */
+    public long getDatagrams() {
+        return datagrams.get();
+    }
+
+    /**
+     * @return number of bytes sent
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * @return number of commands rejected because they do not fit into a datagram
+     */
+    public long getOversized() {
+        return oversized.get();
+    }
+
+    /**
+     * @return number of datagrams that could not be sent
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * Send the partially filled datagrams and close the channel.
+     */
+    public void close() {
+        closed = true;
+        closeSignal.countDown();
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushAll();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Error while closing UDP channel", e);
+        }
+    }
+
+    private static final class Packer {
+        private final Thread thread;
+        private final ByteBuffer buffer;
+        private final CommandEncoder encoder = new CommandEncoder();
+
+        private Packer(Thread thread, int datagramSize) {
+            this.thread = thread;
+            this.buffer = ByteBuffer.allocateDirect(datagramSize);
+        }
+    }
+}
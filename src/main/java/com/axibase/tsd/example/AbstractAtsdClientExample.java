@@ -23,7 +23,6 @@ import com.axibase.tsd.model.data.series.Series;
 import com.axibase.tsd.model.system.ClientConfiguration;
 import com.fasterxml.jackson.databind.util.ISO8601DateFormat;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,6 +38,7 @@ public abstract class AbstractAtsdClientExample {
     protected Logger logger = LoggerFactory.getLogger(AbstractAtsdClientExample.class);
     protected DataService dataService;
     protected MetaDataService metaDataService;
+    protected HttpClientManager httpClientManager;
 
     public DateFormat getDateFormat() {
         return new ISO8601DateFormat();
@@ -57,7 +57,7 @@ public abstract class AbstractAtsdClientExample {
         logger.info("Getting Started with Axibase TSD");
         ClientConfiguration clientConfiguration = ClientConfigurationFactory.createInstance().createClientConfiguration();
         logger.info("Connecting to ATSD: " + clientConfiguration.getMetadataUrl());
-        HttpClientManager httpClientManager = new HttpClientManager(clientConfiguration);
+        httpClientManager = new HttpClientManager(clientConfiguration);
         dataService = new DataService(httpClientManager);
         metaDataService = new MetaDataService(httpClientManager);
     }
@@ -76,15 +76,10 @@ public abstract class AbstractAtsdClientExample {
                 false //enableGzipCompression
         );
         ClientConfiguration clientConfiguration = configurationFactory.createClientConfiguration();
+        clientConfiguration.setMaxConnections(5);
+        clientConfiguration.setMaxConnectionsPerRoute(5);
         logger.info("Connecting to ATSD: " + clientConfiguration.getMetadataUrl());
-        HttpClientManager httpClientManager = new HttpClientManager(clientConfiguration);
-
-        GenericObjectPoolConfig objectPoolConfig = new GenericObjectPoolConfig();
-        objectPoolConfig.setMaxTotal(5);
-        objectPoolConfig.setMaxIdle(5);
-
-        httpClientManager.setObjectPoolConfig(objectPoolConfig);
-        httpClientManager.setBorrowMaxWaitMillis(1000);
+        httpClientManager = new HttpClientManager(clientConfiguration);
 
         dataService = new DataService(httpClientManager);
         metaDataService = new MetaDataService(httpClientManager);
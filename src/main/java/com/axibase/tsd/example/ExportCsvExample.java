@@ -14,22 +14,12 @@
  */
 package com.axibase.tsd.example;
 
+import com.axibase.tsd.client.SeriesExporter;
 import com.axibase.tsd.model.data.command.GetSeriesQuery;
-import com.axibase.tsd.model.data.series.Series;
-import com.axibase.tsd.model.data.series.Sample;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 
@@ -43,10 +33,7 @@ public class ExportCsvExample extends AbstractAtsdClientExample {
 
     private void downloadAndSave() throws IOException {
         // define parameters
-        final String datePattern = "yyyy-MM-dd HH:mm:ss.SSS";
-        final String numberPattern = "###.000";
-
-        final String filePath = "/tmp/atsd/export.csv";
+        final String filePath = "/tmp/atsd/export.csv.gz";
         final String entityName = "atsd";
         final String metricName = "jvm_memory_free";
         final long startTime = System.currentTimeMillis() - 36000;
@@ -54,37 +41,12 @@ public class ExportCsvExample extends AbstractAtsdClientExample {
         Map<String, String> tags = new HashMap<String, String>();
 //        tags.put("host","localhost");
 
-        // do work
-        SimpleDateFormat dateFormat = new SimpleDateFormat(datePattern);
-        NumberFormat numberFormat = new DecimalFormat(numberPattern);
+        // do work, run again with the same parameters to resume an interrupted export
         GetSeriesQuery command = new GetSeriesQuery(entityName, metricName, tags,
                 startTime, endTime);
-        List<Series> seriesResultList = dataService.retrieveSeries(command);
-
-        final FileOutputStream outputStream = FileUtils.openOutputStream(new File(filePath));
-        PrintWriter writer = new PrintWriter(outputStream);
-
-        try {
-            for (int i = 0; i < seriesResultList.size(); i++) {
-                Series seriesResult = seriesResultList.get(i);
-                logger.info("Time series key [" + i + "]: " + seriesResult.getTimeSeriesKey());
-            }
-            if (seriesResultList.size() != 1) {
-                throw new IllegalArgumentException("Select the other parameters (entity, metric, tags) " +
-                        "to export single time series key");
-            }
-
-            final List<Sample> sampleList = seriesResultList.get(0).getData();
-            for (Sample sample : sampleList) {
-                final Date date = new Date(sample.getTimeMillis());
-                final double value = sample.getNumericValueAsDouble();
-                writer.println(dateFormat.format(date) + "," + numberFormat.format(value));
-            }
-            logger.info("Saved " + sampleList.size() + " values");
-            writer.flush();
-        } finally {
-            IOUtils.closeQuietly(outputStream);
-            IOUtils.closeQuietly(writer);
-        }
+        SeriesExporter exporter = new SeriesExporter(httpClientManager);
+        long samples = exporter.export(command, new File(filePath), true);
+        logger.info("Saved " + samples + " values in " + exporter.getWindows() + " windows, "
+                + exporter.getBytes() + " bytes");
     }
 }
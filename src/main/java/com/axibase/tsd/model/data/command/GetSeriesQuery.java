@@ -283,6 +283,28 @@ public class GetSeriesQuery {
         return this;
     }
 
+    /**
+     * @return query with the same properties, the tags are copied
+     */
+    public GetSeriesQuery copy() {
+        GetSeriesQuery copy = new GetSeriesQuery(entityName, metricName,
+                tags == null ? null : new MultivaluedHashMap<String, String>(tags));
+        copy.startTime = startTime;
+        copy.endTime = endTime;
+        copy.startDate = startDate;
+        copy.endDate = endDate;
+        copy.interval = interval;
+        copy.limit = limit;
+        copy.cache = cache;
+        copy.type = type;
+        copy.join = join;
+        copy.rate = rate;
+        copy.aggregateMatcher = aggregateMatcher;
+        copy.requestId = requestId;
+        copy.timeFormat = timeFormat;
+        return copy;
+    }
+
     @Override
     public String toString() {
         return "GetSeriesQuery{" +
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.model.data.series;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Series samples stored column-wise in primitive arrays: 16 bytes per sample instead of one {@link Sample} object
+ * per point. Missing numeric values are stored as {@link Double#NaN}. Text values are usually absent, so they are
+ * kept sparsely as positions and values sorted by position.
+ */
+public class ColumnarSeries {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final long[] EMPTY_TIMES = new long[0];
+    private static final double[] EMPTY_VALUES = new double[0];
+    private static final int[] EMPTY_POSITIONS = new int[0];
+    private static final String[] EMPTY_TEXTS = new String[0];
+
+    private final Series series;
+    private long[] times = EMPTY_TIMES;
+    private double[] values = EMPTY_VALUES;
+    private int size;
+    private int[] textPositions = EMPTY_POSITIONS;
+    private String[] texts = EMPTY_TEXTS;
+    private int textCount;
+
+    /**
+     * @param series series key and attributes, its {@link Series#getData()} is not used
+     */
+    public ColumnarSeries(Series series) {
+        this.series = series;
+    }
+
+    public Series getSeries() {
+        return series;
+    }
+
+    public String getEntityName() {
+        return series.getEntityName();
+    }
+
+    public String getMetricName() {
+        return series.getMetricName();
+    }
+
+    public Map<String, String> getTags() {
+        return series.getTags();
+    }
+
+    /**
+     * Append a sample to the end of the columns.
+     *
+     * @param timeMillis time in milliseconds from 1970-01-01 00:00:00
+     * @param value      numeric value, {@link Double#NaN} if absent
+     * @param text       text value or {@code null}
+     */
+    public void add(long timeMillis, double value, String text) {
+        if (size == times.length) {
+            int capacity = size == 0 ? INITIAL_CAPACITY : size + (size >> 1);
+            times = Arrays.copyOf(times, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        if (text != null) {
+            if (textCount == texts.length) {
+                int capacity = textCount == 0 ? 8 : textCount << 1;
+                textPositions = Arrays.copyOf(textPositions, capacity);
+                texts = Arrays.copyOf(texts, capacity);
+            }
+            textPositions[textCount] = size;
+            texts[textCount] = text;
+            textCount++;
+        }
+        times[size] = timeMillis;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Release the spare capacity left after the last {@link #add(long, double, String)}.
+     */
+    public void trimToSize() {
+        if (times.length != size) {
+            times = Arrays.copyOf(times, size);
+            values = Arrays.copyOf(values, size);
+        }
+        if (texts.length != textCount) {
+            textPositions = Arrays.copyOf(textPositions, textCount);
+            texts = Arrays.copyOf(texts, textCount);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTime(int index) {
+        checkIndex(index);
+        return times[index];
+    }
+
+    public double getValue(int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    /**
+     * @param index sample index
+     * @return text value of the sample or {@code null}
+     */
+    public String getText(int index) {
+        checkIndex(index);
+        int textIndex = Arrays.binarySearch(textPositions, 0, textCount, index);
+        return textIndex < 0 ? null : texts[textIndex];
+    }
+
+    /**
+     * @return sample times, the array is shared with this object and may be longer than {@link #size()}
+     * unless {@link #trimToSize()} was called
+     */
+    public long[] getTimes() {
+        return times;
+    }
+
+    /**
+     * @return sample values, the array is shared with this object and may be longer than {@link #size()}
+     * unless {@link #trimToSize()} was called
+     */
+    public double[] getValues() {
+        return values;
+    }
+
+    public boolean hasTexts() {
+        return textCount > 0;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnarSeries{" +
+                "entityName='" + getEntityName() + '\'' +
+                ", metricName='" + getMetricName() + '\'' +
+                ", tags=" + getTags() +
+                ", size=" + size +
+                ", textCount=" + textCount +
+                '}';
+    }
+}
@@ -29,6 +29,37 @@ import lombok.ToString;
 public class ClientConfiguration {
     public static final int DEFAULT_TIMEOUT_MS = 1000;
     public static final long DEFAULT_PING_TIMEOUT_MS = 600000L;
+    public static final int DEFAULT_MAX_CONNECTIONS = 100;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 100;
+    public static final long DEFAULT_CONNECTION_IDLE_TIMEOUT_MS = 60000L;
+    public static final int DEFAULT_STREAMING_BATCH_SIZE = 1000;
+    public static final long DEFAULT_STREAMING_LINGER_MS = 0L;
+    public static final int DEFAULT_STREAMING_QUEUE_CAPACITY = 100000;
+    public static final long DEFAULT_STREAMING_BLOCK_TIMEOUT_MS = 1000L;
+    public static final long DEFAULT_STREAMING_SPILL_MAX_BYTES = 1024L * 1024 * 1024;
+    public static final long DEFAULT_STREAMING_LEDGER_MAX_BYTES = 64L * 1024 * 1024;
+    public static final int DEFAULT_STREAMING_SPOOL_SEGMENT_SIZE = 16 * 1024 * 1024;
+    public static final long DEFAULT_STREAMING_SPOOL_MAX_BYTES = 1024L * 1024 * 1024;
+    public static final int DEFAULT_BATCH_SPLIT_SIZE = 100000;
+    public static final int DEFAULT_BATCH_PARALLELISM = 1;
+    public static final int DEFAULT_INGEST_BATCH_SIZE = 1000;
+    public static final long DEFAULT_INGEST_LINGER_MS = 50;
+    public static final int DEFAULT_INGEST_MAX_IN_FLIGHT = 4;
+    public static final int DEFAULT_SERIES_READ_PARALLELISM = 4;
+    public static final int DEFAULT_SERIES_READ_WINDOW_POINTS = 100000;
+    public static final long DEFAULT_SERIES_CACHE_MAX_BYTES = 0;
+    public static final long DEFAULT_SERIES_CACHE_TTL_MS = 60000;
+    public static final long DEFAULT_SERIES_CACHE_OPEN_TAIL_MS = 60000;
+    public static final long DEFAULT_LAST_VALUE_REFRESH_INTERVAL_MS = 5000;
+    public static final int DEFAULT_LAST_VALUE_BATCH_SIZE = 1000;
+    public static final int DEFAULT_METADATA_CACHE_MAX_ENTRIES = 0;
+    public static final long DEFAULT_METADATA_CACHE_TTL_MS = 300000;
+    public static final long DEFAULT_METADATA_CACHE_NEGATIVE_TTL_MS = 30000;
+    public static final int DEFAULT_METADATA_BULK_PARALLELISM = 4;
+    public static final int DEFAULT_METADATA_BULK_GROUP_BATCH_SIZE = 10000;
+    public static final int DEFAULT_EXPORT_PARALLELISM = 4;
+    public static final long DEFAULT_EXPORT_WINDOW_MS = 3600000;
+    public static final int DEFAULT_EXPORT_BUFFER_SIZE = 1024 * 1024;
 
     private final String metadataUrl;
     private final String dataUrl;
@@ -41,6 +72,41 @@ public class ClientConfiguration {
     private boolean skipStreamingControl = false;
     private boolean enableBatchCompression = false;
     private String clientName;
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+    private long connectionIdleTimeoutMillis = DEFAULT_CONNECTION_IDLE_TIMEOUT_MS;
+    private int streamingBatchSize = DEFAULT_STREAMING_BATCH_SIZE;
+    private long streamingLingerMillis = DEFAULT_STREAMING_LINGER_MS;
+    private int streamingQueueCapacity = DEFAULT_STREAMING_QUEUE_CAPACITY;
+    private StreamingOverflowPolicy streamingOverflowPolicy = StreamingOverflowPolicy.BLOCK;
+    private long streamingBlockTimeoutMillis = DEFAULT_STREAMING_BLOCK_TIMEOUT_MS;
+    private String streamingSpillDirectory;
+    private long streamingSpillMaxBytes = DEFAULT_STREAMING_SPILL_MAX_BYTES;
+    private long streamingLedgerMaxBytes = DEFAULT_STREAMING_LEDGER_MAX_BYTES;
+    private String streamingSpoolDirectory;
+    private int streamingSpoolSegmentSize = DEFAULT_STREAMING_SPOOL_SEGMENT_SIZE;
+    private long streamingSpoolMaxBytes = DEFAULT_STREAMING_SPOOL_MAX_BYTES;
+    private int batchSplitSize = DEFAULT_BATCH_SPLIT_SIZE;
+    private int batchParallelism = DEFAULT_BATCH_PARALLELISM;
+    private int ingestBatchSize = DEFAULT_INGEST_BATCH_SIZE;
+    private long ingestLingerMillis = DEFAULT_INGEST_LINGER_MS;
+    private int ingestMaxInFlight = DEFAULT_INGEST_MAX_IN_FLIGHT;
+    private int seriesReadParallelism = DEFAULT_SERIES_READ_PARALLELISM;
+    private int seriesReadWindowPoints = DEFAULT_SERIES_READ_WINDOW_POINTS;
+    private boolean requestCoalescing = false;
+    private long seriesCacheMaxBytes = DEFAULT_SERIES_CACHE_MAX_BYTES;
+    private long seriesCacheTtlMillis = DEFAULT_SERIES_CACHE_TTL_MS;
+    private long seriesCacheOpenTailMillis = DEFAULT_SERIES_CACHE_OPEN_TAIL_MS;
+    private long lastValueRefreshIntervalMillis = DEFAULT_LAST_VALUE_REFRESH_INTERVAL_MS;
+    private int lastValueBatchSize = DEFAULT_LAST_VALUE_BATCH_SIZE;
+    private int metadataCacheMaxEntries = DEFAULT_METADATA_CACHE_MAX_ENTRIES;
+    private long metadataCacheTtlMillis = DEFAULT_METADATA_CACHE_TTL_MS;
+    private long metadataCacheNegativeTtlMillis = DEFAULT_METADATA_CACHE_NEGATIVE_TTL_MS;
+    private int metadataBulkParallelism = DEFAULT_METADATA_BULK_PARALLELISM;
+    private int metadataBulkGroupBatchSize = DEFAULT_METADATA_BULK_GROUP_BATCH_SIZE;
+    private int exportParallelism = DEFAULT_EXPORT_PARALLELISM;
+    private long exportWindowMillis = DEFAULT_EXPORT_WINDOW_MS;
+    private int exportBufferSize = DEFAULT_EXPORT_BUFFER_SIZE;
 
     /**
      * @param url      full URL to both Metadata and Data ATSD API
@@ -112,6 +178,339 @@ public class ClientConfiguration {
             return this;
         }
 
+        /**
+         * @param maxConnections maximum number of pooled HTTP connections shared by all requests
+         * @return this builder
+         */
+        public ClientConfigurationBuilder maxConnections(int maxConnections) {
+            instance.maxConnections = maxConnections;
+            return this;
+        }
+
+        /**
+         * @param maxConnectionsPerRoute maximum number of pooled HTTP connections to a single ATSD host
+         * @return this builder
+         */
+        public ClientConfigurationBuilder maxConnectionsPerRoute(int maxConnectionsPerRoute) {
+            instance.maxConnectionsPerRoute = maxConnectionsPerRoute;
+            return this;
+        }
+
+        /**
+         * @param connectionIdleTimeoutMillis pooled connections idle for longer than this are closed,
+         *                                    non-positive value disables eviction of idle connections
+         * @return this builder
+         */
+        public ClientConfigurationBuilder connectionIdleTimeoutMillis(long connectionIdleTimeoutMillis) {
+            instance.connectionIdleTimeoutMillis = connectionIdleTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * @param streamingBatchSize maximum number of queued commands written to the streaming connection
+         *                           with a single flush
+         * @return this builder
+         */
+        public ClientConfigurationBuilder streamingBatchSize(int streamingBatchSize) {
+            instance.streamingBatchSize = streamingBatchSize;
+            return this;
+        }
+
+        /**
+         * @param streamingLingerMillis time to wait for more commands before flushing an incomplete batch,
+         *                              zero flushes as soon as the queue is drained
+         * @return this builder
+         */
+        public ClientConfigurationBuilder streamingLingerMillis(long streamingLingerMillis) {
+            instance.streamingLingerMillis = streamingLingerMillis;
+            return this;
+        }
+
+        /**
+         * @param streamingQueueCapacity maximum number of commands waiting to be written to the streaming connection
+         * @return this builder
+         */
+        public ClientConfigurationBuilder streamingQueueCapacity(int streamingQueueCapacity) {
+            instance.streamingQueueCapacity = streamingQueueCapacity;
+            return this;
+        }
+
+        /**
+         * @param streamingOverflowPolicy what to do with a command sent while the streaming queue is full
+         * @return this builder
+         */
+        public ClientConfigurationBuilder streamingOverflowPolicy(StreamingOverflowPolicy streamingOverflowPolicy) {
+            instance.streamingOverflowPolicy = streamingOverflowPolicy;
+            return this;
+        }
+
+        /**
+         * @param streamingBlockTimeoutMillis time to wait for free space in the full queue
+         *                                    with the {@link StreamingOverflowPolicy#BLOCK} policy
+         * @return this builder
+         */
+        public ClientConfigurationBuilder streamingBlockTimeoutMillis(long streamingBlockTimeoutMillis) {
+            instance.streamingBlockTimeoutMillis = streamingBlockTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * @param streamingSpillDirectory directory for the spill file of the {@link StreamingOverflowPolicy#SPILL_TO_DISK}
+         *                                policy, the system temporary directory if not set
+         * @return this builder
+         */
+        public ClientConfigurationBuilder streamingSpillDirectory(String streamingSpillDirectory) {
+            instance.streamingSpillDirectory = streamingSpillDirectory;
+            return this;
+        }
+
+        /**
+         * @param streamingSpillMaxBytes spill file size limit, commands are dropped when it is reached
+         * @return this builder
+         */
+        public ClientConfigurationBuilder streamingSpillMaxBytes(long streamingSpillMaxBytes) {
+            instance.streamingSpillMaxBytes = streamingSpillMaxBytes;
+            return this;
+        }
+
+        /**
+         * @param streamingLedgerMaxBytes off-heap size limit of written commands kept until the server confirms their
+         *                                marker, commands over it are not kept and cannot be re-sent, 0 for no limit
+         * @return this builder
+         */
+        public ClientConfigurationBuilder streamingLedgerMaxBytes(long streamingLedgerMaxBytes) {
+            instance.streamingLedgerMaxBytes = streamingLedgerMaxBytes;
+            return this;
+        }
+
+        /**
+         * @param streamingSpoolDirectory directory of the durable spool for unconfirmed and unsent streaming commands,
+         *                                the spool is disabled if not set
+         * @return this builder
+         */
+        public ClientConfigurationBuilder streamingSpoolDirectory(String streamingSpoolDirectory) {
+            instance.streamingSpoolDirectory = streamingSpoolDirectory;
+            return this;
+        }
+
+        /**
+         * @param streamingSpoolSegmentSize size of a spool segment file
+         * @return this builder
+         */
+        public ClientConfigurationBuilder streamingSpoolSegmentSize(int streamingSpoolSegmentSize) {
+            instance.streamingSpoolSegmentSize = streamingSpoolSegmentSize;
+            return this;
+        }
+
+        /**
+         * @param streamingSpoolMaxBytes limit of the total size of spool segment files
+         * @return this builder
+         */
+        public ClientConfigurationBuilder streamingSpoolMaxBytes(long streamingSpoolMaxBytes) {
+            instance.streamingSpoolMaxBytes = streamingSpoolMaxBytes;
+            return this;
+        }
+
+        /**
+         * @param batchSplitSize maximum number of commands sent by {@code sendBatch} in one request,
+         *                       larger batches are split, 100,000 by default, 0 disables splitting
+         * @return this builder
+         */
+        public ClientConfigurationBuilder batchSplitSize(int batchSplitSize) {
+            instance.batchSplitSize = batchSplitSize;
+            return this;
+        }
+
+        /**
+         * @param batchParallelism number of requests of a split batch sent concurrently
+         * @return this builder
+         */
+        public ClientConfigurationBuilder batchParallelism(int batchParallelism) {
+            instance.batchParallelism = batchParallelism;
+            return this;
+        }
+
+        /**
+         * @param ingestBatchSize number of items that makes {@code IngestBuffer} send a request
+         * @return this builder
+         */
+        public ClientConfigurationBuilder ingestBatchSize(int ingestBatchSize) {
+            instance.ingestBatchSize = ingestBatchSize;
+            return this;
+        }
+
+        /**
+         * @param ingestLingerMillis maximum time in milliseconds an item waits in {@code IngestBuffer} for a batch to
+         *                           fill, 0 sends every item in its own request
+         * @return this builder
+         */
+        public ClientConfigurationBuilder ingestLingerMillis(long ingestLingerMillis) {
+            instance.ingestLingerMillis = ingestLingerMillis;
+            return this;
+        }
+
+        /**
+         * @param ingestMaxInFlight number of {@code IngestBuffer} requests sent concurrently,
+         *                          adding items blocks while this many batches are waiting or in flight
+         * @return this builder
+         */
+        public ClientConfigurationBuilder ingestMaxInFlight(int ingestMaxInFlight) {
+            instance.ingestMaxInFlight = ingestMaxInFlight;
+            return this;
+        }
+
+        /**
+         * @param seriesReadParallelism number of time windows {@code ParallelSeriesReader} requests concurrently
+         * @return this builder
+         */
+        public ClientConfigurationBuilder seriesReadParallelism(int seriesReadParallelism) {
+            instance.seriesReadParallelism = seriesReadParallelism;
+            return this;
+        }
+
+        /**
+         * @param seriesReadWindowPoints number of samples {@code ParallelSeriesReader} aims to read per window
+         * @return this builder
+         */
+        public ClientConfigurationBuilder seriesReadWindowPoints(int seriesReadWindowPoints) {
+            instance.seriesReadWindowPoints = seriesReadWindowPoints;
+            return this;
+        }
+
+        /**
+         * @param requestCoalescing if true, identical concurrent series and metric queries share one request
+         *                          and its decoded result
+         * @return this builder
+         */
+        public ClientConfigurationBuilder requestCoalescing(boolean requestCoalescing) {
+            instance.requestCoalescing = requestCoalescing;
+            return this;
+        }
+
+        /**
+         * @param seriesCacheMaxBytes estimated size limit of the {@code retrieveSeries} result cache,
+         *                            0 disables the cache
+         * @return this builder
+         */
+        public ClientConfigurationBuilder seriesCacheMaxBytes(long seriesCacheMaxBytes) {
+            instance.seriesCacheMaxBytes = seriesCacheMaxBytes;
+            return this;
+        }
+
+        /**
+         * @param seriesCacheTtlMillis time in milliseconds a cached series result is used before it is read again
+         * @return this builder
+         */
+        public ClientConfigurationBuilder seriesCacheTtlMillis(long seriesCacheTtlMillis) {
+            instance.seriesCacheTtlMillis = seriesCacheTtlMillis;
+            return this;
+        }
+
+        /**
+         * @param seriesCacheOpenTailMillis most recent period in milliseconds of queries ending now that is never
+         *                                  cached and is read on every request
+         * @return this builder
+         */
+        public ClientConfigurationBuilder seriesCacheOpenTailMillis(long seriesCacheOpenTailMillis) {
+            instance.seriesCacheOpenTailMillis = seriesCacheOpenTailMillis;
+            return this;
+        }
+
+        /**
+         * @param lastValueRefreshIntervalMillis delay in milliseconds between refreshes of {@code LastValueCache}
+         * @return this builder
+         */
+        public ClientConfigurationBuilder lastValueRefreshIntervalMillis(long lastValueRefreshIntervalMillis) {
+            instance.lastValueRefreshIntervalMillis = lastValueRefreshIntervalMillis;
+            return this;
+        }
+
+        /**
+         * @param lastValueBatchSize number of series queried in one {@code LastValueCache} refresh request
+         * @return this builder
+         */
+        public ClientConfigurationBuilder lastValueBatchSize(int lastValueBatchSize) {
+            instance.lastValueBatchSize = lastValueBatchSize;
+            return this;
+        }
+
+        /**
+         * @param metadataCacheMaxEntries number of metrics, entities and entity groups kept by the metadata cache,
+         *                                0 disables the cache
+         * @return this builder
+         */
+        public ClientConfigurationBuilder metadataCacheMaxEntries(int metadataCacheMaxEntries) {
+            instance.metadataCacheMaxEntries = metadataCacheMaxEntries;
+            return this;
+        }
+
+        /**
+         * @param metadataCacheTtlMillis time in milliseconds a cached metadata object is used
+         * @return this builder
+         */
+        public ClientConfigurationBuilder metadataCacheTtlMillis(long metadataCacheTtlMillis) {
+            instance.metadataCacheTtlMillis = metadataCacheTtlMillis;
+            return this;
+        }
+
+        /**
+         * @param metadataCacheNegativeTtlMillis time in milliseconds a metadata object not found by the server is
+         *                                       reported as missing without a request
+         * @return this builder
+         */
+        public ClientConfigurationBuilder metadataCacheNegativeTtlMillis(long metadataCacheNegativeTtlMillis) {
+            instance.metadataCacheNegativeTtlMillis = metadataCacheNegativeTtlMillis;
+            return this;
+        }
+
+        /**
+         * @param metadataBulkParallelism number of requests {@code MetaDataBulkWriter} sends concurrently
+         * @return this builder
+         */
+        public ClientConfigurationBuilder metadataBulkParallelism(int metadataBulkParallelism) {
+            instance.metadataBulkParallelism = metadataBulkParallelism;
+            return this;
+        }
+
+        /**
+         * @param metadataBulkGroupBatchSize number of entities {@code MetaDataBulkWriter} adds to an entity group
+         *                                   in one request
+         * @return this builder
+         */
+        public ClientConfigurationBuilder metadataBulkGroupBatchSize(int metadataBulkGroupBatchSize) {
+            instance.metadataBulkGroupBatchSize = metadataBulkGroupBatchSize;
+            return this;
+        }
+
+        /**
+         * @param exportParallelism number of windows {@code SeriesExporter} requests concurrently
+         * @return this builder
+         */
+        public ClientConfigurationBuilder exportParallelism(int exportParallelism) {
+            instance.exportParallelism = exportParallelism;
+            return this;
+        }
+
+        /**
+         * @param exportWindowMillis length in milliseconds of the time windows {@code SeriesExporter} requests and
+         *                           records as completed
+         * @return this builder
+         */
+        public ClientConfigurationBuilder exportWindowMillis(long exportWindowMillis) {
+            instance.exportWindowMillis = exportWindowMillis;
+            return this;
+        }
+
+        /**
+         * @param exportBufferSize size of the direct buffer {@code SeriesExporter} writes to the file through, and of
+         *                         the rows a window keeps in memory before moving them to a part file
+         * @return this builder
+         */
+        public ClientConfigurationBuilder exportBufferSize(int exportBufferSize) {
+            instance.exportBufferSize = exportBufferSize;
+            return this;
+        }
+
         public ClientConfiguration build() {
             return instance;
         }
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.model.system;
+
+/**
+ * What to do with a streaming command when the send queue is full.
+ */
+public enum StreamingOverflowPolicy {
+    /**
+     * Wait for free space up to the configured block timeout, then drop the command.
+     */
+    BLOCK,
+    /**
+     * Drop the oldest queued command to make room for the new one.
+     */
+    DROP_OLDEST,
+    /**
+     * Drop the new command.
+     */
+    DROP_NEWEST,
+    /**
+     * Append the command to a spill file, it is sent after the queue is drained.
+     */
+    SPILL_TO_DISK
+}
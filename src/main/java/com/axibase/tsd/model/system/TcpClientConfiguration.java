@@ -1,16 +1,70 @@
 package com.axibase.tsd.model.system;
 
-import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
 public class TcpClientConfiguration {
+    public static final int DEFAULT_CONNECTIONS = 1;
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final long DEFAULT_MAX_PENDING_BYTES = 16L * 1024 * 1024;
+    public static final int DEFAULT_RECONNECT_DELAY_MS = 10000;
+    public static final int DEFAULT_RING_BUFFER_SIZE = 64 * 1024;
+    public static final int DEFAULT_HEALTH_CHECK_INTERVAL_MS = 5000;
+
     private String serverName;
     private int port;
     private boolean autoflush;
     private int connectionTimeoutMs;
     private int readTimeoutMs;
+    /**
+     * Number of connections opened by the non-blocking and asynchronous transports and by the sharded mode of the
+     * pooled transport. The number of available processors is used if it is not positive.
+     */
+    private int connections = DEFAULT_CONNECTIONS;
+    /**
+     * Size of a direct buffer of the non-blocking transport.
+     */
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    /**
+     * Commands are rejected when a connection of the non-blocking transport has more bytes than this waiting.
+     */
+    private long maxPendingBytes = DEFAULT_MAX_PENDING_BYTES;
+    /**
+     * Longest delay between reconnection attempts of the non-blocking transport.
+     */
+    private int reconnectDelayMs = DEFAULT_RECONNECT_DELAY_MS;
+    /**
+     * Number of commands the ring buffer of an asynchronous transport connection holds, rounded up to a power of two.
+     */
+    private int ringBufferSize = DEFAULT_RING_BUFFER_SIZE;
+    /**
+     * How the writer threads of the asynchronous transport wait for commands.
+     */
+    private TcpWaitStrategy waitStrategy = TcpWaitStrategy.BLOCKING;
+    /**
+     * How commands are assigned to connections.
+     */
+    private TcpSharding sharding = TcpSharding.NONE;
+    /**
+     * Endpoints of a cluster, {@code host} or {@code host:port}. The port defaults to {@link #port}.
+     */
+    private List<String> nodes = new ArrayList<>();
+    /**
+     * Interval of cluster node health checks.
+     */
+    private int healthCheckIntervalMs = DEFAULT_HEALTH_CHECK_INTERVAL_MS;
+
+    public TcpClientConfiguration(String serverName, int port, boolean autoflush, int connectionTimeoutMs,
+                                  int readTimeoutMs) {
+        this.serverName = serverName;
+        this.port = port;
+        this.autoflush = autoflush;
+        this.connectionTimeoutMs = connectionTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+    }
 }
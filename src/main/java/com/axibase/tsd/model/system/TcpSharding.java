@@ -0,0 +1,34 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.model.system;
+
+/**
+ * How TCP commands are assigned to connections.
+ */
+public enum TcpSharding {
+    /**
+     * Any connection, commands sent by one thread keep their order.
+     */
+    NONE,
+    /**
+     * The connection is chosen by the hash of the entity name, commands of one entity keep their order.
+     */
+    ENTITY,
+    /**
+     * The connection is chosen by the hash of the entity and metric names of a single-metric series command,
+     * other insert commands are assigned by entity. Commands of one series keep their order.
+     */
+    ENTITY_METRIC
+}
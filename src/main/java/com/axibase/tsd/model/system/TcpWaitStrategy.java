@@ -0,0 +1,37 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.model.system;
+
+/**
+ * How the writer thread of the asynchronous TCP transport waits for new commands.
+ */
+public enum TcpWaitStrategy {
+    /**
+     * Park on a condition, producers signal it when the writer is waiting. Lowest CPU usage.
+     */
+    BLOCKING,
+    /**
+     * Spin, then yield, then sleep for short periods. Low CPU usage, latency of tens of microseconds.
+     */
+    SLEEPING,
+    /**
+     * Spin, then yield. Low latency, keeps a core busy while other threads are idle.
+     */
+    YIELDING,
+    /**
+     * Spin without yielding. Lowest latency, occupies a core per connection.
+     */
+    BUSY_SPIN
+}
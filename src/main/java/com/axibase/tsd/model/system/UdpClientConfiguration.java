@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.model.system;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UdpClientConfiguration {
+    /**
+     * Largest UDP payload that fits into a 1500 byte Ethernet frame without IP fragmentation.
+     */
+    public static final int DEFAULT_DATAGRAM_SIZE = 1500 - 20 - 8;
+    public static final int DEFAULT_FLUSH_INTERVAL_MS = 100;
+
+    private String serverName;
+    private int port;
+    /**
+     * Maximum size of a datagram, commands are packed into datagrams up to this size.
+     */
+    private int datagramSize = DEFAULT_DATAGRAM_SIZE;
+    /**
+     * Partially filled datagrams are sent after at most this delay.
+     */
+    private int flushIntervalMs = DEFAULT_FLUSH_INTERVAL_MS;
+}
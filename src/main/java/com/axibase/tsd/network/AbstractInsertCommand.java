@@ -21,7 +21,7 @@ import java.util.Map;
 import static com.axibase.tsd.util.AtsdUtil.checkEntityIsEmpty;
 
 
-public abstract class AbstractInsertCommand implements PlainCommand {
+public abstract class AbstractInsertCommand implements EncodableCommand {
     private final String commandName;
     protected final String entityName;
     private final Long timeMillis;
@@ -38,6 +38,10 @@ public abstract class AbstractInsertCommand implements PlainCommand {
         this.tags = tags == null ? Collections.<String, String>emptyMap() : tags;
     }
 
+    public String getEntityName() {
+        return entityName;
+    }
+
     @Override
     public final String compose() {
         StringBuilder sb = new StringBuilder(commandName)
@@ -53,6 +57,29 @@ public abstract class AbstractInsertCommand implements PlainCommand {
         return sb.append('\n').toString();
     }
 
+    @Override
+    public final void encodeTo(CommandEncoder encoder) {
+        encoder.appendAscii(commandName).appendAscii(" e:").appendName(entityName);
+        if (timeMillis != null) {
+            encoder.appendAscii(" ms:").append(timeMillis.longValue());
+        }
+        if (isoDate != null) {
+            encoder.appendAscii(" d:").append(isoDate);
+        }
+        encodeKeysAndValues(encoder, " t:", tags);
+        encodeValues(encoder);
+        encoder.appendAscii('\n');
+    }
+
+    protected static void encodeKeysAndValues(CommandEncoder encoder, String prefix, Map<String, String> map) {
+        for (Map.Entry<String, String> tagNameAndValue : map.entrySet()) {
+            encoder.appendAscii(prefix)
+                    .appendName(tagNameAndValue.getKey())
+                    .appendAscii('=')
+                    .appendQuoted(tagNameAndValue.getValue());
+        }
+    }
+
     protected static void appendKeysAndValues(StringBuilder sb, String prefix, Map<String, String> map) {
         for (Map.Entry<String, String> tagNameAndValue : map.entrySet()) {
             sb.append(prefix)
@@ -83,4 +110,16 @@ public abstract class AbstractInsertCommand implements PlainCommand {
     }
 
     protected abstract void appendValues(StringBuilder sb);
+
+    /**
+     * Encode command specific fields. Subclasses override it to avoid building a string, the default
+     * implementation encodes the result of {@link #appendValues(StringBuilder)}.
+     *
+     * @param encoder target encoder
+     */
+    protected void encodeValues(CommandEncoder encoder) {
+        StringBuilder sb = new StringBuilder();
+        appendValues(sb);
+        encoder.append(sb);
+    }
 }
@@ -0,0 +1,380 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.network;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reusable UTF-8 sink for network API commands. Names and values are escaped and encoded in a single pass straight
+ * into an internal byte array, so encoding an {@link EncodableCommand} allocates nothing once the array has grown
+ * to the size of the largest command. Other {@link PlainCommand} implementations are encoded from
+ * {@link PlainCommand#compose()}.
+ * <p>
+ * Not thread-safe, use one encoder per writing thread.
+ * </p>
+ */
+public final class CommandEncoder {
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final byte[] NULL_BYTES = {'n', 'u', 'l', 'l'};
+    private static final byte[] NAN_BYTES = {'N', 'a', 'N'};
+    private static final double[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000, 10000000};
+    private static final int MAX_FRACTION_DIGITS = POWERS_OF_TEN.length - 1;
+    /* Double.toString switches to the scientific notation outside of this range */
+    private static final double MIN_PLAIN = 1e-3;
+    private static final double MAX_PLAIN = 1e7;
+
+    private byte[] buffer;
+    private int length;
+
+    public CommandEncoder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CommandEncoder(int initialCapacity) {
+        buffer = new byte[Math.max(16, initialCapacity)];
+    }
+
+    /**
+     * Append the command terminated with a line feed.
+     *
+     * @param command command to encode
+     * @return this encoder
+     */
+    public CommandEncoder encode(PlainCommand command) {
+        if (command instanceof EncodableCommand) {
+            ((EncodableCommand) command).encodeTo(this);
+        } else {
+            append(command.compose());
+        }
+        return endLine();
+    }
+
+    /**
+     * Append a line feed unless the encoded data is empty or already ends with it.
+     *
+     * @return this encoder
+     */
+    public CommandEncoder endLine() {
+        if (length > 0 && buffer[length - 1] != '\n') {
+            appendAscii('\n');
+        }
+        return this;
+    }
+
+    public CommandEncoder appendAscii(char c) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) c;
+        return this;
+    }
+
+    /**
+     * Append ASCII-only text such as keywords and field prefixes.
+     *
+     * @param ascii text without characters above {@code 0x7F}
+     * @return this encoder
+     */
+    public CommandEncoder appendAscii(String ascii) {
+        int size = ascii.length();
+        ensureCapacity(size);
+        for (int i = 0; i < size; i++) {
+            buffer[length++] = (byte) ascii.charAt(i);
+        }
+        return this;
+    }
+
+    public CommandEncoder append(long value) {
+        if (value == Long.MIN_VALUE) {
+            return appendAscii(Long.toString(value));
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long limit = 10; digits < 19 && value >= limit; limit *= 10) {
+            digits++;
+        }
+        int position = length + digits;
+        length = position;
+        do {
+            buffer[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        return this;
+    }
+
+    /**
+     * Append a metric value in the {@link Double#toString(double)} notation, {@code NaN} for missing and infinite
+     * values, same as {@link com.axibase.tsd.util.AtsdUtil#formatMetricValue(double)}.
+     * Values with up to seven fraction digits in the plain notation range are formatted without allocation.
+     *
+     * @param value metric value
+     * @return this encoder
+     */
+    public CommandEncoder append(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return appendBytes(NAN_BYTES);
+        }
+        double magnitude = Math.abs(value);
+        if (magnitude < MAX_PLAIN && (magnitude >= MIN_PLAIN || value == 0)) {
+            for (int fractionDigits = 0; fractionDigits <= MAX_FRACTION_DIGITS; fractionDigits++) {
+                double scale = POWERS_OF_TEN[fractionDigits];
+                long scaled = Math.round(magnitude * scale);
+                if (scaled / scale == magnitude) {
+                    appendDecimal(value < 0 || (value == 0 && 1 / value < 0), scaled, fractionDigits);
+                    return this;
+                }
+            }
+        }
+        return appendAscii(Double.toString(value));
+    }
+
+    private void appendDecimal(boolean negative, long scaled, int fractionDigits) {
+        if (negative) {
+            appendAscii('-');
+        }
+        if (fractionDigits == 0) {
+            append(scaled);
+            appendAscii('.');
+            appendAscii('0');
+            return;
+        }
+        long divisor = (long) POWERS_OF_TEN[fractionDigits];
+        append(scaled / divisor);
+        appendAscii('.');
+        long fraction = scaled % divisor;
+        ensureCapacity(fractionDigits);
+        for (int i = fractionDigits - 1; i >= 0; i--) {
+            buffer[length + i] = (byte) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        length += fractionDigits;
+    }
+
+    /**
+     * Append text as is, encoded to UTF-8.
+     *
+     * @param text text to append, {@code null} is written as {@code null}
+     * @return this encoder
+     */
+    public CommandEncoder append(CharSequence text) {
+        if (text == null) {
+            return appendBytes(NULL_BYTES);
+        }
+        int size = text.length();
+        for (int i = 0; i < size; i++) {
+            appendChar(text, i, text.charAt(i));
+            if (Character.isHighSurrogate(text.charAt(i)) && i + 1 < size
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                i++;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Append a name (entity, metric, tag): quoted if it contains a double quote or an equals sign, inner double
+     * quotes are doubled.
+     *
+     * @param name name to append
+     * @return this encoder
+     */
+    public CommandEncoder appendName(String name) {
+        if (name == null) {
+            return appendBytes(NULL_BYTES);
+        }
+        boolean hasQuote = name.indexOf('"') != -1;
+        if (hasQuote) {
+            return appendQuoted(name);
+        } else if (name.indexOf('=') != -1) {
+            appendAscii('"');
+            append(name);
+            return appendAscii('"');
+        }
+        return append(name);
+    }
+
+    /**
+     * Append a value in double quotes with inner double quotes doubled.
+     *
+     * @param value value to append, {@code null} is written as {@code null} without quotes
+     * @return this encoder
+     */
+    public CommandEncoder appendQuoted(String value) {
+        if (value == null) {
+            return appendBytes(NULL_BYTES);
+        }
+        appendAscii('"');
+        int size = value.length();
+        for (int i = 0; i < size; i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                ensureCapacity(2);
+                buffer[length++] = '"';
+                buffer[length++] = '"';
+            } else {
+                appendChar(value, i, c);
+                if (Character.isHighSurrogate(c) && i + 1 < size && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    i++;
+                }
+            }
+        }
+        return appendAscii('"');
+    }
+
+    private void appendChar(CharSequence text, int index, char c) {
+        ensureCapacity(4);
+        if (c < 0x80) {
+            buffer[length++] = (byte) c;
+        } else if (c < 0x800) {
+            buffer[length++] = (byte) (0xC0 | (c >> 6));
+            buffer[length++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+            char low = index + 1 < text.length() ? text.charAt(index + 1) : 0;
+            if (Character.isHighSurrogate(c) && Character.isLowSurrogate(low)) {
+                int codePoint = Character.toCodePoint(c, low);
+                buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                // malformed surrogate, same replacement as String.getBytes(UTF_8)
+                buffer[length++] = '?';
+            }
+        } else {
+            buffer[length++] = (byte) (0xE0 | (c >> 12));
+            buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buffer[length++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    private CommandEncoder appendBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+        return this;
+    }
+
+    private void ensureCapacity(int extra) {
+        int required = length + extra;
+        if (required > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length << 1));
+        }
+    }
+
+    /**
+     * @param prefix ASCII prefix
+     * @return true if the encoded data starts with the prefix
+     */
+    public boolean startsWith(String prefix) {
+        return startsWith(0, prefix);
+    }
+
+    /**
+     * @param offset position in the encoded data
+     * @param prefix ASCII prefix
+     * @return true if the encoded data at the offset starts with the prefix
+     */
+    public boolean startsWith(int offset, String prefix) {
+        int size = prefix.length();
+        if (offset + size > length) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (buffer[offset + i] != (byte) prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Discard the data encoded after the specified length.
+     *
+     * @param newLength number of bytes to keep
+     */
+    public void truncate(int newLength) {
+        if (newLength < 0 || newLength > length) {
+            throw new IndexOutOfBoundsException("Length: " + newLength + ", encoded: " + length);
+        }
+        length = newLength;
+    }
+
+    /**
+     * Discard the encoded data, the internal array is kept for reuse.
+     */
+    public void reset() {
+        length = 0;
+    }
+
+    /**
+     * Discard the encoded data and drop the internal array if it grew above the limit, so that a single large batch
+     * does not pin memory for the lifetime of the encoder.
+     *
+     * @param maxRetainedCapacity largest array kept for reuse
+     */
+    public void reset(int maxRetainedCapacity) {
+        length = 0;
+        if (buffer.length > maxRetainedCapacity) {
+            buffer = new byte[Math.max(16, maxRetainedCapacity)];
+        }
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * @return internal array holding {@link #length()} encoded bytes, valid until the next modification
+     */
+    public byte[] array() {
+        return buffer;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    public void writeTo(OutputStream outputStream) throws IOException {
+        outputStream.write(buffer, 0, length);
+    }
+
+    /**
+     * Copy encoded bytes starting at the offset into the target buffer, as many as it has room for.
+     *
+     * @param offset first byte to copy
+     * @param target destination buffer
+     * @return number of bytes copied
+     */
+    public int copyTo(int offset, ByteBuffer target) {
+        int count = Math.min(length - offset, target.remaining());
+        target.put(buffer, offset, count);
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+}
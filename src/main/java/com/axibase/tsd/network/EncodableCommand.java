@@ -0,0 +1,28 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.network;
+
+/**
+ * Command that can write itself into a {@link CommandEncoder} without building an intermediate string.
+ * The encoded bytes must be equal to the UTF-8 encoding of {@link #compose()}.
+ */
+public interface EncodableCommand extends PlainCommand {
+    /**
+     * Append the command to the encoder, the trailing line feed is optional.
+     *
+     * @param encoder target encoder
+     */
+    void encodeTo(CommandEncoder encoder);
+}
@@ -46,6 +46,10 @@ public class InsertCommand extends AbstractInsertCommand {
         this(entityName, metricName, sample, AtsdUtil.toMap(tagNamesAndValues));
     }
 
+    public String getMetricName() {
+        return metricName;
+    }
+
     @Override
     protected void appendValues(StringBuilder sb) {
         sb.append(" m:").append(handleName(metricName)).append('=').append(formatMetricValue(sample.getNumericValueAsDouble()));
@@ -54,4 +58,11 @@ public class InsertCommand extends AbstractInsertCommand {
         }
     }
 
+    @Override
+    protected void encodeValues(CommandEncoder encoder) {
+        encoder.appendAscii(" m:").appendName(metricName).appendAscii('=').append(sample.getNumericValueAsDouble());
+        if (StringUtils.isNotEmpty(sample.getTextValue())) {
+            encoder.appendAscii(" x:").appendName(metricName).appendAscii('=').appendQuoted(sample.getTextValue());
+        }
+    }
 }
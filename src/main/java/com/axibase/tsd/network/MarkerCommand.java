@@ -20,7 +20,7 @@ import com.axibase.tsd.util.AtsdUtil;
 import java.util.UUID;
 
 
-public class MarkerCommand implements PlainCommand {
+public class MarkerCommand implements EncodableCommand {
     private final String marker;
 
     public MarkerCommand() {
@@ -35,4 +35,9 @@ public class MarkerCommand implements PlainCommand {
     public String compose() {
         return AtsdUtil.MARKER_KEYWORD + marker;
     }
+
+    @Override
+    public void encodeTo(CommandEncoder encoder) {
+        encoder.appendAscii(AtsdUtil.MARKER_KEYWORD).appendAscii(marker);
+    }
 }
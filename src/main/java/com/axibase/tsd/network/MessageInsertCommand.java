@@ -43,4 +43,12 @@ public class MessageInsertCommand extends AbstractInsertCommand {
             sb.append(" m:").append(handleStringValue(messageText));
         }
     }
+
+    @Override
+    protected void encodeValues(CommandEncoder encoder) {
+        // handleName() of a blank text is the text itself, null becomes "null"
+        if (messageText == null || StringUtils.isNotBlank(messageText)) {
+            encoder.appendAscii(" m:").appendQuoted(messageText);
+        }
+    }
 }
@@ -46,4 +46,14 @@ public class MultipleInsertCommand extends AbstractInsertCommand {
 
         appendKeysAndValues(sb, " x:", textValues);
     }
+
+    @Override
+    protected void encodeValues(CommandEncoder encoder) {
+        for (Map.Entry<String, Double> metricNameAndValue : numericValues.entrySet()) {
+            encoder.appendAscii(" m:").appendName(metricNameAndValue.getKey())
+                    .appendAscii('=').append(metricNameAndValue.getValue().doubleValue());
+        }
+
+        encodeKeysAndValues(encoder, " x:", textValues);
+    }
 }
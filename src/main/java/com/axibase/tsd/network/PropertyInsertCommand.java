@@ -48,4 +48,11 @@ public class PropertyInsertCommand extends AbstractInsertCommand {
         appendKeysAndValues(sb, " k:", keys);
         appendKeysAndValues(sb, " v:", values);
     }
+
+    @Override
+    protected void encodeValues(CommandEncoder encoder) {
+        encoder.appendAscii(" t:").append(typeName);
+        encodeKeysAndValues(encoder, " k:", keys);
+        encodeKeysAndValues(encoder, " v:", values);
+    }
 }
@@ -16,7 +16,7 @@
 package com.axibase.tsd.network;
 
 
-public class SimpleCommand implements PlainCommand {
+public class SimpleCommand implements EncodableCommand {
     private final String command;
 
     public SimpleCommand(String command) {
@@ -27,4 +27,9 @@ public class SimpleCommand implements PlainCommand {
     public String compose() {
         return command;
     }
+
+    @Override
+    public void encodeTo(CommandEncoder encoder) {
+        encoder.append(command);
+    }
 }
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd;
+
+import com.axibase.tsd.client.HttpClientManager;
+import com.axibase.tsd.model.system.ClientConfiguration;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.junit.rules.ExternalResource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embedded HTTP server on a random local port that stands in for the ATSD API. Tests register handlers for the API
+ * paths they use, requests are handled concurrently.
+ */
+public class StubServer extends ExternalResource {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    @Override
+    protected void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    @Override
+    protected void after() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @param path    API path relative to {@code /api/v1}, a prefix of the request paths to handle
+     * @param handler handler of the requests
+     * @return this server
+     */
+    public StubServer handle(String path, HttpHandler handler) {
+        server.createContext("/api/v1" + path, handler);
+        return this;
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api/v1";
+    }
+
+    public ClientConfiguration.ClientConfigurationBuilder configuration() {
+        return ClientConfiguration.builder(getUrl(), "user", "password");
+    }
+
+    public HttpClientManager clientManager() {
+        return new HttpClientManager(configuration().build());
+    }
+
+    /**
+     * @param body JSON response or null to respond without a body
+     */
+    public static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        byte[] response = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, response.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(response);
+        }
+    }
+
+    public static String readBody(HttpExchange exchange) throws IOException {
+        return IOUtils.toString(exchange.getRequestBody(), "UTF-8");
+    }
+
+    public static JsonNode readJson(HttpExchange exchange) throws IOException {
+        return MAPPER.readTree(exchange.getRequestBody());
+    }
+
+    /**
+     * @return decoded value of the query parameter or null if it is absent
+     */
+    public static String queryParameter(HttpExchange exchange, String name) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String parameter : query.split("&")) {
+            String[] pair = parameter.split("=", 2);
+            if (name.equals(pair[0])) {
+                return pair.length > 1 ? URLDecoder.decode(pair[1], "UTF-8") : "";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Blocks a handler until the test releases it, for at most ten seconds so that a failed test does not leave
+     * the server hanging.
+     */
+    public static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd;
+
+import org.junit.rules.ExternalResource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Embedded TCP server on a random local port that stands in for the ATSD network API. Every accepted connection is
+ * read on its own thread, received lines are collected in arrival order.
+ */
+public class TcpStubServer extends ExternalResource {
+    private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    private final List<Socket> connections = Collections.synchronizedList(new ArrayList<Socket>());
+    private ServerSocket serverSocket;
+
+    @Override
+    protected void before() throws IOException {
+        start(0);
+    }
+
+    @Override
+    protected void after() {
+        stop();
+    }
+
+    /**
+     * @param port local port to listen on, 0 to pick a free one
+     */
+    public void start(int port) throws IOException {
+        final ServerSocket server = new ServerSocket();
+        server.setReuseAddress(true);
+        server.bind(new InetSocketAddress("127.0.0.1", port));
+        serverSocket = server;
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        final Socket socket = server.accept();
+                        connections.add(socket);
+                        Thread reader = new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                read(socket);
+                            }
+                        });
+                        reader.setDaemon(true);
+                        reader.start();
+                    }
+                } catch (IOException e) {
+                    // server is closed
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Stops accepting connections and closes the accepted ones.
+     */
+    public void stop() {
+        try {
+            serverSocket.close();
+            synchronized (connections) {
+                for (Socket socket : connections) {
+                    socket.close();
+                }
+                connections.clear();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return lines received over all connections
+     */
+    public BlockingQueue<String> getReceived() {
+        return received;
+    }
+
+    /**
+     * @return connections accepted since the server was started
+     */
+    public List<Socket> getConnections() {
+        return connections;
+    }
+
+    /**
+     * @return local port nobody listens on
+     */
+    public static int unusedPort() throws IOException {
+        try (ServerSocket unused = new ServerSocket(0)) {
+            return unused.getLocalPort();
+        }
+    }
+
+    private void read(Socket socket) {
+        try {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            for (String line; (line = reader.readLine()) != null; ) {
+                received.add(line);
+            }
+        } catch (IOException e) {
+            // connection is closed
+        }
+    }
+}
@@ -61,13 +61,10 @@ public class TestUtil {
         ClientConfigurationFactory configurationFactory = ClientConfigurationFactory.createInstance();
         ClientConfiguration clientConfiguration = configurationFactory.createClientConfiguration();
         clientConfiguration.setEnableBatchCompression(enableBatchCompression);
+        clientConfiguration.setMaxConnections(100);
+        clientConfiguration.setMaxConnectionsPerRoute(100);
         HttpClientManager httpClientManager = new HttpClientManager();
         httpClientManager.setClientConfiguration(clientConfiguration);
-        GenericObjectPoolConfig objectPoolConfig = new GenericObjectPoolConfig();
-        objectPoolConfig.setMaxTotal(100);
-        objectPoolConfig.setMaxIdle(100);
-        httpClientManager.setObjectPoolConfig(objectPoolConfig);
-        httpClientManager.setBorrowMaxWaitMillis(10000);
         return httpClientManager;
     }
 
@@ -0,0 +1,164 @@
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.StubServer;
+import com.axibase.tsd.model.data.Message;
+import com.axibase.tsd.model.data.Property;
+import com.axibase.tsd.model.data.command.AddSeriesCommand;
+import com.axibase.tsd.model.data.command.BatchResponse;
+import com.axibase.tsd.model.data.command.GetPropertiesQuery;
+import com.axibase.tsd.model.data.command.GetSeriesQuery;
+import com.axibase.tsd.model.data.series.Series;
+import com.axibase.tsd.network.PlainCommand;
+import com.axibase.tsd.network.SimpleCommand;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncDataServiceTest {
+    @Rule
+    public final StubServer server = new StubServer();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicReference<String> commands = new AtomicReference<>();
+    private final AtomicReference<String> commit = new AtomicReference<>();
+    private HttpClientManager clientManager;
+    private AsyncDataService asyncDataService;
+
+    @Before
+    public void setUp() {
+        server.handle("/series/query", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                JsonNode query = StubServer.readJson(exchange).get(0);
+                StubServer.respond(exchange, 200, "[{\"entity\":\"" + query.get("entity").asText()
+                        + "\",\"metric\":\"" + query.get("metric").asText() + "\",\"data\":[{\"t\":1000,\"v\":1.5}]}]");
+            }
+        });
+        server.handle("/series/insert", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                StubServer.readBody(exchange);
+                StubServer.respond(exchange, 200, null);
+            }
+        });
+        server.handle("/messages/insert", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                StubServer.readBody(exchange);
+                StubServer.respond(exchange, 500, "{\"error\":\"Storage is not available\"}");
+            }
+        });
+        server.handle("/properties/query", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                StubServer.readBody(exchange);
+                StubServer.await(release);
+                StubServer.respond(exchange, 200, "[]");
+            }
+        });
+        server.handle("/command", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                commands.set(StubServer.readBody(exchange));
+                commit.set(StubServer.queryParameter(exchange, "commit"));
+                StubServer.respond(exchange, 200, "{\"fail\":0,\"success\":2,\"total\":2}");
+            }
+        });
+        clientManager = new HttpClientManager(server.configuration().readTimeoutMillis(10000).build());
+        asyncDataService = new AsyncDataService(clientManager);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        clientManager.close();
+    }
+
+    @Test
+    public void retrievedSeriesCompleteFuture() throws Exception {
+        Future<List<Series>> future = asyncDataService.retrieveSeries(
+                new GetSeriesQuery("e1", "m1").setStartTime(0L).setEndTime(2000L));
+
+        List<Series> series = future.get(5, TimeUnit.SECONDS);
+        assertEquals(1, series.size());
+        assertEquals("e1", series.get(0).getEntityName());
+        assertEquals(1.5, series.get(0).getData().get(0).getNumericValueAsDouble(), 0);
+    }
+
+    @Test
+    public void callbackIsInvokedWhenSeriesAreAdded() throws Exception {
+        AsyncHttpClientTest.RecordingCallback<Boolean> callback = new AsyncHttpClientTest.RecordingCallback<>();
+
+        asyncDataService.addSeries(callback, new AddSeriesCommand("e1", "m1"));
+
+        assertTrue(callback.done.await(5, TimeUnit.SECONDS));
+        assertEquals(Boolean.TRUE, callback.result.get());
+        assertNull(callback.failure.get());
+    }
+
+    @Test
+    public void httpErrorFailsFuture() throws Exception {
+        AsyncHttpClientTest.RecordingCallback<Boolean> callback = new AsyncHttpClientTest.RecordingCallback<>();
+
+        Future<Boolean> future = asyncDataService.insertMessages(callback, new Message("e1", "text"));
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Request must fail");
+        } catch (ExecutionException e) {
+            assertEquals(500, ((AtsdServerException) e.getCause()).getStatus());
+        }
+        assertTrue(callback.done.await(5, TimeUnit.SECONDS));
+        assertTrue(callback.failure.get() instanceof AtsdServerException);
+    }
+
+    @Test
+    public void batchIsSentAsEncodedCommands() throws Exception {
+        List<PlainCommand> batch = Arrays.<PlainCommand>asList(
+                new SimpleCommand("series e:e1 m:m1=1\n"), new SimpleCommand("series e:e1 m:m1=2\n"));
+
+        BatchResponse response = asyncDataService.sendBatch(batch, true, null).get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, response.getResult().getSuccess().intValue());
+        assertEquals("series e:e1 m:m1=1\nseries e:e1 m:m1=2\n", commands.get());
+        assertEquals("true", commit.get());
+    }
+
+    @Test
+    public void cancelledRequestNotifiesCallback() throws Exception {
+        AsyncHttpClientTest.RecordingCallback<List<Property>> callback = new AsyncHttpClientTest.RecordingCallback<>();
+        Future<List<Property>> future = asyncDataService.retrieveProperties(callback,
+                new GetPropertiesQuery("type", "e1"));
+
+        assertTrue(future.cancel(true));
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Cancelled future must not return a result");
+        } catch (CancellationException e) {
+            assertTrue(future.isCancelled());
+        }
+        assertTrue(callback.done.await(5, TimeUnit.SECONDS));
+        assertTrue(callback.failure.get() instanceof AtsdClientException);
+        assertNull(callback.result.get());
+    }
+}
@@ -0,0 +1,206 @@
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.StubServer;
+import com.axibase.tsd.model.data.command.BatchResponse;
+import com.axibase.tsd.model.meta.Metric;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.ws.rs.client.InvocationCallback;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncHttpClientTest {
+    @Rule
+    public final StubServer server = new StubServer();
+
+    private final CountDownLatch received = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private AsyncHttpClient client;
+
+    @Before
+    public void setUp() {
+        server.handle("/metrics/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String name = exchange.getRequestURI().getPath().substring("/api/v1/metrics/".length());
+                if ("missing".equals(name)) {
+                    StubServer.respond(exchange, 404, "{\"error\":\"Metric not found\"}");
+                } else if ("broken".equals(name)) {
+                    StubServer.respond(exchange, 500, "{\"error\":\"Internal error\"}");
+                } else if ("slow".equals(name)) {
+                    received.countDown();
+                    StubServer.await(release);
+                    StubServer.respond(exchange, 200, "{\"name\":\"slow\"}");
+                } else {
+                    StubServer.respond(exchange, 200, "{\"name\":\"" + name + "\"}");
+                }
+            }
+        });
+        server.handle("/metrics", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                StubServer.respond(exchange, 200, "[{\"name\":\"m1\"},{\"name\":\"m2\"}]");
+            }
+        });
+        server.handle("/command", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (StubServer.readBody(exchange).contains("bad")) {
+                    StubServer.respond(exchange, 400, "{\"error\":\"Invalid command\"}");
+                } else {
+                    StubServer.respond(exchange, 200, "{\"fail\":0,\"success\":1,\"total\":1}");
+                }
+            }
+        });
+        client = new AsyncHttpClient(server.configuration()
+                .maxConnections(1)
+                .maxConnectionsPerRoute(1)
+                .readTimeoutMillis(10000)
+                .build());
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        client.close();
+    }
+
+    @Test
+    public void futureIsCompletedWithDecodedResult() throws Exception {
+        Future<List<Metric>> metrics = client.requestList(uri("/metrics"), null, Metric.class, null);
+        Future<Metric> metric = client.requestObject(uri("/metrics/m1"), null, Metric.class, null);
+
+        assertEquals(2, metrics.get(5, TimeUnit.SECONDS).size());
+        assertEquals("m2", metrics.get().get(1).getName());
+        assertEquals("m1", metric.get(5, TimeUnit.SECONDS).getName());
+        assertNull(client.requestObject(uri("/metrics/missing"), null, Metric.class, null).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void callbackReceivesResult() throws Exception {
+        RecordingCallback<Metric> callback = new RecordingCallback<>();
+
+        Future<Metric> future = client.requestObject(uri("/metrics/m1"), null, Metric.class, callback);
+
+        assertTrue(callback.done.await(5, TimeUnit.SECONDS));
+        assertEquals("m1", callback.result.get().getName());
+        assertNull(callback.failure.get());
+        assertSame(callback.result.get(), future.get());
+    }
+
+    @Test
+    public void httpErrorFailsFutureAndCallback() throws Exception {
+        RecordingCallback<Metric> callback = new RecordingCallback<>();
+
+        Future<Metric> future = client.requestObject(uri("/metrics/broken"), null, Metric.class, callback);
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Request must fail");
+        } catch (ExecutionException e) {
+            AtsdServerException cause = (AtsdServerException) e.getCause();
+            assertEquals(500, cause.getStatus());
+            assertTrue(cause.getMessage().contains("Internal error"));
+        }
+        assertTrue(callback.done.await(5, TimeUnit.SECONDS));
+        assertTrue(callback.failure.get() instanceof AtsdServerException);
+        assertNull(callback.result.get());
+    }
+
+    @Test
+    public void batchErrorIsReportedInResponse() throws Exception {
+        byte[] good = "series e:e m:m=1\n".getBytes(StandardCharsets.UTF_8);
+        byte[] bad = "bad command\n".getBytes(StandardCharsets.UTF_8);
+
+        BatchResponse accepted = client.sendBatch(uri("/command"), good, null).get(5, TimeUnit.SECONDS);
+        BatchResponse rejected = client.sendBatch(uri("/command"), bad, null).get(5, TimeUnit.SECONDS);
+
+        assertEquals(200, accepted.getStatusType().getStatusCode());
+        assertEquals(1, accepted.getResult().getSuccess().intValue());
+        assertEquals(400, rejected.getStatusType().getStatusCode());
+        assertEquals("Invalid command", rejected.getServerError().getMessage());
+    }
+
+    @Test
+    public void cancellationNotifiesCallbackAndDiscardsResponse() throws Exception {
+        RecordingCallback<Metric> callback = new RecordingCallback<>();
+        Future<Metric> slow = client.requestObject(uri("/metrics/slow"), null, Metric.class, callback);
+        assertTrue(received.await(5, TimeUnit.SECONDS));
+
+        assertTrue(slow.cancel(true));
+
+        assertTrue(slow.isCancelled());
+        try {
+            slow.get();
+            fail("Cancelled future must not return a result");
+        } catch (CancellationException e) {
+            // expected
+        }
+        assertTrue(callback.done.await(5, TimeUnit.SECONDS));
+        assertTrue(callback.failure.get() instanceof AtsdClientException);
+
+        release.countDown();
+        // the only pooled connection is returned once the response of the cancelled request is discarded
+        assertEquals("m1", client.requestObject(uri("/metrics/m1"), null, Metric.class, null)
+                .get(5, TimeUnit.SECONDS).getName());
+        assertNull(callback.result.get());
+        assertTrue(slow.isCancelled());
+        assertFalse(slow.cancel(true));
+    }
+
+    @Test
+    public void updateReportsRejectedRequest() throws Exception {
+        server.handle("/series/insert", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                StubServer.respond(exchange, StubServer.readBody(exchange).contains("bad") ? 400 : 200, null);
+            }
+        });
+
+        assertTrue(client.update(uri("/series/insert"), Collections.singletonList("good"), null).get());
+        assertFalse(client.update(uri("/series/insert"), Collections.singletonList("bad"), null).get());
+    }
+
+    private URI uri(String path) {
+        return URI.create(server.getUrl() + path);
+    }
+
+    static final class RecordingCallback<T> implements InvocationCallback<T> {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<T> result = new AtomicReference<>();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        @Override
+        public void completed(T response) {
+            result.set(response);
+            done.countDown();
+        }
+
+        @Override
+        public void failed(Throwable throwable) {
+            failure.set(throwable);
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.StubServer;
+import com.axibase.tsd.model.meta.Entity;
+import com.axibase.tsd.model.meta.EntityGroup;
+import com.axibase.tsd.model.meta.Metric;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncMetaDataServiceTest {
+    @Rule
+    public final StubServer server = new StubServer();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicReference<String> tags = new AtomicReference<>();
+    private HttpClientManager clientManager;
+    private AsyncMetaDataService asyncMetaDataService;
+
+    @Before
+    public void setUp() {
+        server.handle("/metrics/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                StubServer.respond(exchange, 200, "{\"name\":\"m1\",\"label\":\"Metric One\"}");
+            }
+        });
+        server.handle("/entities/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (exchange.getRequestURI().getPath().endsWith("/slow")) {
+                    StubServer.await(release);
+                }
+                StubServer.respond(exchange, 404, "{\"error\":\"Entity not found\"}");
+            }
+        });
+        server.handle("/entity-groups/g1/entities", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                tags.set(StubServer.queryParameter(exchange, "tags"));
+                StubServer.respond(exchange, 200, "[{\"name\":\"e1\"},{\"name\":\"e2\"}]");
+            }
+        });
+        server.handle("/entity-groups/broken", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                StubServer.respond(exchange, 500, "{\"error\":\"Internal error\"}");
+            }
+        });
+        clientManager = new HttpClientManager(server.configuration().readTimeoutMillis(10000).build());
+        asyncMetaDataService = new AsyncMetaDataService(clientManager);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        clientManager.close();
+    }
+
+    @Test
+    public void retrievedMetricCompletesFuture() throws Exception {
+        Metric metric = asyncMetaDataService.retrieveMetric("m1").get(5, TimeUnit.SECONDS);
+
+        assertEquals("m1", metric.getName());
+        assertEquals("Metric One", metric.getLabel());
+    }
+
+    @Test
+    public void missingEntityCompletesFutureWithNull() throws Exception {
+        assertNull(asyncMetaDataService.retrieveEntity("e1").get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void callbackReceivesGroupEntities() throws Exception {
+        AsyncHttpClientTest.RecordingCallback<List<Entity>> callback = new AsyncHttpClientTest.RecordingCallback<>();
+
+        asyncMetaDataService.retrieveGroupEntities("g1", callback);
+
+        assertTrue(callback.done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, callback.result.get().size());
+        assertEquals("e2", callback.result.get().get(1).getName());
+        assertEquals("*", tags.get());
+    }
+
+    @Test
+    public void httpErrorFailsFutureAndCallback() throws Exception {
+        AsyncHttpClientTest.RecordingCallback<EntityGroup> callback = new AsyncHttpClientTest.RecordingCallback<>();
+
+        Future<EntityGroup> future = asyncMetaDataService.retrieveEntityGroup("broken", callback);
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Request must fail");
+        } catch (ExecutionException e) {
+            assertEquals(500, ((AtsdServerException) e.getCause()).getStatus());
+        }
+        assertTrue(callback.done.await(5, TimeUnit.SECONDS));
+        assertTrue(callback.failure.get() instanceof AtsdServerException);
+    }
+
+    @Test
+    public void cancelledRequestNotifiesCallback() throws Exception {
+        AsyncHttpClientTest.RecordingCallback<Entity> callback = new AsyncHttpClientTest.RecordingCallback<>();
+        Future<Entity> future = asyncMetaDataService.retrieveEntity("slow", callback);
+
+        assertTrue(future.cancel(true));
+
+        try {
+            future.get();
+            fail("Cancelled future must not return a result");
+        } catch (CancellationException e) {
+            assertTrue(future.isCancelled());
+        }
+        assertTrue(callback.done.await(5, TimeUnit.SECONDS));
+        assertTrue(callback.failure.get() instanceof AtsdClientException);
+    }
+}
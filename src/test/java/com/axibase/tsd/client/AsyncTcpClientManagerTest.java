@@ -0,0 +1,125 @@
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.TcpStubServer;
+import com.axibase.tsd.model.system.TcpClientConfiguration;
+import com.axibase.tsd.network.PlainCommand;
+import com.axibase.tsd.network.SimpleCommand;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncTcpClientManagerTest {
+    @Rule
+    public final TcpStubServer server = new TcpStubServer();
+
+    @Test
+    public void commandsAreWrittenInBatches() throws InterruptedException {
+        AsyncTcpClientManager manager = new AsyncTcpClientManager(configuration(server.getPort()));
+        try {
+            List<PlainCommand> commands = new ArrayList<>();
+            for (int i = 0; i < 20000; i++) {
+                commands.add(new SimpleCommand("series e:e m:m=" + i));
+                if (commands.size() == 100) {
+                    while (!manager.send(commands)) {
+                        Thread.sleep(1);
+                    }
+                    commands.clear();
+                }
+            }
+            for (int i = 0; i < 20000; i++) {
+                assertEquals("series e:e m:m=" + i, server.getReceived().poll(5, TimeUnit.SECONDS));
+            }
+            AsyncTcpMetrics metrics = manager.getMetrics();
+            assertEquals(20000, metrics.getEnqueued());
+            assertEquals(20000, metrics.getWritten());
+            assertTrue(metrics.getBatches() <= 200);
+            assertEquals(0, metrics.getQueueSize());
+            assertTrue(metrics.getMaxEnqueueNanos() > 0);
+        } finally {
+            manager.close();
+        }
+    }
+
+    @Test
+    public void queuedCommandsAreSentOnClose() throws InterruptedException {
+        AsyncTcpClientManager manager = new AsyncTcpClientManager(configuration(server.getPort()));
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(manager.send(new SimpleCommand("command " + i)));
+        }
+        manager.close();
+        assertFalse(manager.send(new SimpleCommand("after close")));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("command " + i, server.getReceived().poll(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, manager.getMetrics().getRejected());
+    }
+
+    @Test
+    public void commandsAcceptedDuringCloseAreSentOrDiscarded() throws InterruptedException {
+        final AsyncTcpClientManager manager = new AsyncTcpClientManager(configuration(server.getPort()));
+        final AtomicLong accepted = new AtomicLong();
+        List<Thread> senders = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread sender = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long deadline = System.currentTimeMillis() + 5000;
+                    while (System.currentTimeMillis() < deadline) {
+                        if (manager.send(new SimpleCommand("command"))) {
+                            accepted.incrementAndGet();
+                        } else if (manager.getMetrics().getRejected() > 0 && manager.getMetrics().getQueueSize() == 0) {
+                            return;
+                        }
+                    }
+                }
+            });
+            sender.start();
+            senders.add(sender);
+        }
+        Thread.sleep(50);
+        manager.close();
+        for (Thread sender : senders) {
+            sender.join();
+        }
+
+        AsyncTcpMetrics metrics = manager.getMetrics();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getReceived().size() + metrics.getDiscarded() < accepted.get()
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(accepted.get(), metrics.getEnqueued());
+        assertEquals(accepted.get(), server.getReceived().size() + metrics.getDiscarded());
+    }
+
+    @Test
+    public void commandsAreRejectedWhileServerIsDown() throws IOException {
+        TcpClientConfiguration configuration = configuration(TcpStubServer.unusedPort());
+        configuration.setRingBufferSize(16);
+        AsyncTcpClientManager manager = new AsyncTcpClientManager(configuration);
+        int accepted = 0;
+        while (manager.send(new SimpleCommand("command")) && accepted < 100) {
+            accepted++;
+        }
+        assertTrue(accepted <= 16 + 1);
+        manager.close();
+        AsyncTcpMetrics metrics = manager.getMetrics();
+        assertEquals(accepted, metrics.getDiscarded());
+        assertTrue(metrics.getFailures() > 0);
+    }
+
+    private static TcpClientConfiguration configuration(int port) {
+        TcpClientConfiguration configuration = new TcpClientConfiguration("127.0.0.1", port, false, 500, 1000);
+        configuration.setRingBufferSize(1024);
+        return configuration;
+    }
+}
@@ -0,0 +1,145 @@
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.TcpStubServer;
+import com.axibase.tsd.model.data.series.Sample;
+import com.axibase.tsd.model.system.TcpClientConfiguration;
+import com.axibase.tsd.network.InsertCommand;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClusterTcpClientManagerTest {
+    @Rule
+    public final TcpStubServer first = new TcpStubServer();
+    @Rule
+    public final TcpStubServer second = new TcpStubServer();
+
+    @Test
+    public void entitiesAreSplitBetweenNodes() throws InterruptedException {
+        ClusterTcpClientManager manager = new ClusterTcpClientManager(configuration());
+        try {
+            for (int i = 0; i < 200; i++) {
+                for (int j = 0; j < 5; j++) {
+                    assertTrue(manager.send(command("entity-" + i)));
+                }
+            }
+            waitFor(first, second, 1000);
+            assertTrue(first.getReceived().size() > 0);
+            assertTrue(second.getReceived().size() > 0);
+            for (String entity : entities(first)) {
+                assertFalse(entity, entities(second).contains(entity));
+            }
+        } finally {
+            manager.close();
+        }
+    }
+
+    @Test
+    public void commandsAreReroutedWhileNodeIsDownAndReturnAfterRecovery() throws Exception {
+        ClusterTcpClientManager manager = new ClusterTcpClientManager(configuration());
+        try {
+            String entity = entityOf(manager, first);
+            int port = first.getPort();
+            first.stop();
+
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!entities(second).contains(entity) && System.currentTimeMillis() < deadline) {
+                manager.send(command(entity));
+                Thread.sleep(10);
+            }
+            assertTrue(entities(second).contains(entity));
+            assertFalse(manager.isNodeUp("127.0.0.1:" + port));
+
+            first.start(port);
+            first.getReceived().clear();
+            deadline = System.currentTimeMillis() + 10000;
+            while (!manager.isNodeUp("127.0.0.1:" + port) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(manager.isNodeUp("127.0.0.1:" + port));
+            manager.send(command(entity));
+            waitFor(first, null, 1);
+            assertTrue(entities(first).contains(entity));
+        } finally {
+            manager.close();
+        }
+    }
+
+    @Test
+    public void commandsAcceptedDuringCloseAreWrittenOrDiscarded() throws InterruptedException {
+        final ClusterTcpClientManager manager = new ClusterTcpClientManager(configuration());
+        final AtomicLong accepted = new AtomicLong();
+        List<Thread> senders = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final int sender = i;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long deadline = System.currentTimeMillis() + 5000;
+                    for (int j = 0; System.currentTimeMillis() < deadline; j++) {
+                        if (manager.send(command("entity-" + sender + "-" + j % 100))) {
+                            accepted.incrementAndGet();
+                        } else if (manager.getRejected() > 0 && manager.getQueueSize() == 0) {
+                            return;
+                        }
+                    }
+                }
+            });
+            thread.start();
+            senders.add(thread);
+        }
+        Thread.sleep(50);
+        manager.close();
+        for (Thread sender : senders) {
+            sender.join();
+        }
+
+        assertEquals(accepted.get(), manager.getWritten() + manager.getParked() + manager.getDropped());
+    }
+
+    private String entityOf(ClusterTcpClientManager manager, TcpStubServer node) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            manager.send(command("entity-" + i));
+        }
+        waitFor(first, second, 100);
+        return entities(node).iterator().next();
+    }
+
+    private TcpClientConfiguration configuration() {
+        TcpClientConfiguration configuration = new TcpClientConfiguration("127.0.0.1", 8081, false, 500, 1000);
+        configuration.setNodes(Arrays.asList("127.0.0.1:" + first.getPort(), "127.0.0.1:" + second.getPort()));
+        configuration.setRingBufferSize(1024);
+        configuration.setHealthCheckIntervalMs(100);
+        return configuration;
+    }
+
+    private static InsertCommand command(String entity) {
+        return new InsertCommand(entity, "metric", Sample.ofTimeDouble(0, 1));
+    }
+
+    private static void waitFor(TcpStubServer first, TcpStubServer second, int lines) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (first.getReceived().size() + (second == null ? 0 : second.getReceived().size()) < lines
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static Set<String> entities(TcpStubServer server) {
+        Set<String> entities = new HashSet<>();
+        for (String line : server.getReceived()) {
+            entities.add(line.split(" ")[1].substring(2));
+        }
+        return entities;
+    }
+}
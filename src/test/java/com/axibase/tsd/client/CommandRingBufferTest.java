@@ -0,0 +1,101 @@
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.system.TcpWaitStrategy;
+import com.axibase.tsd.network.PlainCommand;
+import com.axibase.tsd.network.SimpleCommand;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CommandRingBufferTest {
+    @Test
+    public void capacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(8, new CommandRingBuffer(5, TcpWaitStrategy.BUSY_SPIN).capacity());
+        assertEquals(8, new CommandRingBuffer(8, TcpWaitStrategy.BUSY_SPIN).capacity());
+    }
+
+    @Test
+    public void offerIsRejectedWhenFull() {
+        CommandRingBuffer ring = new CommandRingBuffer(4, TcpWaitStrategy.BUSY_SPIN);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(new SimpleCommand("c" + i)));
+        }
+        assertFalse(ring.offer(new SimpleCommand("c4")));
+        assertEquals(4, ring.size());
+
+        List<PlainCommand> drained = new ArrayList<>();
+        assertEquals(2, ring.drainTo(drained, 2));
+        assertEquals("c0", drained.get(0).compose());
+        assertTrue(ring.offer(new SimpleCommand("c4")));
+    }
+
+    @Test
+    public void batchIsPublishedAllOrNothing() {
+        CommandRingBuffer ring = new CommandRingBuffer(4, TcpWaitStrategy.BUSY_SPIN);
+        ring.offer(new SimpleCommand("a"));
+        List<PlainCommand> batch = Arrays.<PlainCommand>asList(
+                new SimpleCommand("b"), new SimpleCommand("c"), new SimpleCommand("d"), new SimpleCommand("e"));
+        assertFalse(ring.offer(batch));
+        assertTrue(ring.offer(batch.subList(0, 3)));
+
+        List<PlainCommand> drained = new ArrayList<>();
+        ring.drainTo(drained, 10);
+        assertEquals(4, drained.size());
+        assertEquals("d", drained.get(3).compose());
+    }
+
+    @Test
+    public void concurrentProducersKeepTheirOrder() throws InterruptedException {
+        for (TcpWaitStrategy waitStrategy : TcpWaitStrategy.values()) {
+            checkConcurrentProducers(waitStrategy);
+        }
+    }
+
+    private static void checkConcurrentProducers(TcpWaitStrategy waitStrategy) throws InterruptedException {
+        final CommandRingBuffer ring = new CommandRingBuffer(64, waitStrategy);
+        final int producers = 4;
+        final int perProducer = 20000;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perProducer; i++) {
+                        SimpleCommand command = new SimpleCommand(producer + " " + i);
+                        while (!ring.offer(command)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+            threads[p].start();
+        }
+
+        int[] next = new int[producers];
+        List<PlainCommand> batch = new ArrayList<>();
+        int received = 0;
+        while (received < producers * perProducer) {
+            assertTrue(waitStrategy.name(), ring.await(TimeUnit.SECONDS.toNanos(5)));
+            batch.clear();
+            received += ring.drainTo(batch, 100);
+            for (PlainCommand command : batch) {
+                String[] parts = command.compose().split(" ");
+                int producer = Integer.parseInt(parts[0]);
+                assertEquals(next[producer]++, Integer.parseInt(parts[1]));
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, ring.size());
+        assertFalse(ring.await(TimeUnit.MILLISECONDS.toNanos(10)));
+    }
+}
@@ -0,0 +1,112 @@
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.network.PlainCommand;
+import com.axibase.tsd.network.SimpleCommand;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CommandSpillFileTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CommandSpillFile spill;
+
+    @Before
+    public void setUp() {
+        spill = new CommandSpillFile(folder.getRoot().getAbsolutePath(), 1024 * 1024);
+    }
+
+    @After
+    public void tearDown() {
+        spill.close();
+    }
+
+    @Test
+    public void commandsAreReadBackInOrder() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            assertTrue(spill.append(new SimpleCommand("series e:e" + i + " m:m=" + i)));
+        }
+        assertEquals(5, spill.size());
+
+        List<PlainCommand> batch = new ArrayList<>();
+        assertEquals(3, spill.drainTo(batch, 3));
+        assertEquals(2, spill.drainTo(batch, 3));
+
+        assertEquals(5, batch.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals("series e:e" + i + " m:m=" + i, batch.get(i).compose());
+        }
+        assertTrue(spill.isEmpty());
+        assertEquals(0, folder.getRoot().listFiles()[0].length());
+    }
+
+    @Test
+    public void appendIfNotEmptyKeepsOrderAfterOverflow() throws IOException {
+        assertFalse(spill.appendIfNotEmpty(new SimpleCommand("first")));
+        assertTrue(spill.append(new SimpleCommand("second")));
+        assertTrue(spill.appendIfNotEmpty(new SimpleCommand("third")));
+
+        List<PlainCommand> batch = new ArrayList<>();
+        spill.drainTo(batch, 10);
+        assertEquals(2, batch.size());
+        assertEquals("third", batch.get(1).compose());
+    }
+
+    @Test
+    public void commandLongerThanReadBufferIsRead() throws IOException {
+        String longValue = StringUtils.repeat('x', 200 * 1024);
+        spill.append(new SimpleCommand("short"));
+        spill.append(new SimpleCommand(longValue));
+
+        List<PlainCommand> batch = new ArrayList<>();
+        assertEquals(2, spill.drainTo(batch, 10));
+        assertEquals(longValue, batch.get(1).compose());
+    }
+
+    @Test
+    public void lineFeedInQuotedValueDoesNotSplitCommand() throws IOException {
+        String message = "message e:e t:type=test m:\"first line\nsecond line\"";
+        spill.append(new SimpleCommand(message));
+        spill.append(new SimpleCommand("last"));
+        assertEquals(2, spill.size());
+
+        List<PlainCommand> batch = new ArrayList<>();
+        assertEquals(2, spill.drainTo(batch, 10));
+        assertEquals(message, batch.get(0).compose());
+        assertEquals("last", batch.get(1).compose());
+        assertTrue(spill.isEmpty());
+    }
+
+    @Test
+    public void appendIsRejectedWhenFileIsFull() throws IOException {
+        CommandSpillFile small = new CommandSpillFile(folder.getRoot().getAbsolutePath(), 10);
+        try {
+            assertTrue(small.append(new SimpleCommand("12345")));
+            assertFalse(small.append(new SimpleCommand("67890")));
+            assertEquals(1, small.size());
+        } finally {
+            small.close();
+        }
+    }
+
+    @Test
+    public void closeDeletesFile() throws IOException {
+        spill.append(new SimpleCommand("command"));
+        spill.close();
+
+        assertEquals(0, folder.getRoot().listFiles().length);
+        assertFalse(spill.append(new SimpleCommand("command")));
+    }
+}
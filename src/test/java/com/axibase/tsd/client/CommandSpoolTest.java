@@ -0,0 +1,141 @@
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.network.SimpleCommand;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CommandSpoolTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void commandsArePeekedUntilCommitted() throws IOException {
+        CommandSpool spool = open(1024);
+        spool.append(new SimpleCommand("a"));
+        spool.append(new SimpleCommand("b"));
+        spool.append(new SimpleCommand("c"));
+
+        assertEquals(Arrays.asList("a\n", "b\n"), peek(spool, 2));
+        assertEquals(Arrays.asList("a\n", "b\n"), peek(spool, 2));
+        spool.commit(2);
+        assertEquals(Arrays.asList("c\n"), peek(spool, 10));
+        assertEquals(1, spool.size());
+        spool.close();
+    }
+
+    @Test
+    public void peekSkipsCommandsAcrossSegments() throws IOException {
+        CommandSpool spool = open(64);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(spool.append(new SimpleCommand("command-" + i)));
+        }
+        spool.commit(2);
+
+        List<String> commands = new ArrayList<>();
+        assertEquals(3, spool.peek(commands, 5, 3));
+        assertEquals(Arrays.asList("command-7\n", "command-8\n", "command-9\n"), commands);
+        assertEquals(0, spool.peek(new ArrayList<String>(), 8, 3));
+        assertEquals(8, spool.size());
+        spool.close();
+    }
+
+    @Test
+    public void consumedSegmentsAreDeleted() throws IOException {
+        CommandSpool spool = open(64);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(spool.append(new SimpleCommand("command-" + i)));
+        }
+        assertTrue(segments().length > 3);
+
+        assertEquals(20, peek(spool, 100).size());
+        assertEquals("command-19\n", peek(spool, 100).get(19));
+        spool.commit(19);
+
+        assertEquals(1, segments().length);
+        assertEquals(Arrays.asList("command-19\n"), peek(spool, 100));
+        spool.close();
+    }
+
+    @Test
+    public void commandsSurviveRestartWithoutClose() throws IOException {
+        CommandSpool spool = open(64);
+        for (int i = 0; i < 10; i++) {
+            spool.append(new SimpleCommand("command-" + i));
+        }
+        spool.commit(4);
+
+        CommandSpool recovered = open(64);
+        assertEquals(6, recovered.size());
+        assertEquals("command-4\n", peek(recovered, 1).get(0));
+        recovered.append(new SimpleCommand("after restart"));
+        assertEquals("after restart\n", peek(recovered, 100).get(6));
+        recovered.close();
+    }
+
+    @Test
+    public void tornRecordIsDiscardedOnRecovery() throws IOException {
+        CommandSpool spool = open(1024);
+        spool.append(new SimpleCommand("complete"));
+        spool.append(new SimpleCommand("torn"));
+        spool.close();
+
+        File segment = segments()[0];
+        int tornPayload = 8 + "complete\n".length() + 8;
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(tornPayload);
+            file.write("X".getBytes(StandardCharsets.UTF_8));
+        }
+
+        CommandSpool recovered = open(1024);
+        assertEquals(Arrays.asList("complete\n"), peek(recovered, 10));
+        recovered.append(new SimpleCommand("next"));
+        assertEquals(Arrays.asList("complete\n", "next\n"), peek(recovered, 10));
+        recovered.close();
+    }
+
+    @Test
+    public void appendIsRejectedWhenSpoolIsFull() throws IOException {
+        CommandSpool spool = new CommandSpool(folder.getRoot(), 64, 128);
+        int stored = 0;
+        while (spool.append(new SimpleCommand("command")) && stored < 100) {
+            stored++;
+        }
+        assertTrue(stored > 0);
+        assertFalse(spool.append(new SimpleCommand("command")));
+        assertEquals(stored, spool.size());
+        spool.close();
+    }
+
+    private CommandSpool open(int segmentSize) throws IOException {
+        return new CommandSpool(folder.getRoot(), segmentSize, 1024 * 1024);
+    }
+
+    private File[] segments() {
+        return folder.getRoot().listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".seg");
+            }
+        });
+    }
+
+    private static List<String> peek(CommandSpool spool, int max) {
+        List<String> commands = new ArrayList<>();
+        spool.peek(commands, max);
+        return commands;
+    }
+}
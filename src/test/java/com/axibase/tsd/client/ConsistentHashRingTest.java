@@ -0,0 +1,80 @@
+package com.axibase.tsd.client;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConsistentHashRingTest {
+    private static final List<String> NODES = Arrays.asList("atsd1:8081", "atsd2:8081", "atsd3:8081", "atsd4:8081");
+    private static final ConsistentHashRing.Filter<String> ALL = new ConsistentHashRing.Filter<String>() {
+        @Override
+        public boolean accept(String member) {
+            return true;
+        }
+    };
+
+    @Test
+    public void keysAreSpreadOverMembers() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(NODES, NODES, 128);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 40000; i++) {
+            String owner = ring.get(ConsistentHashRing.hash("entity-" + i), ALL);
+            counts.put(owner, counts.containsKey(owner) ? counts.get(owner) + 1 : 1);
+        }
+        assertEquals(4, counts.size());
+        for (int count : counts.values()) {
+            assertTrue(String.valueOf(counts), count > 6000 && count < 14000);
+        }
+    }
+
+    @Test
+    public void onlyKeysOfSkippedMemberMove() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(NODES, NODES, 128);
+        ConsistentHashRing.Filter<String> withoutSecond = new ConsistentHashRing.Filter<String>() {
+            @Override
+            public boolean accept(String member) {
+                return !"atsd2:8081".equals(member);
+            }
+        };
+        for (int i = 0; i < 10000; i++) {
+            int hash = ConsistentHashRing.hash("entity-" + i);
+            String owner = ring.get(hash, ALL);
+            String failover = ring.get(hash, withoutSecond);
+            if ("atsd2:8081".equals(owner)) {
+                assertNotEquals(owner, failover);
+            } else {
+                assertEquals(owner, failover);
+            }
+        }
+    }
+
+    @Test
+    public void placementDependsOnlyOnNames() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(NODES, NODES, 128);
+        List<String> reversed = Arrays.asList(NODES.get(3), NODES.get(2), NODES.get(1), NODES.get(0));
+        ConsistentHashRing<String> other = new ConsistentHashRing<>(reversed, reversed, 128);
+        for (int i = 0; i < 1000; i++) {
+            int hash = ConsistentHashRing.hash("entity-" + i);
+            assertEquals(ring.get(hash, ALL), other.get(hash, ALL));
+        }
+    }
+
+    @Test
+    public void nullWhenNoMemberIsAccepted() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(NODES, NODES, 16);
+        assertNull(ring.get(42, new ConsistentHashRing.Filter<String>() {
+            @Override
+            public boolean accept(String member) {
+                return false;
+            }
+        }));
+    }
+}
@@ -0,0 +1,177 @@
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.StubServer;
+import com.axibase.tsd.model.data.command.BatchResponse;
+import com.axibase.tsd.model.data.command.SendCommandResult;
+import com.axibase.tsd.network.PlainCommand;
+import com.axibase.tsd.network.SimpleCommand;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.ws.rs.core.Response;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DataServiceBatchTest {
+    @Rule
+    public final StubServer server = new StubServer();
+
+    private final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> transferEncodings = Collections.synchronizedList(new ArrayList<String>());
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+    private volatile String dropRequestWith;
+
+    @Before
+    public void setUp() {
+        server.handle("/command", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int current = active.incrementAndGet();
+                maxActive.set(Math.max(maxActive.get(), current));
+                transferEncodings.add(exchange.getRequestHeaders().getFirst("Transfer-Encoding"));
+                int lines = 0;
+                boolean drop = false;
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+                for (String line; (line = reader.readLine()) != null; ) {
+                    received.add(line);
+                    lines++;
+                    drop |= line.equals(dropRequestWith);
+                }
+                StubServer.sleep(50);
+                if (drop) {
+                    active.decrementAndGet();
+                    exchange.close();
+                    return;
+                }
+                StubServer.respond(exchange, 200, String.format(
+                        "{\"fail\":0,\"success\":%d,\"total\":%d,\"stored\":%d}", lines, lines, lines));
+                active.decrementAndGet();
+            }
+        });
+    }
+
+    @Test
+    public void batchIsStreamedInOneRequest() {
+        DataService dataService = dataService(0, 1);
+        BatchResponse response = dataService.sendBatch(commands(50000));
+        assertEquals(50000, response.getResult().getSuccess().intValue());
+        assertEquals(Arrays.asList("chunked"), transferEncodings);
+        assertEquals(50000, received.size());
+        assertEquals("series e:e m:m=49999", received.get(49999));
+    }
+
+    @Test
+    public void largeBatchIsSplitAndSentConcurrently() {
+        DataService dataService = dataService(1000, 4);
+        BatchResponse response = dataService.sendBatch(new LinkedHashSet<>(commands(10500)));
+        assertEquals(11, transferEncodings.size());
+        assertEquals(10500, response.getResult().getTotal().intValue());
+        assertEquals(10500, response.getResult().getStored().intValue());
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatusType().getStatusCode());
+        assertEquals(10500, new LinkedHashSet<>(received).size());
+        assertTrue(maxActive.get() > 1);
+        assertTrue(maxActive.get() <= 4);
+    }
+
+    @Test
+    public void partThatCannotBeSentFailsAloneInParallel() {
+        dropRequestWith = "series e:e m:m=5000";
+        BatchResponse response = dataService(1000, 4).sendBatch(commands(10500));
+        assertEquals(11, transferEncodings.size());
+        assertEquals(9500, response.getResult().getSuccess().intValue());
+        assertEquals(1000, response.getResult().getFail().intValue());
+        assertEquals(10500, response.getResult().getTotal().intValue());
+        assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(),
+                response.getStatusType().getStatusCode());
+        assertTrue(response.getServerError().getMessage().startsWith("Could not send 1000 commands"));
+    }
+
+    @Test
+    public void partThatCannotBeSentFailsAloneInSequence() {
+        dropRequestWith = "series e:e m:m=0";
+        BatchResponse response = dataService(1000, 1).sendBatch(commands(3000));
+        assertEquals(3, transferEncodings.size());
+        assertEquals(2000, response.getResult().getSuccess().intValue());
+        assertEquals(1000, response.getResult().getFail().intValue());
+        assertEquals(3000, response.getResult().getTotal().intValue());
+        assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(),
+                response.getStatusType().getStatusCode());
+    }
+
+    @Test
+    public void batchThatCannotBeSentIsReportedInResponse() {
+        dropRequestWith = "series e:e m:m=0";
+        BatchResponse response = dataService(1000, 4).sendBatch(commands(500));
+        assertEquals(1, transferEncodings.size());
+        assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(),
+                response.getStatusType().getStatusCode());
+        assertEquals(0, response.getResult().getSuccess().intValue());
+        assertEquals(500, response.getResult().getFail().intValue());
+        assertEquals(500, response.getResult().getTotal().intValue());
+    }
+
+    @Test
+    public void listIsSplitIntoViews() {
+        List<PlainCommand> commands = commands(25);
+        List<Collection<PlainCommand>> parts = DataService.splitBatch(commands, 10);
+        assertEquals(3, parts.size());
+        assertEquals(commands.subList(20, 25), parts.get(2));
+
+        Set<PlainCommand> set = new LinkedHashSet<>(commands);
+        parts = DataService.splitBatch(set, 10);
+        assertEquals(3, parts.size());
+        assertEquals(10, parts.get(1).size());
+        assertEquals(commands.get(24), new ArrayList<>(parts.get(2)).get(4));
+    }
+
+    @Test
+    public void failedRequestStatusIsKept() {
+        BatchResponse ok = response(Response.Status.OK, 10);
+        BatchResponse failed = new BatchResponse(Response.Status.BAD_REQUEST);
+        BatchResponse merged = DataService.mergeBatchResponses(Arrays.asList(ok, failed, response(Response.Status.OK, 5)));
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), merged.getStatusType().getStatusCode());
+        assertEquals(15, merged.getResult().getSuccess().intValue());
+    }
+
+    private DataService dataService(int splitSize, int parallelism) {
+        return new DataService(new HttpClientManager(server.configuration()
+                .readTimeoutMillis(10000)
+                .batchSplitSize(splitSize)
+                .batchParallelism(parallelism)
+                .build()));
+    }
+
+    private static List<PlainCommand> commands(int count) {
+        List<PlainCommand> commands = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            commands.add(new SimpleCommand("series e:e m:m=" + i));
+        }
+        return commands;
+    }
+
+    private static BatchResponse response(Response.Status status, int success) {
+        SendCommandResult result = new SendCommandResult();
+        result.setSuccess(success);
+        BatchResponse response = new BatchResponse(status);
+        response.setResult(result);
+        return response;
+    }
+}
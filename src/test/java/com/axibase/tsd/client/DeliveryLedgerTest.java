@@ -0,0 +1,108 @@
+package com.axibase.tsd.client;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class DeliveryLedgerTest {
+    private final DeliveryLedger ledger = new DeliveryLedger(0);
+
+    @Test
+    public void commandsAreCountedPerMarkerInSendOrder() {
+        record("m2", "a\n", "b\n");
+        record("m1", "c\n");
+        record("m2", "d\n");
+
+        assertEquals(Arrays.asList("m2", "m1"), ledger.markers());
+        assertEquals(3, ledger.count("m2"));
+        assertEquals(1, ledger.count("m1"));
+        assertEquals(0, ledger.count("unknown"));
+        assertEquals(4, ledger.getCommands());
+        assertEquals(8, ledger.getBytes());
+    }
+
+    @Test
+    public void confirmedMarkerIsReleased() {
+        record("m1", "a\n");
+        record("m2", "b\n");
+
+        ledger.confirm("m1");
+
+        assertEquals(Arrays.asList("m2"), ledger.markers());
+        assertEquals(1, ledger.getCommands());
+        assertEquals(2, ledger.getBytes());
+    }
+
+    @Test
+    public void unconfirmedCommandsAreDecodedAcrossChunks() {
+        String longCommand = StringUtils.repeat('x', 300 * 1024) + "\n";
+        record("m1", "series e:\u00e9 m:m=1\n");
+        record("m1", longCommand, "last\n");
+
+        List<String> saved = new ArrayList<>();
+        assertEquals(3, ledger.drainTo("m1", saved));
+
+        assertEquals(Arrays.asList("series e:\u00e9 m:m=1\n", longCommand, "last\n"), saved);
+        assertEquals(0, ledger.size());
+        assertEquals(0, ledger.getBytes());
+    }
+
+    @Test
+    public void commandsOverLimitAreCountedButNotKept() {
+        DeliveryLedger limited = new DeliveryLedger(256 * 1024);
+        limited.record("m1", "a\n".getBytes(StandardCharsets.UTF_8), 0, 2);
+        limited.record("m2", "b\n".getBytes(StandardCharsets.UTF_8), 0, 2);
+
+        assertEquals(1, limited.count("m2"));
+        assertEquals(2, limited.getCommands());
+        assertEquals(2, limited.getBytes());
+        assertEquals(1, limited.getOverflow());
+        List<String> saved = new ArrayList<>();
+        assertEquals(0, limited.drainTo("m2", saved));
+        assertEquals(1, limited.getCommands());
+
+        limited.confirm("m1");
+        limited.record("m3", "c\n".getBytes(StandardCharsets.UTF_8), 0, 2);
+        assertEquals(1, limited.drainTo("m3", saved));
+        assertEquals(Arrays.asList("c\n"), saved);
+        assertEquals(1, limited.getOverflow());
+    }
+
+    @Test
+    public void drainAllKeepsSendOrder() {
+        record("m1", "a\n");
+        record("m2", "b\n");
+
+        List<String> saved = new ArrayList<>();
+        assertEquals(2, ledger.drainAll(saved));
+
+        assertEquals(Arrays.asList("a\n", "b\n"), saved);
+        assertEquals(0, ledger.getCommands());
+    }
+
+    @Test
+    public void lineFeedInQuotedValueDoesNotSplitCommand() {
+        String message = "message e:e t:type=test m:\"first line\nsecond line\"\n";
+        record("m1", message, "last\n");
+
+        List<String> saved = new ArrayList<>();
+        assertEquals(2, ledger.drainTo("m1", saved));
+
+        assertEquals(Arrays.asList(message, "last\n"), saved);
+        assertEquals(0, ledger.getCommands());
+        assertEquals(0, ledger.getBytes());
+    }
+
+    private void record(String marker, String... commands) {
+        for (String command : commands) {
+            byte[] bytes = ("prefix" + command).getBytes(StandardCharsets.UTF_8);
+            ledger.record(marker, bytes, 6, bytes.length - 6);
+        }
+    }
+}
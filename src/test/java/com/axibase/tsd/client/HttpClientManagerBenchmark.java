@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.data.command.GetSeriesQuery;
+import com.axibase.tsd.model.system.ClientConfiguration;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Measures latency and heap footprint of {@link HttpClientManager} under concurrent load against a local stub server.
+ * <p>
+ * Not a unit test, run manually: {@code java -cp target/test-classes:target/classes:target/dependency/*
+ * com.axibase.tsd.client.HttpClientManagerBenchmark [callers] [requestsPerCaller]}
+ * </p>
+ */
+public class HttpClientManagerBenchmark {
+    private static final byte[] SERIES_RESPONSE = ("[{\"entity\":\"e\",\"metric\":\"m\",\"tags\":{}," +
+            "\"type\":\"HISTORY\",\"aggregate\":{\"type\":\"DETAIL\"},\"data\":[{\"t\":1000,\"v\":1.5}]}]")
+            .getBytes(StandardCharsets.UTF_8);
+
+    public static void main(String[] args) throws Exception {
+        int callers = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int requestsPerCaller = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        HttpServer server = startServer(callers);
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/v1";
+            ClientConfiguration configuration = ClientConfiguration.builder(url, "user", "password")
+                    .connectTimeoutMillis(5000)
+                    .readTimeoutMillis(5000)
+                    .skipStreamingControl(true)
+                    .build();
+            HttpClientManager httpClientManager = new HttpClientManager(configuration);
+            try {
+                DataService dataService = new DataService(httpClientManager);
+                long warmUpStart = System.nanoTime();
+                run(dataService, callers, Math.max(1, requestsPerCaller / 5));
+                long warmUpNanos = System.nanoTime() - warmUpStart;
+                long[] latencies = run(dataService, callers, requestsPerCaller);
+                long heapUsed = usedHeapAfterGc();
+                report(callers, warmUpNanos, latencies, heapUsed);
+            } finally {
+                httpClientManager.close();
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static HttpServer startServer(int threads) throws IOException {
+        // avoid Nagle's delays on the stub side, they would hide the client overhead
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try (InputStream body = exchange.getRequestBody()) {
+                    byte[] buffer = new byte[4096];
+                    while (body.read(buffer) != -1) {
+                        // drain request body
+                    }
+                }
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, SERIES_RESPONSE.length);
+                try (OutputStream responseBody = exchange.getResponseBody()) {
+                    responseBody.write(SERIES_RESPONSE);
+                }
+            }
+        });
+        server.setExecutor(Executors.newFixedThreadPool(threads));
+        server.start();
+        return server;
+    }
+
+    private static long[] run(final DataService dataService, int callers, final int requestsPerCaller)
+            throws InterruptedException {
+        final long[] latencies = new long[callers * requestsPerCaller];
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(callers);
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        for (int i = 0; i < callers; i++) {
+            final int offset = i * requestsPerCaller;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < requestsPerCaller; j++) {
+                            long begin = System.nanoTime();
+                            dataService.retrieveSeries(new GetSeriesQuery("e", "m").setStartTime(0L).setEndTime(1L));
+                            latencies[offset + j] = System.nanoTime() - begin;
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        done.await();
+        executor.shutdown();
+        return latencies;
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memoryBean.getHeapMemoryUsage().getUsed();
+    }
+
+    private static void report(int callers, long warmUpNanos, long[] latencies, long heapUsed) {
+        Arrays.sort(latencies);
+        System.out.printf("callers=%d warmUp=%.0fms requests=%d p50=%.2fms p99=%.2fms max=%.2fms heapUsed=%.1fMB%n",
+                callers, warmUpNanos / 1e6, latencies.length,
+                percentile(latencies, 0.50) / 1e6,
+                percentile(latencies, 0.99) / 1e6,
+                latencies[latencies.length - 1] / 1e6,
+                heapUsed / (1024.0 * 1024.0));
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
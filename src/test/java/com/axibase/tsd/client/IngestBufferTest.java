@@ -0,0 +1,185 @@
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.StubServer;
+import com.axibase.tsd.model.data.Message;
+import com.axibase.tsd.model.data.Property;
+import com.axibase.tsd.model.data.command.AddSeriesCommand;
+import com.axibase.tsd.model.data.command.BatchResponse;
+import com.axibase.tsd.network.SimpleCommand;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IngestBufferTest {
+    @Rule
+    public final StubServer server = new StubServer();
+
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+    private volatile int status = 200;
+    private final CountDownLatch seriesReleased = new CountDownLatch(1);
+    private volatile boolean blockSeries;
+
+    @Before
+    public void setUp() {
+        server.handle("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                requests.add(path + " " + StubServer.readBody(exchange));
+                if (blockSeries && path.endsWith("/series/insert")) {
+                    try {
+                        seriesReleased.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                StubServer.respond(exchange, status,
+                        path.endsWith("/command") ? "{\"fail\":0,\"success\":1,\"total\":1}" : "{}");
+            }
+        });
+    }
+
+    @Test
+    public void fullBatchIsSentWithoutWaitingForLinger() throws Exception {
+        IngestBuffer buffer = new IngestBuffer(server.clientManager(), 3, 60000, 2);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                futures.add(buffer.addSeries(series(i)));
+            }
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, requests.size());
+            assertTrue(requests.get(0).startsWith("/api/v1/series/insert "));
+            assertTrue(requests.get(0).contains("\"v\":2.0"));
+            assertEquals(0, buffer.getPending());
+        } finally {
+            buffer.close();
+        }
+    }
+
+    @Test
+    public void partialBatchIsSentAfterLinger() throws Exception {
+        IngestBuffer buffer = new IngestBuffer(server.clientManager(), 1000, 100, 2);
+        try {
+            Future<Boolean> first = buffer.insertMessage(message("first"));
+            Future<Boolean> second = buffer.insertMessage(message("second"));
+            Future<BatchResponse> command = buffer.sendCommand(new SimpleCommand("series e:e m:m=1"));
+            assertEquals(3, buffer.getPending());
+
+            assertTrue(first.get(5, TimeUnit.SECONDS));
+            assertTrue(second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, command.get(5, TimeUnit.SECONDS).getResult().getSuccess().intValue());
+            assertEquals(2, requests.size());
+            assertEquals(2, buffer.getBatches());
+            assertEquals(3, buffer.getItems());
+        } finally {
+            buffer.close();
+        }
+    }
+
+    @Test
+    public void zeroLingerSendsEveryItemAtOnce() throws Exception {
+        IngestBuffer buffer = new IngestBuffer(server.clientManager(), 1000, 0, 2);
+        try {
+            assertTrue(buffer.addSeries(series(1)).get(5, TimeUnit.SECONDS));
+            assertTrue(buffer.insertMessage(message("text")).get(5, TimeUnit.SECONDS));
+            assertEquals(2, requests.size());
+            assertEquals(0, buffer.getPending());
+        } finally {
+            buffer.close();
+        }
+    }
+
+    @Test
+    public void lingerTimerIsNotBlockedBySlowRequests() throws Exception {
+        blockSeries = true;
+        IngestBuffer buffer = new IngestBuffer(server.clientManager(), 2, 50, 1);
+        try {
+            Future<Boolean> first = buffer.addSeries(series(1));
+            Future<Boolean> second = buffer.addSeries(series(2));
+            Future<Boolean> message = buffer.insertMessage(message("text"));
+            Future<Boolean> property = buffer.insertProperty(
+                    new Property("type", "e", Collections.singletonMap("k", "v")));
+            long deadline = System.currentTimeMillis() + 2000;
+            while (buffer.getPending() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, buffer.getPending());
+            assertFalse(message.isDone());
+
+            seriesReleased.countDown();
+            for (Future<Boolean> future : Arrays.asList(first, second, message, property)) {
+                assertTrue(future.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(3, buffer.getBatches());
+        } finally {
+            buffer.close();
+        }
+    }
+
+    @Test
+    public void failedRequestFailsAllItsFutures() throws Exception {
+        status = 500;
+        IngestBuffer buffer = new IngestBuffer(server.clientManager(), 2, 60000, 1);
+        try {
+            Future<Boolean> first = buffer.addSeries(series(1));
+            Future<Boolean> second = buffer.addSeries(series(2));
+            for (Future<Boolean> future : Arrays.asList(first, second)) {
+                try {
+                    future.get(5, TimeUnit.SECONDS);
+                    fail();
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof RuntimeException);
+                }
+            }
+            assertEquals(1, buffer.getFailedBatches());
+        } finally {
+            buffer.close();
+        }
+    }
+
+    @Test
+    public void closeSendsBufferedItems() throws Exception {
+        HttpClientManager clientManager = new HttpClientManager(server.configuration()
+                .readTimeoutMillis(10000)
+                .build());
+        IngestBuffer buffer = new IngestBuffer(clientManager, 1000, 60000, 1);
+        Future<Boolean> future = buffer.addSeries(series(1));
+        buffer.close();
+        assertTrue(future.isDone());
+        assertTrue(future.get());
+        try {
+            buffer.addSeries(series(2));
+            fail();
+        } catch (AtsdClientException e) {
+            assertEquals("Ingest buffer is closed", e.getMessage());
+        }
+    }
+
+    private static AddSeriesCommand series(int value) {
+        return AddSeriesCommand.createSingle("e", "m", value, value);
+    }
+
+    private static Message message(String text) {
+        return new Message("e", text);
+    }
+}
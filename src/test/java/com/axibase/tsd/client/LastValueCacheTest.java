@@ -0,0 +1,146 @@
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.StubServer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LastValueCacheTest {
+    @Rule
+    public final StubServer server = new StubServer();
+
+    private final List<JsonNode> requests = Collections.synchronizedList(new ArrayList<JsonNode>());
+    private final AtomicInteger version = new AtomicInteger(1);
+    private volatile int status = 200;
+
+    @Before
+    public void setUp() {
+        server.handle("/series/query", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                JsonNode queries = StubServer.readJson(exchange);
+                requests.add(queries);
+                StringBuilder body = new StringBuilder("[");
+                for (JsonNode query : queries) {
+                    String entity = query.get("entity").asText();
+                    body.append(body.length() == 1 ? "" : ",").append("{\"entity\":\"").append(entity)
+                            .append("\",\"metric\":\"m\",\"requestId\":\"").append(query.get("requestId").asText())
+                            .append("\",\"data\":[");
+                    if (!entity.equals("missing")) {
+                        body.append("{\"t\":").append(version.get()).append(",\"v\":")
+                                .append(Integer.parseInt(entity.substring(1)) * 10 + version.get()).append("}");
+                    }
+                    body.append("]}");
+                }
+                StubServer.respond(exchange, status, status == 200 ? body.append("]").toString() : null);
+            }
+        });
+    }
+
+    @Test
+    public void registeredSeriesAreRefreshedInBatches() {
+        LastValueCache cache = new LastValueCache(server.clientManager(), 0, 4);
+        int[] keys = new int[10];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = cache.register("e" + i, "m", null);
+        }
+        assertEquals(keys[3], cache.register("e3", "m", Collections.<String, String>emptyMap()));
+        assertEquals(10, cache.size());
+        assertTrue(Double.isNaN(cache.getValue(keys[0])));
+        assertEquals(Long.MAX_VALUE, cache.getStaleness(keys[0]));
+
+        cache.refresh();
+        assertEquals(3, requests.size());
+        assertEquals(2, requests.get(2).size());
+        assertTrue(requests.get(0).get(0).get("cache").asBoolean());
+        assertEquals(71.0, cache.getValue(keys[7]), 0);
+        assertEquals(1L, cache.getSample(keys[7]).getTimeMillis().longValue());
+        assertTrue(cache.getStaleness(keys[7]) < 1000);
+
+        version.set(2);
+        cache.unregister(keys[9]);
+        cache.refresh();
+        assertEquals(72.0, cache.getValue(keys[7]), 0);
+        assertEquals(91.0, cache.getValue(keys[9]), 0);
+        assertEquals(6, cache.getRefreshes());
+        assertEquals(0, cache.getFailures());
+    }
+
+    @Test
+    public void registeringUnregisteredSeriesResumesRefresh() {
+        LastValueCache cache = new LastValueCache(server.clientManager(), 0, 100);
+        int key = cache.register("e2", "m", null);
+        cache.refresh();
+        cache.unregister(key);
+
+        version.set(2);
+        cache.refresh();
+        assertEquals(21.0, cache.getValue(key), 0);
+
+        assertEquals(key, cache.register("e2", "m", null));
+        cache.refresh();
+        assertEquals(22.0, cache.getValue(key), 0);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void tagsAreSortedIntoOneKey() {
+        LastValueCache cache = new LastValueCache(server.clientManager(), 0, 100);
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("b", "2");
+        tags.put("a", "1");
+        Map<String, String> reversed = new LinkedHashMap<>();
+        reversed.put("a", "1");
+        reversed.put("b", "2");
+        assertEquals(cache.register("e1", "m", tags), cache.register("e1", "m", reversed));
+        assertNotEquals(cache.register("e1", "m", tags), cache.register("e1", "m", null));
+    }
+
+    @Test
+    public void failedRefreshKeepsValuesAndStalenessGrows() throws InterruptedException {
+        LastValueCache cache = new LastValueCache(server.clientManager(), 0, 100);
+        int key = cache.register("e5", "m", null);
+        int missing = cache.register("missing", "m", null);
+        cache.refresh();
+        assertNull(cache.getSample(missing));
+        assertTrue(cache.getStaleness(missing) < 1000);
+
+        status = 500;
+        Thread.sleep(50);
+        cache.refresh();
+        assertEquals(51.0, cache.getValue(key), 0);
+        assertTrue(cache.getStaleness(key) >= 50);
+        assertEquals(1, cache.getFailures());
+    }
+
+    @Test
+    public void valuesAreRefreshedInBackground() throws InterruptedException {
+        LastValueCache cache = new LastValueCache(server.clientManager(), 20, 100);
+        try {
+            int key = cache.register("e3", "m", null);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (Double.isNaN(cache.getValue(key)) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(31.0, cache.getValue(key), 0);
+        } finally {
+            cache.close();
+        }
+    }
+}
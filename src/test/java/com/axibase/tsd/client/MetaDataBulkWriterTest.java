@@ -0,0 +1,112 @@
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.StubServer;
+import com.axibase.tsd.model.meta.Entity;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MetaDataBulkWriterTest {
+    @Rule
+    public final StubServer server = new StubServer();
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+    private final List<String> groupRequests = Collections.synchronizedList(new ArrayList<String>());
+    private MetaDataBulkWriter writer;
+
+    @Before
+    public void setUp() {
+        server.handle("/entities/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int current = active.incrementAndGet();
+                synchronized (maxActive) {
+                    maxActive.set(Math.max(maxActive.get(), current));
+                }
+                StubServer.sleep(100);
+                active.decrementAndGet();
+                String path = exchange.getRequestURI().getPath();
+                if (path.endsWith("/bad")) {
+                    StubServer.respond(exchange, 400, "{\"error\":\"bad\"}");
+                } else if (path.endsWith("/boom")) {
+                    StubServer.respond(exchange, 500, "{\"error\":\"boom\"}");
+                } else {
+                    StubServer.respond(exchange, 200, null);
+                }
+            }
+        });
+        server.handle("/entity-groups/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                String body = StubServer.readBody(exchange);
+                int names = body.length() - body.replace("\"", "").length();
+                groupRequests.add(path.substring(path.lastIndexOf('/') + 1) + ":" + names / 2);
+                StubServer.respond(exchange, 200, null);
+            }
+        });
+        writer = new MetaDataBulkWriter(new HttpClientManager(server.configuration()
+                .metadataBulkParallelism(4)
+                .metadataBulkGroupBatchSize(10)
+                .build()));
+    }
+
+    @Test
+    public void entitiesAreWrittenConcurrentlyWithResultPerEntity() {
+        List<Entity> entities = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            entities.add(new Entity("e" + i));
+        }
+        entities.add(new Entity("bad"));
+        entities.add(new Entity("boom"));
+
+        List<BulkResult<Entity>> results = writer.createOrReplaceEntities(entities);
+
+        assertEquals(entities.size(), results.size());
+        for (int i = 0; i < 6; i++) {
+            assertEquals("e" + i, results.get(i).getItem().getName());
+            assertTrue(results.get(i).isSuccess());
+        }
+        assertFalse(results.get(6).isSuccess());
+        assertNull(results.get(6).getError());
+        assertFalse(results.get(7).isSuccess());
+        assertNotNull(results.get(7).getError());
+        assertEquals(4, maxActive.get());
+    }
+
+    @Test
+    public void groupMembersAreReplacedInBatches() {
+        List<Entity> entities = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            entities.add(new Entity("e" + i));
+        }
+
+        List<BulkResult<Entity>> results = writer.replaceGroupEntities("g", true, entities);
+
+        assertEquals(25, results.size());
+        for (int i = 0; i < 25; i++) {
+            assertEquals("e" + i, results.get(i).getItem().getName());
+            assertTrue(results.get(i).isSuccess());
+        }
+        assertEquals("set:10", groupRequests.get(0));
+        List<String> adds = new ArrayList<>(groupRequests.subList(1, groupRequests.size()));
+        Collections.sort(adds);
+        assertEquals(Arrays.asList("add:10", "add:5"), adds);
+    }
+}
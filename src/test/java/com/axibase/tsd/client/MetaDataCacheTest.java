@@ -0,0 +1,148 @@
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.StubServer;
+import com.axibase.tsd.model.meta.Metric;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class MetaDataCacheTest {
+    @Rule
+    public final StubServer server = new StubServer();
+
+    @Test
+    public void objectsAndMissingObjectsAreCached() {
+        MetaDataCache cache = new MetaDataCache(10, 60000, 60000);
+        Counter found = new Counter("value");
+        Counter missing = new Counter(null);
+
+        assertEquals("value", cache.get(MetaDataCache.METRIC, "m", found));
+        assertEquals("value", cache.get(MetaDataCache.METRIC, "M", found));
+        assertNull(cache.get(MetaDataCache.METRIC, "missing", missing));
+        assertNull(cache.get(MetaDataCache.METRIC, "missing", missing));
+
+        assertEquals(1, found.calls.get());
+        assertEquals(1, missing.calls.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getNegativeHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.getSize());
+    }
+
+    @Test
+    public void objectsExpire() throws InterruptedException {
+        MetaDataCache cache = new MetaDataCache(10, 50, 0);
+        Counter found = new Counter("value");
+        Counter missing = new Counter(null);
+        cache.get(MetaDataCache.ENTITY, "e", found);
+        cache.get(MetaDataCache.ENTITY, "missing", missing);
+        cache.get(MetaDataCache.ENTITY, "missing", missing);
+        assertEquals(2, missing.calls.get());
+
+        Thread.sleep(100);
+        cache.get(MetaDataCache.ENTITY, "e", found);
+        assertEquals(2, found.calls.get());
+    }
+
+    @Test
+    public void leastRecentlyUsedObjectIsEvicted() {
+        MetaDataCache cache = new MetaDataCache(2, 60000, 60000);
+        Counter first = new Counter("first");
+        Counter second = new Counter("second");
+        Counter third = new Counter("third");
+        cache.get(MetaDataCache.GROUP, "first", first);
+        cache.get(MetaDataCache.GROUP, "second", second);
+        cache.get(MetaDataCache.GROUP, "first", first);
+        cache.get(MetaDataCache.GROUP, "third", third);
+
+        assertEquals(1, cache.getEvictions());
+        cache.get(MetaDataCache.GROUP, "first", first);
+        cache.get(MetaDataCache.GROUP, "second", second);
+        assertEquals(1, first.calls.get());
+        assertEquals(2, second.calls.get());
+    }
+
+    @Test
+    public void loadOverlappingInvalidationIsNotStored() {
+        final MetaDataCache cache = new MetaDataCache(10, 60000, 60000);
+        assertEquals("stale", cache.get(MetaDataCache.METRIC, "m", new Callable<String>() {
+            @Override
+            public String call() {
+                cache.invalidate(MetaDataCache.METRIC, "m");
+                return "stale";
+            }
+        }));
+        assertEquals(0, cache.getSize());
+
+        cache.get(MetaDataCache.GROUP_ENTITIES, "a", new Counter("a"));
+        cache.get(MetaDataCache.GROUP_ENTITIES, "b", new Counter("b"));
+        cache.get(MetaDataCache.GROUP, "a", new Counter("a"));
+        cache.invalidateAll(MetaDataCache.GROUP_ENTITIES);
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void metaDataServiceInvalidatesUpdatedMetric() {
+        final AtomicInteger reads = new AtomicInteger();
+        server.handle("/metrics/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if ("PUT".equals(exchange.getRequestMethod())) {
+                    StubServer.respond(exchange, 200, null);
+                    return;
+                }
+                reads.incrementAndGet();
+                if (exchange.getRequestURI().getPath().endsWith("/m1")) {
+                    StubServer.respond(exchange, 200, "{\"name\":\"m1\"}");
+                } else {
+                    StubServer.respond(exchange, 404, "{\"error\":\"not found\"}");
+                }
+            }
+        });
+        HttpClientManager clientManager = new HttpClientManager(server.configuration()
+                .metadataCacheMaxEntries(100)
+                .build());
+        MetaDataService metaDataService = new MetaDataService(clientManager);
+
+        Metric metric = metaDataService.retrieveMetric("m1");
+        assertEquals("m1", metric.getName());
+        assertSame(metric, metaDataService.retrieveMetric("m1"));
+        assertNull(metaDataService.retrieveMetric("m2"));
+        assertNull(metaDataService.retrieveMetric("m2"));
+        assertEquals(2, reads.get());
+
+        metaDataService.createOrReplaceMetric(metric);
+        assertEquals("m1", metaDataService.retrieveMetric("m1").getName());
+        assertEquals(3, reads.get());
+
+        MetaDataCache cache = clientManager.getMetaDataCache();
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getNegativeHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(1, cache.getInvalidations());
+    }
+
+    private static final class Counter implements Callable<String> {
+        private final String value;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private Counter(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String call() {
+            calls.incrementAndGet();
+            return value;
+        }
+    }
+}
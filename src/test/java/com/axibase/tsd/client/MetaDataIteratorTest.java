@@ -0,0 +1,106 @@
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.StubServer;
+import com.axibase.tsd.model.meta.Entity;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class MetaDataIteratorTest {
+    private static final Pattern AFTER = Pattern.compile("name > '([^']*)'$");
+    private static final int ENTITIES = 25;
+
+    @Rule
+    public final StubServer server = new StubServer();
+
+    private final List<String> expressions = Collections.synchronizedList(new ArrayList<String>());
+    private MetaDataService metaDataService;
+
+    @Before
+    public void setUp() {
+        server.handle("/entities", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String expression = StubServer.queryParameter(exchange, "expression");
+                String limitParameter = StubServer.queryParameter(exchange, "limit");
+                int limit = limitParameter == null ? Integer.MAX_VALUE : Integer.parseInt(limitParameter);
+                expressions.add(expression);
+                String after = "";
+                if (expression != null) {
+                    Matcher matcher = AFTER.matcher(expression);
+                    if (matcher.find()) {
+                        after = matcher.group(1);
+                    }
+                }
+                StringBuilder json = new StringBuilder("[");
+                int count = 0;
+                for (int i = 0; i < ENTITIES && count < limit; i++) {
+                    String name = String.format("e%03d", i);
+                    if (name.compareTo(after) > 0) {
+                        json.append(count++ == 0 ? "" : ",").append("{\"name\":\"").append(name).append("\"}");
+                    }
+                }
+                StubServer.respond(exchange, 200, json.append("]").toString());
+            }
+        });
+        metaDataService = new MetaDataService(server.clientManager());
+    }
+
+    @Test
+    public void entitiesAreReadPageByPage() {
+        MetaDataIterator<Entity> iterator = metaDataService.iterateEntities("enabled", null, null, null, 10);
+        List<String> names = new ArrayList<>();
+        while (iterator.hasNext()) {
+            names.add(iterator.next().getName());
+        }
+
+        assertEquals(ENTITIES, names.size());
+        assertEquals("e000", names.get(0));
+        assertEquals("e024", names.get(ENTITIES - 1));
+        assertEquals(3, iterator.getPagesRead());
+        assertEquals("enabled", expressions.get(0));
+        assertEquals("(enabled) && name > 'e009'", expressions.get(1));
+        assertEquals("(enabled) && name > 'e019'", expressions.get(2));
+    }
+
+    @Test
+    public void lastFullPageIsFollowedByEmptyPage() {
+        MetaDataIterator<Entity> iterator = metaDataService.iterateEntities(null, null, null, null, 5);
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        assertEquals(ENTITIES, count);
+        assertEquals(6, iterator.getPagesRead());
+        assertEquals("name > 'e024'", expressions.get(5));
+    }
+
+    @Test
+    public void closedIteratorIsEmpty() {
+        MetaDataIterator<Entity> iterator = metaDataService.iterateEntities(null, null, null, null, 10);
+        assertEquals("e000", iterator.next().getName());
+        iterator.close();
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void namesAreQuotedInPageExpression() {
+        assertNull(MetaDataIterator.pageExpression(null, null));
+        assertEquals("name > 'a\\'b'", MetaDataIterator.pageExpression(" ", "a'b"));
+        assertEquals("(tags.a = 'b') && name > 'c'", MetaDataIterator.pageExpression("tags.a = 'b'", "c"));
+    }
+}
@@ -0,0 +1,80 @@
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.TcpStubServer;
+import com.axibase.tsd.model.system.TcpClientConfiguration;
+import com.axibase.tsd.network.SimpleCommand;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NioTcpClientManagerTest {
+    @Rule
+    public final TcpStubServer server = new TcpStubServer();
+
+    @Test
+    public void commandsAreDeliveredInOrder() throws InterruptedException {
+        NioTcpClientManager manager = new NioTcpClientManager(configuration(server.getPort()));
+        try {
+            for (int i = 0; i < 10000; i++) {
+                assertTrue(manager.send(new SimpleCommand("series e:e m:m=" + i)));
+            }
+            for (int i = 0; i < 10000; i++) {
+                assertEquals("series e:e m:m=" + i, server.getReceived().poll(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            manager.close();
+        }
+    }
+
+    @Test
+    public void reconnectsAfterConnectionIsClosedByServer() throws InterruptedException, IOException {
+        NioTcpClientManager manager = new NioTcpClientManager(configuration(server.getPort()));
+        try {
+            manager.send(new SimpleCommand("first"));
+            assertEquals("first", server.getReceived().poll(5, TimeUnit.SECONDS));
+            server.getConnections().get(0).close();
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (server.getConnections().size() < 2 && System.currentTimeMillis() < deadline) {
+                manager.send(new SimpleCommand("next"));
+                Thread.sleep(50);
+            }
+            assertEquals(2, server.getConnections().size());
+            assertEquals(1, manager.getReconnects());
+        } finally {
+            manager.close();
+        }
+    }
+
+    @Test
+    public void commandsAreRejectedWhenTooManyBytesArePending() throws IOException {
+        TcpClientConfiguration configuration = configuration(TcpStubServer.unusedPort());
+        configuration.setMaxPendingBytes(100);
+        NioTcpClientManager manager = new NioTcpClientManager(configuration);
+        try {
+            assertTrue(manager.send(new SimpleCommand("series e:e m:m=1")));
+            int accepted = 1;
+            while (manager.send(new SimpleCommand("series e:e m:m=1"))) {
+                accepted++;
+            }
+            assertEquals(100 / "series e:e m:m=1\n".length(), accepted);
+            assertEquals(1, manager.getRejected());
+        } finally {
+            manager.close();
+        }
+        assertFalse(manager.send(new SimpleCommand("after close")));
+    }
+
+    private static TcpClientConfiguration configuration(int port) {
+        TcpClientConfiguration configuration = new TcpClientConfiguration("127.0.0.1", port, false, 1000, 1000);
+        configuration.setBufferSize(1024);
+        configuration.setReconnectDelayMs(200);
+        return configuration;
+    }
+}
@@ -0,0 +1,130 @@
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.StubServer;
+import com.axibase.tsd.model.data.command.GetSeriesQuery;
+import com.axibase.tsd.model.data.series.Sample;
+import com.axibase.tsd.model.data.series.Series;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelSeriesReaderTest {
+    private static final long STEP = 100;
+
+    @Rule
+    public final StubServer server = new StubServer();
+
+    private final List<JsonNode> requests = Collections.synchronizedList(new ArrayList<JsonNode>());
+    private final Random random = new Random();
+
+    @Before
+    public void setUp() {
+        server.handle("/series/query", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                JsonNode query = StubServer.readJson(exchange).get(0);
+                requests.add(query);
+                long start = query.has("startTime") ? query.get("startTime").asLong() : 0;
+                long end = query.has("endTime") ? query.get("endTime").asLong() : 10000;
+                StringBuilder body = new StringBuilder("[");
+                for (String entity : new String[]{"e1", "e2"}) {
+                    body.append(entity.equals("e1") ? "" : ",")
+                            .append("{\"entity\":\"").append(entity).append("\",\"metric\":\"m\",\"data\":[");
+                    for (long time = (start + STEP - 1) / STEP * STEP; time < end; time += STEP) {
+                        body.append(time == (start + STEP - 1) / STEP * STEP ? "" : ",")
+                                .append("{\"t\":").append(time).append(",\"v\":").append(time).append("}");
+                    }
+                    body.append("]}");
+                }
+                body.append("]");
+                StubServer.sleep(random.nextInt(20));
+                StubServer.respond(exchange, 200, body.toString());
+            }
+        });
+    }
+
+    @Test
+    public void windowsAreMergedInTimeOrder() {
+        ParallelSeriesReader reader = new ParallelSeriesReader(server.clientManager(), 4, 50);
+        List<Series> seriesList = reader.retrieveSeries(new GetSeriesQuery("*", "m").setStartTime(0L).setEndTime(100000L));
+
+        assertEquals(2, seriesList.size());
+        assertEquals("e1", seriesList.get(0).getEntityName());
+        for (Series series : seriesList) {
+            List<Sample> data = series.getData();
+            assertEquals(1000, data.size());
+            for (int i = 0; i < data.size(); i++) {
+                assertEquals(i * STEP, data.get(i).getTimeMillis().longValue());
+            }
+        }
+        assertTrue(reader.getWindows() > 4);
+        assertEquals(reader.getWindows(), requests.size());
+    }
+
+    @Test
+    public void windowSizeFollowsObservedDensity() {
+        ParallelSeriesReader reader = new ParallelSeriesReader(server.clientManager(), 2, 1000);
+        assertEquals(10000, reader.nextWindowMillis(100, 1000, 5000));
+        assertEquals(1000, reader.nextWindowMillis(1000000, 1000, 5000));
+        assertEquals(10000, reader.nextWindowMillis(0, 1000, 5000));
+
+        reader.retrieveSeries(new GetSeriesQuery("*", "m").setStartTime(0L).setEndTime(800000L));
+        // the first windows are 100 seconds long, at 20 samples per second in two series
+        // windows of about 1000 samples are 50 seconds long
+        JsonNode last = requests.get(requests.size() - 2);
+        assertEquals(50000, last.get("endTime").asLong() - last.get("startTime").asLong());
+    }
+
+    @Test
+    public void visitorReceivesSamplesInTimeOrder() {
+        ParallelSeriesReader reader = new ParallelSeriesReader(server.clientManager(), 3, 20);
+        final List<String> events = new ArrayList<>();
+        final long[] lastTime = {-1, -1};
+        reader.streamSeries(new SeriesVisitor() {
+            @Override
+            public void beginSeries(Series series) {
+                events.add("begin " + series.getEntityName());
+            }
+
+            @Override
+            public void visitSample(Series series, Sample sample) {
+                int index = series.getEntityName().equals("e1") ? 0 : 1;
+                assertTrue(sample.getTimeMillis() > lastTime[index]);
+                lastTime[index] = sample.getTimeMillis();
+            }
+
+            @Override
+            public void endSeries(Series series) {
+                events.add("end " + series.getEntityName());
+            }
+        }, new GetSeriesQuery("*", "m").setStartDate("1970-01-01T00:00:00Z").setEndDate("1970-01-01T00:00:30Z"));
+
+        assertEquals("[begin e1, begin e2, end e1, end e2]", events.toString());
+        assertEquals(29900, lastTime[0]);
+        assertEquals(29900, lastTime[1]);
+        assertNull(requests.get(0).get("startDate"));
+    }
+
+    @Test
+    public void queryWithoutSplittableRangeIsSentAsIs() {
+        ParallelSeriesReader reader = new ParallelSeriesReader(server.clientManager(), 4, 10);
+        reader.retrieveSeries(new GetSeriesQuery("*", "m").setStartTime(0L).setEndTime(100000L).setLimit(10));
+        reader.retrieveSeries(new GetSeriesQuery("*", "m").setStartDate("now - 1 * DAY").setEndDate("now"));
+        assertEquals(2, reader.getWindows());
+        assertEquals(10, requests.get(0).get("limit").asInt());
+        assertEquals("now", requests.get(1).get("endDate").asText());
+    }
+}
@@ -0,0 +1,171 @@
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.StubServer;
+import com.axibase.tsd.model.data.command.GetSeriesQuery;
+import com.axibase.tsd.model.data.series.Series;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+public class RequestCoalescerTest {
+    private static final int THREADS = 8;
+
+    @Rule
+    public final StubServer server = new StubServer();
+
+    @Test
+    public void concurrentIdenticalRequestsShareOneCall() throws InterruptedException {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        final List<Object> results = run(new Callable<Object>() {
+            @Override
+            public Object call() {
+                return coalescer.execute("key", new Callable<Object>() {
+                    @Override
+                    public Object call() throws InterruptedException {
+                        calls.incrementAndGet();
+                        release.await();
+                        return new Object();
+                    }
+                });
+            }
+        }, coalescer, release);
+
+        assertEquals(1, calls.get());
+        assertEquals(THREADS, results.size());
+        for (Object result : results) {
+            assertSame(results.get(0), result);
+        }
+        assertEquals(THREADS, coalescer.getRequests());
+        assertEquals(THREADS - 1, coalescer.getHits());
+        assertEquals(1, coalescer.getMerges());
+        assertEquals(0, coalescer.getInFlight());
+    }
+
+    @Test
+    public void failureIsSharedAndNextRequestIsSentAgain() throws InterruptedException {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Object> results = run(new Callable<Object>() {
+            @Override
+            public Object call() {
+                try {
+                    return coalescer.execute("key", new Callable<Object>() {
+                        @Override
+                        public Object call() throws InterruptedException {
+                            release.await();
+                            throw new AtsdClientException("failed");
+                        }
+                    });
+                } catch (AtsdClientException e) {
+                    return e;
+                }
+            }
+        }, coalescer, release);
+
+        for (Object result : results) {
+            assertSame(results.get(0), result);
+        }
+        assertEquals("second", coalescer.execute("key", new Callable<String>() {
+            @Override
+            public String call() {
+                return "second";
+            }
+        }));
+        assertEquals(THREADS - 1, coalescer.getHits());
+    }
+
+    @Test
+    public void keyDependsOnPathAndBody() {
+        String key = RequestCoalescer.keyOf("series/query",
+                Collections.singletonList(new GetSeriesQuery("e", "m").setStartTime(1L).setEndTime(2L)));
+        assertEquals(key, RequestCoalescer.keyOf("series/query",
+                Collections.singletonList(new GetSeriesQuery("e", "m").setStartTime(1L).setEndTime(2L))));
+        assertNotEquals(key, RequestCoalescer.keyOf("series/query",
+                Collections.singletonList(new GetSeriesQuery("e", "m").setStartTime(1L).setEndTime(3L))));
+        assertNotEquals(RequestCoalescer.keyOf("metrics", "m"), RequestCoalescer.keyOf("entities", "m"));
+    }
+
+    @Test
+    public void dataServiceCoalescesIdenticalSeriesQueries() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        server.handle("/series/query", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                StubServer.respond(exchange, 200, "[{\"entity\":\"e\",\"metric\":\"m\",\"data\":[{\"t\":1,\"v\":2}]}]");
+            }
+        });
+        HttpClientManager clientManager = new HttpClientManager(server.configuration()
+                .requestCoalescing(true)
+                .build());
+        final DataService dataService = new DataService(clientManager);
+        List<Object> results = run(new Callable<Object>() {
+            @Override
+            public Object call() {
+                return dataService.retrieveSeries(new GetSeriesQuery("e", "m").setStartTime(0L).setEndTime(10L));
+            }
+        }, clientManager.getRequestCoalescer(), release);
+
+        assertEquals(1, requests.get());
+        for (Object result : results) {
+            assertSame(results.get(0), result);
+        }
+        assertEquals(1, ((Series) ((List<?>) results.get(0)).get(0)).getData().size());
+        assertEquals(THREADS - 1, clientManager.getRequestCoalescer().getHits());
+    }
+
+    /**
+     * Start the callers, wait until all but the first one are waiting for it, then release the first one.
+     */
+    private static List<Object> run(final Callable<Object> caller, RequestCoalescer coalescer,
+                                    CountDownLatch release) throws InterruptedException {
+        final List<Object> results = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> started = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        results.add(caller.call());
+                    } catch (Exception e) {
+                        results.add(e);
+                    }
+                }
+            });
+            thread.start();
+            started.add(thread);
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (coalescer.getHits() < THREADS - 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+        for (Thread thread : started) {
+            thread.join(5000);
+        }
+        assertEquals(THREADS, results.size());
+        return results;
+    }
+}
@@ -0,0 +1,204 @@
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.StubServer;
+import com.axibase.tsd.model.data.command.GetSeriesQuery;
+import com.axibase.tsd.model.data.series.Sample;
+import com.axibase.tsd.model.data.series.Interval;
+import com.axibase.tsd.model.data.series.IntervalUnit;
+import com.axibase.tsd.model.data.series.Series;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SeriesCacheTest {
+    private static final long STEP = 1000;
+
+    @Rule
+    public final StubServer server = new StubServer();
+
+    private final List<JsonNode> requests = Collections.synchronizedList(new ArrayList<JsonNode>());
+
+    @Before
+    public void setUp() {
+        server.handle("/series/query", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                JsonNode queries = StubServer.readJson(exchange);
+                requests.add(queries);
+                StringBuilder body = new StringBuilder("[");
+                for (JsonNode query : queries) {
+                    long start = query.get("startTime").asLong();
+                    long end = query.has("endTime") ? query.get("endTime").asLong()
+                            : start + query.get("interval").get("count").asLong() * STEP;
+                    body.append(body.length() == 1 ? "" : ",").append("{\"entity\":\"")
+                            .append(query.get("entity").asText()).append("\",\"metric\":\"m\",\"requestId\":\"")
+                            .append(query.get("requestId").asText()).append("\",\"data\":[");
+                    String separator = "";
+                    for (long time = (start + STEP - 1) / STEP * STEP; time < end; time += STEP) {
+                        body.append(separator).append("{\"t\":").append(time).append(",\"v\":1}");
+                        separator = ",";
+                    }
+                    body.append("]}");
+                }
+                StubServer.respond(exchange, 200, body.append("]").toString());
+            }
+        });
+    }
+
+    @Test
+    public void closedRangeIsCachedUntilTtl() throws InterruptedException {
+        HttpClientManager clientManager = clientManager(1024 * 1024, 300);
+        DataService dataService = new DataService(clientManager);
+        GetSeriesQuery query = new GetSeriesQuery("e", "m").setStartTime(0L).setEndTime(100000L);
+
+        assertEquals(100, dataService.retrieveSeries(query).get(0).getData().size());
+        List<Series> cached = dataService.retrieveSeries(query);
+        assertEquals(100, cached.get(0).getData().size());
+        cached.get(0).getData().clear();
+        assertEquals(100, dataService.retrieveSeries(query).get(0).getData().size());
+        assertEquals(1, requests.size());
+        assertEquals(2, clientManager.getSeriesCache().getHits());
+
+        Thread.sleep(400);
+        dataService.retrieveSeries(query);
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void queryEndingNowReadsOnlyOpenTail() throws InterruptedException {
+        HttpClientManager clientManager = clientManager(1024 * 1024, 60000);
+        DataService dataService = new DataService(clientManager);
+        long start = (System.currentTimeMillis() - 600000) / STEP * STEP;
+        GetSeriesQuery query = new GetSeriesQuery("e", "m").setStartTime(start).setEndDate("now");
+
+        List<Sample> first = dataService.retrieveSeries(query).get(0).getData();
+        assertEquals(start, requests.get(0).get(0).get("startTime").asLong());
+        assertNull(requests.get(0).get(0).get("endDate"));
+        Thread.sleep(1100);
+        List<Sample> second = dataService.retrieveSeries(query).get(0).getData();
+
+        long tailStart = requests.get(1).get(0).get("startTime").asLong();
+        long firstEnd = requests.get(0).get(0).get("endTime").asLong();
+        assertTrue(tailStart >= firstEnd - 10000 - 1 && tailStart <= firstEnd - 10000);
+        assertEquals(1, clientManager.getSeriesCache().getTailHits());
+        assertTrue(second.size() > first.size());
+        for (int i = 0; i < second.size(); i++) {
+            assertEquals(start + i * STEP, second.get(i).getTimeMillis().longValue());
+        }
+    }
+
+    @Test
+    public void startWithIntervalIsCachedAsFixedRange() {
+        HttpClientManager clientManager = clientManager(1024 * 1024, 60000);
+        DataService dataService = new DataService(clientManager);
+        GetSeriesQuery query = new GetSeriesQuery("e", "m").setStartTime(10000L)
+                .setInterval(new Interval(5, IntervalUnit.SECOND));
+
+        assertNull(SeriesCache.openRangeStart(query, System.currentTimeMillis()));
+        List<Sample> data = dataService.retrieveSeries(query).get(0).getData();
+        assertEquals(5, data.size());
+        assertEquals(14000, data.get(4).getTimeMillis().longValue());
+        assertNull(requests.get(0).get(0).get("endTime"));
+        assertEquals(5, requests.get(0).get(0).get("interval").get("count").asInt());
+
+        assertEquals(5, dataService.retrieveSeries(query).get(0).getData().size());
+        assertEquals(1, requests.size());
+        assertEquals(1, clientManager.getSeriesCache().getHits());
+    }
+
+    @Test
+    public void fetchedSeriesAreCopiedForEachCaller() {
+        Series fetched = new Series();
+        fetched.setEntityName("e");
+        fetched.setMetricName("m");
+        fetched.setRequestId("0");
+        fetched.setData(new ArrayList<Sample>());
+        final List<Series> shared = Collections.singletonList(fetched);
+        SeriesCache.Fetcher fetcher = new SeriesCache.Fetcher() {
+            @Override
+            public List<Series> fetch(List<GetSeriesQuery> seriesQueries) {
+                return shared;
+            }
+        };
+        SeriesCache seriesCache = new SeriesCache(1024 * 1024, 60000, 10000);
+
+        List<Series> first = seriesCache.retrieve(new GetSeriesQuery[]{
+                new GetSeriesQuery("e", "m").setStartTime(0L).setEndTime(1000L).setRequestId("first")}, fetcher);
+        List<Series> second = seriesCache.retrieve(new GetSeriesQuery[]{
+                new GetSeriesQuery("e", "m").setStartTime(0L).setEndTime(2000L).setRequestId("second")}, fetcher);
+
+        assertEquals("first", first.get(0).getRequestId());
+        assertEquals("second", second.get(0).getRequestId());
+        assertEquals("0", fetched.getRequestId());
+        assertNotSame(fetched, first.get(0));
+    }
+
+    @Test
+    public void cachedAndMissingQueriesAreCombinedInQueryOrder() {
+        DataService dataService = new DataService(clientManager(1024 * 1024, 60000));
+        dataService.retrieveSeries(new GetSeriesQuery("b", "m").setStartTime(0L).setEndTime(5000L));
+
+        List<Series> seriesList = dataService.retrieveSeries(
+                new GetSeriesQuery("a", "m").setStartTime(0L).setEndTime(3000L).setRequestId("first"),
+                new GetSeriesQuery("b", "m").setStartTime(0L).setEndTime(5000L).setRequestId("second"),
+                new GetSeriesQuery("c", "m").setStartTime(0L).setEndTime(1000L));
+
+        assertEquals(2, requests.size());
+        assertEquals(2, requests.get(1).size());
+        assertEquals("a", seriesList.get(0).getEntityName());
+        assertEquals("first", seriesList.get(0).getRequestId());
+        assertEquals(3, seriesList.get(0).getData().size());
+        assertEquals("second", seriesList.get(1).getRequestId());
+        assertEquals(5, seriesList.get(1).getData().size());
+        assertNull(seriesList.get(2).getRequestId());
+        assertEquals(1, seriesList.get(2).getData().size());
+    }
+
+    @Test
+    public void leastRecentlyUsedResultsAreEvicted() {
+        HttpClientManager clientManager = clientManager(3 * (128 + 100 * 64), 60000);
+        DataService dataService = new DataService(clientManager);
+        for (String entity : new String[]{"a", "b", "c", "a", "d"}) {
+            dataService.retrieveSeries(new GetSeriesQuery(entity, "m").setStartTime(0L).setEndTime(100000L));
+        }
+        SeriesCache seriesCache = clientManager.getSeriesCache();
+        assertEquals(3, seriesCache.getSize());
+        assertEquals(1, seriesCache.getEvictions());
+        assertTrue(seriesCache.getBytes() <= 3 * (128 + 100 * 64));
+
+        dataService.retrieveSeries(new GetSeriesQuery("a", "m").setStartTime(0L).setEndTime(100000L));
+        assertEquals(1 + 1, seriesCache.getHits());
+        dataService.retrieveSeries(new GetSeriesQuery("b", "m").setStartTime(0L).setEndTime(100000L));
+        assertEquals(5, requests.size());
+    }
+
+    @Test
+    public void lastValuesAreNotCached() {
+        DataService dataService = new DataService(clientManager(1024 * 1024, 60000));
+        GetSeriesQuery query = new GetSeriesQuery("e", "m").setStartTime(0L).setEndTime(1000L);
+        dataService.retrieveLastSeries(query);
+        dataService.retrieveLastSeries(query);
+        assertEquals(2, requests.size());
+    }
+
+    private HttpClientManager clientManager(long maxBytes, long ttl) {
+        return new HttpClientManager(server.configuration()
+                .seriesCacheMaxBytes(maxBytes)
+                .seriesCacheTtlMillis(ttl)
+                .seriesCacheOpenTailMillis(10000)
+                .build());
+    }
+}
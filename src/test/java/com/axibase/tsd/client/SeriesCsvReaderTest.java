@@ -0,0 +1,134 @@
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.data.series.ColumnarSeries;
+import com.axibase.tsd.model.data.series.Series;
+import com.axibase.tsd.util.AtsdUtil;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SeriesCsvReaderTest {
+    @Test
+    public void rowsAreParsedIntoColumnsPerSeries() throws IOException {
+        String csv = "time,entity,metric,t:host,value\n"
+                + "1000,e1,m,h1,1.5\n"
+                + "2000,e1,m,h1,2\n"
+                + "1000,e1,m,h2,NaN\n"
+                + "3000,e1,m,h1,-0.25\r\n";
+        List<ColumnarSeries> series = new SeriesCsvReader(8).readColumns(stream(csv));
+
+        assertEquals(2, series.size());
+        ColumnarSeries first = series.get(0);
+        assertEquals("e1", first.getEntityName());
+        assertEquals("m", first.getMetricName());
+        assertEquals(Collections.singletonMap("host", "h1"), first.getTags());
+        assertEquals(3, first.size());
+        assertEquals(3000, first.getTime(2));
+        assertEquals(-0.25, first.getValue(2), 0);
+        assertEquals(Collections.singletonMap("host", "h2"), series.get(1).getTags());
+        assertTrue(Double.isNaN(series.get(1).getValue(0)));
+    }
+
+    @Test
+    public void datesAndQuotedFieldsAreDecoded() throws IOException {
+        String csv = "date,entity,metric,value\n"
+                + "2016-01-02T03:04:05.678Z,\"a,\"\"b\"\"\",m,1\n"
+                + "2016-01-02T03:04:05Z,\"a,\"\"b\"\"\",m,";
+        List<ColumnarSeries> series = new SeriesCsvReader().readColumns(stream(csv));
+
+        assertEquals(1, series.size());
+        assertEquals("a,\"b\"", series.get(0).getEntityName());
+        assertEquals(AtsdUtil.DateTime.parseDate("2016-01-02T03:04:05.678Z").getTime(), series.get(0).getTime(0));
+        assertEquals(AtsdUtil.DateTime.parseDate("2016-01-02T03:04:05Z").getTime(), series.get(0).getTime(1));
+        assertTrue(Double.isNaN(series.get(0).getValue(1)));
+    }
+
+    @Test
+    public void visitorReceivesRunsOfTheSameSeries() throws IOException {
+        String csv = "entity,metric,time,value\ne1,m,1,1\ne2,m,1,2\ne1,m,2,3\n";
+        final List<String> events = new ArrayList<>();
+        final List<Series> seen = new ArrayList<>();
+        long samples = new SeriesCsvReader().read(stream(csv), new SeriesColumnVisitor() {
+            @Override
+            public void beginSeries(Series series) {
+                events.add("begin " + series.getEntityName());
+                seen.add(series);
+            }
+
+            @Override
+            public void visitSample(Series series, long timeMillis, double value) {
+                events.add(timeMillis + "=" + value);
+            }
+
+            @Override
+            public void endSeries(Series series) {
+                events.add("end");
+            }
+        });
+
+        assertEquals(3, samples);
+        assertEquals("[begin e1, 1=1.0, end, begin e2, 1=2.0, end, begin e1, 2=3.0, end]", events.toString());
+        assertSame(seen.get(0), seen.get(2));
+    }
+
+    @Test
+    public void numbersAndDatesMatchJdkParsing() {
+        String[] values = {"0", "-0", "1", "0.1", "-123.456", "1e5", "1.5E-7", "12345678901234567890", "0.000001",
+                "3.141592653589793", "9007199254740993", "Infinity", "+2.5", "100."};
+        for (String value : values) {
+            assertEquals(value, Double.parseDouble(value), parseDouble(value), 0);
+        }
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            String value = new BigDecimal(BigInteger.valueOf(random.nextLong() % 1000000000000L), random.nextInt(12))
+                    .toPlainString();
+            assertEquals(value, Double.parseDouble(value), parseDouble(value), 0);
+
+            long time = random.nextLong() % 4000000000000L;
+            String date = AtsdUtil.DateTime.isoFormat(new Date(time));
+            byte[] bytes = date.getBytes(StandardCharsets.US_ASCII);
+            assertEquals(date, time, SeriesCsvReader.parseDate(bytes, 0, bytes.length));
+        }
+    }
+
+    @Test
+    public void formattedDatesAndNumbersAreParsedBack() {
+        CsvBytes bytes = new CsvBytes(64);
+        Random random = new Random(2);
+        for (int i = 0; i < 10000; i++) {
+            // years 68 to 9892, formatted without the JDK fallback
+            long time = Math.abs(random.nextLong() % 310000000000000L) - 60000000000000L;
+            bytes.clear();
+            bytes.appendDate(time);
+            assertEquals(time, SeriesCsvReader.parseDate(bytes.array(), 0, bytes.length()));
+
+            double value = random.nextInt() / CsvBytes.POWERS_OF_TEN[random.nextInt(8)];
+            bytes.clear();
+            bytes.appendDouble(value);
+            assertEquals(value, SeriesCsvReader.parseDouble(bytes.array(), 0, bytes.length()), 0);
+        }
+    }
+
+    private static double parseDouble(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        return SeriesCsvReader.parseDouble(bytes, 0, bytes.length);
+    }
+
+    private static InputStream stream(String csv) {
+        return new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8));
+    }
+}
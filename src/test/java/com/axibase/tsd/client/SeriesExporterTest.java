@@ -0,0 +1,208 @@
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.StubServer;
+import com.axibase.tsd.model.data.command.GetSeriesQuery;
+import com.axibase.tsd.util.AtsdUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SeriesExporterTest {
+    private static final long STEP = 100;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public final StubServer server = new StubServer();
+
+    private final List<Long> starts = Collections.synchronizedList(new ArrayList<Long>());
+    private final Random random = new Random();
+    private volatile long failFrom = Long.MAX_VALUE;
+
+    @Before
+    public void setUp() {
+        server.handle("/series/query", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                JsonNode query = StubServer.readJson(exchange).get(0);
+                long start = query.get("startTime").asLong();
+                long end = query.get("endTime").asLong();
+                starts.add(start);
+                StubServer.sleep(random.nextInt(20));
+                if (start >= failFrom) {
+                    StubServer.respond(exchange, 500, "{\"error\":\"failed\"}");
+                    return;
+                }
+                StringBuilder body = new StringBuilder("[{\"entity\":\"e1\",\"metric\":\"m\",")
+                        .append("\"tags\":{\"host\":\"h1\",\"dc\":\"a,b\"},\"data\":[");
+                for (long time = (start + STEP - 1) / STEP * STEP; time < end; time += STEP) {
+                    body.append(body.charAt(body.length() - 1) == '[' ? "" : ",")
+                            .append("{\"t\":").append(time).append(",\"v\":").append(time / STEP + 0.25).append("}");
+                }
+                StubServer.respond(exchange, 200, body.append("]}]").toString());
+            }
+        });
+    }
+
+    @Test
+    public void windowsAreWrittenInTimeOrder() throws IOException {
+        File file = folder.newFile("export.csv");
+        SeriesExporter exporter = new SeriesExporter(server.clientManager(), 4, 1000, 256);
+
+        assertEquals(100, exporter.export(query(), file, false));
+
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(101, lines.size());
+        assertEquals("date,entity,metric,tags,value", lines.get(0));
+        assertEquals("1970-01-01T00:00:00.000Z,e1,m,\"dc=a,b;host=h1\",0.25", lines.get(1));
+        assertEquals("1970-01-01T00:00:09.900Z,e1,m,\"dc=a,b;host=h1\",99.25", lines.get(100));
+        for (int i = 1; i < lines.size(); i++) {
+            assertTrue(lines.get(i).startsWith(AtsdUtil.DateTime.isoFormat(new Date((i - 1) * STEP))));
+        }
+        assertEquals(10, exporter.getWindows());
+        assertEquals(file.length(), exporter.getBytes());
+        assertFalse(checkpoint(file).exists());
+    }
+
+    @Test
+    public void gzipMembersAreReadAsOneFile() throws IOException {
+        File plain = folder.newFile("export.csv");
+        File compressed = folder.newFile("export.csv.gz");
+        new SeriesExporter(server.clientManager(), 4, 1000, 256).export(query(), plain, false);
+        new SeriesExporter(server.clientManager(), 4, 1000, 256).export(query(), compressed, true);
+
+        assertEquals(FileUtils.readFileToString(plain, "UTF-8"), gunzip(compressed));
+    }
+
+    @Test
+    public void windowsLargerThanBufferGoThroughPartFiles() throws IOException {
+        File inMemory = folder.newFile("memory.csv.gz");
+        File spilled = folder.newFile("spilled.csv.gz");
+        new SeriesExporter(server.clientManager(), 4, 1000, 64 * 1024).export(query(), inMemory, true);
+        SeriesExporter exporter = new SeriesExporter(server.clientManager(), 4, 1000, 64);
+
+        assertEquals(100, exporter.export(query(), spilled, true));
+
+        assertEquals(gunzip(inMemory), gunzip(spilled));
+        assertEquals(spilled.length(), exporter.getBytes());
+        assertEquals(0, partFiles().length);
+    }
+
+    @Test
+    public void failedExportIsResumedAfterLastWrittenWindow() throws IOException {
+        File expected = folder.newFile("expected.csv.gz");
+        File file = new File(folder.getRoot(), "export.csv.gz");
+        new SeriesExporter(server.clientManager(), 4, 1000, 256).export(query(), expected, true);
+
+        failFrom = 5000;
+        try {
+            new SeriesExporter(server.clientManager(), 1, 1000, 256).export(query(), file, true);
+            fail("Export must fail");
+        } catch (RuntimeException e) {
+            assertTrue(checkpoint(file).exists());
+            assertEquals(0, partFiles().length);
+        }
+
+        failFrom = Long.MAX_VALUE;
+        starts.clear();
+        assertEquals(50, new SeriesExporter(server.clientManager(), 4, 1000, 256).export(query(), file, true));
+        assertEquals(5000, (long) Collections.min(starts));
+        assertEquals(5, starts.size());
+        assertEquals(gunzip(expected), gunzip(file));
+        assertFalse(checkpoint(file).exists());
+    }
+
+    @Test
+    public void checkpointOfAnotherExportIsRejected() throws IOException {
+        File file = new File(folder.getRoot(), "export.csv");
+        failFrom = 5000;
+        try {
+            new SeriesExporter(server.clientManager(), 1, 1000, 256).export(query(), file, false);
+            fail("Export must fail");
+        } catch (RuntimeException e) {
+            // checkpoint is kept
+        }
+        failFrom = Long.MAX_VALUE;
+        try {
+            new SeriesExporter(server.clientManager(), 1, 2000, 256).export(query(), file, false);
+            fail("Checkpoint must be rejected");
+        } catch (AtsdClientException e) {
+            assertTrue(e.getMessage().contains("different export"));
+        }
+    }
+
+    @Test
+    public void datesAndNumbersMatchJdkFormatting() {
+        CsvBytes bytes = new CsvBytes(16);
+        Random values = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            long time = values.nextLong() % 4000000000000L;
+            bytes.clear();
+            assertEquals(AtsdUtil.DateTime.isoFormat(new Date(time)), text(bytes.appendDate(time)));
+
+            double value = i % 2 == 0 ? values.nextGaussian() * Math.pow(10, values.nextInt(20) - 10)
+                    : Math.round(values.nextDouble() * 1e6) / 1e3;
+            bytes.clear();
+            assertEquals(value, Double.parseDouble(text(bytes.appendDouble(value))), 0);
+        }
+        String[] expected = {"-0", "1", "-2.5", "0.1", "123456789.123", "-0.001", "1.0E-20", "", "Infinity"};
+        double[] doubles = {-0.0, 1, -2.5, 0.1, 123456789.123, -0.001, 1e-20, Double.NaN, Double.POSITIVE_INFINITY};
+        for (int i = 0; i < doubles.length; i++) {
+            bytes.clear();
+            assertEquals(expected[i], text(bytes.appendDouble(doubles[i])));
+        }
+    }
+
+    private static GetSeriesQuery query() {
+        return new GetSeriesQuery("e1", "m").setStartTime(0L).setEndTime(10000L);
+    }
+
+    private File[] partFiles() {
+        return folder.getRoot().listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".part");
+            }
+        });
+    }
+
+    private static File checkpoint(File file) {
+        return new File(file.getPath() + SeriesExporter.CHECKPOINT_SUFFIX);
+    }
+
+    private static String gunzip(File file) throws IOException {
+        try (InputStream input = new GZIPInputStream(new FileInputStream(file))) {
+            return IOUtils.toString(input, "UTF-8");
+        }
+    }
+
+    private static String text(CsvBytes bytes) {
+        return new String(bytes.array(), 0, bytes.length(), StandardCharsets.US_ASCII);
+    }
+}
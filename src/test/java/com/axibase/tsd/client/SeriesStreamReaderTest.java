@@ -0,0 +1,127 @@
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.data.series.ColumnarSeries;
+import com.axibase.tsd.model.data.series.Sample;
+import com.axibase.tsd.model.data.series.Series;
+import com.axibase.tsd.model.data.series.SeriesType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SeriesStreamReaderTest {
+    private final SeriesStreamReader reader = new SeriesStreamReader(new ObjectMapper());
+
+    @Test
+    public void streamsSamplesOfEverySeries() throws IOException {
+        RecordingVisitor visitor = read("[" +
+                "{\"entity\":\"e1\",\"metric\":\"m\",\"tags\":{\"k\":\"v\"},\"data\":[" +
+                "{\"t\":1000,\"v\":1.5},{\"t\":2000,\"v\":\"NaN\",\"x\":\"text\"}]}," +
+                "{\"entity\":\"e2\",\"metric\":\"m\",\"data\":[]}]");
+
+        assertEquals("begin e1,1000=1.5,2000=NaN:text,end e1,begin e2,end e2", visitor.events());
+        assertEquals("v", visitor.ended.get(0).getTags().get("k"));
+        assertNull(visitor.ended.get(0).getData());
+    }
+
+    @Test
+    public void attributesAfterDataAreAvailableAtEnd() throws IOException {
+        RecordingVisitor visitor = read("[{\"entity\":\"e\",\"data\":[{\"t\":1,\"v\":2}],\"metric\":\"m\"," +
+                "\"type\":\"FORECAST\",\"unknown\":{\"a\":[1,2]}}]");
+
+        assertEquals("begin e,1=2.0,end e", visitor.events());
+        Series series = visitor.ended.get(0);
+        assertEquals("m", series.getMetricName());
+        assertEquals(SeriesType.FORECAST, series.getType());
+    }
+
+    @Test
+    public void seriesWithoutDataIsReported() throws IOException {
+        assertEquals("begin e,end e", read("[{\"entity\":\"e\",\"metric\":\"m\"}]").events());
+    }
+
+    @Test
+    public void emptyResponseIsIgnored() throws IOException {
+        assertEquals("", read("").events());
+        assertEquals("", read("[]").events());
+    }
+
+    @Test(expected = AtsdClientException.class)
+    public void nonArrayResponseIsRejected() throws IOException {
+        read("{\"error\":\"failure\"}");
+    }
+
+    @Test
+    public void decodesColumns() throws IOException {
+        StringBuilder json = new StringBuilder("[{\"entity\":\"e\",\"metric\":\"m\",\"data\":[");
+        for (int i = 0; i < 100; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"t\":").append(i).append(",\"v\":").append(i * 0.5).append('}');
+        }
+        json.append(",{\"d\":\"1970-01-01T00:00:01.000Z\",\"v\":\"NaN\",\"x\":\"text\",\"version\":{\"a\":1}}");
+        json.append("]},{\"entity\":\"e2\",\"metric\":\"m\",\"data\":[]}]");
+
+        List<ColumnarSeries> result = reader.readColumns(
+                new ByteArrayInputStream(json.toString().getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(2, result.size());
+        ColumnarSeries columns = result.get(0);
+        assertEquals("e", columns.getEntityName());
+        assertEquals(101, columns.size());
+        assertEquals(101, columns.getTimes().length);
+        assertEquals(99L, columns.getTime(99));
+        assertEquals(49.5, columns.getValue(99), 0);
+        assertNull(columns.getText(99));
+        assertEquals(1000L, columns.getTime(100));
+        assertTrue(Double.isNaN(columns.getValue(100)));
+        assertEquals("text", columns.getText(100));
+        assertEquals(0, result.get(1).size());
+    }
+
+    private RecordingVisitor read(String json) throws IOException {
+        RecordingVisitor visitor = new RecordingVisitor();
+        reader.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), visitor);
+        return visitor;
+    }
+
+    private static class RecordingVisitor implements SeriesVisitor {
+        private final List<String> events = new ArrayList<>();
+        private final List<Series> ended = new ArrayList<>();
+
+        @Override
+        public void beginSeries(Series series) {
+            events.add("begin " + series.getEntityName());
+        }
+
+        @Override
+        public void visitSample(Series series, Sample sample) {
+            assertTrue(series.getData() == null);
+            String sampleText = sample.getTimeMillis() + "=" + sample.getNumericValueAsDouble();
+            events.add(sample.getTextValue() == null ? sampleText : sampleText + ":" + sample.getTextValue());
+        }
+
+        @Override
+        public void endSeries(Series series) {
+            events.add("end " + series.getEntityName());
+            ended.add(series);
+        }
+
+        private String events() {
+            StringBuilder result = new StringBuilder();
+            for (String event : events) {
+                if (result.length() > 0) {
+                    result.append(',');
+                }
+                result.append(event);
+            }
+            return result.toString();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.data.series.Sample;
+import com.axibase.tsd.model.system.TcpClientConfiguration;
+import com.axibase.tsd.model.system.TcpSharding;
+import com.axibase.tsd.network.InsertCommand;
+import com.axibase.tsd.network.MessageInsertCommand;
+import com.axibase.tsd.network.PlainCommand;
+import com.axibase.tsd.network.SimpleCommand;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TcpShardRouterTest {
+    @Test
+    public void commandsOfEntityShareConnection() {
+        TcpShardRouter router = router(TcpSharding.ENTITY, 8);
+        Set<Integer> shards = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            int shard = router.shardOf(series("entity-" + i, "metric-" + i));
+            assertEquals(shard, router.shardOf(series("entity-" + i, "other")));
+            assertEquals(shard, router.shardOf(new MessageInsertCommand("entity-" + i, 0L, null, "text")));
+            shards.add(shard);
+        }
+        assertEquals(8, shards.size());
+    }
+
+    @Test
+    public void seriesAreSpreadByEntityAndMetric() {
+        TcpShardRouter router = router(TcpSharding.ENTITY_METRIC, 8);
+        Set<Integer> shards = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            int shard = router.shardOf(series("entity", "metric-" + i));
+            assertEquals(shard, router.shardOf(series("entity", "metric-" + i)));
+            shards.add(shard);
+        }
+        assertEquals(8, shards.size());
+    }
+
+    @Test
+    public void commandsWithoutEntityUseThreadConnection() {
+        TcpShardRouter router = router(TcpSharding.ENTITY, 8);
+        int shard = (int) (Thread.currentThread().getId() % 8);
+        assertEquals(shard, router.shardOf(new SimpleCommand("ping")));
+        assertEquals(shard, router(TcpSharding.NONE, 8).shardOf(series("entity", "metric")));
+    }
+
+    @Test
+    public void connectionCountDefaultsToProcessors() {
+        assertEquals(Runtime.getRuntime().availableProcessors(), router(TcpSharding.ENTITY, 0).shards());
+    }
+
+    @Test
+    public void splitKeepsOrderWithinConnection() {
+        TcpShardRouter router = router(TcpSharding.ENTITY_METRIC, 4);
+        List<PlainCommand> commands = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            commands.add(series("entity-" + (i % 10), "metric-" + (i % 7)));
+        }
+        List<Collection<PlainCommand>> shards = router.split(commands);
+        assertEquals(4, shards.size());
+        int total = 0;
+        for (int shard = 0; shard < shards.size(); shard++) {
+            List<PlainCommand> expected = new ArrayList<>();
+            for (PlainCommand command : commands) {
+                if (router.shardOf(command) == shard) {
+                    expected.add(command);
+                }
+            }
+            Collection<PlainCommand> actual = shards.get(shard);
+            assertEquals(expected, actual == null ? new ArrayList<PlainCommand>() : new ArrayList<>(actual));
+            total += expected.size();
+        }
+        assertEquals(1000, total);
+    }
+
+    @Test
+    public void splitReturnsSameCollectionForSingleConnection() {
+        TcpShardRouter router = router(TcpSharding.ENTITY, 4);
+        List<PlainCommand> commands = new ArrayList<>();
+        commands.add(series("entity", "a"));
+        commands.add(series("entity", "b"));
+        List<Collection<PlainCommand>> shards = router.split(commands);
+        int shard = router.shardOf(commands.get(0));
+        assertSame(commands, shards.get(shard));
+        assertNull(shards.get((shard + 1) % 4));
+        assertTrue(router.split(new ArrayList<PlainCommand>()).get(shard) == null);
+    }
+
+    private static TcpShardRouter router(TcpSharding sharding, int connections) {
+        TcpClientConfiguration configuration = new TcpClientConfiguration("localhost", 8081, false, 1000, 1000);
+        configuration.setSharding(sharding);
+        configuration.setConnections(connections);
+        return new TcpShardRouter(configuration);
+    }
+
+    private static InsertCommand series(String entity, String metric) {
+        return new InsertCommand(entity, metric, Sample.ofTimeDouble(0, 1.0));
+    }
+}
@@ -0,0 +1,101 @@
+package com.axibase.tsd.client;
+
+import com.axibase.tsd.model.system.UdpClientConfiguration;
+import com.axibase.tsd.network.PlainCommand;
+import com.axibase.tsd.network.SimpleCommand;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UdpClientManagerTest {
+    private DatagramSocket server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        server.setReceiveBufferSize(1024 * 1024);
+        server.setSoTimeout(2000);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void commandsArePackedIntoDatagrams() throws IOException {
+        UdpClientManager manager = new UdpClientManager(configuration(100, 10000));
+        List<String> sent = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String command = "series e:e m:m=" + i;
+            sent.add(command);
+            assertTrue(manager.send(new SimpleCommand(command)));
+        }
+        manager.flush();
+
+        List<String> received = new ArrayList<>();
+        int datagrams = 0;
+        while (received.size() < sent.size()) {
+            String payload = receive();
+            assertTrue(payload.length() <= 100);
+            assertTrue(payload.endsWith("\n"));
+            received.addAll(Arrays.asList(StringUtils.split(payload, '\n')));
+            datagrams++;
+        }
+        assertEquals(sent, received);
+        assertEquals(datagrams, manager.getDatagrams());
+        assertEquals(200, manager.getCommands());
+        assertTrue(datagrams < 50);
+        manager.close();
+    }
+
+    @Test
+    public void partialDatagramIsSentByFlusher() throws IOException {
+        UdpClientManager manager = new UdpClientManager(configuration(1000, 10));
+        manager.send(Arrays.<PlainCommand>asList(new SimpleCommand("a"), new SimpleCommand("b")));
+        assertEquals("a\nb\n", receive());
+        // the counter is updated after the datagram is sent, close waits for the flusher
+        manager.close();
+        assertEquals(4, manager.getBytes());
+    }
+
+    @Test
+    public void oversizedCommandIsRejected() throws IOException {
+        UdpClientManager manager = new UdpClientManager(configuration(16, 10000));
+        assertFalse(manager.send(new SimpleCommand(StringUtils.repeat('x', 16))));
+        assertTrue(manager.send(new SimpleCommand(StringUtils.repeat('x', 15))));
+        assertEquals(1, manager.getOversized());
+        manager.close();
+        assertEquals(StringUtils.repeat('x', 15) + "\n", receive());
+        assertFalse(manager.send(new SimpleCommand("after close")));
+    }
+
+    private UdpClientConfiguration configuration(int datagramSize, int flushIntervalMs) {
+        return new UdpClientConfiguration("127.0.0.1", server.getLocalPort(), datagramSize, flushIntervalMs);
+    }
+
+    private String receive() throws IOException {
+        DatagramPacket packet = new DatagramPacket(new byte[2048], 2048);
+        try {
+            server.receive(packet);
+        } catch (SocketTimeoutException e) {
+            throw new AssertionError("No datagram received");
+        }
+        return new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,99 @@
+package com.axibase.tsd.client.command;
+
+import com.axibase.tsd.model.data.series.Sample;
+import com.axibase.tsd.network.CommandEncoder;
+import com.axibase.tsd.network.InsertCommand;
+import com.axibase.tsd.network.MarkerCommand;
+import com.axibase.tsd.network.MessageInsertCommand;
+import com.axibase.tsd.network.MultipleInsertCommand;
+import com.axibase.tsd.network.PlainCommand;
+import com.axibase.tsd.network.PropertyInsertCommand;
+import com.axibase.tsd.network.SimpleCommand;
+import com.axibase.tsd.util.AtsdUtil;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CommandEncoderTest {
+    private static final Map<String, String> TAGS = AtsdUtil.toMap(
+            "plain", "value", "with=equals", "OFF- RAMP \" U\", I", "quote\"d", null, "юникод", "日本 😀");
+
+    @Test
+    public void encodesSameBytesAsComposedText() {
+        Map<String, Double> numericValues = new LinkedHashMap<>();
+        numericValues.put("m1", 1.0);
+        numericValues.put("m=2", -0.25);
+        numericValues.put("m3", Double.NaN);
+        Map<String, String> textValues = AtsdUtil.toMap("m1", "text \"value\"");
+
+        assertEncodedAsComposed(
+                new InsertCommand("entity", "metric", Sample.ofTimeDouble(1000L, 12.5), TAGS),
+                new InsertCommand("e\"1", "m=1", Sample.ofIsoDoubleText("2016-06-03T09:24:00.000Z", -31.1, "txt")),
+                new InsertCommand("e", "m", Sample.ofTimeText(1L, "only text")),
+                new MultipleInsertCommand("entity", 1465000000000L, TAGS, numericValues, textValues),
+                new MessageInsertCommand("entity", 1000L, TAGS, "message \"text\""),
+                new MessageInsertCommand("entity", 1000L, TAGS, null),
+                new MessageInsertCommand("entity", 1000L, TAGS, "   "),
+                new PropertyInsertCommand("entity", "type", 1000L, "2016-06-03T09:24:00Z", TAGS, TAGS),
+                new MarkerCommand(),
+                new SimpleCommand("ping"),
+                new SimpleCommand("series e:e m:m=1\n"));
+    }
+
+    @Test
+    public void formatsMetricValuesAsDoubleToString() {
+        double[] values = {0, -0.0, 1, -1, 0.5, 0.1, 0.001, 0.0011, 123.456, 9999999.5, 1e7, 1e-4, 31.1, -31.1,
+                12345.6789, 0.30000000000000004, Math.PI, Double.MAX_VALUE, Double.MIN_VALUE, 1234567.1234567,
+                Long.MAX_VALUE, Double.NEGATIVE_INFINITY, Double.NaN};
+        CommandEncoder encoder = new CommandEncoder();
+        for (double value : values) {
+            encoder.reset();
+            assertEquals(AtsdUtil.formatMetricValue(value), encoder.append(value).toString());
+        }
+    }
+
+    @Test
+    public void formatsLongs() {
+        long[] values = {0, 7, -7, 10, 99, 100, 1465000000000L, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1};
+        CommandEncoder encoder = new CommandEncoder(16);
+        for (long value : values) {
+            encoder.reset();
+            assertEquals(Long.toString(value), encoder.append(value).toString());
+        }
+    }
+
+    @Test
+    public void encodesUtf8LikeString() {
+        String text = "aé中😀 \uD83D broken";
+        assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), new CommandEncoder(16).append(text).toByteArray());
+    }
+
+    @Test
+    public void reusesBufferAndAppendsLineFeed() {
+        CommandEncoder encoder = new CommandEncoder(16);
+        encoder.encode(new SimpleCommand("ping")).encode(new SimpleCommand("ping\n"));
+        assertEquals("ping\nping\n", encoder.toString());
+        encoder.reset(32);
+        assertEquals(0, encoder.length());
+        assertEquals("", encoder.encode(new SimpleCommand("")).toString());
+    }
+
+    private static void assertEncodedAsComposed(PlainCommand... commands) {
+        CommandEncoder encoder = new CommandEncoder(16);
+        StringBuilder composed = new StringBuilder();
+        for (PlainCommand command : commands) {
+            String text = command.compose();
+            composed.append(text).append(text.endsWith("\n") ? "" : "\n");
+            encoder.encode(command);
+        }
+        assertEquals(composed.toString(), encoder.toString());
+        assertArrayEquals(Arrays.toString(commands), composed.toString().getBytes(StandardCharsets.UTF_8),
+                encoder.toByteArray());
+    }
+}